@@ -14,6 +14,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.util.Assert;
 import org.springframework.validation.annotation.Validated;
@@ -48,6 +49,9 @@ class AuthAcceptController {
     @Autowired
     private RestTemplate hydraRestTemplate;
 
+    @Autowired(required = false)
+    private HydraLoginRequestCache hydraLoginRequestCache;
+
     @PostMapping("/auth/accept")
     public RedirectView authAccept(@SessionAttribute(value = TARA_SESSION, required = false) TaraSession taraSession) {
         if (taraSession == null) {
@@ -74,13 +78,19 @@ class AuthAcceptController {
         TaraSession.LoginRequestInfo loginRequestInfo = taraSession.getLoginRequestInfo();
         String url = authConfigurationProperties.getHydraService().getAcceptLoginUrl() + "?login_challenge=" + loginRequestInfo.getChallenge();
         LoginAcceptRequestBody requestBody = createRequestBody(taraSession);
+        invalidateLoginRequest(loginRequestInfo.getChallenge());
 
         requestLogger.logRequest(url, HttpMethod.PUT, requestBody);
-        var response = hydraRestTemplate.exchange(
-                url,
-                HttpMethod.PUT,
-                new HttpEntity<>(requestBody),
-                LoginAcceptResponseBody.class);
+        ResponseEntity<LoginAcceptResponseBody> response;
+        try {
+            response = hydraRestTemplate.exchange(
+                    url,
+                    HttpMethod.PUT,
+                    new HttpEntity<>(requestBody),
+                    LoginAcceptResponseBody.class);
+        } finally {
+            invalidateLoginRequest(loginRequestInfo.getChallenge());
+        }
         requestLogger.logResponse(response);
 
         if (response.getStatusCode() == HttpStatus.OK && response.getBody() != null && response.getBody().getRedirectUrl() != null) {
@@ -94,6 +104,12 @@ class AuthAcceptController {
         }
     }
 
+    private void invalidateLoginRequest(String loginChallenge) {
+        if (hydraLoginRequestCache != null) {
+            hydraLoginRequestCache.invalidate(Service.TARA_HYDRA, loginChallenge);
+        }
+    }
+
     private LoginAcceptRequestBody createRequestBody(TaraSession taraSession) {
         TaraSession.AuthenticationResult authenticationResult = taraSession.getAuthenticationResult();
         Assert.notNull(authenticationResult.getAcr(), "Mandatory 'acr' value is missing from authentication!");
@@ -37,6 +37,7 @@ import java.util.stream.Collectors;
 
 import static ee.ria.taraauthserver.logging.ClientRequestLogger.Service;
 import static ee.ria.taraauthserver.session.TaraSession.TARA_SESSION;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static net.logstash.logback.marker.Markers.append;
 import static org.springframework.util.CollectionUtils.isEmpty;
 
@@ -64,6 +65,9 @@ public class AuthInitController {
     @Autowired
     private Validator validator;
 
+    @Autowired(required = false)
+    private HydraLoginRequestCache hydraLoginRequestCache;
+
     @GetMapping(value = AUTH_INIT_REQUEST_MAPPING, produces = MediaType.TEXT_HTML_VALUE)
     public String authInit(
             @RequestParam(name = "login_challenge") @Size(max = 50)
@@ -120,16 +124,10 @@ public class AuthInitController {
         String url = taraProperties.getHydraService().getLoginUrl() + "?login_challenge=" + loginChallenge;
         try {
 
-            requestLogger.logRequest(url, HttpMethod.GET);
-            var response = hydraRestTemplate.exchange(
-                    url,
-                    HttpMethod.GET,
-                    null,
-                    TaraSession.LoginRequestInfo.class);
-            requestLogger.logResponse(response);
+            TaraSession.LoginRequestInfo loginRequestInfo = requestLoginRequestInfo(Service.TARA_HYDRA, loginChallenge, url, requestLogger);
 
-            validateResponse(response.getBody(), loginChallenge);
-            return response.getBody();
+            validateResponse(loginRequestInfo, loginChallenge);
+            return loginRequestInfo;
         } catch (HttpClientErrorException.NotFound | HttpClientErrorException.Gone e) {
             log.error("Unable to fetch login request info!", e);
             throw new BadRequestException(ErrorCode.INVALID_LOGIN_CHALLENGE, "Login challenge not found.");
@@ -139,24 +137,43 @@ public class AuthInitController {
     private TaraSession.LoginRequestInfo fetchGovssoLoginRequestInfo(String ssoChallenge) {
         String requestUrl = govssoHydraConfigurationProperties.getLoginUrl() + "?login_challenge=" + ssoChallenge;
         try {
-            govssoRequestLogger.logRequest(requestUrl, HttpMethod.GET);
-            var response = hydraRestTemplate.exchange(
-                    requestUrl,
-                    HttpMethod.GET,
-                    null,
-                    TaraSession.LoginRequestInfo.class);
-            govssoRequestLogger.logResponse(response);
-
-            if (!response.getBody().getChallenge().equals(ssoChallenge))
+            TaraSession.LoginRequestInfo loginRequestInfo = requestLoginRequestInfo(Service.GOVSSO_HYDRA, ssoChallenge, requestUrl, govssoRequestLogger);
+
+            if (!loginRequestInfo.getChallenge().equals(ssoChallenge))
                 throw new IllegalStateException("Invalid GOVSSO Hydra response: requested login_challenge does not match retrieved login_challenge");
 
-            return response.getBody();
+            return loginRequestInfo;
         } catch (HttpClientErrorException.NotFound | HttpClientErrorException.Gone e) {
             log.error("Unable to fetch SSO login request info!", e);
             throw new BadRequestException(ErrorCode.INVALID_GOVSSO_LOGIN_CHALLENGE, "Login challenge not found.");
         }
     }
 
+    private TaraSession.LoginRequestInfo requestLoginRequestInfo(Service service, String loginChallenge, String url,
+                                                                 ClientRequestLogger clientRequestLogger) {
+        if (hydraLoginRequestCache != null) {
+            return hydraLoginRequestCache.get(service, loginChallenge, () -> {
+                clientRequestLogger.logRequest(url, HttpMethod.GET);
+                var response = hydraRestTemplate.exchange(
+                        url,
+                        HttpMethod.GET,
+                        null,
+                        byte[].class);
+                clientRequestLogger.logResponse(response.getStatusCodeValue(),
+                        response.getBody() == null ? null : new String(response.getBody(), UTF_8));
+                return response.getBody();
+            });
+        }
+        clientRequestLogger.logRequest(url, HttpMethod.GET);
+        var response = hydraRestTemplate.exchange(
+                url,
+                HttpMethod.GET,
+                null,
+                TaraSession.LoginRequestInfo.class);
+        clientRequestLogger.logResponse(response);
+        return response.getBody();
+    }
+
     private void validateResponse(TaraSession.LoginRequestInfo response, String loginChallenge) {
         Set<ConstraintViolation<TaraSession.LoginRequestInfo>> constraintViolations = validator.validate(response);
         if (!constraintViolations.isEmpty() || !response.getChallenge().equals(loginChallenge))
@@ -8,9 +8,11 @@ import ee.ria.taraauthserver.session.SessionUtils;
 import ee.ria.taraauthserver.session.TaraSession;
 import org.jetbrains.annotations.NotNull;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -41,6 +43,9 @@ public class AuthRejectController {
     @Autowired
     private StatisticsLogger statisticsLogger;
 
+    @Autowired(required = false)
+    private HydraLoginRequestCache hydraLoginRequestCache;
+
     @GetMapping("/auth/reject")
     public RedirectView authReject(@RequestParam(name = "error_code") @Pattern(regexp = "user_cancel", message = "the only supported value is: 'user_cancel'") String errorCode,
                                    @SessionAttribute(value = TARA_SESSION, required = false) TaraSession taraSession) {
@@ -48,15 +53,23 @@ public class AuthRejectController {
             throw new BadRequestException(SESSION_NOT_FOUND, "Invalid session");
         }
 
-        String url = getRequestUrl(taraSession.getLoginRequestInfo().getChallenge());
+        String loginChallenge = taraSession.getLoginRequestInfo().getChallenge();
+        String url = getRequestUrl(loginChallenge);
         Map<String, String> requestBody = createRequestBody(errorCode);
+        invalidateLoginRequest(loginChallenge);
 
         requestLogger.logRequest(url, HttpMethod.PUT, requestBody);
-        var response = hydraRestTemplate.exchange(
-                url,
-                HttpMethod.PUT,
-                new HttpEntity<>(requestBody),
-                Map.class);
+        ResponseEntity<Map<String, Object>> response;
+        try {
+            response = hydraRestTemplate.exchange(
+                    url,
+                    HttpMethod.PUT,
+                    new HttpEntity<>(requestBody),
+                    new ParameterizedTypeReference<>() {
+                    });
+        } finally {
+            invalidateLoginRequest(loginChallenge);
+        }
         requestLogger.logResponse(response);
 
         if (response.getStatusCode() == HttpStatus.OK && response.getBody() != null && response.getBody().get("redirect_to") != null) {
@@ -69,6 +82,12 @@ public class AuthRejectController {
         }
     }
 
+    private void invalidateLoginRequest(String loginChallenge) {
+        if (hydraLoginRequestCache != null) {
+            hydraLoginRequestCache.invalidate(Service.TARA_HYDRA, loginChallenge);
+        }
+    }
+
     @NotNull
     private String getRequestUrl(String loginChallenge) {
         return configurationProperties.getHydraService().getRejectLoginUrl() + "?login_challenge=" + loginChallenge;
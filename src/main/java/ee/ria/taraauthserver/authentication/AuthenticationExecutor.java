@@ -0,0 +1,116 @@
+package ee.ria.taraauthserver.authentication;
+
+import ee.ria.taraauthserver.config.properties.AuthMethodExecutorProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Runs delayed tasks of an authentication method, either on a dedicated bounded thread pool or on the shared
+ * application task executor. Unlike {@link CompletableFuture#delayedExecutor(long, java.util.concurrent.TimeUnit, Executor)},
+ * a task rejected by the thread pool completes the returned future exceptionally with
+ * {@link RejectedExecutionException}, so that the authentication can be failed instead of being left pending. Delays
+ * are timed by the JVM wide delay scheduler of {@link CompletableFuture}, which only hands the task over to the
+ * executor, so no scheduler thread is started per authentication method.
+ * <p>
+ * Dedicated thread pool publishes Micrometer {@code executor.*} metrics tagged with the executor name, including queue
+ * depth ({@code executor.queued}), active threads ({@code executor.active}) and task wait time ({@code executor.idle}).
+ */
+@Slf4j
+public class AuthenticationExecutor implements DisposableBean {
+    private final String name;
+    private final Executor executor;
+    private final ExecutorService dedicatedExecutor;
+    private final Counter rejectedTasksCounter;
+
+    private AuthenticationExecutor(String name, Executor executor, ExecutorService dedicatedExecutor, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.executor = executor;
+        this.dedicatedExecutor = dedicatedExecutor;
+        this.rejectedTasksCounter = Counter.builder("tara.auth.executor.rejected")
+                .description("Number of authentication tasks rejected by the executor")
+                .tag("name", name)
+                .register(meterRegistry);
+    }
+
+    public static AuthenticationExecutor create(String name, AuthMethodExecutorProperties properties, Executor taskExecutor, MeterRegistry meterRegistry) {
+        if (!properties.isEnabled()) {
+            return new AuthenticationExecutor(name, taskExecutor, null, meterRegistry);
+        }
+        ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(
+                properties.getCorePoolSize(),
+                properties.getMaxPoolSize(),
+                60, SECONDS,
+                createQueue(properties.getQueueCapacity()),
+                daemonThreadFactory(name));
+        ExecutorService monitoredExecutor = ExecutorServiceMetrics.monitor(meterRegistry, threadPoolExecutor, name, Tags.empty());
+        log.info("Using dedicated executor {}: core pool size {}, max pool size {}, queue capacity {}",
+                name, properties.getCorePoolSize(), properties.getMaxPoolSize(), properties.getQueueCapacity());
+        return new AuthenticationExecutor(name, monitoredExecutor, threadPoolExecutor, meterRegistry);
+    }
+
+    /**
+     * @return future completed with the result of the supplier, or exceptionally when the supplier throws or the task is
+     * rejected, also after the executor has been shut down
+     */
+    public <T> CompletableFuture<T> supplyAsync(Supplier<T> supplier, long delayInMilliseconds) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        CompletableFuture.delayedExecutor(delayInMilliseconds, MILLISECONDS, Runnable::run)
+                .execute(() -> submit(supplier, result));
+        return result;
+    }
+
+    private <T> void submit(Supplier<T> supplier, CompletableFuture<T> result) {
+        try {
+            executor.execute(() -> {
+                try {
+                    result.complete(supplier.get());
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejectedTasksCounter.increment();
+            log.warn("Task rejected by executor: {}", name);
+            result.completeExceptionally(e);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (dedicatedExecutor != null) {
+            dedicatedExecutor.shutdownNow();
+        }
+    }
+
+    private static BlockingQueue<Runnable> createQueue(int queueCapacity) {
+        return queueCapacity > 0 ? new ArrayBlockingQueue<>(queueCapacity) : new SynchronousQueue<>();
+    }
+
+    private static ThreadFactory daemonThreadFactory(String name) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
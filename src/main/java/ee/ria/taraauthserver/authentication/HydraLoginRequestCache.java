@@ -0,0 +1,123 @@
+package ee.ria.taraauthserver.authentication;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import ee.ria.taraauthserver.config.properties.AuthConfigurationProperties;
+import ee.ria.taraauthserver.logging.ClientRequestLogger.Service;
+import ee.ria.taraauthserver.session.TaraSession;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+/**
+ * Ory Hydra login request responses of TARA and GovSSO, keyed by login challenge, so that reloading {@code /auth/init}
+ * or returning to it from an authentication method does not send a new request to Ory Hydra.
+ * <p>
+ * Concurrent requests of the same login challenge are coalesced: the first request is sent by the calling thread and
+ * other threads wait for its response. Failed requests are not cached. Response body is cached as received and a new
+ * {@link TaraSession.LoginRequestInfo} is read from it for every caller, as login request info is modified by the
+ * authentication session it is stored in.
+ * <p>
+ * Login request must be invalidated both before and after it is accepted or rejected, so that a handled login request is
+ * not used, also when a concurrent {@code /auth/init} request caches it again while it is being accepted or rejected.
+ * <p>
+ * The cache is local to the node and invalidation is not propagated to other nodes of the cluster. A node that has
+ * cached the login request before it was accepted or rejected elsewhere keeps serving it until its time to live expires.
+ * Authentication started with such a login request fails when it is accepted, as Ory Hydra no longer accepts the login
+ * challenge, so the time to live should be kept short.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(value = "tara.hydra-service.login-request-cache.enabled")
+public class HydraLoginRequestCache {
+    private static final String METRIC_NAME = "tara.hydra.login-request.cache.requests";
+
+    private final AsyncCache<Key, byte[]> cache;
+    private final ObjectMapper objectMapper;
+    private final Counter hitCounter;
+    private final Counter missCounter;
+
+    public HydraLoginRequestCache(AuthConfigurationProperties authConfigurationProperties, ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        AuthConfigurationProperties.LoginRequestCache properties = authConfigurationProperties.getHydraService().getLoginRequestCache();
+        this.objectMapper = objectMapper;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(properties.getMaximumSize())
+                .expireAfterWrite(properties.getTimeToLive())
+                .buildAsync();
+        this.hitCounter = Counter.builder(METRIC_NAME)
+                .description("Ory Hydra login request cache lookups, including lookups waiting for a request in flight")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.missCounter = Counter.builder(METRIC_NAME)
+                .description("Ory Hydra login request cache lookups, including lookups waiting for a request in flight")
+                .tag("result", "miss")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @param loginRequest sends the login request to Ory Hydra and returns the response body, called only when the
+     *                     login request is neither cached nor in flight
+     */
+    public TaraSession.LoginRequestInfo get(Service service, String loginChallenge, Supplier<byte[]> loginRequest) {
+        Key key = new Key(service, loginChallenge);
+        CompletableFuture<byte[]> request = new CompletableFuture<>();
+        CompletableFuture<byte[]> cachedRequest = cache.asMap().putIfAbsent(key, request);
+        byte[] responseBody;
+        if (cachedRequest == null) {
+            missCounter.increment();
+            try {
+                responseBody = loginRequest.get();
+            } catch (RuntimeException e) {
+                request.completeExceptionally(e);
+                throw e;
+            }
+            request.complete(responseBody);
+        } else {
+            hitCounter.increment();
+            log.info("Using cached login request");
+            responseBody = await(cachedRequest);
+        }
+        return read(responseBody);
+    }
+
+    public void invalidate(Service service, String loginChallenge) {
+        cache.synchronous().invalidate(new Key(service, loginChallenge));
+    }
+
+    private byte[] await(CompletableFuture<byte[]> request) {
+        try {
+            return request.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private TaraSession.LoginRequestInfo read(byte[] responseBody) {
+        if (responseBody == null) {
+            return null;
+        }
+        try {
+            return objectMapper.readValue(responseBody, TaraSession.LoginRequestInfo.class);
+        } catch (IOException e) {
+            throw new IllegalStateException("Invalid hydra response: " + e.getMessage(), e);
+        }
+    }
+
+    @Value
+    private static class Key {
+        Service service;
+        String loginChallenge;
+    }
+}
@@ -0,0 +1,214 @@
+package ee.ria.taraauthserver.authentication;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import net.logstash.logback.marker.LogstashMarker;
+import org.springframework.http.HttpStatus;
+
+import javax.annotation.PreDestroy;
+import javax.net.ssl.SSLContext;
+import javax.ws.rs.ProcessingException;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static ee.ria.taraauthserver.logging.JaxRsClientRequestLogger.PROP_RESPONSE_BODY_CONTENT;
+import static ee.ria.taraauthserver.logging.JaxRsClientRequestLogger.PROP_RESPONSE_STATUS_CODE;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static net.logstash.logback.argument.StructuredArguments.value;
+import static net.logstash.logback.marker.Markers.append;
+import static org.apache.commons.lang3.StringUtils.equalsIgnoreCase;
+
+/**
+ * Polls session status of an authentication service with asynchronous long polling requests, instead of blocking a
+ * thread per pending authentication. The next status request of a running session is sent from the completion of the
+ * previous one, so waiting for the user to answer on their phone only holds an open connection. All pending
+ * authentications share a fixed number of threads, used only for handling responses. The returned future is completed
+ * on these threads, so callers hand the final status over to their own executor before validating and storing it.
+ *
+ * @param <S> session status response type
+ */
+@Slf4j
+public abstract class SessionStatusLongPoller<S> {
+    /**
+     * Guards against polling forever, authentication services complete every session with a timeout result long before.
+     */
+    private static final Duration MAX_POLLING_DURATION = Duration.ofMinutes(5);
+
+    private final ObjectMapper objectMapper = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    private final AtomicInteger threadCount = new AtomicInteger();
+    private final String serviceName;
+    private final Class<S> sessionStatusType;
+    private final long readTimeoutInMilliseconds;
+    private final HttpClient httpClient;
+    protected final ScheduledExecutorService executor;
+
+    protected SessionStatusLongPoller(String serviceName, String threadNamePrefix, Class<S> sessionStatusType, SSLContext sslContext,
+                                      int threadCount, long connectionTimeoutInMilliseconds, long readTimeoutInMilliseconds) {
+        this.serviceName = serviceName;
+        this.sessionStatusType = sessionStatusType;
+        this.readTimeoutInMilliseconds = readTimeoutInMilliseconds;
+        this.executor = Executors.newScheduledThreadPool(threadCount, runnable -> {
+            Thread thread = new Thread(runnable, threadNamePrefix + this.threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.httpClient = HttpClient.newBuilder()
+                .sslContext(sslContext)
+                .connectTimeout(Duration.ofMillis(connectionTimeoutInMilliseconds))
+                .executor(executor)
+                .build();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * @return future that completes with the final session status when the authentication has succeeded, or
+     * exceptionally with the exceptions of the authentication service client library otherwise
+     */
+    public CompletableFuture<S> fetchFinalSessionStatus(String sessionId) {
+        HttpRequest request;
+        try {
+            request = HttpRequest.newBuilder(sessionStatusUri(sessionId))
+                    .timeout(Duration.ofMillis(readTimeoutInMilliseconds))
+                    .header("Accept", "application/json")
+                    .GET()
+                    .build();
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        Poll<S> poll = new Poll<>(request, System.currentTimeMillis() + MAX_POLLING_DURATION.toMillis());
+        submit(poll);
+        return poll.getResult();
+    }
+
+    /**
+     * Sends the next status request of the session, unless polling has taken too long.
+     */
+    protected final void submit(Poll<S> poll) {
+        if (System.currentTimeMillis() > poll.getDeadline()) {
+            poll.getResult().completeExceptionally(sessionTimeoutException());
+            return;
+        }
+        send(poll);
+    }
+
+    /**
+     * Sends the status request right away. Overridden to limit or delay the requests.
+     */
+    protected void send(Poll<S> poll) {
+        sendRequest(poll);
+    }
+
+    protected final void sendRequest(Poll<S> poll) {
+        long startTime = System.nanoTime();
+        httpClient.sendAsync(poll.getRequest(), HttpResponse.BodyHandlers.ofString())
+                .whenComplete((response, error) -> handleResponse(poll, response, error, System.nanoTime() - startTime));
+    }
+
+    private void handleResponse(Poll<S> poll, HttpResponse<String> response, Throwable error, long durationInNanoseconds) {
+        S sessionStatus;
+        try {
+            if (error != null) {
+                throw new ProcessingException(serviceName + " session status request failed", unwrap(error));
+            }
+            sessionStatus = parseResponse(poll.getRequest(), response);
+        } catch (Throwable e) {
+            requestCompleted(null, durationInNanoseconds);
+            poll.getResult().completeExceptionally(e);
+            return;
+        }
+        try {
+            requestCompleted(getState(sessionStatus), durationInNanoseconds);
+            if (equalsIgnoreCase("RUNNING", getState(sessionStatus))) {
+                pollAgain(poll, NANOSECONDS.toMillis(durationInNanoseconds));
+            } else {
+                validateResult(sessionStatus);
+                poll.getResult().complete(sessionStatus);
+            }
+        } catch (Throwable e) {
+            poll.getResult().completeExceptionally(e);
+        }
+    }
+
+    private S parseResponse(HttpRequest request, HttpResponse<String> response) throws IOException {
+        LogstashMarker marker = append("url.full", request.uri().toString())
+                .and(append("http.request.method", request.method()))
+                .and(append(PROP_RESPONSE_BODY_CONTENT, response.body())); // NB! Do not use appendRaw. Can create elasticsearch mapping conflict.
+        if (HttpStatus.Series.resolve(response.statusCode()) != HttpStatus.Series.SUCCESSFUL) {
+            log.error(marker, serviceName + " response: {}", value(PROP_RESPONSE_STATUS_CODE, response.statusCode()));
+            throw errorResponseException(response.statusCode());
+        }
+        log.info(marker, serviceName + " response: {}", value(PROP_RESPONSE_STATUS_CODE, response.statusCode()));
+        return objectMapper.readValue(response.body(), sessionStatusType);
+    }
+
+    /**
+     * Called when a status request has completed, before its response is handled.
+     *
+     * @param state session state, {@code null} if the request failed
+     */
+    protected void requestCompleted(String state, long durationInNanoseconds) {
+    }
+
+    /**
+     * Polls a running session again right away. Overridden to delay the next status request.
+     */
+    protected void pollAgain(Poll<S> poll, long requestDurationInMilliseconds) {
+        submit(poll);
+    }
+
+    protected abstract URI sessionStatusUri(String sessionId);
+
+    protected abstract String getState(S sessionStatus);
+
+    /**
+     * @throws RuntimeException the exception the client library of the authentication service throws for the result of
+     *                          a completed session, if the authentication has not succeeded
+     */
+    protected abstract void validateResult(S sessionStatus);
+
+    protected abstract RuntimeException sessionTimeoutException();
+
+    /**
+     * @return the exception the client library of the authentication service throws for the HTTP status of a session
+     * status response
+     */
+    protected abstract RuntimeException errorResponseException(int statusCode);
+
+    public static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    @Getter
+    protected static final class Poll<S> {
+        private final HttpRequest request;
+        private final long deadline;
+        private final CompletableFuture<S> result = new CompletableFuture<>();
+
+        /**
+         * Delay of the next status request, for pollers that delay polling a running session.
+         */
+        @Setter
+        private volatile long backoffInMilliseconds;
+
+        private Poll(HttpRequest request, long deadline) {
+            this.request = request;
+            this.deadline = deadline;
+        }
+    }
+}
@@ -1,62 +1,122 @@
 package ee.ria.taraauthserver.authentication.idcard;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import ee.ria.taraauthserver.utils.X509Utils;
 import lombok.RequiredArgsConstructor;
+import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.Extension;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 import org.springframework.util.Assert;
 
+import javax.security.auth.x500.X500Principal;
+import java.nio.ByteBuffer;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
 
 import static ee.ria.taraauthserver.config.properties.AuthConfigurationProperties.IdCardAuthConfigurationProperties;
 import static ee.ria.taraauthserver.config.properties.AuthConfigurationProperties.Ocsp;
+import static java.util.Collections.unmodifiableList;
 import static java.util.List.of;
-import static java.util.stream.Collectors.toList;
 import static net.logstash.logback.argument.StructuredArguments.fields;
 import static net.logstash.logback.argument.StructuredArguments.value;
 import static org.springframework.util.CollectionUtils.isEmpty;
 
+/**
+ * Resolves OCSP configurations of a user certificate: the explicitly configured or AIA OCSP configuration of the
+ * certificate issuer, followed by the fallback OCSP configurations of the issuer.
+ * <p>
+ * Configured OCSP services are indexed by issuer CN. The index is rebuilt when {@code tara.auth-methods.id-card.ocsp}
+ * or {@code tara.auth-methods.id-card.fallback-ocsp} configuration is rebound. AIA OCSP configurations are memoized by
+ * issuer and AIA extension of the certificate, so that the extension is parsed once per issuer.
+ */
 @Slf4j
 @Component
 @RequiredArgsConstructor
 @ConditionalOnProperty(value = "tara.auth-methods.id-card.enabled")
 public class OCSPConfigurationResolver {
+    private static final long MAXIMUM_SIZE = 1000;
 
     @Autowired
     private final IdCardAuthConfigurationProperties configurationProperties;
 
+    private final Cache<X500Principal, String> issuerCNs = Caffeine.newBuilder().maximumSize(MAXIMUM_SIZE).build();
+    private volatile Index index;
+
     public List<Ocsp> resolve(X509Certificate userCert) {
         Assert.notNull(userCert, "User certificate is missing!");
         log.debug("Determining the OCSP configuration for certificate serial number: {}", value("x509.serial_number", userCert.getSerialNumber()));
-        final List<Ocsp> ocspConfiguration = new ArrayList<>();
-
-        String issuerCN = X509Utils.getIssuerCNFromCertificate(userCert);
-
-        Ocsp primaryConf = getOcspConfiguration(issuerCN, configurationProperties.getOcsp())
-                .orElseGet(() -> getDefaultConf(userCert, issuerCN));
-        log.debug("Primary ocsp configuration to verify cert issued by '{}': {}", value("x509.issuer.common_name", issuerCN), value("ocsp.conf", primaryConf));
-        ocspConfiguration.add(primaryConf);
+        String issuerCN = issuerCNs.get(userCert.getIssuerX500Principal(),
+                issuer -> X509Utils.getFirstCNFromX500Name(X500Name.getInstance(issuer.getEncoded())));
 
-        if (!isEmpty(configurationProperties.getFallbackOcsp())) {
-            List<Ocsp> secondaryConfs = configurationProperties.getFallbackOcsp()
-                    .stream()
-                    .filter(e -> e.getIssuerCn().stream().anyMatch(b -> b.equals(issuerCN)))
-                    .collect(toList());
+        Index currentIndex = getIndex();
+        List<Ocsp> ocspConfiguration = currentIndex.getOcspConfigurations().get(issuerCN);
+        if (ocspConfiguration == null) {
+            AiaKey aiaKey = new AiaKey(issuerCN, wrap(userCert.getExtensionValue(Extension.authorityInfoAccess.getId())));
+            ocspConfiguration = currentIndex.getAiaOcspConfigurations().get(aiaKey,
+                    key -> withFallbackConfigurations(getDefaultConf(userCert, issuerCN), currentIndex.getFallbackOcspConfigurations().get(issuerCN)));
+        }
 
-            secondaryConfs.forEach(secondaryConf ->
+        if (log.isDebugEnabled()) {
+            log.debug("Primary ocsp configuration to verify cert issued by '{}': {}", value("x509.issuer.common_name", issuerCN), value("ocsp.conf", ocspConfiguration.get(0)));
+            ocspConfiguration.stream().skip(1).forEach(secondaryConf ->
                     log.debug("Secondary ocsp configurations to verify cert issued by '{}': {}", value("x509.issuer.common_name", issuerCN),
                             fields(secondaryConf)));
-            ocspConfiguration.addAll(secondaryConfs);
         }
-
         return ocspConfiguration;
     }
 
+    private Index getIndex() {
+        List<Ocsp> ocsp = configurationProperties.getOcsp();
+        List<Ocsp> fallbackOcsp = configurationProperties.getFallbackOcsp();
+        Index currentIndex = index;
+        if (currentIndex == null || currentIndex.getOcsp() != ocsp || currentIndex.getFallbackOcsp() != fallbackOcsp) {
+            currentIndex = buildIndex(ocsp, fallbackOcsp);
+            index = currentIndex;
+        }
+        return currentIndex;
+    }
+
+    private Index buildIndex(List<Ocsp> ocsp, List<Ocsp> fallbackOcsp) {
+        Map<String, List<Ocsp>> fallbackOcspConfigurations = new HashMap<>();
+        if (!isEmpty(fallbackOcsp)) {
+            for (Ocsp fallbackConf : fallbackOcsp) {
+                fallbackConf.getIssuerCn().stream().distinct().forEach(issuerCN ->
+                        fallbackOcspConfigurations.computeIfAbsent(issuerCN, cn -> new ArrayList<>()).add(fallbackConf));
+            }
+        }
+
+        Map<String, List<Ocsp>> ocspConfigurations = new HashMap<>();
+        if (!isEmpty(ocsp)) {
+            for (Ocsp primaryConf : ocsp) {
+                for (String issuerCN : primaryConf.getIssuerCn()) {
+                    if (!ocspConfigurations.containsKey(issuerCN)) {
+                        ocspConfigurations.put(issuerCN, withFallbackConfigurations(primaryConf, fallbackOcspConfigurations.get(issuerCN)));
+                    }
+                }
+            }
+        }
+        log.debug("Indexed OCSP configurations of issuers: {}", value("x509.issuer.common_name", ocspConfigurations.keySet()));
+        return new Index(ocsp, fallbackOcsp, ocspConfigurations, fallbackOcspConfigurations,
+                Caffeine.newBuilder().maximumSize(MAXIMUM_SIZE).build());
+    }
+
+    private List<Ocsp> withFallbackConfigurations(Ocsp primaryConf, List<Ocsp> fallbackConfs) {
+        List<Ocsp> ocspConfiguration = new ArrayList<>();
+        ocspConfiguration.add(primaryConf);
+        if (fallbackConfs != null) {
+            ocspConfiguration.addAll(fallbackConfs);
+        }
+        return unmodifiableList(ocspConfiguration);
+    }
+
     private Ocsp getDefaultConf(X509Certificate userCert, String issuerCN) {
         String url = X509Utils.getOCSPUrl(userCert);
         Assert.notNull(url, "OCSP configuration invalid! This user certificate's issuer, issued by '" + issuerCN +
@@ -70,9 +130,22 @@ public class OCSPConfigurationResolver {
         return implicitConfiguration;
     }
 
-    private Optional<Ocsp> getOcspConfiguration(String issuerCN, List<Ocsp> configurations) {
-        return configurations.stream().filter(
-                e -> e.getIssuerCn().stream().anyMatch(b -> b.equals(issuerCN))
-        ).findFirst();
+    private static ByteBuffer wrap(byte[] extensionValue) {
+        return extensionValue == null ? null : ByteBuffer.wrap(extensionValue);
+    }
+
+    @Value
+    private static class Index {
+        List<Ocsp> ocsp;
+        List<Ocsp> fallbackOcsp;
+        Map<String, List<Ocsp>> ocspConfigurations;
+        Map<String, List<Ocsp>> fallbackOcspConfigurations;
+        Cache<AiaKey, List<Ocsp>> aiaOcspConfigurations;
+    }
+
+    @Value
+    private static class AiaKey {
+        String issuerCN;
+        ByteBuffer aiaExtension;
     }
 }
@@ -0,0 +1,144 @@
+package ee.ria.taraauthserver.authentication.idcard;
+
+import ee.ria.taraauthserver.authentication.idcard.OCSPValidator.ValidationResult;
+import ee.ria.taraauthserver.config.properties.AuthConfigurationProperties.IdCardAuthConfigurationProperties;
+import ee.ria.taraauthserver.config.properties.AuthConfigurationProperties.Ocsp;
+import ee.ria.taraauthserver.error.exceptions.OCSPServiceNotAvailableException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+
+import static ee.ria.taraauthserver.utils.RequestUtils.withMdc;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static net.logstash.logback.argument.StructuredArguments.value;
+import static net.logstash.logback.marker.Markers.append;
+
+/**
+ * Sends OCSP requests of a certificate to its primary and fallback OCSP services in parallel, so that a slow OCSP
+ * service does not add its whole read timeout to the login. When an OCSP service has not responded within
+ * {@code tara.auth-methods.id-card.ocsp-hedging.delay}, a request is sent to the next OCSP service without cancelling
+ * the pending request. The first valid response is used, and a revoked or unknown certificate status is as final as
+ * with sequential requests. An OCSP service that is not available is replaced by the next one immediately.
+ * <p>
+ * Requests are sent by a bounded thread pool. When the pool is exhausted, hedged requests are not sent and the OCSP
+ * services are tried sequentially by the calling thread.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(value = {"tara.auth-methods.id-card.enabled", "tara.auth-methods.id-card.ocsp-hedging.enabled"})
+class OCSPRequestHedging implements DisposableBean {
+    private final long delayInMilliseconds;
+    private final ThreadPoolExecutor executor;
+    private final Counter hedgedRequestsCounter;
+
+    OCSPRequestHedging(IdCardAuthConfigurationProperties idCardAuthConfigurationProperties, MeterRegistry meterRegistry) {
+        this.delayInMilliseconds = idCardAuthConfigurationProperties.getOcspHedging().getDelay().toMillis();
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(0, idCardAuthConfigurationProperties.getOcspHedging().getMaxConcurrentRequests(),
+                60, SECONDS, new SynchronousQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "tara-ocsp-hedging-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.hedgedRequestsCounter = Counter.builder("tara.ocsp.hedged.requests")
+                .description("Number of OCSP requests sent because the previous OCSP service did not respond within the hedging delay")
+                .register(meterRegistry);
+    }
+
+    ValidationResult checkCert(X509Certificate userCert, List<Ocsp> ocspConfiguration, BiFunction<X509Certificate, Ocsp, ValidationResult> ocspCheck) {
+        ExecutorCompletionService<ValidationResult> completionService = new ExecutorCompletionService<>(executor);
+        List<Future<ValidationResult>> requests = new ArrayList<>();
+        OCSPServiceNotAvailableException notAvailableException = null;
+        int next = 0;
+        int pending = 0;
+        try {
+            while (pending > 0 || next < ocspConfiguration.size()) {
+                if (pending == 0) {
+                    Ocsp ocspConf = ocspConfiguration.get(next++);
+                    if (next > 1) {
+                        log.info(append("ocsp.conf", ocspConf), "Retrying OCSP request to: {}", value("url.full", ocspConf.getUrl()));
+                    }
+                    Future<ValidationResult> request = submit(completionService, withMdc(() -> ocspCheck.apply(userCert, ocspConf)));
+                    if (request == null) {
+                        try {
+                            return ocspCheck.apply(userCert, ocspConf);
+                        } catch (OCSPServiceNotAvailableException e) {
+                            notAvailableException = e;
+                            continue;
+                        }
+                    }
+                    requests.add(request);
+                    pending++;
+                }
+
+                Future<ValidationResult> completed = next < ocspConfiguration.size()
+                        ? completionService.poll(delayInMilliseconds, MILLISECONDS)
+                        : completionService.take();
+                if (completed == null) {
+                    Ocsp ocspConf = ocspConfiguration.get(next);
+                    Future<ValidationResult> request = submit(completionService, withMdc(() -> ocspCheck.apply(userCert, ocspConf)));
+                    if (request == null) {
+                        log.warn("OCSP hedging thread pool exhausted, not sending hedged OCSP request to: {}", value("url.full", ocspConf.getUrl()));
+                        continue;
+                    }
+                    log.info(append("ocsp.conf", ocspConf), "No OCSP response within {} ms, sent hedged OCSP request to: {}",
+                            delayInMilliseconds, value("url.full", ocspConf.getUrl()));
+                    hedgedRequestsCounter.increment();
+                    requests.add(request);
+                    next++;
+                    pending++;
+                    continue;
+                }
+
+                pending--;
+                try {
+                    return completed.get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof OCSPServiceNotAvailableException) {
+                        notAvailableException = (OCSPServiceNotAvailableException) e.getCause();
+                    } else if (e.getCause() instanceof RuntimeException) {
+                        throw (RuntimeException) e.getCause();
+                    } else {
+                        throw new IllegalStateException("OCSP validation failed: " + e.getCause().getMessage(), e.getCause());
+                    }
+                }
+            }
+            throw notAvailableException;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for OCSP response", e);
+        } finally {
+            requests.forEach(request -> request.cancel(true));
+        }
+    }
+
+    private Future<ValidationResult> submit(ExecutorCompletionService<ValidationResult> completionService, Supplier<ValidationResult> ocspCheck) {
+        try {
+            return completionService.submit(ocspCheck::get);
+        } catch (RejectedExecutionException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,161 @@
+package ee.ria.taraauthserver.authentication.idcard;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import ee.ria.taraauthserver.authentication.idcard.OCSPValidator.ValidationResult;
+import ee.ria.taraauthserver.config.properties.AuthConfigurationProperties.IdCardAuthConfigurationProperties;
+import ee.ria.taraauthserver.config.properties.AuthConfigurationProperties.Ocsp;
+import ee.ria.taraauthserver.config.properties.AuthConfigurationProperties.OcspCache;
+import ee.ria.taraauthserver.error.exceptions.OCSPServiceNotAvailableException;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.function.Supplier;
+
+import static net.logstash.logback.argument.StructuredArguments.value;
+
+/**
+ * Outcomes of OCSP certificate status checks, so that a user retrying the login or logging into multiple services does
+ * not cause a new OCSP request for every login.
+ * <p>
+ * Outcomes are cached by SHA-256 hash of the encoded user certificate, so a cached outcome is only used for the exact
+ * certificate that was checked, including its issuer signature. A forged certificate with the issuer and serial number of
+ * a cached one is checked like any other certificate.
+ * <p>
+ * Good certificate status is cached until the OCSP response expires, but at most for
+ * {@code tara.auth-methods.id-card.ocsp-cache.max-time-to-live}. Revoked and unknown certificate statuses are not
+ * cached. Unavailability of all OCSP services of the certificate is cached per certificate for
+ * {@code tara.auth-methods.id-card.ocsp-cache.not-available-time-to-live}, so that a user retrying the login does not
+ * cause new requests to unavailable OCSP services. Checks of other certificates still reach the OCSP services.
+ * <p>
+ * Time saved by cached outcomes is published as {@code tara.ocsp.cache.saved.latency} metric.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(value = {"tara.auth-methods.id-card.enabled", "tara.auth-methods.id-card.ocsp-cache.enabled"})
+class OCSPResponseCache {
+    private static final String METRIC_NAME_PREFIX = "tara.ocsp.cache";
+
+    private final OcspCache properties;
+    private final Cache<String, Entry> cache;
+    private final Timer goodStatusSavedLatency;
+    private final Timer notAvailableSavedLatency;
+
+    OCSPResponseCache(IdCardAuthConfigurationProperties idCardAuthConfigurationProperties, MeterRegistry meterRegistry) {
+        this.properties = idCardAuthConfigurationProperties.getOcspCache();
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(properties.getMaximumSize())
+                .expireAfter(new EntryExpiry())
+                .recordStats()
+                .build();
+        FunctionCounter.builder(METRIC_NAME_PREFIX + ".requests", cache, c -> c.stats().hitCount())
+                .description("OCSP cache lookups. Hit rate is the share of lookups with result 'hit'")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        FunctionCounter.builder(METRIC_NAME_PREFIX + ".requests", cache, c -> c.stats().missCount())
+                .description("OCSP cache lookups. Hit rate is the share of lookups with result 'hit'")
+                .tag("result", "miss")
+                .register(meterRegistry);
+        Gauge.builder(METRIC_NAME_PREFIX + ".size", cache, Cache::estimatedSize)
+                .description("Number of cached OCSP certificate status check outcomes")
+                .register(meterRegistry);
+        this.goodStatusSavedLatency = createSavedLatencyTimer("good", meterRegistry);
+        this.notAvailableSavedLatency = createSavedLatencyTimer("not_available", meterRegistry);
+    }
+
+    Ocsp get(X509Certificate userCert, Supplier<ValidationResult> ocspCheck) {
+        String key = getKey(userCert);
+        Entry cachedEntry = cache.getIfPresent(key);
+        if (cachedEntry != null) {
+            return getCachedOutcome(cachedEntry);
+        }
+
+        long start = System.nanoTime();
+        try {
+            ValidationResult result = ocspCheck.get();
+            Duration latency = Duration.ofNanos(System.nanoTime() - start);
+            if (isCacheable(result.getOcsp())) {
+                Instant expiry = min(result.getResponseExpiry(), Instant.now().plus(properties.getMaxTimeToLive()));
+                cache.put(key, new Entry(result.getOcsp(), null, expiry, latency));
+            }
+            return result.getOcsp();
+        } catch (OCSPServiceNotAvailableException e) {
+            Duration latency = Duration.ofNanos(System.nanoTime() - start);
+            cache.put(key, new Entry(null, e, Instant.now().plus(properties.getNotAvailableTimeToLive()), latency));
+            throw e;
+        }
+    }
+
+    private Ocsp getCachedOutcome(Entry entry) {
+        if (entry.getNotAvailableException() != null) {
+            notAvailableSavedLatency.record(entry.getLatency());
+            log.info("Using cached OCSP service unavailability valid until: {}", value("ocsp.cache.expiry", entry.getExpiry().toString()));
+            throw new OCSPServiceNotAvailableException(entry.getNotAvailableException().getMessage(), entry.getNotAvailableException());
+        }
+        goodStatusSavedLatency.record(entry.getLatency());
+        log.info("Using cached OCSP response from: {} valid until: {}", value("url.full", entry.getOcsp().getUrl()),
+                value("ocsp.cache.expiry", entry.getExpiry().toString()));
+        return entry.getOcsp();
+    }
+
+    private static String getKey(X509Certificate userCert) {
+        try {
+            return DigestUtils.sha256Hex(userCert.getEncoded());
+        } catch (CertificateEncodingException e) {
+            throw new IllegalStateException("Unable to encode user certificate", e);
+        }
+    }
+
+    private boolean isCacheable(Ocsp ocsp) {
+        return ocsp.isNonceDisabled() || properties.isCacheResponsesWithNonce();
+    }
+
+    private static Instant min(Instant first, Instant second) {
+        return first.isBefore(second) ? first : second;
+    }
+
+    private static Timer createSavedLatencyTimer(String outcome, MeterRegistry meterRegistry) {
+        return Timer.builder(METRIC_NAME_PREFIX + ".saved.latency")
+                .description("Latency of the OCSP certificate status checks that were replaced by cached outcomes")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    @Value
+    private static class Entry {
+        Ocsp ocsp;
+        OCSPServiceNotAvailableException notAvailableException;
+        Instant expiry;
+        Duration latency;
+    }
+
+    private static class EntryExpiry implements Expiry<String, Entry> {
+
+        @Override
+        public long expireAfterCreate(String key, Entry entry, long currentTime) {
+            return Math.max(0, Duration.between(Instant.now(), entry.getExpiry()).toNanos());
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, Entry entry, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, entry, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, Entry entry, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
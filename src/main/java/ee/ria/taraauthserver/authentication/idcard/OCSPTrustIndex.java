@@ -0,0 +1,92 @@
+package ee.ria.taraauthserver.authentication.idcard;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import ee.ria.taraauthserver.utils.X509Utils;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateHolder;
+import org.bouncycastle.cert.ocsp.CertificateID;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.ContentVerifierProvider;
+import org.bouncycastle.operator.DigestCalculatorProvider;
+import org.bouncycastle.operator.OperatorCreationException;
+import org.bouncycastle.operator.jcajce.JcaContentVerifierProviderBuilder;
+import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
+
+import javax.security.auth.x500.X500Principal;
+import java.math.BigInteger;
+import java.security.cert.X509Certificate;
+import java.util.Collection;
+
+/**
+ * Values derived from trusted CA and OCSP responder certificates that are needed for every OCSP request, so that they
+ * are not recomputed on every certificate status check:
+ * <ul>
+ *     <li>CN of the certificate issuer, by issuer DN</li>
+ *     <li>issuer name and key hashes of the OCSP request {@link CertificateID}, by issuer certificate</li>
+ *     <li>OCSP response signature {@link ContentVerifierProvider}, by responder certificate</li>
+ * </ul>
+ * Values of trusted certificates are computed at startup, values of other certificates (for example OCSP responder
+ * certificates included in AIA OCSP responses) on first use.
+ */
+class OCSPTrustIndex {
+    private static final long MAXIMUM_SIZE = 1000;
+    private static final BigInteger TEMPLATE_SERIAL_NUMBER = BigInteger.ONE;
+
+    private final DigestCalculatorProvider digestCalculatorProvider;
+    private final JcaContentVerifierProviderBuilder contentVerifierProviderBuilder = new JcaContentVerifierProviderBuilder()
+            .setProvider(BouncyCastleProvider.PROVIDER_NAME);
+    private final Cache<X500Principal, String> issuerCNs = Caffeine.newBuilder().maximumSize(MAXIMUM_SIZE).build();
+    private final Cache<X509Certificate, CertificateID> certificateIdTemplates = Caffeine.newBuilder().maximumSize(MAXIMUM_SIZE).build();
+    private final Cache<X509Certificate, ContentVerifierProvider> verifierProviders = Caffeine.newBuilder().maximumSize(MAXIMUM_SIZE).build();
+
+    OCSPTrustIndex() {
+        try {
+            this.digestCalculatorProvider = new JcaDigestCalculatorProviderBuilder().build();
+        } catch (OperatorCreationException e) {
+            throw new IllegalStateException("Unable to create digest calculator provider", e);
+        }
+    }
+
+    void addTrustedCertificates(Collection<X509Certificate> trustedCertificates) {
+        for (X509Certificate trustedCertificate : trustedCertificates) {
+            getIssuerCN(trustedCertificate);
+            getCertificateId(trustedCertificate, TEMPLATE_SERIAL_NUMBER);
+            getVerifierProvider(trustedCertificate);
+        }
+    }
+
+    String getIssuerCN(X509Certificate certificate) {
+        return issuerCNs.get(certificate.getIssuerX500Principal(),
+                issuer -> X509Utils.getFirstCNFromX500Name(X500Name.getInstance(issuer.getEncoded())));
+    }
+
+    CertificateID getCertificateId(X509Certificate issuerCert, BigInteger serialNumber) {
+        CertificateID template = certificateIdTemplates.get(issuerCert, this::createCertificateIdTemplate);
+        return CertificateID.deriveCertificateID(template, serialNumber);
+    }
+
+    ContentVerifierProvider getVerifierProvider(X509Certificate certificate) {
+        return verifierProviders.get(certificate, this::createVerifierProvider);
+    }
+
+    private CertificateID createCertificateIdTemplate(X509Certificate issuerCert) {
+        try {
+            return new CertificateID(
+                    digestCalculatorProvider.get(CertificateID.HASH_SHA1), // NB! SK OCSP supports only SHA-1 for CertificateID
+                    new JcaX509CertificateHolder(issuerCert),
+                    TEMPLATE_SERIAL_NUMBER
+            );
+        } catch (Exception e) {
+            throw new IllegalStateException("Unable to create OCSP certificate ID for issuer: " + issuerCert.getSubjectX500Principal(), e);
+        }
+    }
+
+    private ContentVerifierProvider createVerifierProvider(X509Certificate certificate) {
+        try {
+            return contentVerifierProviderBuilder.build(certificate.getPublicKey());
+        } catch (OperatorCreationException e) {
+            throw new IllegalStateException("Unable to create signature verifier for: " + certificate.getSubjectX500Principal(), e);
+        }
+    }
+}
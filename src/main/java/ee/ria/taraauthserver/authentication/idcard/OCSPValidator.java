@@ -3,19 +3,32 @@ package ee.ria.taraauthserver.authentication.idcard;
 import ee.ria.taraauthserver.error.exceptions.OCSPServiceNotAvailableException;
 import ee.ria.taraauthserver.error.exceptions.OCSPValidationException;
 import ee.ria.taraauthserver.logging.ClientRequestLogger;
+import ee.ria.taraauthserver.utils.HttpConnectionPool;
 import ee.ria.taraauthserver.utils.X509Utils;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
+import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.Conversion;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.NoHttpResponseException;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
 import org.bouncycastle.asn1.DEROctetString;
 import org.bouncycastle.asn1.ocsp.OCSPObjectIdentifiers;
 import org.bouncycastle.asn1.x509.Extension;
 import org.bouncycastle.asn1.x509.Extensions;
 import org.bouncycastle.asn1.x509.KeyPurposeId;
 import org.bouncycastle.cert.X509CertificateHolder;
-import org.bouncycastle.cert.jcajce.JcaX509CertificateHolder;
 import org.bouncycastle.cert.ocsp.BasicOCSPResp;
 import org.bouncycastle.cert.ocsp.CertificateID;
 import org.bouncycastle.cert.ocsp.OCSPException;
@@ -26,16 +39,15 @@ import org.bouncycastle.cert.ocsp.RevokedStatus;
 import org.bouncycastle.cert.ocsp.SingleResp;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.bouncycastle.operator.ContentVerifierProvider;
-import org.bouncycastle.operator.OperatorCreationException;
-import org.bouncycastle.operator.jcajce.JcaContentVerifierProviderBuilder;
-import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.http.HttpMethod;
 import org.springframework.stereotype.Component;
 import org.springframework.util.Assert;
 import org.springframework.util.CollectionUtils;
 
+import javax.annotation.PostConstruct;
 import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLException;
@@ -44,7 +56,6 @@ import java.io.ByteArrayInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.math.BigInteger;
 import java.net.HttpURLConnection;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
@@ -57,12 +68,12 @@ import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
 import java.security.Security;
 import java.security.SignatureException;
-import java.security.cert.CertificateEncodingException;
 import java.security.cert.CertificateException;
 import java.security.cert.CertificateExpiredException;
 import java.security.cert.CertificateFactory;
 import java.security.cert.CertificateNotYetValidException;
 import java.security.cert.X509Certificate;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.Arrays;
 import java.util.Base64;
@@ -74,6 +85,7 @@ import java.util.UUID;
 import static ee.ria.taraauthserver.config.properties.AuthConfigurationProperties.Ocsp;
 import static ee.ria.taraauthserver.logging.ClientRequestLogger.Service;
 import static java.util.Map.of;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 import static net.logstash.logback.argument.StructuredArguments.value;
 import static net.logstash.logback.marker.Markers.append;
 
@@ -84,6 +96,7 @@ import static net.logstash.logback.marker.Markers.append;
 public class OCSPValidator {
     private final Map<String, X509Certificate> trustedCertificates;
     private final ClientRequestLogger requestLogger = new ClientRequestLogger(Service.OCSP, this.getClass());
+    private final OCSPTrustIndex trustIndex = new OCSPTrustIndex();
 
     static {
         Security.addProvider(new BouncyCastleProvider());
@@ -95,14 +108,45 @@ public class OCSPValidator {
     @Autowired
     private final OCSPConfigurationResolver ocspConfigurationResolver;
 
+    @Autowired(required = false)
+    private OCSPResponseCache ocspResponseCache;
+
+    @Autowired(required = false)
+    private OCSPRequestHedging ocspRequestHedging;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    private CloseableHttpClient httpClient;
+
+    @Autowired(required = false)
+    void setOcspConnectionPool(@Qualifier("ocspConnectionPool") HttpConnectionPool ocspConnectionPool) {
+        this.httpClient = ocspConnectionPool.createHttpClient();
+    }
+
+    @PostConstruct
+    void initTrustIndex() {
+        trustIndex.addTrustedCertificates(trustedCertificates.values());
+    }
+
     public Ocsp checkCert(X509Certificate userCert) {
         Assert.notNull(userCert, "User certificate cannot be null!");
         log.info("OCSP certificate validation. Serialnumber=<{}>, SubjectDN=<{}>, issuerDN=<{}>",
                 value("x509.serial_number", userCert.getSerialNumber().toString()),
                 value("x509.subject.distinguished_name", userCert.getSubjectDN().getName()),
                 value("x509.issuer.distinguished_name", userCert.getIssuerDN().getName()));
+        if (ocspResponseCache != null) {
+            return ocspResponseCache.get(userCert, () -> checkCertWithConfiguredOcsp(userCert));
+        }
+        return checkCertWithConfiguredOcsp(userCert).getOcsp();
+    }
+
+    private ValidationResult checkCertWithConfiguredOcsp(X509Certificate userCert) {
         List<Ocsp> ocspConfiguration = ocspConfigurationResolver.resolve(userCert);
         Assert.isTrue(!CollectionUtils.isEmpty(ocspConfiguration), "At least one OCSP configuration must be present");
+        if (ocspRequestHedging != null && ocspConfiguration.size() > 1) {
+            return ocspRequestHedging.checkCert(userCert, ocspConfiguration, (cert, ocspConf) -> new ValidationResult(ocspConf, checkCert(cert, ocspConf)));
+        }
 
         int count = 0;
         int maxTries = ocspConfiguration.size();
@@ -113,15 +157,18 @@ public class OCSPValidator {
                 if (count > 0) {
                     log.info(append("ocsp.conf", ocspConf), "Retrying OCSP request to: {}", value("url.full", ocspConf.getUrl()));
                 }
-                checkCert(userCert, ocspConf);
-                return ocspConf;
+                Instant responseExpiry = checkCert(userCert, ocspConf);
+                return new ValidationResult(ocspConf, responseExpiry);
             } catch (OCSPServiceNotAvailableException e) {
                 if (++count == maxTries) throw e;
             }
         }
     }
 
-    protected void checkCert(X509Certificate userCert, Ocsp ocspConf) {
+    /**
+     * @return instant until which the OCSP response can be considered current
+     */
+    protected Instant checkCert(X509Certificate userCert, Ocsp ocspConf) {
         X509Certificate issuerCert = findIssuerCertificate(userCert);
         validateCertSignedBy(userCert, issuerCert);
 
@@ -138,9 +185,11 @@ public class OCSPValidator {
             SingleResp singleResponse = getSingleResp(ocspResponse, request.getRequestList()[0].getCertID());
             validateResponseThisUpdate(singleResponse, ocspConf.getAcceptedClockSkewInSeconds(), ocspConf.getResponseLifetimeInSeconds());
             validateCertStatus(singleResponse);
+            return getResponseExpiry(singleResponse, ocspConf.getResponseLifetimeInSeconds());
         } catch (OCSPValidationException | OCSPServiceNotAvailableException e) {
             throw e;
-        } catch (SocketTimeoutException | SocketException | UnknownHostException | SSLException e) {
+        } catch (SocketTimeoutException | SocketException | UnknownHostException | SSLException | ConnectTimeoutException |
+                 NoHttpResponseException e) {
             throw new OCSPServiceNotAvailableException("OCSP not available: " + ocspConf.getUrl(), e);
         } catch (Exception e) {
             throw new IllegalStateException("OCSP validation failed: " + e.getMessage(), e);
@@ -179,10 +228,10 @@ public class OCSPValidator {
     }
 
     private OCSPReq buildOCSPReq(X509Certificate userCert, X509Certificate issuerCert, Ocsp conf)
-            throws OCSPException, IOException, CertificateEncodingException, OperatorCreationException {
+            throws OCSPException, IOException {
         OCSPReqBuilder builder = new OCSPReqBuilder();
 
-        CertificateID certificateID = generateCertificateIdForRequest(userCert, issuerCert);
+        CertificateID certificateID = trustIndex.getCertificateId(issuerCert, userCert.getSerialNumber());
         builder.addRequest(certificateID);
 
         if (!conf.isNonceDisabled()) {
@@ -195,9 +244,42 @@ public class OCSPValidator {
     }
 
     private OCSPResp sendOCSPReq(OCSPReq request, Ocsp conf) throws IOException {
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            OCSPResp response = sendAndLogOCSPReq(request, conf);
+            success = true;
+            return response;
+        } finally {
+            recordResponderLatency(conf, System.nanoTime() - start, success);
+        }
+    }
+
+    /**
+     * Records OCSP service response time per OCSP service url, as a histogram for tuning the OCSP hedging delay.
+     */
+    private void recordResponderLatency(Ocsp conf, long latencyInNanos, boolean success) {
+        if (meterRegistry == null) {
+            return;
+        }
+        Timer.builder("tara.ocsp.responder.latency")
+                .description("OCSP service response time")
+                .tag("url", conf.getUrl())
+                .tag("outcome", success ? "success" : "failure")
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofSeconds(30))
+                .register(meterRegistry)
+                .record(latencyInNanos, NANOSECONDS);
+    }
+
+    private OCSPResp sendAndLogOCSPReq(OCSPReq request, Ocsp conf) throws IOException {
         byte[] bytes = request.getEncoded();
         requestLogger.logRequest(conf.getUrl(), HttpMethod.GET, of("http.request.body.content",
                 Base64.getEncoder().encodeToString(bytes), "ocsp.conf", conf));
+        if (httpClient != null) {
+            return sendPooledOCSPReq(bytes, conf);
+        }
         HttpURLConnection connection = (HttpURLConnection) getHttpURLConnection(new URL(conf.getUrl()));
         connection.setRequestProperty("Content-Type", "application/ocsp-request");
         connection.setRequestProperty("Accept", "application/ocsp-response");
@@ -210,11 +292,7 @@ public class OCSPValidator {
         }
 
         if (connection.getResponseCode() == 200) {
-            String contentType = connection.getHeaderField("Content-Type");
-            if (StringUtils.isEmpty(contentType) || !contentType.equals("application/ocsp-response")) {
-                throw new OCSPServiceNotAvailableException("Response Content-Type header is missing or invalid. " +
-                        "Expected: 'application/ocsp-response', actual: " + contentType);
-            }
+            validateResponseContentType(connection.getHeaderField("Content-Type"));
 
             try (InputStream in = (InputStream) connection.getContent()) {
                 OCSPResp ocspResp = new OCSPResp(in);
@@ -235,6 +313,45 @@ public class OCSPValidator {
         }
     }
 
+    private OCSPResp sendPooledOCSPReq(byte[] bytes, Ocsp conf) throws IOException {
+        HttpPost post = new HttpPost(conf.getUrl());
+        post.setConfig(RequestConfig.custom()
+                .setConnectionRequestTimeout(conf.getConnectTimeoutInMilliseconds())
+                .setConnectTimeout(conf.getConnectTimeoutInMilliseconds())
+                .setSocketTimeout(conf.getReadTimeoutInMilliseconds())
+                .build());
+        post.setHeader("Content-Type", "application/ocsp-request");
+        post.setHeader("Accept", "application/ocsp-response");
+        post.setEntity(new ByteArrayEntity(bytes));
+
+        try (CloseableHttpResponse response = httpClient.execute(post)) {
+            int statusCode = response.getStatusLine().getStatusCode();
+            HttpEntity entity = response.getEntity();
+            if (statusCode == 200) {
+                Header contentType = response.getFirstHeader("Content-Type");
+                validateResponseContentType(contentType == null ? null : contentType.getValue());
+                OCSPResp ocspResp = new OCSPResp(EntityUtils.toByteArray(entity));
+                requestLogger.logResponse(statusCode, Base64.getEncoder().encodeToString(ocspResp.getEncoded()));
+                return ocspResp;
+            } else {
+                String responseBody = entity == null ? null : EntityUtils.toString(entity, StandardCharsets.UTF_8);
+                if (StringUtils.isNotEmpty(responseBody)) {
+                    requestLogger.logResponse(statusCode, responseBody);
+                } else {
+                    requestLogger.logResponse(statusCode);
+                }
+                throw new OCSPServiceNotAvailableException(String.format("Service returned HTTP status code %d", statusCode));
+            }
+        }
+    }
+
+    private void validateResponseContentType(String contentType) {
+        if (StringUtils.isEmpty(contentType) || !contentType.equals("application/ocsp-response")) {
+            throw new OCSPServiceNotAvailableException("Response Content-Type header is missing or invalid. " +
+                    "Expected: 'application/ocsp-response', actual: " + contentType);
+        }
+    }
+
     private URLConnection getHttpURLConnection(URL obj) throws IOException {
         if (obj.getProtocol().equals("https"))
             return getHttpsURLConnection(obj);
@@ -256,16 +373,6 @@ public class OCSPValidator {
         return singleResponse.get();
     }
 
-    private CertificateID generateCertificateIdForRequest(X509Certificate userCert, X509Certificate issuerCert)
-            throws OperatorCreationException, CertificateEncodingException, OCSPException {
-        BigInteger userCertSerialNumber = userCert.getSerialNumber();
-        return new CertificateID(
-                new JcaDigestCalculatorProviderBuilder().build().get(CertificateID.HASH_SHA1), // NB! SK OCSP supports only SHA-1 for CertificateID
-                new JcaX509CertificateHolder(issuerCert),
-                userCertSerialNumber
-        );
-    }
-
     private DEROctetString generateDerOctetStringForNonce(UUID uuid) throws IOException {
         byte[] uuidBytes = Conversion.uuidToByteArray(uuid, new byte[16], 0, 16);
         return new DEROctetString(new DEROctetString(uuidBytes));
@@ -296,8 +403,16 @@ public class OCSPValidator {
             throw new IllegalStateException("OCSP response cannot be produced in the future");
     }
 
+    private Instant getResponseExpiry(SingleResp response, long responseLifetime) {
+        Instant responseExpiry = response.getThisUpdate().toInstant().plusSeconds(responseLifetime);
+        if (response.getNextUpdate() != null && response.getNextUpdate().toInstant().isBefore(responseExpiry)) {
+            return response.getNextUpdate().toInstant();
+        }
+        return responseExpiry;
+    }
+
     private void validateResponseSignature(BasicOCSPResp response, X509Certificate userCertIssuer, Ocsp ocspConfiguration)
-            throws OCSPException, OperatorCreationException, CertificateException, IOException {
+            throws OCSPException, CertificateException, IOException {
 
         X509Certificate signingCert = getResponseSigningCert(response, userCertIssuer, ocspConfiguration);
         Assert.isTrue(signingCert.getExtendedKeyUsage() != null
@@ -349,21 +464,17 @@ public class OCSPValidator {
         );
     }
 
-    private void verifyResponseSignature(BasicOCSPResp response, X509Certificate responseSignCertificate) throws CertificateExpiredException, CertificateNotYetValidException, OperatorCreationException, OCSPException {
+    private void verifyResponseSignature(BasicOCSPResp response, X509Certificate responseSignCertificate) throws CertificateExpiredException, CertificateNotYetValidException, OCSPException {
         responseSignCertificate.checkValidity();
 
-        ContentVerifierProvider verifierProvider = new JcaContentVerifierProviderBuilder()
-                .setProvider(BouncyCastleProvider.PROVIDER_NAME)
-                .build(responseSignCertificate.getPublicKey());
-
-        response.isSignatureValid(verifierProvider);
+        ContentVerifierProvider verifierProvider = trustIndex.getVerifierProvider(responseSignCertificate);
 
         if (!response.isSignatureValid(verifierProvider))
             throw new IllegalStateException("OCSP response signature is not valid");
     }
 
     private X509Certificate findIssuerCertificate(X509Certificate certificate) {
-        String issuerCN = X509Utils.getIssuerCNFromCertificate(certificate);
+        String issuerCN = trustIndex.getIssuerCN(certificate);
         log.debug("IssuerCN extracted: {}", value("x509.issuer.common_name", issuerCN));
         X509Certificate issuerCert = trustedCertificates.get(issuerCN);
         Assert.notNull(issuerCert, "Issuer certificate with CN '" + issuerCN + "' is not a trusted certificate!");
@@ -388,4 +499,10 @@ public class OCSPValidator {
             throw new IllegalStateException("Failed to verify user certificate", e);
         }
     }
+
+    @Value
+    static class ValidationResult {
+        Ocsp ocsp;
+        Instant responseExpiry;
+    }
 }
@@ -0,0 +1,145 @@
+package ee.ria.taraauthserver.authentication.legalperson;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import ee.ria.taraauthserver.authentication.legalperson.xroad.BusinessRegistryService;
+import ee.ria.taraauthserver.config.properties.LegalPersonProperties;
+import ee.ria.taraauthserver.session.TaraSession;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.slf4j.MDC;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+import static ee.ria.taraauthserver.config.properties.TaraScope.LEGALPERSON;
+import static ee.ria.taraauthserver.session.TaraAuthenticationState.NATURAL_PERSON_AUTHENTICATION_COMPLETED;
+import static ee.ria.taraauthserver.session.TaraSession.TARA_SESSION;
+
+/**
+ * Starts the business registry request in the background as soon as a request of a session requesting and allowed to
+ * use {@code legalperson} scope finds the session in {@code NATURAL_PERSON_AUTHENTICATION_COMPLETED} state, so that
+ * the X-Road request is sent while the browser is redirected to and loads the legal person selection page.
+ * {@link LegalpersonController} awaits the request that is already in flight instead of sending a new one.
+ * <p>
+ * Requests in flight are kept in the memory of the node that started them, by session ID. When the list of legal
+ * persons is requested from another node, or the prefetched result has expired, a new X-Road request is sent.
+ * <p>
+ * Publishes the number of legal person lists served from prefetched requests as
+ * {@code tara.legal-person.prefetch.requests}.
+ */
+@Slf4j
+public class LegalPersonPrefetcher implements HandlerInterceptor, WebMvcConfigurer {
+    private static final String METRIC_NAME = "tara.legal-person.prefetch.requests";
+
+    private final BusinessRegistryService businessRegistryService;
+    private final Executor executor;
+    private final Cache<String, CompletableFuture<List<TaraSession.LegalPerson>>> prefetchedRequests;
+    private final Counter hitCounter;
+    private final Counter missCounter;
+
+    public LegalPersonPrefetcher(BusinessRegistryService businessRegistryService, LegalPersonProperties legalPersonProperties,
+                                 Executor executor, MeterRegistry meterRegistry) {
+        LegalPersonProperties.Prefetch properties = legalPersonProperties.getPrefetch();
+        this.businessRegistryService = businessRegistryService;
+        this.executor = executor;
+        this.prefetchedRequests = Caffeine.newBuilder()
+                .maximumSize(properties.getMaximumSize())
+                .expireAfterWrite(properties.getTimeToLive())
+                .build();
+        this.hitCounter = Counter.builder(METRIC_NAME)
+                .description("Legal person list requests, by whether the business registry request was already in flight")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.missCounter = Counter.builder(METRIC_NAME)
+                .description("Legal person list requests, by whether the business registry request was already in flight")
+                .tag("result", "miss")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(this).addPathPatterns("/auth/**");
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        prefetch(request);
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        prefetch(request);
+    }
+
+    /**
+     * @return legal persons of the prefetched request of the session, or of a new request if there is no prefetched request
+     */
+    public List<TaraSession.LegalPerson> getLegalPersons(TaraSession taraSession) {
+        String idCode = taraSession.getAuthenticationResult().getIdCode();
+        CompletableFuture<List<TaraSession.LegalPerson>> prefetchedRequest = prefetchedRequests.asMap().remove(taraSession.getSessionId());
+        if (prefetchedRequest == null) {
+            missCounter.increment();
+            return businessRegistryService.executeEsindusV2Service(idCode);
+        }
+        hitCounter.increment();
+        log.info("Awaiting prefetched business registry request");
+        try {
+            return prefetchedRequest.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private void prefetch(HttpServletRequest request) {
+        HttpSession session = request.getSession(false);
+        if (session == null) {
+            return;
+        }
+        TaraSession taraSession = (TaraSession) session.getAttribute(TARA_SESSION);
+        if (!isPrefetchRequired(taraSession)) {
+            return;
+        }
+        String idCode = taraSession.getAuthenticationResult().getIdCode();
+        prefetchedRequests.asMap().computeIfAbsent(taraSession.getSessionId(), sessionId -> {
+            log.info("Prefetching business registry request");
+            Map<String, String> mdcContext = MDC.getCopyOfContextMap();
+            return CompletableFuture.supplyAsync(() -> {
+                if (mdcContext != null) {
+                    MDC.setContextMap(mdcContext);
+                }
+                try {
+                    return businessRegistryService.executeEsindusV2Service(idCode);
+                } finally {
+                    MDC.clear();
+                }
+            }, executor);
+        });
+    }
+
+    private boolean isPrefetchRequired(TaraSession taraSession) {
+        if (taraSession == null || taraSession.getState() != NATURAL_PERSON_AUTHENTICATION_COMPLETED
+                || taraSession.getAuthenticationResult() == null || taraSession.getAuthenticationResult().getIdCode() == null) {
+            return false;
+        }
+        TaraSession.LoginRequestInfo loginRequestInfo = taraSession.getLoginRequestInfo();
+        return loginRequestInfo != null
+                && loginRequestInfo.getRequestedScopes().contains(LEGALPERSON.getFormalName())
+                && loginRequestInfo.getClient() != null && loginRequestInfo.getClient().getScope() != null
+                && List.of(loginRequestInfo.getClient().getScope().split(" ")).contains(LEGALPERSON.getFormalName());
+    }
+}
@@ -7,6 +7,7 @@ import ee.ria.taraauthserver.session.SessionUtils;
 import ee.ria.taraauthserver.session.TaraSession;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.http.MediaType;
@@ -50,6 +51,9 @@ public class LegalpersonController {
     @Autowired
     private final BusinessRegistryService eBusinessRegistryService;
 
+    @Autowired
+    private final ObjectProvider<LegalPersonPrefetcher> legalPersonPrefetcher;
+
     @GetMapping(value = "/auth/legalperson/init")
     public ModelAndView initLegalPerson(Model model, @SessionAttribute(value = TARA_SESSION, required = false) TaraSession taraSession) {
         SessionUtils.assertSessionInState(taraSession, NATURAL_PERSON_AUTHENTICATION_COMPLETED);
@@ -79,7 +83,7 @@ public class LegalpersonController {
     public Map<String, List<TaraSession.LegalPerson>> fetchLegalPersonsList(@SessionAttribute(value = TARA_SESSION, required = false) TaraSession taraSession) {
         SessionUtils.assertSessionInState(taraSession, LEGAL_PERSON_AUTHENTICATION_INIT);
         notNull(taraSession.getAuthenticationResult(), "Authentication credentials missing from session!");
-        List<TaraSession.LegalPerson> legalPersons = eBusinessRegistryService.executeEsindusV2Service(taraSession.getAuthenticationResult().getIdCode());
+        List<TaraSession.LegalPerson> legalPersons = getLegalPersons(taraSession);
 
         if (isEmpty(legalPersons)) {
             throw new NotFoundException("Current user has no valid legal person records in business registry");
@@ -112,6 +116,14 @@ public class LegalpersonController {
         }
     }
 
+    private List<TaraSession.LegalPerson> getLegalPersons(TaraSession taraSession) {
+        LegalPersonPrefetcher prefetcher = legalPersonPrefetcher.getIfAvailable();
+        if (prefetcher != null) {
+            return prefetcher.getLegalPersons(taraSession);
+        }
+        return eBusinessRegistryService.executeEsindusV2Service(taraSession.getAuthenticationResult().getIdCode());
+    }
+
     private Optional<TaraSession.LegalPerson> getLegalperson(String legalPersonIdentifier, List<TaraSession.LegalPerson> legalPersons) {
         return legalPersons.stream().filter(e -> e.getLegalPersonIdentifier().equals(legalPersonIdentifier)).findFirst();
     }
@@ -0,0 +1,104 @@
+package ee.ria.taraauthserver.authentication.legalperson.xroad;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import ee.ria.taraauthserver.config.properties.LegalPersonProperties;
+import ee.ria.taraauthserver.session.TaraSession;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.digest.HmacAlgorithms;
+import org.apache.commons.codec.digest.HmacUtils;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.security.SecureRandom;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Legal persons represented by a natural person according to the business registry, so that a user logging in
+ * several times a day does not cause a new X-Road request for every login. Cache is keyed by HMAC-SHA256 of the ID
+ * code with a random key generated on startup, so that ID codes can not be recovered from the cache keys by hashing
+ * every possible ID code.
+ * <p>
+ * Only non-empty results are cached, so that a person who has just been registered as a representative can log in
+ * without waiting for the cache entry to expire. Failed requests are not cached.
+ * <p>
+ * Publishes cache metrics as {@code tara.business-registry.cache.*} and X-Road request durations as
+ * {@code tara.business-registry.latency}.
+ */
+@Slf4j
+public class BusinessRegistryCache {
+    private static final String METRIC_NAME_PREFIX = "tara.business-registry";
+
+    private final byte[] keyHmacKey = new byte[32];
+    private final Cache<String, List<TaraSession.LegalPerson>> cache;
+    private final Counter invalidationsCounter;
+    private final MeterRegistry meterRegistry;
+
+    public BusinessRegistryCache(LegalPersonProperties legalPersonProperties, MeterRegistry meterRegistry) {
+        LegalPersonProperties.BusinessRegistryCache properties = legalPersonProperties.getBusinessRegistryCache();
+        this.meterRegistry = meterRegistry;
+        new SecureRandom().nextBytes(keyHmacKey);
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(properties.getMaximumSize())
+                .expireAfterWrite(properties.getTimeToLive())
+                .recordStats()
+                .build();
+        FunctionCounter.builder(METRIC_NAME_PREFIX + ".cache.requests", cache, c -> c.stats().hitCount())
+                .description("Business registry cache lookups. Hit rate is the share of lookups with result 'hit'")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        FunctionCounter.builder(METRIC_NAME_PREFIX + ".cache.requests", cache, c -> c.stats().missCount())
+                .description("Business registry cache lookups. Hit rate is the share of lookups with result 'hit'")
+                .tag("result", "miss")
+                .register(meterRegistry);
+        Gauge.builder(METRIC_NAME_PREFIX + ".cache.size", cache, Cache::estimatedSize)
+                .description("Number of natural persons with cached business registry representation rights")
+                .register(meterRegistry);
+        this.invalidationsCounter = Counter.builder(METRIC_NAME_PREFIX + ".cache.invalidations")
+                .description("Number of scheduled business registry cache invalidations")
+                .register(meterRegistry);
+    }
+
+    public List<TaraSession.LegalPerson> get(String idCode, Supplier<List<TaraSession.LegalPerson>> esindusV2Request) {
+        String key = new HmacUtils(HmacAlgorithms.HMAC_SHA_256, keyHmacKey).hmacHex(idCode);
+        List<TaraSession.LegalPerson> cachedLegalPersons = cache.getIfPresent(key);
+        if (cachedLegalPersons != null) {
+            log.info("Using cached business registry response");
+            return cachedLegalPersons;
+        }
+
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            List<TaraSession.LegalPerson> legalPersons = esindusV2Request.get();
+            success = true;
+            if (legalPersons.isEmpty()) {
+                return legalPersons;
+            }
+            List<TaraSession.LegalPerson> cachedCopy = List.copyOf(legalPersons);
+            cache.put(key, cachedCopy);
+            return cachedCopy;
+        } finally {
+            Timer.builder(METRIC_NAME_PREFIX + ".latency")
+                    .description("Business registry X-Road request duration")
+                    .tag("outcome", success ? "success" : "failure")
+                    .register(meterRegistry)
+                    .record(System.nanoTime() - start, NANOSECONDS);
+        }
+    }
+
+    @Scheduled(cron = "${tara.legal-person-authentication.business-registry-cache.invalidation-cron:-}")
+    public void invalidateAll() {
+        long size = cache.estimatedSize();
+        cache.invalidateAll();
+        invalidationsCounter.increment();
+        log.info("Business registry cache invalidated, removed entries: {}", size);
+    }
+}
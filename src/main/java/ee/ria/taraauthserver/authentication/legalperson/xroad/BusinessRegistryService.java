@@ -5,36 +5,30 @@ import ee.ria.taraauthserver.error.ErrorCode;
 import ee.ria.taraauthserver.error.exceptions.ServiceNotAvailableException;
 import ee.ria.taraauthserver.logging.ClientRequestLogger;
 import ee.ria.taraauthserver.session.TaraSession;
+import ee.ria.taraauthserver.utils.HttpConnectionPool;
 import freemarker.template.Configuration;
-import freemarker.template.Template;
-import freemarker.template.TemplateException;
 import lombok.NonNull;
-import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.IOUtils;
-import org.apache.commons.lang3.StringUtils;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
 import org.springframework.http.HttpMethod;
 import org.springframework.util.Assert;
-import org.w3c.dom.Document;
-import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
 
 import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLException;
-import javax.xml.XMLConstants;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.xpath.XPath;
-import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
+import javax.xml.stream.XMLStreamException;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.StringWriter;
-import java.io.Writer;
+import java.io.StringReader;
 import java.net.ConnectException;
 import java.net.HttpURLConnection;
 import java.net.SocketTimeoutException;
@@ -42,104 +36,81 @@ import java.net.URL;
 import java.net.URLConnection;
 import java.net.UnknownHostException;
 import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.UUID;
+import java.util.regex.Pattern;
 
 import static ee.ria.taraauthserver.logging.ClientRequestLogger.Service;
-import static java.lang.String.format;
-import static java.util.Arrays.stream;
-import static java.util.Collections.emptyList;
-import static java.util.stream.Collectors.toList;
-import static org.apache.commons.lang3.StringUtils.join;
-import static org.unbescape.xml.XmlEscape.escapeXml11;
 
 @Slf4j
 public class BusinessRegistryService {
     private static final String SOAP_REQUEST_TEMPLATE = "xtee-arireg.esindus_v2.v1.ftl";
+    private static final Pattern ID_CODE_PATTERN = Pattern.compile("^[0-9]{11,11}$");
     private final ClientRequestLogger requestLogger = new ClientRequestLogger(Service.X_ROAD, this.getClass());
 
-    @NonNull
-    private final Configuration templateConfiguration;
     @NonNull
     private final LegalPersonProperties legalPersonProperties;
     @NonNull
     private final SSLContext sslContext;
 
-    private final String xpathFilterForEttevotjad;
+    private final CloseableHttpClient httpClient;
+
+    private final EsindusV2RequestTemplate requestTemplate;
+
+    private final EsindusV2ResponseParser responseParser;
+
+    private BusinessRegistryCache businessRegistryCache;
 
     public BusinessRegistryService(@NonNull Configuration templateConfiguration,
                                    @NonNull LegalPersonProperties legalPersonProperties, @NonNull SSLContext sslContext) {
-        this.templateConfiguration = templateConfiguration;
+        this(templateConfiguration, legalPersonProperties, sslContext, null);
+    }
+
+    /**
+     * @param connectionPool pool of connections to X-Road security server, or {@code null} to open a new connection for
+     *                       every request
+     */
+    public BusinessRegistryService(@NonNull Configuration templateConfiguration, @NonNull LegalPersonProperties legalPersonProperties,
+                                   @NonNull SSLContext sslContext, HttpConnectionPool connectionPool) {
         this.legalPersonProperties = legalPersonProperties;
         this.sslContext = sslContext;
-        this.xpathFilterForEttevotjad = "//ettevotjad/item[" +
-                "staatus = 'R' " +
-                "and (" + getConditionList(legalPersonProperties.getEsindusv2AllowedTypes(), "oiguslik_vorm = '%s'") + ") " +
-                "and isikud/item[" +
-                "isikukood_riik = 'EST' " +
-                "and fyysilise_isiku_kood = '%s' " +
-                "and ainuesindusoigus_olemas = 'JAH'" +
-                "]" +
-                "]";
+        this.httpClient = connectionPool == null ? null : connectionPool.createHttpClient();
+        this.requestTemplate = new EsindusV2RequestTemplate(templateConfiguration, SOAP_REQUEST_TEMPLATE, legalPersonProperties);
+        this.responseParser = new EsindusV2ResponseParser(legalPersonProperties.getEsindusv2AllowedTypes());
+    }
+
+    /**
+     * @param businessRegistryCache cache of representation rights, or {@code null} to send a request for every call
+     */
+    public void setBusinessRegistryCache(BusinessRegistryCache businessRegistryCache) {
+        this.businessRegistryCache = businessRegistryCache;
     }
 
     public List<TaraSession.LegalPerson> executeEsindusV2Service(String idCode) {
         Assert.notNull(idCode, "idCode is required!");
-        Assert.isTrue(idCode.matches("^[0-9]{11,11}$"), "idCode has invalid format! Must contain only numbers");
+        Assert.isTrue(ID_CODE_PATTERN.matcher(idCode).matches(), "idCode has invalid format! Must contain only numbers");
 
-        String request = getEsindusV2Request(idCode, UUID.randomUUID().toString());
-        NodeList response = send(request, format(xpathFilterForEttevotjad, idCode));
-        if (response != null) {
-            return extractResults(response);
-        } else {
-            return emptyList();
+        if (businessRegistryCache != null) {
+            return businessRegistryCache.get(idCode, () -> requestEsindusV2Service(idCode));
         }
+        return requestEsindusV2Service(idCode);
     }
 
-    @SneakyThrows
-    private List<TaraSession.LegalPerson> extractResults(NodeList response) {
-        List<TaraSession.LegalPerson> legalPersons = new ArrayList<>();
-        for (int i = 0; i < response.getLength(); i++) {
-            XPath xPath = XPathFactory.newInstance().newXPath();
-            String idCode = (String) xPath.compile("ariregistri_kood/text()").evaluate(response.item(i), XPathConstants.STRING);
-            String name = (String) xPath.compile("arinimi/text()").evaluate(response.item(i), XPathConstants.STRING);
-            legalPersons.add(new TaraSession.LegalPerson(name, idCode));
-        }
-        return legalPersons;
+    private List<TaraSession.LegalPerson> requestEsindusV2Service(String idCode) {
+        String request = getEsindusV2Request(idCode, UUID.randomUUID().toString());
+        return send(request, idCode);
     }
 
     protected String getEsindusV2Request(String idCode, String nonce) {
-        try {
-            Template template = templateConfiguration.getTemplate(SOAP_REQUEST_TEMPLATE);
-            try (Writer writer = new StringWriter()) {
-
-                Map<String, String> params = new HashMap<>();
-                params.put("nonce", escapeXml11(nonce));
-                params.put("serviceRoadInstance", escapeXml11(legalPersonProperties.getXRoadServiceInstance()));
-                params.put("serviceMemberClass", escapeXml11(legalPersonProperties.getXRoadServiceMemberClass()));
-                params.put("serviceMemberCode", escapeXml11(legalPersonProperties.getXRoadServiceMemberCode()));
-                params.put("serviceSubsystemCode", escapeXml11(legalPersonProperties.getXRoadServiceSubsystemCode()));
-
-                params.put("subsystemRoadInstance", escapeXml11(legalPersonProperties.getXRoadClientSubsystemInstance()));
-                params.put("subsystemMemberClass", escapeXml11(legalPersonProperties.getXRoadClientSubsystemMemberClass()));
-                params.put("subsystemMemberCode", escapeXml11(legalPersonProperties.getXRoadClientSubsystemMemberCode()));
-                params.put("subsystemSubsystemCode", escapeXml11(legalPersonProperties.getXRoadClientSubsystemCode()));
-
-                params.put("personIdCode", escapeXml11(idCode));
-                template.process(params, writer);
-                return writer.toString();
-            }
-        } catch (IOException | TemplateException e) {
-            throw new IllegalStateException("Could not create SOAP request from template: " + e.getMessage(), e);
-        }
+        return requestTemplate.render(idCode, nonce);
     }
 
-    protected NodeList send(String request, String filterExpression) {
+    protected List<TaraSession.LegalPerson> send(String request, String idCode) {
         try {
             requestLogger.logRequest(legalPersonProperties.getXRoadServerUrl(), HttpMethod.POST, request);
+            if (httpClient != null) {
+                return parseResponse(sendPooledRequest(request), idCode);
+            }
             URL obj = new URL(legalPersonProperties.getXRoadServerUrl());
             HttpURLConnection con = (HttpURLConnection) getHttpURLConnection(obj);
             con.setReadTimeout(legalPersonProperties.getXRoadServerReadTimeoutInMilliseconds());
@@ -157,32 +128,40 @@ public class BusinessRegistryService {
                 int responseCode = con.getResponseCode(); // TODO Why is response code not checked first? X-Road returns valid result with status code other than 200?
                 String response = IOUtils.toString(in, StandardCharsets.UTF_8);
                 requestLogger.logResponse(responseCode, response);
-
-                DocumentBuilderFactory builderFactory = DocumentBuilderFactory.newInstance();
-                builderFactory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
-                builderFactory.setAttribute(XMLConstants.ACCESS_EXTERNAL_DTD, "");
-                builderFactory.setAttribute(XMLConstants.ACCESS_EXTERNAL_SCHEMA, "");
-                DocumentBuilder builder = builderFactory.newDocumentBuilder();
-                Document xmlDocument = builder.parse(IOUtils.toInputStream(response, StandardCharsets.UTF_8));
-                XPath xPath = XPathFactory.newInstance().newXPath();
-                String faultCode = (String) xPath.compile("/Envelope/Body/Fault/faultcode/text()")
-                        .evaluate(xmlDocument, XPathConstants.STRING);
-                if (StringUtils.isEmpty(faultCode)) {
-                    return (NodeList) xPath.compile(filterExpression).evaluate(xmlDocument, XPathConstants.NODESET);
-                } else {
-                    String faultstring = (String) xPath.compile("/Envelope/Body/Fault/faultstring/text()")
-                            .evaluate(xmlDocument, XPathConstants.STRING);
-                    throw new IllegalStateException("X-Road service returned a soap fault: faultcode = '" + faultCode
-                            + "', faultstring = '" + faultstring + "'");
-                }
+                return parseResponse(response, idCode);
             }
-        } catch (SocketTimeoutException | ConnectException | UnknownHostException | SSLException e) {
+        } catch (SocketTimeoutException | ConnectException | ConnectTimeoutException | UnknownHostException | SSLException e) {
             throw new ServiceNotAvailableException(ErrorCode.LEGAL_PERSON_X_ROAD_SERVICE_NOT_AVAILABLE, "Could not connect to business registry. Connection failed: " + e.getMessage(), e);
-        } catch (XPathExpressionException | IOException | SAXException | ParserConfigurationException e) {
+        } catch (IOException | XMLStreamException e) {
             throw new IllegalStateException("Failed to extract data from response: " + e.getMessage(), e);
         }
     }
 
+    private String sendPooledRequest(String request) throws IOException {
+        HttpPost post = new HttpPost(legalPersonProperties.getXRoadServerUrl());
+        post.setConfig(RequestConfig.custom()
+                .setConnectionRequestTimeout(legalPersonProperties.getXRoadServerConnectTimeoutInMilliseconds())
+                .setConnectTimeout(legalPersonProperties.getXRoadServerConnectTimeoutInMilliseconds())
+                .setSocketTimeout(legalPersonProperties.getXRoadServerReadTimeoutInMilliseconds())
+                .build());
+        post.setHeader("SOAPAction", "");
+        post.setEntity(new StringEntity(request, ContentType.create("text/xml", StandardCharsets.UTF_8)));
+
+        try (CloseableHttpResponse httpResponse = httpClient.execute(post)) {
+            int responseCode = httpResponse.getStatusLine().getStatusCode();
+            String response = httpResponse.getEntity() == null ? "" : EntityUtils.toString(httpResponse.getEntity(), StandardCharsets.UTF_8);
+            requestLogger.logResponse(responseCode, response);
+            if (responseCode >= 400) {
+                throw new IOException("X-Road service returned HTTP status code " + responseCode);
+            }
+            return response;
+        }
+    }
+
+    private List<TaraSession.LegalPerson> parseResponse(String response, String idCode) throws XMLStreamException {
+        return responseParser.parse(new StringReader(response), idCode);
+    }
+
     private URLConnection getHttpURLConnection(URL obj) throws IOException {
         if (obj.getProtocol().equals("https"))
             return getHttpsURLConnection(obj);
@@ -195,9 +174,5 @@ public class BusinessRegistryService {
         httpsURLConnection.setSSLSocketFactory(sslContext.getSocketFactory());
         return httpsURLConnection;
     }
-
-    private String getConditionList(String[] type, String parameter) {
-        return join(stream(type).map(str -> format(parameter, str)).collect(toList()), " or ");
-    }
 }
 
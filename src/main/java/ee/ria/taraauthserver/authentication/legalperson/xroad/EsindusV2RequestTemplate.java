@@ -0,0 +1,88 @@
+package ee.ria.taraauthserver.authentication.legalperson.xroad;
+
+import ee.ria.taraauthserver.config.properties.LegalPersonProperties;
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+import freemarker.template.TemplateException;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.unbescape.xml.XmlEscape.escapeXml11;
+
+/**
+ * Request of arireg.esindus_v2 service, pre-rendered from the FreeMarker template with the configured X-Road service
+ * and client identifiers, so that only the nonce and the ID code are substituted per request.
+ * <p>
+ * The template is rendered once with placeholders in place of the nonce and the ID code. Placeholders contain control
+ * characters that XML 1.1 escaping replaces with character references, so that they cannot occur in configured
+ * values.
+ */
+class EsindusV2RequestTemplate {
+    private static final String NONCE_PLACEHOLDER = "\u0001nonce\u0001";
+    private static final String ID_CODE_PLACEHOLDER = "\u0001personIdCode\u0001";
+
+    private final List<String> segments = new ArrayList<>();
+    private final List<Boolean> nonceParameters = new ArrayList<>();
+    private final int length;
+
+    EsindusV2RequestTemplate(Configuration templateConfiguration, String templateName, LegalPersonProperties legalPersonProperties) {
+        String request = render(templateConfiguration, templateName, legalPersonProperties);
+        int start = 0;
+        while (true) {
+            int nonceIndex = request.indexOf(NONCE_PLACEHOLDER, start);
+            int idCodeIndex = request.indexOf(ID_CODE_PLACEHOLDER, start);
+            if (nonceIndex < 0 && idCodeIndex < 0) {
+                break;
+            }
+            boolean nonce = idCodeIndex < 0 || (nonceIndex >= 0 && nonceIndex < idCodeIndex);
+            int index = nonce ? nonceIndex : idCodeIndex;
+            segments.add(request.substring(start, index));
+            nonceParameters.add(nonce);
+            start = index + (nonce ? NONCE_PLACEHOLDER : ID_CODE_PLACEHOLDER).length();
+        }
+        segments.add(request.substring(start));
+        this.length = segments.stream().mapToInt(String::length).sum();
+    }
+
+    String render(String idCode, String nonce) {
+        String escapedNonce = escapeXml11(nonce);
+        String escapedIdCode = escapeXml11(idCode);
+        StringBuilder request = new StringBuilder(length + nonceParameters.size() * Math.max(escapedNonce.length(), escapedIdCode.length()));
+        for (int i = 0; i < nonceParameters.size(); i++) {
+            request.append(segments.get(i)).append(nonceParameters.get(i) ? escapedNonce : escapedIdCode);
+        }
+        return request.append(segments.get(segments.size() - 1)).toString();
+    }
+
+    private static String render(Configuration templateConfiguration, String templateName, LegalPersonProperties legalPersonProperties) {
+        try {
+            Template template = templateConfiguration.getTemplate(templateName);
+            try (Writer writer = new StringWriter()) {
+
+                Map<String, String> params = new HashMap<>();
+                params.put("nonce", NONCE_PLACEHOLDER);
+                params.put("serviceRoadInstance", escapeXml11(legalPersonProperties.getXRoadServiceInstance()));
+                params.put("serviceMemberClass", escapeXml11(legalPersonProperties.getXRoadServiceMemberClass()));
+                params.put("serviceMemberCode", escapeXml11(legalPersonProperties.getXRoadServiceMemberCode()));
+                params.put("serviceSubsystemCode", escapeXml11(legalPersonProperties.getXRoadServiceSubsystemCode()));
+
+                params.put("subsystemRoadInstance", escapeXml11(legalPersonProperties.getXRoadClientSubsystemInstance()));
+                params.put("subsystemMemberClass", escapeXml11(legalPersonProperties.getXRoadClientSubsystemMemberClass()));
+                params.put("subsystemMemberCode", escapeXml11(legalPersonProperties.getXRoadClientSubsystemMemberCode()));
+                params.put("subsystemSubsystemCode", escapeXml11(legalPersonProperties.getXRoadClientSubsystemCode()));
+
+                params.put("personIdCode", ID_CODE_PLACEHOLDER);
+                template.process(params, writer);
+                return writer.toString();
+            }
+        } catch (IOException | TemplateException e) {
+            throw new IllegalStateException("Could not create SOAP request from template: " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package ee.ria.taraauthserver.authentication.legalperson.xroad;
+
+import ee.ria.taraauthserver.session.TaraSession;
+import org.apache.commons.lang3.StringUtils;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Extracts legal persons from arireg.esindus_v2 service response in a single pass with a StAX reader, without building
+ * a DOM of the response. Legal person is included when it is registered ({@code staatus = 'R'}), its type
+ * ({@code oiguslik_vorm}) is allowed and the natural person with the requested ID code has sole representation rights
+ * ({@code ainuesindusoigus_olemas = 'JAH'}). Filters are applied while reading, only included legal persons are kept.
+ * <p>
+ * Elements are matched by local name. Throws {@link IllegalStateException} when the response is a SOAP fault.
+ */
+class EsindusV2ResponseParser {
+    private static final String[] FAULT_PATH = {"Envelope", "Body", "Fault"};
+
+    private final XMLInputFactory xmlInputFactory;
+    private final Set<String> allowedTypes;
+
+    EsindusV2ResponseParser(String[] allowedTypes) {
+        this.allowedTypes = Set.copyOf(Arrays.asList(allowedTypes));
+        this.xmlInputFactory = XMLInputFactory.newFactory();
+        xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        xmlInputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+    }
+
+    List<TaraSession.LegalPerson> parse(Reader response, String idCode) throws XMLStreamException {
+        XMLStreamReader reader = xmlInputFactory.createXMLStreamReader(response);
+        try {
+            return parse(reader, idCode);
+        } finally {
+            reader.close();
+        }
+    }
+
+    private List<TaraSession.LegalPerson> parse(XMLStreamReader reader, String idCode) throws XMLStreamException {
+        List<TaraSession.LegalPerson> legalPersons = new ArrayList<>();
+        List<String> path = new ArrayList<>();
+        LegalPerson legalPerson = null;
+        NaturalPerson naturalPerson = null;
+        StringBuilder text = new StringBuilder();
+        String field = null;
+        int fieldDepth = 0;
+        String faultCode = null;
+        String faultString = null;
+
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                String name = reader.getLocalName();
+                String parent = path.isEmpty() ? null : path.get(path.size() - 1);
+                path.add(name);
+                int depth = path.size();
+                if (field != null) {
+                    continue;
+                }
+                if (legalPerson == null && "item".equals(name) && "ettevotjad".equals(parent)) {
+                    legalPerson = new LegalPerson(depth);
+                } else if (legalPerson != null && naturalPerson == null && depth == legalPerson.depth + 2
+                        && "item".equals(name) && "isikud".equals(parent)) {
+                    naturalPerson = new NaturalPerson(depth);
+                } else if ((naturalPerson != null && depth == naturalPerson.depth + 1 && NaturalPerson.isField(name))
+                        || (legalPerson != null && naturalPerson == null && depth == legalPerson.depth + 1 && LegalPerson.isField(name))
+                        || (depth == FAULT_PATH.length + 1 && isFaultField(name, path))) {
+                    field = name;
+                    fieldDepth = depth;
+                    text.setLength(0);
+                }
+            } else if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA) {
+                if (field != null) {
+                    text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                int depth = path.size();
+                if (field != null && depth == fieldDepth) {
+                    String value = text.toString();
+                    if (naturalPerson != null) {
+                        naturalPerson.setField(field, value, idCode);
+                    } else if (legalPerson != null) {
+                        legalPerson.setField(field, value, allowedTypes);
+                    } else if ("faultcode".equals(field)) {
+                        faultCode = faultCode == null ? value : faultCode;
+                    } else {
+                        faultString = faultString == null ? value : faultString;
+                    }
+                    field = null;
+                } else if (naturalPerson != null && depth == naturalPerson.depth) {
+                    legalPerson.soleRepresentative |= naturalPerson.hasSoleRepresentation();
+                    naturalPerson = null;
+                } else if (legalPerson != null && depth == legalPerson.depth) {
+                    if (legalPerson.isValid()) {
+                        legalPersons.add(new TaraSession.LegalPerson(StringUtils.defaultString(legalPerson.name),
+                                StringUtils.defaultString(legalPerson.registryCode)));
+                    }
+                    legalPerson = null;
+                }
+                path.remove(path.size() - 1);
+            }
+        }
+
+        if (StringUtils.isNotEmpty(faultCode)) {
+            throw new IllegalStateException("X-Road service returned a soap fault: faultcode = '" + faultCode
+                    + "', faultstring = '" + StringUtils.defaultString(faultString) + "'");
+        }
+        return legalPersons;
+    }
+
+    private static boolean isFaultField(String name, List<String> path) {
+        if (!"faultcode".equals(name) && !"faultstring".equals(name)) {
+            return false;
+        }
+        for (int i = 0; i < FAULT_PATH.length; i++) {
+            if (!FAULT_PATH[i].equals(path.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static class LegalPerson {
+        private final int depth;
+        private String registryCode;
+        private String name;
+        private boolean registered;
+        private boolean allowedType;
+        private boolean soleRepresentative;
+
+        LegalPerson(int depth) {
+            this.depth = depth;
+        }
+
+        static boolean isField(String name) {
+            return "ariregistri_kood".equals(name) || "arinimi".equals(name) || "staatus".equals(name) || "oiguslik_vorm".equals(name);
+        }
+
+        void setField(String field, String value, Set<String> allowedTypes) {
+            switch (field) {
+                case "ariregistri_kood":
+                    registryCode = registryCode == null ? value : registryCode;
+                    break;
+                case "arinimi":
+                    name = name == null ? value : name;
+                    break;
+                case "staatus":
+                    registered |= "R".equals(value);
+                    break;
+                default:
+                    allowedType |= allowedTypes.contains(value);
+            }
+        }
+
+        boolean isValid() {
+            return registered && allowedType && soleRepresentative;
+        }
+    }
+
+    private static class NaturalPerson {
+        private final int depth;
+        private boolean estonian;
+        private boolean requestedPerson;
+        private boolean soleRepresentation;
+
+        NaturalPerson(int depth) {
+            this.depth = depth;
+        }
+
+        static boolean isField(String name) {
+            return "isikukood_riik".equals(name) || "fyysilise_isiku_kood".equals(name) || "ainuesindusoigus_olemas".equals(name);
+        }
+
+        void setField(String field, String value, String idCode) {
+            switch (field) {
+                case "isikukood_riik":
+                    estonian |= "EST".equals(value);
+                    break;
+                case "fyysilise_isiku_kood":
+                    requestedPerson |= idCode.equals(value);
+                    break;
+                default:
+                    soleRepresentation |= "JAH".equals(value);
+            }
+        }
+
+        boolean hasSoleRepresentation() {
+            return estonian && requestedPerson && soleRepresentation;
+        }
+    }
+}
@@ -3,10 +3,11 @@ package ee.ria.taraauthserver.authentication.mobileid;
 import co.elastic.apm.api.ElasticApm;
 import co.elastic.apm.api.Scope;
 import co.elastic.apm.api.Span;
+import ee.ria.taraauthserver.authentication.AuthenticationExecutor;
 import ee.ria.taraauthserver.config.properties.AuthConfigurationProperties.MidAuthConfigurationProperties;
 import ee.ria.taraauthserver.config.properties.AuthenticationType;
 import ee.ria.taraauthserver.error.ErrorCode;
-import ee.ria.taraauthserver.logging.JaxRsClientRequestLogger;
+import ee.ria.taraauthserver.session.TaraAuthenticationState;
 import ee.ria.taraauthserver.session.TaraSession;
 import ee.sk.mid.MidAuthentication;
 import ee.sk.mid.MidAuthenticationHashToSign;
@@ -32,8 +33,6 @@ import ee.sk.mid.rest.dao.MidSessionStatus;
 import ee.sk.mid.rest.dao.request.MidAuthenticationRequest;
 import ee.sk.mid.rest.dao.response.MidAuthenticationResponse;
 import lombok.extern.slf4j.Slf4j;
-import org.glassfish.jersey.client.ClientConfig;
-import org.glassfish.jersey.client.ClientProperties;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.i18n.LocaleContextHolder;
@@ -41,17 +40,20 @@ import org.springframework.session.Session;
 import org.springframework.session.SessionRepository;
 import org.springframework.stereotype.Service;
 
-import javax.net.ssl.SSLContext;
 import javax.ws.rs.InternalServerErrorException;
 import javax.ws.rs.NotAllowedException;
 import javax.ws.rs.ProcessingException;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.Executor;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
 import static co.elastic.apm.api.Outcome.FAILURE;
+import static ee.ria.taraauthserver.authentication.SessionStatusLongPoller.unwrap;
 import static ee.ria.taraauthserver.error.ErrorCode.ERROR_GENERAL;
 import static ee.ria.taraauthserver.error.ErrorCode.MID_DELIVERY_ERROR;
 import static ee.ria.taraauthserver.error.ErrorCode.MID_HASH_MISMATCH;
@@ -71,8 +73,7 @@ import static ee.ria.taraauthserver.utils.RequestUtils.withMdc;
 import static ee.ria.taraauthserver.utils.RequestUtils.withMdcAndLocale;
 import static java.time.Instant.now;
 import static java.time.temporal.ChronoUnit.MILLIS;
-import static java.util.concurrent.CompletableFuture.delayedExecutor;
-import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.function.Function.identity;
 import static net.logstash.logback.argument.StructuredArguments.value;
 import static net.logstash.logback.marker.Markers.append;
 import static org.apache.commons.lang3.ObjectUtils.defaultIfNull;
@@ -83,6 +84,8 @@ import static org.apache.commons.lang3.StringUtils.equalsIgnoreCase;
 @ConditionalOnProperty(value = "tara.auth-methods.mobile-id.enabled")
 public class AuthMidService {
     private static final String GSM_7_CHARACTERS = "@£$¥èéùìòÇØøÅåΔ_ΦΓΛΩΠΨΣΘΞ^{}[~]|€ÆæßÉ!\"#¤%&'()*+,-./0123456789:;<=>?¡ABCDEFGHIJKLMNOPQRSTUVWXYZÄÖÑÜ§¿abcdefghijklmnopqrstuvwxyzäöñüà \r\n\\";
+    private static final EnumSet<TaraAuthenticationState> MID_AUTHENTICATION_STATES = EnumSet.of(INIT_MID, POLL_MID_STATUS);
+    private static final int UPDATE_SESSION_MAX_ATTEMPTS = 3;
     private static final Map<String, MidLanguage> midLanguages = Map.of(
             "et", MidLanguage.EST,
             "en", MidLanguage.ENG,
@@ -111,7 +114,7 @@ public class AuthMidService {
     private MidClient midClient;
 
     @Autowired
-    private SSLContext sslContext;
+    private MidClientCache midClientCache;
 
     @Autowired
     private SessionRepository<Session> sessionRepository;
@@ -123,18 +126,30 @@ public class AuthMidService {
     private MidAuthConfigurationProperties midAuthConfigurationProperties;
 
     @Autowired
-    private Executor taskExecutor;
+    private AuthenticationExecutor midAuthenticationExecutor;
+
+    @Autowired(required = false)
+    private MidSessionStatusLongPoller midSessionStatusLongPoller;
 
     public MidAuthenticationHashToSign startMidAuthSession(TaraSession taraSession, String idCode, String telephoneNumber) {
         taraSession.setState(INIT_MID);
         MidAuthenticationHashToSign authenticationHash = getAuthenticationHash();
         MidLanguage midLanguage = getMidLanguage();
 
-        CompletableFuture
+        Consumer<MidAuthenticationResponse> pollAuthenticationResult = withMdc((MidAuthenticationResponse midAuthentication) ->
+                pollAuthenticationResult(taraSession, authenticationHash, midAuthentication, telephoneNumber));
+        midAuthenticationExecutor
                 .supplyAsync(withMdcAndLocale(() -> initAuthentication(taraSession, idCode, telephoneNumber, authenticationHash, midLanguage)),
-                        delayedExecutor(midAuthConfigurationProperties.getDelayInitiateMidSessionInMilliseconds(), MILLISECONDS, taskExecutor))
-                .thenAcceptAsync(withMdc((midAuthentication) -> pollAuthenticationResult(taraSession, authenticationHash, midAuthentication, telephoneNumber)),
-                        delayedExecutor(midAuthConfigurationProperties.getDelayStatusPollingStartInMilliseconds(), MILLISECONDS, taskExecutor));
+                        midAuthConfigurationProperties.getDelayInitiateMidSessionInMilliseconds())
+                .thenCompose(midAuthentication -> midAuthenticationExecutor.supplyAsync(() -> {
+                    pollAuthenticationResult.accept(midAuthentication);
+                    return null;
+                }, midAuthConfigurationProperties.getDelayStatusPollingStartInMilliseconds()))
+                .whenComplete(withMdc((Object result, Throwable ex) -> {
+                    if (ex != null) {
+                        handleExecutionException(taraSession, ex);
+                    }
+                }));
 
         return authenticationHash;
     }
@@ -187,14 +202,36 @@ public class AuthMidService {
         updateSession(taraSession);
     }
 
+    /**
+     * Re-applies the state and authentication result of this Mobile-ID authentication onto the freshly loaded session,
+     * instead of overwriting it with the session captured when the authentication started. The update is discarded if the
+     * session is no longer in Mobile-ID authentication, e.g. when the user has canceled it meanwhile. If the session is
+     * modified concurrently while saving, it is loaded and checked again.
+     */
     private void updateSession(TaraSession taraSession) {
-        Session session = sessionRepository.findById(taraSession.getSessionId());
-        if (session != null) {
-            session.setAttribute(TARA_SESSION, taraSession);
-            sessionRepository.save(session);
-        } else {
-            log.error("Session correlated with this Mobile-ID polling process was not found: {}", taraSession.getSessionId());
+        for (int attempt = 1; attempt <= UPDATE_SESSION_MAX_ATTEMPTS; attempt++) {
+            Session session = sessionRepository.findById(taraSession.getSessionId());
+            if (session == null) {
+                log.error("Session correlated with this Mobile-ID polling process was not found: {}", taraSession.getSessionId());
+                return;
+            }
+            TaraSession storedTaraSession = session.getAttribute(TARA_SESSION);
+            if (storedTaraSession == null || !MID_AUTHENTICATION_STATES.contains(storedTaraSession.getState())) {
+                log.info("Session is no longer in Mobile-ID authentication, authentication state is not saved: {}",
+                        value("tara.session.state", storedTaraSession == null ? null : storedTaraSession.getState()));
+                return;
+            }
+            storedTaraSession.setAuthenticationResult(taraSession.getAuthenticationResult());
+            storedTaraSession.restoreState(taraSession.getState());
+            session.setAttribute(TARA_SESSION, storedTaraSession);
+            try {
+                sessionRepository.save(session);
+                return;
+            } catch (IllegalStateException e) {
+                log.warn("Unable to save Mobile-ID authentication state: {}", e.getMessage());
+            }
         }
+        log.error("Session correlated with this Mobile-ID polling process was modified concurrently {} times: {}", UPDATE_SESSION_MAX_ATTEMPTS, taraSession.getSessionId());
     }
 
     private static boolean containsNonGsm7Characters(String serviceName) {
@@ -214,17 +251,52 @@ public class AuthMidService {
             try (final Scope scope = span.activate()) {
                 String midSessionId = response.getSessionID();
                 log.info("Starting Mobile-ID session status polling with id: {}", value("tara.session.sid_authentication_result.mid_session_id", midSessionId));
+                if (midSessionStatusLongPoller != null) {
+                    pollAuthenticationResultNonBlocking(taraSession, authenticationHash, midSessionId, telephoneNumber, span);
+                    return;
+                }
                 MidSessionStatus midSessionStatus = midClient.getSessionStatusPoller()
                         .fetchFinalSessionStatus(midSessionId, "/authentication/session/" + midSessionId);
                 handleAuthenticationResult(taraSession, authenticationHash, midSessionStatus, telephoneNumber);
             } catch (Exception ex) {
                 handleAuthenticationException(taraSession, ex);
             } finally {
-                span.end();
+                if (midSessionStatusLongPoller == null) {
+                    span.end();
+                }
             }
         }
     }
 
+    private void pollAuthenticationResultNonBlocking(TaraSession taraSession, MidAuthenticationHashToSign authenticationHash, String midSessionId, String telephoneNumber, Span span) {
+        BiConsumer<MidSessionStatus, Throwable> completeAuthentication = withMdc((MidSessionStatus midSessionStatus, Throwable error) -> {
+            try (final Scope scope = span.activate()) {
+                if (error == null) {
+                    handleAuthenticationResult(taraSession, authenticationHash, midSessionStatus, telephoneNumber);
+                } else {
+                    handleAuthenticationException(taraSession, unwrap(error));
+                }
+            } catch (Throwable ex) {
+                handleAuthenticationException(taraSession, ex);
+            } finally {
+                span.end();
+            }
+        });
+        // Poller threads are kept for I/O only, validating and storing the result is done on the authentication executor
+        midSessionStatusLongPoller.fetchFinalSessionStatus(midSessionId)
+                .handle((midSessionStatus, error) -> midAuthenticationExecutor.supplyAsync(() -> {
+                    completeAuthentication.accept(midSessionStatus, error);
+                    return null;
+                }, 0))
+                .thenCompose(identity())
+                .whenComplete(withMdc((Object result, Throwable ex) -> {
+                    if (ex != null) {
+                        span.end();
+                        handleExecutionException(taraSession, ex);
+                    }
+                }));
+    }
+
     private void handleAuthenticationResult(TaraSession taraSession, MidAuthenticationHashToSign authenticationHash, MidSessionStatus midSessionStatus, String telephoneNumber) {
         String midSessionId = ((TaraSession.MidAuthenticationResult) taraSession.getAuthenticationResult()).getMidSessionId();
         log.info("MID session id {} authentication result: {}, status: {}",
@@ -262,7 +334,7 @@ public class AuthMidService {
         }
     }
 
-    private void handleAuthenticationException(TaraSession taraSession, Exception ex) {
+    private void handleAuthenticationException(TaraSession taraSession, Throwable ex) {
         taraSession.setState(AUTHENTICATION_FAILED);
         ErrorCode errorCode = translateExceptionToErrorCode(ex);
         taraSession.getAuthenticationResult().setErrorCode(errorCode);
@@ -280,6 +352,20 @@ public class AuthMidService {
         span.captureException(ex);
     }
 
+    private void handleExecutionException(TaraSession taraSession, Throwable ex) {
+        Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+        if (taraSession.getAuthenticationResult() == null) {
+            createMidAuthenticationResult(taraSession, null);
+        }
+        taraSession.setState(AUTHENTICATION_FAILED);
+        ErrorCode errorCode = cause instanceof RejectedExecutionException
+                ? midAuthConfigurationProperties.getExecutor().getRejectionErrorCode()
+                : MID_INTERNAL_ERROR;
+        taraSession.getAuthenticationResult().setErrorCode(errorCode);
+        log.error(append("error.code", errorCode.name()), "Mobile-ID authentication task failed: {}", cause.getMessage(), cause);
+        updateSession(taraSession);
+    }
+
     private MidLanguage getMidLanguage() {
         return midLanguages.get(LocaleContextHolder.getLocale().getLanguage());
     }
@@ -294,26 +380,7 @@ public class AuthMidService {
         if (relyingPartyUuid == null || relyingPartyName == null)
             return midClient;
         else
-            return createNewMidClient(relyingPartyUuid, relyingPartyName);
-    }
-
-    private MidClient createNewMidClient(String relyingPartyUuid, String relyingPartyName) {
-        return MidClient.newBuilder()
-                .withHostUrl(midAuthConfigurationProperties.getHostUrl())
-                .withRelyingPartyUUID(relyingPartyUuid)
-                .withRelyingPartyName(relyingPartyName)
-                .withTrustSslContext(sslContext)
-                .withNetworkConnectionConfig(createMidClientConfig())
-                .withLongPollingTimeoutSeconds(midAuthConfigurationProperties.getLongPollingTimeoutSeconds())
-                .build();
-    }
-
-    private ClientConfig createMidClientConfig() {
-        ClientConfig clientConfig = new ClientConfig();
-        clientConfig.property(ClientProperties.CONNECT_TIMEOUT, midAuthConfigurationProperties.getConnectionTimeoutMilliseconds());
-        clientConfig.property(ClientProperties.READ_TIMEOUT, midAuthConfigurationProperties.getReadTimeoutMilliseconds());
-        clientConfig.register(new JaxRsClientRequestLogger("Mobile-ID"));
-        return clientConfig;
+            return midClientCache.get(relyingPartyUuid, relyingPartyName);
     }
 
     private String getRelyingPartyUuidFromClientRequest(TaraSession taraSession) {
@@ -0,0 +1,97 @@
+package ee.ria.taraauthserver.authentication.mobileid;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import ee.ria.taraauthserver.config.properties.AuthConfigurationProperties.MidAuthConfigurationProperties;
+import ee.ria.taraauthserver.logging.JaxRsClientRequestLogger;
+import ee.ria.taraauthserver.utils.HttpConnectionPool;
+import ee.sk.mid.MidClient;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.glassfish.jersey.client.ClientConfig;
+import org.glassfish.jersey.client.ClientProperties;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.net.ssl.SSLContext;
+
+/**
+ * Mobile-ID clients of OIDC clients that have their own Mobile-ID relying party. Building a client sets up a new Jersey
+ * client with its TLS configuration, so clients are built once per relying party and reused until they have not been
+ * used for {@code tara.auth-methods.mobile-id.client-cache-time-to-idle}.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(value = "tara.auth-methods.mobile-id.enabled")
+class MidClientCache {
+    private static final String METRIC_NAME_PREFIX = "tara.mid.client.cache";
+
+    private final SSLContext sslContext;
+    private final MidAuthConfigurationProperties midAuthConfigurationProperties;
+    private final HttpConnectionPool skConnectionPool;
+    private final LoadingCache<RelyingParty, MidClient> cache;
+
+    MidClientCache(SSLContext sslContext, MidAuthConfigurationProperties midAuthConfigurationProperties,
+                   @Qualifier("skConnectionPool") ObjectProvider<HttpConnectionPool> skConnectionPool, MeterRegistry meterRegistry) {
+        this.sslContext = sslContext;
+        this.midAuthConfigurationProperties = midAuthConfigurationProperties;
+        this.skConnectionPool = skConnectionPool.getIfAvailable();
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(midAuthConfigurationProperties.getClientCacheMaximumSize())
+                .expireAfterAccess(midAuthConfigurationProperties.getClientCacheTimeToIdle())
+                .recordStats()
+                .build(this::createMidClient);
+        FunctionCounter.builder(METRIC_NAME_PREFIX + ".requests", cache, c -> c.stats().hitCount())
+                .description("Mobile-ID client cache lookups. Hit rate is the share of lookups with result 'hit'")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        FunctionCounter.builder(METRIC_NAME_PREFIX + ".requests", cache, c -> c.stats().missCount())
+                .description("Mobile-ID client cache lookups. Hit rate is the share of lookups with result 'hit'")
+                .tag("result", "miss")
+                .register(meterRegistry);
+        FunctionCounter.builder(METRIC_NAME_PREFIX + ".evictions", cache, c -> c.stats().evictionCount())
+                .description("Number of Mobile-ID clients evicted from the cache by size or time to idle")
+                .register(meterRegistry);
+        Gauge.builder(METRIC_NAME_PREFIX + ".size", cache, LoadingCache::estimatedSize)
+                .description("Number of Mobile-ID clients in the cache")
+                .register(meterRegistry);
+    }
+
+    MidClient get(String relyingPartyUuid, String relyingPartyName) {
+        return cache.get(new RelyingParty(relyingPartyUuid, relyingPartyName));
+    }
+
+    private MidClient createMidClient(RelyingParty relyingParty) {
+        log.info("Creating Mobile-ID client for relying party: {}", relyingParty.getName());
+        return MidClient.newBuilder()
+                .withHostUrl(midAuthConfigurationProperties.getHostUrl())
+                .withRelyingPartyUUID(relyingParty.getUuid())
+                .withRelyingPartyName(relyingParty.getName())
+                .withTrustSslContext(sslContext)
+                .withNetworkConnectionConfig(createMidClientConfig())
+                .withLongPollingTimeoutSeconds(midAuthConfigurationProperties.getLongPollingTimeoutSeconds())
+                .build();
+    }
+
+    private ClientConfig createMidClientConfig() {
+        ClientConfig clientConfig = new ClientConfig();
+        clientConfig.property(ClientProperties.CONNECT_TIMEOUT, midAuthConfigurationProperties.getConnectionTimeoutMilliseconds());
+        clientConfig.property(ClientProperties.READ_TIMEOUT, midAuthConfigurationProperties.getReadTimeoutMilliseconds());
+        clientConfig.register(new JaxRsClientRequestLogger("Mobile-ID"));
+        if (skConnectionPool != null) {
+            skConnectionPool.applyTo(clientConfig);
+        }
+        return clientConfig;
+    }
+
+    @Value
+    private static class RelyingParty {
+        String uuid;
+        String name;
+    }
+}
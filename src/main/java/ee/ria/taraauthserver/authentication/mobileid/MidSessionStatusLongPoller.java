@@ -0,0 +1,109 @@
+package ee.ria.taraauthserver.authentication.mobileid;
+
+import ee.ria.taraauthserver.authentication.SessionStatusLongPoller;
+import ee.ria.taraauthserver.config.properties.AuthConfigurationProperties.MidAuthConfigurationProperties;
+import ee.sk.mid.exception.MidDeliveryException;
+import ee.sk.mid.exception.MidInternalErrorException;
+import ee.sk.mid.exception.MidInvalidUserConfigurationException;
+import ee.sk.mid.exception.MidMissingOrInvalidParameterException;
+import ee.sk.mid.exception.MidNotMidClientException;
+import ee.sk.mid.exception.MidPhoneNotAvailableException;
+import ee.sk.mid.exception.MidSessionNotFoundException;
+import ee.sk.mid.exception.MidSessionTimeoutException;
+import ee.sk.mid.exception.MidUnauthorizedException;
+import ee.sk.mid.exception.MidUserCancellationException;
+import ee.sk.mid.rest.dao.MidSessionStatus;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.net.ssl.SSLContext;
+import java.net.URI;
+
+import static org.apache.commons.lang3.StringUtils.removeEnd;
+
+/**
+ * Mobile-ID session status poller that does not block a thread per pending authentication.
+ * <p>
+ * Enabled with {@code tara.auth-methods.mobile-id.non-blocking-polling-enabled}, otherwise
+ * {@link ee.sk.mid.rest.MidSessionStatusPoller} of {@link ee.sk.mid.MidClient} is used. Completes with the same
+ * exceptions as {@link ee.sk.mid.rest.MidSessionStatusPoller}.
+ */
+@Component
+@ConditionalOnProperty(value = {"tara.auth-methods.mobile-id.enabled", "tara.auth-methods.mobile-id.non-blocking-polling-enabled"})
+class MidSessionStatusLongPoller extends SessionStatusLongPoller<MidSessionStatus> {
+    private static final String SESSION_STATUS_PATH = "/authentication/session/";
+
+    private final MidAuthConfigurationProperties midAuthConfigurationProperties;
+
+    MidSessionStatusLongPoller(SSLContext sslContext, MidAuthConfigurationProperties midAuthConfigurationProperties) {
+        super("Mobile-ID", "tara-mid-poller-", MidSessionStatus.class, sslContext,
+                midAuthConfigurationProperties.getNonBlockingPollingThreadCount(),
+                midAuthConfigurationProperties.getConnectionTimeoutMilliseconds(),
+                midAuthConfigurationProperties.getReadTimeoutMilliseconds());
+        this.midAuthConfigurationProperties = midAuthConfigurationProperties;
+    }
+
+    @Override
+    protected URI sessionStatusUri(String midSessionId) {
+        return URI.create(removeEnd(midAuthConfigurationProperties.getHostUrl(), "/") + SESSION_STATUS_PATH + midSessionId
+                + "?timeoutMs=" + midAuthConfigurationProperties.getLongPollingTimeoutSeconds() * 1000L);
+    }
+
+    @Override
+    protected String getState(MidSessionStatus sessionStatus) {
+        return sessionStatus.getState();
+    }
+
+    @Override
+    protected RuntimeException sessionTimeoutException() {
+        return new MidSessionTimeoutException();
+    }
+
+    /**
+     * Maps the HTTP status to the exceptions {@link ee.sk.mid.rest.MidRestConnector} throws for it.
+     */
+    @Override
+    protected RuntimeException errorResponseException(int statusCode) {
+        switch (statusCode) {
+            case 400:
+                return new MidMissingOrInvalidParameterException("Mobile-ID session status request is invalid");
+            case 401:
+                return new MidUnauthorizedException("Request is unauthorized for URI " + midAuthConfigurationProperties.getHostUrl());
+            case 404:
+                return new MidSessionNotFoundException();
+            default:
+                return new MidInternalErrorException("Mobile-ID session status request failed with status: " + statusCode);
+        }
+    }
+
+    /**
+     * Maps the result of a completed session the same way as {@link ee.sk.mid.rest.MidSessionStatusPoller}.
+     */
+    @Override
+    protected void validateResult(MidSessionStatus sessionStatus) {
+        String result = sessionStatus.getResult();
+        if (result == null) {
+            throw new MidInternalErrorException("Result is missing in the session status response");
+        }
+        switch (result.toUpperCase()) {
+            case "OK":
+                return;
+            case "TIMEOUT":
+            case "EXPIRED_TRANSACTION":
+                throw new MidSessionTimeoutException();
+            case "NOT_MID_CLIENT":
+                throw new MidNotMidClientException();
+            case "USER_CANCELLED":
+                throw new MidUserCancellationException();
+            case "SIGNATURE_HASH_MISMATCH":
+                throw new MidInvalidUserConfigurationException();
+            case "PHONE_ABSENT":
+                throw new MidPhoneNotAvailableException();
+            case "DELIVERY_ERROR":
+            case "SIM_ERROR":
+                throw new MidDeliveryException();
+            default:
+                throw new MidInternalErrorException("MID returned error code '" + result + "'");
+        }
+    }
+}
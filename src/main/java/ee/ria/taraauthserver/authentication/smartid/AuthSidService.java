@@ -3,10 +3,12 @@ package ee.ria.taraauthserver.authentication.smartid;
 import co.elastic.apm.api.ElasticApm;
 import co.elastic.apm.api.Scope;
 import co.elastic.apm.api.Span;
+import ee.ria.taraauthserver.authentication.AuthenticationExecutor;
 import ee.ria.taraauthserver.config.properties.AuthenticationType;
 import ee.ria.taraauthserver.config.properties.SmartIdConfigurationProperties;
 import ee.ria.taraauthserver.error.ErrorCode;
 import ee.ria.taraauthserver.error.exceptions.ServiceNotAvailableException;
+import ee.ria.taraauthserver.session.TaraAuthenticationState;
 import ee.ria.taraauthserver.session.TaraSession;
 import ee.sk.mid.MidNationalIdentificationCodeValidator;
 import ee.sk.smartid.AuthenticationHash;
@@ -32,6 +34,7 @@ import ee.sk.smartid.rest.dao.Interaction;
 import ee.sk.smartid.rest.dao.SemanticsIdentifier;
 import ee.sk.smartid.rest.dao.SessionStatus;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.session.Session;
@@ -41,13 +44,17 @@ import org.springframework.stereotype.Service;
 import javax.ws.rs.InternalServerErrorException;
 import javax.ws.rs.ProcessingException;
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.Executor;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
 import static co.elastic.apm.api.Outcome.FAILURE;
+import static ee.ria.taraauthserver.authentication.SessionStatusLongPoller.unwrap;
 import static ee.ria.taraauthserver.error.ErrorCode.ERROR_GENERAL;
 import static ee.ria.taraauthserver.error.ErrorCode.SID_DOCUMENT_UNUSABLE;
 import static ee.ria.taraauthserver.error.ErrorCode.SID_INTERACTION_NOT_SUPPORTED;
@@ -71,8 +78,7 @@ import static ee.ria.taraauthserver.utils.RequestUtils.withMdc;
 import static ee.ria.taraauthserver.utils.RequestUtils.withMdcAndLocale;
 import static java.time.Instant.now;
 import static java.time.temporal.ChronoUnit.MILLIS;
-import static java.util.concurrent.CompletableFuture.delayedExecutor;
-import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.function.Function.identity;
 import static net.logstash.logback.argument.StructuredArguments.value;
 import static net.logstash.logback.marker.Markers.append;
 import static org.apache.commons.lang3.ObjectUtils.defaultIfNull;
@@ -81,6 +87,8 @@ import static org.apache.commons.lang3.ObjectUtils.defaultIfNull;
 @Service
 @ConditionalOnProperty(value = "tara.auth-methods.smart-id.enabled")
 public class AuthSidService {
+    private static final EnumSet<TaraAuthenticationState> SID_AUTHENTICATION_STATES = EnumSet.of(INIT_SID, POLL_SID_STATUS);
+    private static final int UPDATE_SESSION_MAX_ATTEMPTS = 3;
     private static final Map<Class<?>, ErrorCode> errorMap;
 
     static {
@@ -114,18 +122,29 @@ public class AuthSidService {
     private SmartIdConfigurationProperties smartIdConfigurationProperties;
 
     @Autowired
-    private Executor taskExecutor;
+    private AuthenticationExecutor sidAuthenticationExecutor;
+
+    @Autowired(required = false)
+    private SidSessionStatusPollCoordinator sidSessionStatusPollCoordinator;
 
     public AuthenticationHash startSidAuthSession(TaraSession taraSession, String idCode) {
         AuthenticationHash authenticationHash = getAuthenticationHash();
         AuthenticationRequestBuilder requestBuilder = sidClient.createAuthentication();
         taraSession.setState(INIT_SID);
 
-        CompletableFuture
+        Consumer<String> pollAuthenticationResult = withMdc((String sidSessionId) -> pollAuthenticationResult(sidSessionId, taraSession, requestBuilder));
+        sidAuthenticationExecutor
                 .supplyAsync(withMdcAndLocale(() -> initAuthentication(idCode, taraSession, authenticationHash, requestBuilder)),
-                        delayedExecutor(smartIdConfigurationProperties.getDelayInitiateSidSessionInMilliseconds(), MILLISECONDS, taskExecutor))
-                .thenAcceptAsync(withMdc((sidSessionId) -> pollAuthenticationResult(sidSessionId, taraSession, requestBuilder)),
-                        delayedExecutor(smartIdConfigurationProperties.getDelayStatusPollingStartInMilliseconds(), MILLISECONDS, taskExecutor));
+                        smartIdConfigurationProperties.getDelayInitiateSidSessionInMilliseconds())
+                .thenCompose(sidSessionId -> sidAuthenticationExecutor.supplyAsync(() -> {
+                    pollAuthenticationResult.accept(sidSessionId);
+                    return null;
+                }, smartIdConfigurationProperties.getDelayStatusPollingStartInMilliseconds()))
+                .whenComplete(withMdc((Object result, Throwable ex) -> {
+                    if (ex != null) {
+                        handleExecutionException(taraSession, ex);
+                    }
+                }));
         return authenticationHash;
     }
 
@@ -169,14 +188,36 @@ public class AuthSidService {
         updateSession(taraSession);
     }
 
+    /**
+     * Re-applies the state and authentication result of this Smart-ID authentication onto the freshly loaded session,
+     * instead of overwriting it with the session captured when the authentication started. The update is discarded if the
+     * session is no longer in Smart-ID authentication, e.g. when the user has canceled it meanwhile. If the session is
+     * modified concurrently while saving, it is loaded and checked again.
+     */
     private void updateSession(TaraSession taraSession) {
-        Session session = sessionRepository.findById(taraSession.getSessionId());
-        if (session != null) {
-            session.setAttribute(TARA_SESSION, taraSession);
-            sessionRepository.save(session);
-        } else {
-            log.error("Session correlated with this Smart-ID polling process was not found: {}", taraSession.getSessionId());
+        for (int attempt = 1; attempt <= UPDATE_SESSION_MAX_ATTEMPTS; attempt++) {
+            Session session = sessionRepository.findById(taraSession.getSessionId());
+            if (session == null) {
+                log.error("Session correlated with this Smart-ID polling process was not found: {}", taraSession.getSessionId());
+                return;
+            }
+            TaraSession storedTaraSession = session.getAttribute(TARA_SESSION);
+            if (storedTaraSession == null || !SID_AUTHENTICATION_STATES.contains(storedTaraSession.getState())) {
+                log.info("Session is no longer in Smart-ID authentication, authentication state is not saved: {}",
+                        value("tara.session.state", storedTaraSession == null ? null : storedTaraSession.getState()));
+                return;
+            }
+            storedTaraSession.setAuthenticationResult(taraSession.getAuthenticationResult());
+            storedTaraSession.restoreState(taraSession.getState());
+            session.setAttribute(TARA_SESSION, storedTaraSession);
+            try {
+                sessionRepository.save(session);
+                return;
+            } catch (IllegalStateException e) {
+                log.warn("Unable to save Smart-ID authentication state: {}", e.getMessage());
+            }
         }
+        log.error("Session correlated with this Smart-ID polling process was modified concurrently {} times: {}", UPDATE_SESSION_MAX_ATTEMPTS, taraSession.getSessionId());
     }
 
     private List<Interaction> getAppropriateAllowedInteractions(TaraSession taraSession) {
@@ -194,18 +235,53 @@ public class AuthSidService {
             span.setName("AuthSidService#pollAuthenticationResult");
             span.setStartTimestamp(now().plus(200, MILLIS).minus(smartIdConfigurationProperties.getDelayStatusPollingStartInMilliseconds(), MILLIS).toEpochMilli() * 1_000);
             try (final Scope scope = span.activate()) {
-                SessionStatusPoller sessionStatusPoller = new SessionStatusPoller(sidClient.getSmartIdConnector());
                 log.info("Starting Smart-ID session status polling with id: {}", value("tara.session.sid_authentication_result.sid_session_id", sidSessionId));
+                if (sidSessionStatusPollCoordinator != null) {
+                    pollAuthenticationResultNonBlocking(sidSessionId, taraSession, requestBuilder, span);
+                    return;
+                }
+                SessionStatusPoller sessionStatusPoller = new SessionStatusPoller(sidClient.getSmartIdConnector());
                 SessionStatus sessionStatus = sessionStatusPoller.fetchFinalSessionStatus(sidSessionId);
                 handleSidAuthenticationResult(taraSession, sessionStatus, requestBuilder);
             } catch (Exception ex) {
                 handleSidAuthenticationException(taraSession, ex);
             } finally {
-                span.end();
+                if (sidSessionStatusPollCoordinator == null) {
+                    span.end();
+                }
             }
         }
     }
 
+    private void pollAuthenticationResultNonBlocking(String sidSessionId, TaraSession taraSession, AuthenticationRequestBuilder requestBuilder, Span span) {
+        BiConsumer<SessionStatus, Throwable> completeAuthentication = withMdc((SessionStatus sessionStatus, Throwable error) -> {
+            try (final Scope scope = span.activate()) {
+                if (error == null) {
+                    handleSidAuthenticationResult(taraSession, sessionStatus, requestBuilder);
+                } else {
+                    handleSidAuthenticationException(taraSession, unwrap(error));
+                }
+            } catch (Throwable ex) {
+                handleSidAuthenticationException(taraSession, ex);
+            } finally {
+                span.end();
+            }
+        });
+        // Poller threads are kept for I/O only, validating and storing the result is done on the authentication executor
+        sidSessionStatusPollCoordinator.fetchFinalSessionStatus(sidSessionId)
+                .handle((sessionStatus, error) -> sidAuthenticationExecutor.supplyAsync(() -> {
+                    completeAuthentication.accept(sessionStatus, error);
+                    return null;
+                }, 0))
+                .thenCompose(identity())
+                .whenComplete(withMdc((Object result, Throwable ex) -> {
+                    if (ex != null) {
+                        span.end();
+                        handleExecutionException(taraSession, ex);
+                    }
+                }));
+    }
+
     private void handleSidAuthenticationResult(TaraSession taraSession, SessionStatus sessionStatus, AuthenticationRequestBuilder requestBuilder) {
         String sidSessionId = ((TaraSession.SidAuthenticationResult) taraSession.getAuthenticationResult()).getSidSessionId();
         log.info("SID session id {} authentication result: {}, document number: {}, status: {}",
@@ -233,7 +309,7 @@ public class AuthSidService {
         updateSession(taraSession);
     }
 
-    private void handleSidAuthenticationException(TaraSession taraSession, Exception ex) {
+    private void handleSidAuthenticationException(TaraSession taraSession, Throwable ex) {
         taraSession.setState(AUTHENTICATION_FAILED);
         ErrorCode errorCode = translateExceptionToErrorCode(ex);
         taraSession.getAuthenticationResult().setErrorCode(errorCode);
@@ -251,7 +327,24 @@ public class AuthSidService {
         span.captureException(ex);
     }
 
+    private void handleExecutionException(TaraSession taraSession, Throwable ex) {
+        Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+        if (taraSession.getAuthenticationResult() == null) {
+            createAuthenticationResult(taraSession, null);
+        }
+        taraSession.setState(AUTHENTICATION_FAILED);
+        ErrorCode errorCode = cause instanceof RejectedExecutionException
+                ? smartIdConfigurationProperties.getExecutor().getRejectionErrorCode()
+                : SID_INTERNAL_ERROR;
+        taraSession.getAuthenticationResult().setErrorCode(errorCode);
+        log.error(append("error.code", errorCode.name()), "Smart-ID authentication task failed: {}", cause.getMessage(), cause);
+        updateSession(taraSession);
+    }
+
     private ErrorCode translateExceptionToErrorCode(Throwable ex) {
+        if (ex instanceof ProcessingException && ex.getCause() instanceof ConnectionPoolTimeoutException) {
+            return SID_INTERNAL_ERROR;
+        }
         return errorMap.getOrDefault(ex.getClass(), ERROR_GENERAL);
     }
 }
@@ -0,0 +1,219 @@
+package ee.ria.taraauthserver.authentication.smartid;
+
+import ee.ria.taraauthserver.authentication.SessionStatusLongPoller;
+import ee.ria.taraauthserver.config.properties.SmartIdConfigurationProperties;
+import ee.sk.smartid.exception.SessionNotFoundException;
+import ee.sk.smartid.exception.UnprocessableSmartIdResponseException;
+import ee.sk.smartid.exception.permanent.RelyingPartyAccountConfigurationException;
+import ee.sk.smartid.exception.permanent.ServerMaintenanceException;
+import ee.sk.smartid.exception.permanent.SmartIdClientException;
+import ee.sk.smartid.exception.useraccount.DocumentUnusableException;
+import ee.sk.smartid.exception.useraccount.RequiredInteractionNotSupportedByAppException;
+import ee.sk.smartid.exception.useraction.SessionTimeoutException;
+import ee.sk.smartid.exception.useraction.UserRefusedCertChoiceException;
+import ee.sk.smartid.exception.useraction.UserRefusedConfirmationMessageException;
+import ee.sk.smartid.exception.useraction.UserRefusedConfirmationMessageWithVerificationChoiceException;
+import ee.sk.smartid.exception.useraction.UserRefusedDisplayTextAndPinException;
+import ee.sk.smartid.exception.useraction.UserRefusedException;
+import ee.sk.smartid.exception.useraction.UserRefusedVerificationChoiceException;
+import ee.sk.smartid.exception.useraction.UserSelectedWrongVerificationCodeException;
+import ee.sk.smartid.rest.dao.SessionStatus;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+import javax.net.ssl.SSLContext;
+import javax.ws.rs.InternalServerErrorException;
+import java.net.URI;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.apache.commons.lang3.StringUtils.appendIfMissing;
+
+/**
+ * Polls session status of all pending Smart-ID authentications with a shared asynchronous HTTP client, instead of
+ * blocking a thread per pending authentication.
+ * <p>
+ * At most {@code tara.auth-methods.smart-id.non-blocking-polling-max-concurrent-requests} status requests, and so
+ * connections to Smart-ID API, are in progress at a time, other polls wait in a queue. When Smart-ID API returns a
+ * running session before the long polling timeout has passed, the next status request of the session is delayed with
+ * an exponentially growing backoff, otherwise it is sent right away.
+ * <p>
+ * Enabled with {@code tara.auth-methods.smart-id.non-blocking-polling-enabled}, otherwise
+ * {@link ee.sk.smartid.rest.SessionStatusPoller} is used. Completes with the same exceptions as
+ * {@link ee.sk.smartid.rest.SessionStatusPoller}.
+ */
+@Component
+@ConditionalOnProperty(value = {"tara.auth-methods.smart-id.enabled", "tara.auth-methods.smart-id.non-blocking-polling-enabled"})
+class SidSessionStatusPollCoordinator extends SessionStatusLongPoller<SessionStatus> {
+    private static final String SESSION_STATUS_PATH = "session/";
+
+    private final AtomicInteger pendingSessions = new AtomicInteger();
+    private final Queue<Poll<SessionStatus>> waitingPolls = new ConcurrentLinkedQueue<>();
+    private final SmartIdConfigurationProperties smartIdConfigurationProperties;
+    private final Semaphore requestPermits;
+    private final MeterRegistry meterRegistry;
+
+    SidSessionStatusPollCoordinator(SSLContext sslContext, SmartIdConfigurationProperties smartIdConfigurationProperties, MeterRegistry meterRegistry) {
+        super("Smart-ID", "tara-sid-poller-", SessionStatus.class, sslContext,
+                smartIdConfigurationProperties.getNonBlockingPollingThreadCount(),
+                smartIdConfigurationProperties.getConnectionTimeoutMilliseconds(),
+                smartIdConfigurationProperties.getReadTimeoutMilliseconds());
+        this.smartIdConfigurationProperties = smartIdConfigurationProperties;
+        this.meterRegistry = meterRegistry;
+        this.requestPermits = new Semaphore(smartIdConfigurationProperties.getNonBlockingPollingMaxConcurrentRequests());
+        Gauge.builder("tara.sid.poll.sessions", pendingSessions, AtomicInteger::get)
+                .description("Number of Smart-ID authentications waiting for the final session status")
+                .register(meterRegistry);
+        Gauge.builder("tara.sid.poll.requests", requestPermits,
+                        permits -> smartIdConfigurationProperties.getNonBlockingPollingMaxConcurrentRequests() - permits.availablePermits())
+                .description("Number of Smart-ID session status requests in progress")
+                .register(meterRegistry);
+        Gauge.builder("tara.sid.poll.queued", waitingPolls, Queue::size)
+                .description("Number of Smart-ID session status requests waiting for a free connection")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public CompletableFuture<SessionStatus> fetchFinalSessionStatus(String sidSessionId) {
+        pendingSessions.incrementAndGet();
+        CompletableFuture<SessionStatus> result = super.fetchFinalSessionStatus(sidSessionId);
+        result.whenComplete((sessionStatus, error) -> pendingSessions.decrementAndGet());
+        return result;
+    }
+
+    @Override
+    protected void send(Poll<SessionStatus> poll) {
+        waitingPolls.add(poll);
+        sendWaitingPolls();
+    }
+
+    private void sendWaitingPolls() {
+        while (!waitingPolls.isEmpty() && requestPermits.tryAcquire()) {
+            Poll<SessionStatus> poll = waitingPolls.poll();
+            if (poll == null) {
+                requestPermits.release();
+                return;
+            }
+            sendRequest(poll);
+        }
+    }
+
+    @Override
+    protected void requestCompleted(String state, long durationInNanoseconds) {
+        requestPermits.release();
+        sendWaitingPolls();
+        recordLatency(state, durationInNanoseconds);
+    }
+
+    /**
+     * Smart-ID API holds a status request of a running session until the long polling timeout. When it returns sooner,
+     * polling again right away would only add load, so the next request is delayed.
+     */
+    @Override
+    protected void pollAgain(Poll<SessionStatus> poll, long requestDurationInMilliseconds) {
+        long initialBackoff = smartIdConfigurationProperties.getNonBlockingPollingInitialBackoffInMilliseconds();
+        if (requestDurationInMilliseconds >= smartIdConfigurationProperties.getLongPollingTimeoutMilliseconds() / 2) {
+            poll.setBackoffInMilliseconds(initialBackoff);
+            submit(poll);
+        } else {
+            long delay = poll.getBackoffInMilliseconds() == 0 ? initialBackoff : poll.getBackoffInMilliseconds();
+            poll.setBackoffInMilliseconds(Math.min(Math.max(delay * 2, 1), smartIdConfigurationProperties.getNonBlockingPollingMaxBackoffInMilliseconds()));
+            executor.schedule(() -> submit(poll), delay, MILLISECONDS);
+        }
+    }
+
+    @Override
+    protected URI sessionStatusUri(String sidSessionId) {
+        return URI.create(appendIfMissing(smartIdConfigurationProperties.getHostUrl(), "/") + SESSION_STATUS_PATH + sidSessionId
+                + "?timeoutMs=" + smartIdConfigurationProperties.getLongPollingTimeoutMilliseconds());
+    }
+
+    @Override
+    protected String getState(SessionStatus sessionStatus) {
+        return sessionStatus.getState();
+    }
+
+    @Override
+    protected RuntimeException sessionTimeoutException() {
+        return new SessionTimeoutException();
+    }
+
+    /**
+     * Maps the HTTP status to the exceptions {@link ee.sk.smartid.rest.SmartIdRestConnector} throws for it. Server errors
+     * without a dedicated exception are passed on as JAX-RS exceptions, as the connector does.
+     */
+    @Override
+    protected RuntimeException errorResponseException(int statusCode) {
+        switch (statusCode) {
+            case 400:
+                return new SmartIdClientException("Server refused the request");
+            case 401:
+            case 403:
+                return new RelyingPartyAccountConfigurationException("Request is unauthorized for URI " + smartIdConfigurationProperties.getHostUrl(), null);
+            case 404:
+                return new SessionNotFoundException();
+            case 480:
+                return new SmartIdClientException("Client-side API is too old and not supported anymore");
+            case 580:
+                return new ServerMaintenanceException();
+            default:
+                return HttpStatus.Series.resolve(statusCode) == HttpStatus.Series.SERVER_ERROR
+                        ? new InternalServerErrorException()
+                        : new SmartIdClientException("Smart-ID session status request failed with status: " + statusCode);
+        }
+    }
+
+    /**
+     * Maps the end result of a completed session the same way as {@link ee.sk.smartid.rest.SessionStatusPoller}.
+     */
+    @Override
+    protected void validateResult(SessionStatus sessionStatus) {
+        if (sessionStatus.getResult() == null || sessionStatus.getResult().getEndResult() == null) {
+            throw new UnprocessableSmartIdResponseException("Result is missing in the session status response");
+        }
+        String endResult = sessionStatus.getResult().getEndResult();
+        switch (endResult.toUpperCase()) {
+            case "OK":
+                return;
+            case "USER_REFUSED":
+                throw new UserRefusedException();
+            case "TIMEOUT":
+                throw new SessionTimeoutException();
+            case "DOCUMENT_UNUSABLE":
+                throw new DocumentUnusableException();
+            case "WRONG_VC":
+                throw new UserSelectedWrongVerificationCodeException();
+            case "REQUIRED_INTERACTION_NOT_SUPPORTED_BY_APP":
+                throw new RequiredInteractionNotSupportedByAppException();
+            case "USER_REFUSED_CERT_CHOICE":
+                throw new UserRefusedCertChoiceException();
+            case "USER_REFUSED_DISPLAYTEXTANDPIN":
+                throw new UserRefusedDisplayTextAndPinException();
+            case "USER_REFUSED_VC_CHOICE":
+                throw new UserRefusedVerificationChoiceException();
+            case "USER_REFUSED_CONFIRMATIONMESSAGE":
+                throw new UserRefusedConfirmationMessageException();
+            case "USER_REFUSED_CONFIRMATIONMESSAGE_WITH_VC_CHOICE":
+                throw new UserRefusedConfirmationMessageWithVerificationChoiceException();
+            default:
+                throw new UnprocessableSmartIdResponseException("Session status end result is '" + endResult + "'");
+        }
+    }
+
+    private void recordLatency(String state, long durationInNanoseconds) {
+        Timer.builder("tara.sid.poll.latency")
+                .description("Duration of Smart-ID session status requests")
+                .tag("state", state == null ? "error" : state.toLowerCase())
+                .register(meterRegistry)
+                .record(durationInNanoseconds, NANOSECONDS);
+    }
+}
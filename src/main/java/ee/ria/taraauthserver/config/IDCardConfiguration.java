@@ -1,6 +1,8 @@
 package ee.ria.taraauthserver.config;
 
+import ee.ria.taraauthserver.utils.HttpConnectionPool;
 import ee.ria.taraauthserver.utils.X509Utils;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
@@ -8,6 +10,7 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.ResourceLoader;
 
+import javax.net.ssl.SSLContext;
 import java.io.InputStream;
 import java.security.KeyStore;
 import java.security.cert.PKIXParameters;
@@ -54,4 +57,10 @@ public class IDCardConfiguration {
             throw new IllegalArgumentException("Failed to read trusted certificates from id-card truststore: " + e.getMessage(), e);
         }
     }
+
+    @Bean
+    @ConditionalOnProperty(value = "tara.auth-methods.id-card.ocsp-connection-pool.enabled")
+    public HttpConnectionPool ocspConnectionPool(SSLContext trustContext, IdCardAuthConfigurationProperties configurationProvider, MeterRegistry meterRegistry) {
+        return HttpConnectionPool.create("tara-ocsp-connection-pool", configurationProvider.getOcspConnectionPool(), trustContext, meterRegistry);
+    }
 }
@@ -1,31 +1,57 @@
 package ee.ria.taraauthserver.config;
 
 import ee.ria.taraauthserver.config.properties.AlertsConfigurationProperties.Alert;
+import ee.ria.taraauthserver.config.properties.IgniteDataRegionsConfigurationProperties;
+import ee.ria.taraauthserver.config.properties.IgniteDataRegionsConfigurationProperties.DataRegion;
+import ee.ria.taraauthserver.config.properties.SessionConfigurationProperties;
+import ee.ria.taraauthserver.session.TaraSession;
+import ee.ria.taraauthserver.session.TaraSessionBinarySerializer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.BaseUnits;
+import io.micrometer.core.instrument.binder.MeterBinder;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.ignite.Ignite;
 import org.apache.ignite.Ignition;
 import org.apache.ignite.binary.BinaryObject;
+import org.apache.ignite.binary.BinaryTypeConfiguration;
+import org.apache.ignite.configuration.BinaryConfiguration;
 import org.apache.ignite.configuration.CacheConfiguration;
+import org.apache.ignite.configuration.DataRegionConfiguration;
+import org.apache.ignite.configuration.DataStorageConfiguration;
 import org.apache.ignite.configuration.IgniteConfiguration;
 import org.apache.ignite.logger.slf4j.Slf4jLogger;
+import org.apache.ignite.spi.metric.DoubleMetric;
+import org.apache.ignite.spi.metric.LongMetric;
+import org.apache.ignite.spi.metric.Metric;
+import org.apache.ignite.spi.metric.MetricExporterSpi;
 import org.apache.ignite.spi.discovery.tcp.TcpDiscoverySpi;
 import org.apache.ignite.spi.discovery.tcp.ipfinder.vm.TcpDiscoveryVmIpFinder;
 import org.apache.ignite.ssl.SslContextFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.session.Session;
 
 import javax.cache.Cache;
+import javax.cache.configuration.Factory;
+import javax.cache.expiry.ExpiryPolicy;
+import javax.cache.expiry.TouchedExpiryPolicy;
 import java.time.Duration;
 import java.util.List;
 import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 import static java.util.concurrent.TimeUnit.SECONDS;
 import static javax.cache.expiry.CreatedExpiryPolicy.factoryOf;
 import static org.apache.ignite.cache.CacheAtomicityMode.ATOMIC;
 import static org.apache.ignite.cache.CacheMode.PARTITIONED;
+import static org.apache.ignite.cache.CacheMode.REPLICATED;
+import static org.apache.ignite.cache.CacheWriteSynchronizationMode.FULL_SYNC;
+import static org.apache.ignite.cache.CacheWriteSynchronizationMode.PRIMARY_SYNC;
 
 /**
  * @see <a href="https://ignite.apache.org/releases/latest/javadoc/org/apache/ignite/IgniteBinary.html">Dynamically change structure of the classes without having to restart the cluster.</a>
@@ -36,6 +62,18 @@ public class IgniteCacheConfiguration {
     public static final String SESSION_CACHE_NAME = "spring:session:sessions";
     public static final String ALERTS_CACHE_NAME = "tara_alerts";
     public static final String EIDAS_RELAY_STATE_CACHE_NAME = "tara_eidas_relay_state";
+    public static final String OIDC_CLIENT_CACHE_NAME = "tara_oidc_client";
+    public static final String SESSION_DATA_REGION_NAME = "tara_sessions_region";
+    public static final String ALERTS_DATA_REGION_NAME = "tara_alerts_region";
+    public static final String EIDAS_RELAY_STATE_DATA_REGION_NAME = "tara_eidas_relay_state_region";
+    public static final String OIDC_CLIENT_DATA_REGION_NAME = "tara_oidc_client_region";
+    private static final String DATA_REGION_METRIC_NAME_PREFIX = "tara.ignite.data.region";
+    private static final String IGNITE_DATA_REGION_METRIC_REGISTRY_PREFIX = "io.dataregion.";
+
+    private final IgniteMetricRegistryExporter metricRegistryExporter = new IgniteMetricRegistryExporter();
+
+    @Autowired
+    private IgniteDataRegionsConfigurationProperties dataRegionsProperties;
 
     @Bean
     public Ignite ignite(IgniteConfiguration cfg) {
@@ -44,51 +82,177 @@ public class IgniteCacheConfiguration {
 
     @Bean
     @ConfigurationProperties(prefix = "ignite")
-    public IgniteConfiguration igniteConfiguration(Consumer<IgniteConfiguration> configurer) {
+    public IgniteConfiguration igniteConfiguration(Consumer<IgniteConfiguration> configurer, SessionConfigurationProperties sessionConfigurationProperties) {
         IgniteConfiguration cfg = new IgniteConfiguration();
         TcpDiscoverySpi tcpDiscoverySpi = new TcpDiscoverySpi();
         tcpDiscoverySpi.setIpFinder(new TcpDiscoveryVmIpFinder());
         cfg.setDiscoverySpi(tcpDiscoverySpi);
         cfg.setSslContextFactory(new SslContextFactory());
         cfg.setGridLogger(new Slf4jLogger());
+        if (sessionConfigurationProperties.isCompactSerializationEnabled()) {
+            cfg.setBinaryConfiguration(compactSessionBinaryConfiguration());
+        }
+        if (dataRegionsProperties.isEnabled()) {
+            cfg.setDataStorageConfiguration(dataStorageConfiguration());
+            cfg.setMetricExporterSpi(metricExporterSpis(cfg));
+        }
         configurer.accept(cfg);
         return cfg;
     }
 
+    private DataStorageConfiguration dataStorageConfiguration() {
+        return new DataStorageConfiguration().setDataRegionConfigurations(
+                dataRegionConfiguration(SESSION_DATA_REGION_NAME, dataRegionsProperties.getSessions()),
+                dataRegionConfiguration(ALERTS_DATA_REGION_NAME, dataRegionsProperties.getAlerts()),
+                dataRegionConfiguration(EIDAS_RELAY_STATE_DATA_REGION_NAME, dataRegionsProperties.getEidasRelayState()),
+                dataRegionConfiguration(OIDC_CLIENT_DATA_REGION_NAME, dataRegionsProperties.getOidcClient()));
+    }
+
+    private MetricExporterSpi[] metricExporterSpis(IgniteConfiguration cfg) {
+        MetricExporterSpi[] metricExporterSpis = cfg.getMetricExporterSpi() == null ? new MetricExporterSpi[0] : cfg.getMetricExporterSpi();
+        return Stream.concat(Stream.of(metricExporterSpis), Stream.of(metricRegistryExporter)).toArray(MetricExporterSpi[]::new);
+    }
+
+    private DataRegionConfiguration dataRegionConfiguration(String name, DataRegion dataRegion) {
+        log.info("Ignite data region: {}, initial size: {}, max size: {}, page eviction mode: {}",
+                name, dataRegion.getInitialSize(), dataRegion.getMaxSize(), dataRegion.getPageEvictionMode());
+        return new DataRegionConfiguration()
+                .setName(name)
+                .setInitialSize(dataRegion.getInitialSize().toBytes())
+                .setMaxSize(dataRegion.getMaxSize().toBytes())
+                .setPageEvictionMode(dataRegion.getPageEvictionMode())
+                .setMetricsEnabled(true);
+    }
+
+    /**
+     * Data region is assigned only when the cache is created. Caches that already exist in the cluster keep their data
+     * region until the whole cluster is restarted.
+     */
+    private <K, V> CacheConfiguration<K, V> withDataRegion(CacheConfiguration<K, V> cacheConfiguration, String dataRegionName, DataRegion dataRegion) {
+        if (dataRegionsProperties.isEnabled()) {
+            cacheConfiguration
+                    .setDataRegionName(dataRegionName)
+                    .setOnheapCacheEnabled(dataRegion.isOnheapCacheEnabled());
+        }
+        return cacheConfiguration;
+    }
+
+    @Bean
+    @ConditionalOnProperty(value = "tara.ignite.data-regions.enabled", havingValue = "true")
+    public MeterBinder igniteDataRegionMetrics() {
+        return meterRegistry -> {
+            bindDataRegionMetrics(meterRegistry, SESSION_DATA_REGION_NAME, dataRegionsProperties.getSessions());
+            bindDataRegionMetrics(meterRegistry, ALERTS_DATA_REGION_NAME, dataRegionsProperties.getAlerts());
+            bindDataRegionMetrics(meterRegistry, EIDAS_RELAY_STATE_DATA_REGION_NAME, dataRegionsProperties.getEidasRelayState());
+            bindDataRegionMetrics(meterRegistry, OIDC_CLIENT_DATA_REGION_NAME, dataRegionsProperties.getOidcClient());
+        };
+    }
+
+    private void bindDataRegionMetrics(MeterRegistry meterRegistry, String name, DataRegion dataRegion) {
+        Gauge.builder(DATA_REGION_METRIC_NAME_PREFIX + ".max.size", dataRegion, r -> r.getMaxSize().toBytes())
+                .tag("region", name)
+                .baseUnit(BaseUnits.BYTES)
+                .register(meterRegistry);
+        bindDataRegionMetric(meterRegistry, name, "allocated.size", BaseUnits.BYTES, "TotalAllocatedSize");
+        bindDataRegionMetric(meterRegistry, name, "physical.memory.size", BaseUnits.BYTES, "PhysicalMemorySize");
+        bindDataRegionMetric(meterRegistry, name, "pages.fill.factor", null, "PagesFillFactor");
+        bindDataRegionMetric(meterRegistry, name, "eviction.rate", null, "EvictionRate");
+    }
+
+    private void bindDataRegionMetric(MeterRegistry meterRegistry, String name, String metric, String baseUnit, String igniteMetric) {
+        Gauge.builder(DATA_REGION_METRIC_NAME_PREFIX + "." + metric, metricRegistryExporter,
+                        e -> metricValue(e.findMetric(IGNITE_DATA_REGION_METRIC_REGISTRY_PREFIX + name, igniteMetric)))
+                .tag("region", name)
+                .baseUnit(baseUnit)
+                .register(meterRegistry);
+    }
+
+    private static double metricValue(Metric metric) {
+        if (metric instanceof LongMetric) {
+            return ((LongMetric) metric).value();
+        } else if (metric instanceof DoubleMetric) {
+            return ((DoubleMetric) metric).value();
+        }
+        return Double.NaN;
+    }
+
+    private BinaryConfiguration compactSessionBinaryConfiguration() {
+        BinaryTypeConfiguration sessionTypeConfiguration = new BinaryTypeConfiguration(TaraSession.class.getName());
+        sessionTypeConfiguration.setSerializer(new TaraSessionBinarySerializer());
+        BinaryConfiguration binaryConfiguration = new BinaryConfiguration();
+        binaryConfiguration.setTypeConfigurations(List.of(sessionTypeConfiguration));
+        log.info("Using compact binary serialization for sessions");
+        return binaryConfiguration;
+    }
+
     @Bean
     public Consumer<IgniteConfiguration> nodeConfigurer() {
         return cfg -> { /* No-op. */ };
     }
 
     @Bean
-    public Cache<String, BinaryObject> sessionCache(Ignite igniteInstance, @Value("${spring.session.timeout}") Duration sessionTimeout) {
-        return igniteInstance.getOrCreateCache(new CacheConfiguration<String, Session>()
+    public Cache<String, BinaryObject> sessionCache(Ignite igniteInstance, @Value("${spring.session.timeout}") Duration sessionTimeout,
+                                                    SessionConfigurationProperties sessionConfigurationProperties) {
+        SessionConfigurationProperties.Cache cacheProperties = sessionConfigurationProperties.getCache();
+        log.info("Session cache mode: {}, backups: {}, read from backup: {}",
+                cacheProperties.getMode(), cacheProperties.getBackups(), cacheProperties.isReadFromBackup());
+        return igniteInstance.getOrCreateCache(withDataRegion(new CacheConfiguration<String, Session>()
                         .setName(SESSION_CACHE_NAME)
-                        .setCacheMode(PARTITIONED)
+                        .setCacheMode(cacheProperties.getMode())
                         .setAtomicityMode(ATOMIC)
-                        .setBackups(0)
-                        .setExpiryPolicyFactory(factoryOf(new javax.cache.expiry.Duration(SECONDS, sessionTimeout.toSeconds()))))
+                        .setBackups(cacheProperties.getBackups())
+                        .setReadFromBackup(cacheProperties.isReadFromBackup())
+                        .setWriteSynchronizationMode(cacheProperties.isReadFromBackup() ? FULL_SYNC : PRIMARY_SYNC)
+                        .setExpiryPolicyFactory(sessionExpiryPolicyFactory(sessionConfigurationProperties.getExpiryPolicy(), sessionTimeout)),
+                SESSION_DATA_REGION_NAME, dataRegionsProperties.getSessions()))
                 .withKeepBinary();
     }
 
+    private Factory<ExpiryPolicy> sessionExpiryPolicyFactory(SessionConfigurationProperties.ExpiryPolicy expiryPolicy, Duration sessionTimeout) {
+        javax.cache.expiry.Duration duration = new javax.cache.expiry.Duration(SECONDS, sessionTimeout.toSeconds());
+        log.info("Session cache expiry policy: {}", expiryPolicy);
+        return expiryPolicy == SessionConfigurationProperties.ExpiryPolicy.TOUCHED ? TouchedExpiryPolicy.factoryOf(duration) : factoryOf(duration);
+    }
+
+    /**
+     * Client metadata is small, rarely changing and read on session load, so it is replicated to every node. Entries
+     * expire twice the session timeout after they were last read or written. Every load and save of a session referencing
+     * an entry reads it, so an entry outlives the sessions referencing it, while metadata versions superseded by a client
+     * metadata change are removed.
+     *
+     * @see ee.ria.taraauthserver.session.OidcClientCache
+     */
+    @Bean
+    @ConditionalOnProperty(value = "tara.session.oidc-client-references-enabled", havingValue = "true")
+    public Cache<String, TaraSession.OidcClient> oidcClientMetadataCache(Ignite igniteInstance, @Value("${spring.session.timeout}") Duration sessionTimeout) {
+        return igniteInstance.getOrCreateCache(withDataRegion(new CacheConfiguration<String, TaraSession.OidcClient>()
+                        .setName(OIDC_CLIENT_CACHE_NAME)
+                        .setCacheMode(REPLICATED)
+                        .setAtomicityMode(ATOMIC)
+                        .setExpiryPolicyFactory(TouchedExpiryPolicy.factoryOf(new javax.cache.expiry.Duration(SECONDS, sessionTimeout.multipliedBy(2).toSeconds()))),
+                OIDC_CLIENT_DATA_REGION_NAME, dataRegionsProperties.getOidcClient()));
+    }
+
     @Bean
     public Cache<String, String> eidasRelayStateCache(Ignite igniteInstance, @Value("${tara.auth-methods.eidas.relay_state_cache_duration_in_seconds:300}") Integer relayStateTimeout) {
-        return igniteInstance.getOrCreateCache(new CacheConfiguration<String, String>()
-                .setName(EIDAS_RELAY_STATE_CACHE_NAME)
-                .setCacheMode(PARTITIONED)
-                .setAtomicityMode(ATOMIC)
-                .setExpiryPolicyFactory(factoryOf(new javax.cache.expiry.Duration(SECONDS, relayStateTimeout)))
-                .setBackups(0));
+        return igniteInstance.getOrCreateCache(withDataRegion(new CacheConfiguration<String, String>()
+                        .setName(EIDAS_RELAY_STATE_CACHE_NAME)
+                        .setCacheMode(PARTITIONED)
+                        .setAtomicityMode(ATOMIC)
+                        .setExpiryPolicyFactory(factoryOf(new javax.cache.expiry.Duration(SECONDS, relayStateTimeout)))
+                        .setBackups(0),
+                EIDAS_RELAY_STATE_DATA_REGION_NAME, dataRegionsProperties.getEidasRelayState()));
     }
 
     @Bean
     public Cache<String, BinaryObject> alertsCache(Ignite igniteInstance, @Value("${tara.alerts.alerts_cache_duration_in_seconds:86400}") Integer alertsCacheTimeout) {
-        return igniteInstance.getOrCreateCache(new CacheConfiguration<String, List<Alert>>()
+        return igniteInstance.getOrCreateCache(withDataRegion(new CacheConfiguration<String, List<Alert>>()
                         .setName(ALERTS_CACHE_NAME)
                         .setCacheMode(PARTITIONED)
                         .setAtomicityMode(ATOMIC)
                         .setExpiryPolicyFactory(factoryOf(new javax.cache.expiry.Duration(SECONDS, alertsCacheTimeout)))
-                        .setBackups(0))
+                        .setBackups(0),
+                ALERTS_DATA_REGION_NAME, dataRegionsProperties.getAlerts()))
                 .withKeepBinary();
     }
 }
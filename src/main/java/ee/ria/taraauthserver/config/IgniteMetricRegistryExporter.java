@@ -0,0 +1,51 @@
+package ee.ria.taraauthserver.config;
+
+import org.apache.ignite.spi.IgniteSpiAdapter;
+import org.apache.ignite.spi.IgniteSpiMultipleInstancesSupport;
+import org.apache.ignite.spi.metric.Metric;
+import org.apache.ignite.spi.metric.MetricExporterSpi;
+import org.apache.ignite.spi.metric.ReadOnlyMetricManager;
+import org.apache.ignite.spi.metric.ReadOnlyMetricRegistry;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * Gives access to metric registries of the local Ignite node by name, e.g. {@code io.dataregion.<data region name>}.
+ * Ignite makes its metric registries available to metric exporters only.
+ */
+@IgniteSpiMultipleInstancesSupport(true)
+class IgniteMetricRegistryExporter extends IgniteSpiAdapter implements MetricExporterSpi {
+    private final Map<String, ReadOnlyMetricRegistry> registries = new ConcurrentHashMap<>();
+
+    @Override
+    public void setMetricRegistry(ReadOnlyMetricManager metricManager) {
+        metricManager.addMetricRegistryCreationListener(registry -> registries.put(registry.name(), registry));
+        metricManager.addMetricRegistryRemoveListener(registry -> registries.remove(registry.name()));
+        metricManager.forEach(registry -> registries.put(registry.name(), registry));
+    }
+
+    @Override
+    public void setExportFilter(Predicate<ReadOnlyMetricRegistry> filter) {
+        // All registries are made available.
+    }
+
+    @Override
+    public void spiStart(String igniteInstanceName) {
+        // No-op.
+    }
+
+    @Override
+    public void spiStop() {
+        registries.clear();
+    }
+
+    /**
+     * @return metric, or {@code null} if the registry or metric does not exist (yet)
+     */
+    <M extends Metric> M findMetric(String registryName, String metricName) {
+        ReadOnlyMetricRegistry registry = registries.get(registryName);
+        return registry == null ? null : registry.findMetric(metricName);
+    }
+}
@@ -1,8 +1,14 @@
 package ee.ria.taraauthserver.config;
 
+import ee.ria.taraauthserver.authentication.legalperson.LegalPersonPrefetcher;
+import ee.ria.taraauthserver.authentication.legalperson.xroad.BusinessRegistryCache;
 import ee.ria.taraauthserver.authentication.legalperson.xroad.BusinessRegistryService;
 import ee.ria.taraauthserver.config.properties.LegalPersonProperties;
+import ee.ria.taraauthserver.utils.HttpConnectionPool;
 import freemarker.template.TemplateExceptionHandler;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -10,6 +16,7 @@ import org.springframework.core.io.ResourceLoader;
 
 import javax.net.ssl.SSLContext;
 import java.io.IOException;
+import java.util.concurrent.Executor;
 
 import static freemarker.template.Configuration.VERSION_2_3_28;
 
@@ -26,9 +33,33 @@ public class LegalPersonConfiguration {
         return freemarkerConfiguration;
     }
 
+    @Bean
+    @ConditionalOnProperty(value = "tara.legal-person-authentication.x-road-connection-pool.enabled")
+    public HttpConnectionPool xRoadConnectionPool(SSLContext trustContext, LegalPersonProperties legalPersonProperties, MeterRegistry meterRegistry) {
+        return HttpConnectionPool.create("tara-x-road-connection-pool", legalPersonProperties.getXRoadConnectionPool(), trustContext, meterRegistry);
+    }
+
+    @Bean
+    @ConditionalOnProperty(value = "tara.legal-person-authentication.business-registry-cache.enabled")
+    public BusinessRegistryCache businessRegistryCache(LegalPersonProperties legalPersonProperties, MeterRegistry meterRegistry) {
+        return new BusinessRegistryCache(legalPersonProperties, meterRegistry);
+    }
+
     @Bean
     public BusinessRegistryService eBusinessRegistryService(freemarker.template.Configuration freemarkerConfiguration,
-                                                            LegalPersonProperties legalPersonProperties, SSLContext sslContext) {
-        return new BusinessRegistryService(freemarkerConfiguration, legalPersonProperties, sslContext);
+                                                            LegalPersonProperties legalPersonProperties, SSLContext sslContext,
+                                                            @Qualifier("xRoadConnectionPool") ObjectProvider<HttpConnectionPool> xRoadConnectionPool,
+                                                            ObjectProvider<BusinessRegistryCache> businessRegistryCache) {
+        BusinessRegistryService businessRegistryService = new BusinessRegistryService(freemarkerConfiguration, legalPersonProperties,
+                sslContext, xRoadConnectionPool.getIfAvailable());
+        businessRegistryService.setBusinessRegistryCache(businessRegistryCache.getIfAvailable());
+        return businessRegistryService;
+    }
+
+    @Bean
+    @ConditionalOnProperty(value = "tara.legal-person-authentication.prefetch.enabled")
+    public LegalPersonPrefetcher legalPersonPrefetcher(BusinessRegistryService eBusinessRegistryService, LegalPersonProperties legalPersonProperties,
+                                                       @Qualifier("taskExecutor") Executor taskExecutor, MeterRegistry meterRegistry) {
+        return new LegalPersonPrefetcher(eBusinessRegistryService, legalPersonProperties, taskExecutor, meterRegistry);
     }
 }
@@ -1,12 +1,17 @@
 package ee.ria.taraauthserver.config;
 
+import ee.ria.taraauthserver.authentication.AuthenticationExecutor;
 import ee.ria.taraauthserver.config.properties.AuthConfigurationProperties.MidAuthConfigurationProperties;
 import ee.ria.taraauthserver.logging.JaxRsClientRequestLogger;
+import ee.ria.taraauthserver.utils.HttpConnectionPool;
 import ee.sk.mid.MidAuthenticationResponseValidator;
 import ee.sk.mid.MidClient;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.glassfish.jersey.client.ClientConfig;
 import org.glassfish.jersey.client.ClientProperties;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -19,6 +24,7 @@ import java.security.KeyStore;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
 import java.security.cert.CertificateException;
+import java.util.concurrent.Executor;
 
 @Slf4j
 @Configuration
@@ -39,22 +45,30 @@ public class MidConfiguration {
     }
 
     @Bean
-    public MidClient midClient(SSLContext tlsTrustStore, MidAuthConfigurationProperties properties) {
+    public MidClient midClient(SSLContext tlsTrustStore, MidAuthConfigurationProperties properties, @Qualifier("skConnectionPool") ObjectProvider<HttpConnectionPool> skConnectionPool) {
         return MidClient.newBuilder()
                 .withHostUrl(properties.getHostUrl())
                 .withRelyingPartyUUID(properties.getRelyingPartyUuid())
                 .withRelyingPartyName(properties.getRelyingPartyName())
                 .withTrustSslContext(tlsTrustStore)
-                .withNetworkConnectionConfig(midClientConfig(properties))
+                .withNetworkConnectionConfig(midClientConfig(properties, skConnectionPool.getIfAvailable()))
                 .withLongPollingTimeoutSeconds(properties.getLongPollingTimeoutSeconds())
                 .build();
     }
 
-    private ClientConfig midClientConfig(MidAuthConfigurationProperties properties) {
+    @Bean
+    public AuthenticationExecutor midAuthenticationExecutor(MidAuthConfigurationProperties properties, @Qualifier("taskExecutor") Executor taskExecutor, MeterRegistry meterRegistry) {
+        return AuthenticationExecutor.create("tara-mid-executor", properties.getExecutor(), taskExecutor, meterRegistry);
+    }
+
+    private ClientConfig midClientConfig(MidAuthConfigurationProperties properties, HttpConnectionPool skConnectionPool) {
         ClientConfig clientConfig = new ClientConfig();
         clientConfig.property(ClientProperties.CONNECT_TIMEOUT, properties.getConnectionTimeoutMilliseconds());
         clientConfig.property(ClientProperties.READ_TIMEOUT, properties.getReadTimeoutMilliseconds());
         clientConfig.register(new JaxRsClientRequestLogger("Mobile-ID"));
+        if (skConnectionPool != null) {
+            skConnectionPool.applyTo(clientConfig);
+        }
         return clientConfig;
     }
 }
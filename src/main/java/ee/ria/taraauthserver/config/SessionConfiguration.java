@@ -8,6 +8,7 @@ import org.springframework.boot.info.GitProperties;
 import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.session.config.annotation.web.http.EnableSpringHttpSession;
 import org.springframework.session.web.http.CookieSerializer;
 import org.springframework.session.web.http.DefaultCookieSerializer;
@@ -18,6 +19,7 @@ import static java.util.List.of;
 /**
  * Replace {@link EnableSpringHttpSession} with Spring Session Ignite module or corresponding Community Extension,
  * that provides concurrency safe SessionRepository implementation backed by Ignite and configuration support when it becomes available.
+ * Until then, lost updates of concurrently saved sessions can be avoided by enabling {@code tara.session.optimistic-locking.enabled}.
  *
  * @see <a href="https://github.com/spring-projects/spring-session/pull/1730">Ignite integration module pull request</a>
  * @see <a href="https://docs.spring.io/spring-session/docs/2.4.1/reference/html5/#httpsession">HttpSession Integration</a>
@@ -25,6 +27,7 @@ import static java.util.List.of;
  * @see <a href="https://docs.spring.io/spring-session/docs/2.4.1/reference/html5/#community">Spring Session Community Extensions</a>
  */
 @Configuration
+@EnableScheduling
 @EnableSpringHttpSession
 public class SessionConfiguration {
     public static final String TARA_SESSION_COOKIE_NAME = "SESSION";
@@ -1,13 +1,18 @@
 package ee.ria.taraauthserver.config;
 
+import ee.ria.taraauthserver.authentication.AuthenticationExecutor;
 import ee.ria.taraauthserver.config.properties.SmartIdConfigurationProperties;
 import ee.ria.taraauthserver.logging.JaxRsClientRequestLogger;
+import ee.ria.taraauthserver.utils.HttpConnectionPool;
 import ee.sk.smartid.AuthenticationResponseValidator;
 import ee.sk.smartid.SmartIdClient;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.glassfish.jersey.client.ClientConfig;
 import org.glassfish.jersey.client.ClientProperties;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -22,6 +27,7 @@ import java.security.NoSuchAlgorithmException;
 import java.security.cert.CertificateException;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 
 @Slf4j
@@ -36,23 +42,31 @@ public class SmartIdConfiguration {
     private ResourceLoader resourceLoader;
 
     @Bean
-    public SmartIdClient smartIdClient(SSLContext tlsTrustStore) {
+    public SmartIdClient smartIdClient(SSLContext tlsTrustStore, @Qualifier("skConnectionPool") ObjectProvider<HttpConnectionPool> skConnectionPool) {
         SmartIdClient smartIdClient = new SmartIdClient();
         smartIdClient.setHostUrl(smartIdConfigurationProperties.getHostUrl());
         smartIdClient.setRelyingPartyName(smartIdConfigurationProperties.getRelyingPartyName());
         smartIdClient.setRelyingPartyUUID(smartIdConfigurationProperties.getRelyingPartyUuid());
         smartIdClient.setSessionStatusResponseSocketOpenTime(TimeUnit.MILLISECONDS, smartIdConfigurationProperties.getLongPollingTimeoutMilliseconds());
         smartIdClient.setTrustSslContext(tlsTrustStore);
-        smartIdClient.setNetworkConnectionConfig(clientConfig());
+        smartIdClient.setNetworkConnectionConfig(clientConfig(skConnectionPool.getIfAvailable()));
 
         return smartIdClient;
     }
 
-    private ClientConfig clientConfig() {
+    @Bean
+    public AuthenticationExecutor sidAuthenticationExecutor(@Qualifier("taskExecutor") Executor taskExecutor, MeterRegistry meterRegistry) {
+        return AuthenticationExecutor.create("tara-sid-executor", smartIdConfigurationProperties.getExecutor(), taskExecutor, meterRegistry);
+    }
+
+    private ClientConfig clientConfig(HttpConnectionPool skConnectionPool) {
         ClientConfig clientConfig = new ClientConfig();
         clientConfig.property(ClientProperties.CONNECT_TIMEOUT, smartIdConfigurationProperties.getConnectionTimeoutMilliseconds());
         clientConfig.property(ClientProperties.READ_TIMEOUT, smartIdConfigurationProperties.getReadTimeoutMilliseconds());
         clientConfig.register(new JaxRsClientRequestLogger("Smart-ID"));
+        if (skConnectionPool != null) {
+            skConnectionPool.applyTo(clientConfig);
+        }
         return clientConfig;
     }
 
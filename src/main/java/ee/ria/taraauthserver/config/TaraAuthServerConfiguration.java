@@ -4,13 +4,16 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import ee.ria.taraauthserver.config.properties.AuthConfigurationProperties;
 import ee.ria.taraauthserver.logging.ClientRequestLogger.Service;
 import ee.ria.taraauthserver.logging.RestTemplateErrorLogger;
+import ee.ria.taraauthserver.utils.HttpConnectionPool;
 import ee.ria.taraauthserver.utils.ThymeleafSupport;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.http.client.HttpClient;
 import org.apache.http.impl.client.HttpClients;
 import org.apache.http.ssl.SSLContextBuilder;
 import org.apache.ignite.ssl.SSLContextWrapper;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
 import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.context.MessageSource;
@@ -83,6 +86,12 @@ public class TaraAuthServerConfiguration implements WebMvcConfigurer {
         return sslContext;
     }
 
+    @Bean
+    @ConditionalOnProperty(value = "tara.sk-connection-pool.enabled")
+    public HttpConnectionPool skConnectionPool(SSLContext trustContext, AuthConfigurationProperties authConfigurationProperties, MeterRegistry meterRegistry) {
+        return HttpConnectionPool.create("tara-sk-connection-pool", authConfigurationProperties.getSkConnectionPool(), trustContext, meterRegistry);
+    }
+
     @Bean
     public MappingJackson2HttpMessageConverter mappingJackson2HttpMessageConverter(ObjectMapper objectMapper) {
         MappingJackson2HttpMessageConverter jsonConverter = new MappingJackson2HttpMessageConverter(objectMapper);
@@ -1,5 +1,6 @@
 package ee.ria.taraauthserver.config.properties;
 
+import ee.ria.taraauthserver.error.ErrorCode;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
@@ -17,6 +18,7 @@ import javax.validation.constraints.NotBlank;
 import javax.validation.constraints.NotEmpty;
 import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Pattern;
+import java.time.Duration;
 import java.util.EnumMap;
 import java.util.HashSet;
 import java.util.List;
@@ -51,6 +53,9 @@ public class AuthConfigurationProperties {
 
     private TlsConfigurationProperties tls = new TlsConfigurationProperties();
 
+    @Valid
+    private HttpConnectionPoolProperties skConnectionPool = new HttpConnectionPoolProperties();
+
     private EnumMap<AuthenticationType, AuthMethodProperties> authMethods = new EnumMap<>(AuthenticationType.class);
 
     @Value("${tara.masked_field_names:session_id}")
@@ -84,6 +89,27 @@ public class AuthConfigurationProperties {
         private int requestTimeoutInSeconds = 3;
 
         private int maxConnectionsTotal = 50;
+
+        @Valid
+        @NotNull
+        private LoginRequestCache loginRequestCache = new LoginRequestCache();
+    }
+
+    /**
+     * Cache of Ory Hydra login requests, keyed by login challenge. Concurrent requests of the same login challenge are
+     * sent to Ory Hydra once. The cache is node-local, so other nodes may serve an accepted or rejected login request
+     * for up to {@code timeToLive}.
+     */
+    @Data
+    public static class LoginRequestCache {
+
+        private boolean enabled = false;
+
+        @NotNull
+        private Duration timeToLive = Duration.ofSeconds(30);
+
+        @Min(1)
+        private long maximumSize = 10000;
     }
 
     @Data
@@ -167,6 +193,21 @@ public class AuthConfigurationProperties {
 
         private int delayStatusPollingStartInMilliseconds = 500;
 
+        private boolean nonBlockingPollingEnabled = false;
+
+        @Min(1)
+        private int nonBlockingPollingThreadCount = 2;
+
+        @Valid
+        @NotNull
+        private AuthMethodExecutorProperties executor = new AuthMethodExecutorProperties(ErrorCode.MID_INTERNAL_ERROR);
+
+        @Min(1)
+        private int clientCacheMaximumSize = 100;
+
+        @NotNull
+        private Duration clientCacheTimeToIdle = Duration.ofHours(1);
+
         @PostConstruct
         public void validateConfiguration() {
             Assert.isTrue(readTimeoutMilliseconds >= (longPollingTimeoutSeconds * 1000) + 5000, "Mobile-ID read timeout must be at least 5 seconds longer than its long polling timeout.");
@@ -195,6 +236,18 @@ public class AuthConfigurationProperties {
         @Valid
         private List<Ocsp> fallbackOcsp;
 
+        @Valid
+        @NotNull
+        private OcspCache ocspCache = new OcspCache();
+
+        @Valid
+        @NotNull
+        private HttpConnectionPoolProperties ocspConnectionPool = new HttpConnectionPoolProperties();
+
+        @Valid
+        @NotNull
+        private OcspHedging ocspHedging = new OcspHedging();
+
         @PostConstruct
         public void validateConfiguration() {
             if (this.ocspEnabled) {
@@ -250,6 +303,51 @@ public class AuthConfigurationProperties {
         private String responderCertificateCn;
     }
 
+    /**
+     * Cache of OCSP certificate status check outcomes, keyed by SHA-256 hash of the encoded user certificate. Good
+     * certificate status is cached until the OCSP response expires according to its {@code nextUpdate} and the
+     * response lifetime of the OCSP configuration, but at most for {@code maxTimeToLive}. Unavailability of all OCSP
+     * services of the certificate is cached for {@code notAvailableTimeToLive}.
+     */
+    @Data
+    @NoArgsConstructor
+    public static class OcspCache {
+
+        private boolean enabled = false;
+
+        @Min(1L)
+        private long maximumSize = 10000;
+
+        @NotNull
+        private Duration maxTimeToLive = Duration.ofMinutes(5);
+
+        @NotNull
+        private Duration notAvailableTimeToLive = Duration.ofSeconds(5);
+
+        /**
+         * OCSP nonce requires a fresh response for every check, so by default responses of OCSP configurations with
+         * nonce enabled are not cached.
+         */
+        private boolean cacheResponsesWithNonce = false;
+    }
+
+    /**
+     * Hedged OCSP requests. When an OCSP service has not responded within {@code delay}, a request is sent to the next
+     * OCSP service of the certificate in parallel and the first valid response is used.
+     */
+    @Data
+    @NoArgsConstructor
+    public static class OcspHedging {
+
+        private boolean enabled = false;
+
+        @NotNull
+        private Duration delay = Duration.ofMillis(1000);
+
+        @Min(1)
+        private int maxConcurrentRequests = 50;
+    }
+
     @Data
     @ConfigurationProperties(prefix = "tara.health-endpoint")
     public static class HealthConfigurationProperties {
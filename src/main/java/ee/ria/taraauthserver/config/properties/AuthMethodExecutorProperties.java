@@ -0,0 +1,48 @@
+package ee.ria.taraauthserver.config.properties;
+
+import ee.ria.taraauthserver.error.ErrorCode;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.validation.constraints.AssertTrue;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+/**
+ * Dedicated thread pool of an authentication method, so that a stalled authentication service can only exhaust the
+ * threads of its own authentication method. When disabled, the shared application task executor is used.
+ * <p>
+ * Pool grows beyond core size only when the queue is full. Tasks that do not fit into the queue of a fully grown pool
+ * are rejected and their authentication fails with the rejection error code. Rejected tasks are never run by the
+ * scheduling thread, as that would delay all other tasks of the authentication method.
+ */
+@Data
+@NoArgsConstructor
+public class AuthMethodExecutorProperties {
+
+    private boolean enabled = false;
+
+    @Min(1)
+    private int corePoolSize = 8;
+
+    @Min(1)
+    private int maxPoolSize = 32;
+
+    @Min(0)
+    private int queueCapacity = 500;
+
+    /**
+     * Error code of the authentication when its task is rejected.
+     */
+    @NotNull
+    private ErrorCode rejectionErrorCode;
+
+    public AuthMethodExecutorProperties(ErrorCode rejectionErrorCode) {
+        this.rejectionErrorCode = rejectionErrorCode;
+    }
+
+    @AssertTrue(message = "Core pool size must not be greater than max pool size")
+    public boolean isPoolSizeValid() {
+        return corePoolSize <= maxPoolSize;
+    }
+}
@@ -0,0 +1,51 @@
+package ee.ria.taraauthserver.config.properties;
+
+import lombok.Data;
+
+import javax.validation.constraints.AssertTrue;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import java.time.Duration;
+
+/**
+ * Pool of persistent HTTP connections shared by the clients of an external service. Reusing pooled connections avoids a
+ * new TCP connection and TLS handshake per request. When disabled, clients open connections with their default
+ * transport.
+ */
+@Data
+public class HttpConnectionPoolProperties {
+
+    private boolean enabled = false;
+
+    @Min(1)
+    private int maxConnectionsTotal = 100;
+
+    @Min(1)
+    private int maxConnectionsPerRoute = 50;
+
+    /**
+     * Pooled connection that has been idle for longer than this is checked before it is leased.
+     */
+    @NotNull
+    private Duration validateAfterInactivity = Duration.ofSeconds(2);
+
+    /**
+     * Pooled connection that has been idle for longer than this is closed by the idle connection evictor.
+     */
+    @NotNull
+    private Duration idleConnectionTimeout = Duration.ofSeconds(30);
+
+    @NotNull
+    private Duration idleConnectionEvictionInterval = Duration.ofSeconds(5);
+
+    /**
+     * Max time a Jersey client request waits for a pooled connection when all connections of the route are in use.
+     */
+    @NotNull
+    private Duration connectionRequestTimeout = Duration.ofSeconds(5);
+
+    @AssertTrue(message = "Max connections per route must not be greater than max connections total")
+    public boolean isMaxConnectionsValid() {
+        return maxConnectionsPerRoute <= maxConnectionsTotal;
+    }
+}
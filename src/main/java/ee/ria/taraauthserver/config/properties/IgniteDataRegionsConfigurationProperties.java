@@ -0,0 +1,72 @@
+package ee.ria.taraauthserver.config.properties;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.apache.ignite.configuration.DataPageEvictionMode;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+import org.springframework.validation.annotation.Validated;
+
+import javax.validation.Valid;
+import javax.validation.constraints.AssertTrue;
+import javax.validation.constraints.NotNull;
+
+import static org.apache.ignite.configuration.DataPageEvictionMode.DISABLED;
+
+/**
+ * Dedicated off-heap data region per Ignite cache, so that a growth of one cache can not exhaust the memory used by
+ * the others. When disabled, all caches use the default data region of the Ignite node.
+ * <p>
+ * Page eviction is disabled in all regions by default, so writes to a full region fail instead of silently dropping
+ * live entries. Evicting pages of the sessions or eIDAS relay state region ends authentication flows in progress, so
+ * enable it only explicitly.
+ */
+@Data
+@Validated
+@ConfigurationProperties(prefix = "tara.ignite.data-regions")
+public class IgniteDataRegionsConfigurationProperties {
+
+    private boolean enabled = false;
+
+    @Valid
+    @NotNull
+    private DataRegion sessions = new DataRegion(DataSize.ofMegabytes(64), DataSize.ofMegabytes(512), DISABLED, false);
+
+    @Valid
+    @NotNull
+    private DataRegion alerts = new DataRegion(DataSize.ofMegabytes(16), DataSize.ofMegabytes(32), DISABLED, true);
+
+    @Valid
+    @NotNull
+    private DataRegion eidasRelayState = new DataRegion(DataSize.ofMegabytes(16), DataSize.ofMegabytes(128), DISABLED, false);
+
+    @Valid
+    @NotNull
+    private DataRegion oidcClient = new DataRegion(DataSize.ofMegabytes(16), DataSize.ofMegabytes(64), DISABLED, true);
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class DataRegion {
+
+        @NotNull
+        private DataSize initialSize;
+
+        @NotNull
+        private DataSize maxSize;
+
+        @NotNull
+        private DataPageEvictionMode pageEvictionMode;
+
+        /**
+         * When enabled, cache entries are also kept deserialized on heap, which makes reads faster at the cost of heap usage.
+         */
+        private boolean onheapCacheEnabled;
+
+        @AssertTrue(message = "Initial size must not be greater than max size")
+        public boolean isInitialSizeValid() {
+            return initialSize == null || maxSize == null || initialSize.compareTo(maxSize) <= 0;
+        }
+    }
+}
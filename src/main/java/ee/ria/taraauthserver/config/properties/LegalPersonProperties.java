@@ -4,7 +4,10 @@ import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.validation.annotation.Validated;
 
+import javax.validation.Valid;
+import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
+import java.time.Duration;
 
 @Data
 @Validated
@@ -20,6 +23,10 @@ public class LegalPersonProperties {
 
     private int xRoadServerReadTimeoutInMilliseconds = 3000;
 
+    @Valid
+    @NotNull
+    private HttpConnectionPoolProperties xRoadConnectionPool = new HttpConnectionPoolProperties();
+
     @NotNull
     private String xRoadServiceInstance;
 
@@ -45,4 +52,47 @@ public class LegalPersonProperties {
     private String xRoadClientSubsystemCode;
 
     private String[] esindusv2AllowedTypes = new String[]{"TÜ", "UÜ", "OÜ", "AS", "TÜH", "SA", "MTÜ"};
+
+    @Valid
+    @NotNull
+    private BusinessRegistryCache businessRegistryCache = new BusinessRegistryCache();
+
+    @Valid
+    @NotNull
+    private Prefetch prefetch = new Prefetch();
+
+    /**
+     * Cache of business registry representation rights, keyed by HMAC of the natural person ID code. Entries expire
+     * after {@code timeToLive} and all entries are removed on {@code invalidationCron} schedule.
+     */
+    @Data
+    public static class BusinessRegistryCache {
+
+        private boolean enabled = false;
+
+        @NotNull
+        private Duration timeToLive = Duration.ofMinutes(5);
+
+        @Min(1)
+        private long maximumSize = 10000;
+
+        @NotNull
+        private String invalidationCron = "-";
+    }
+
+    /**
+     * Business registry request started in the background when natural person authentication of a session requesting
+     * {@code legalperson} scope completes. Results that are not requested within {@code timeToLive} are discarded.
+     */
+    @Data
+    public static class Prefetch {
+
+        private boolean enabled = false;
+
+        @NotNull
+        private Duration timeToLive = Duration.ofMinutes(5);
+
+        @Min(1)
+        private long maximumSize = 10000;
+    }
 }
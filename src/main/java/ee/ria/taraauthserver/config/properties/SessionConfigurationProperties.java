@@ -0,0 +1,160 @@
+package ee.ria.taraauthserver.config.properties;
+
+import lombok.Data;
+import org.apache.ignite.cache.CacheMode;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+import javax.validation.Valid;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import java.time.Duration;
+
+@Data
+@Validated
+@ConfigurationProperties(prefix = "tara.session")
+public class SessionConfigurationProperties {
+
+    /**
+     * {@link Backend#LOCAL} keeps sessions in the memory of the local node and is suitable for single node deployments
+     * only. Other session properties apply to {@link Backend#IGNITE} only.
+     */
+    @NotNull
+    private Backend backend = Backend.IGNITE;
+
+    /**
+     * When enabled, {@link ee.ria.taraauthserver.session.TaraSession} is stored using a compact custom binary encoding
+     * instead of reflective binary marshalling. Must be set to the same value on all nodes of the cluster.
+     */
+    private boolean compactSerializationEnabled = false;
+
+    /**
+     * When enabled, OIDC client metadata is stored once per client in a replicated cache and sessions store only a
+     * reference to it, instead of a copy of the metadata in every session.
+     */
+    private boolean oidcClientReferencesEnabled = false;
+
+    /**
+     * {@link ExpiryPolicy#CREATED} expires a session a session timeout after it was created, regardless of activity.
+     * {@link ExpiryPolicy#TOUCHED} expires a session a session timeout after it was last read or written. Every read
+     * then also updates the expiration time of the stored session.
+     */
+    @NotNull
+    private ExpiryPolicy expiryPolicy = ExpiryPolicy.CREATED;
+
+    @Valid
+    private ExpirySweeper expirySweeper = new ExpirySweeper();
+
+    @Valid
+    private Cache cache = new Cache();
+
+    @Valid
+    private NearCache nearCache = new NearCache();
+
+    @Valid
+    private OptimisticLocking optimisticLocking = new OptimisticLocking();
+
+    @Valid
+    private WriteCoalescing writeCoalescing = new WriteCoalescing();
+
+    public enum Backend {
+        IGNITE,
+        LOCAL
+    }
+
+    public enum ExpiryPolicy {
+        CREATED,
+        TOUCHED
+    }
+
+    @Data
+    public static class ExpirySweeper {
+
+        /**
+         * When enabled, sessions inactive for longer than their max inactive interval are periodically removed from
+         * the local partitions of the session cache in batches.
+         */
+        private boolean enabled = false;
+
+        @Min(1000L)
+        private long intervalInMilliseconds = 60000;
+
+        @Min(1L)
+        private int batchSize = 500;
+    }
+
+    @Data
+    public static class Cache {
+
+        /**
+         * {@link CacheMode#REPLICATED} keeps all sessions on every node, which makes every read local, but every write
+         * is sent to all nodes. Suitable for small clusters only.
+         */
+        @NotNull
+        private CacheMode mode = CacheMode.PARTITIONED;
+
+        /**
+         * Number of backup copies of each session. Ignored in {@link CacheMode#REPLICATED} mode.
+         */
+        @Min(0L)
+        private int backups = 0;
+
+        /**
+         * When enabled, a session is read from a local backup copy if there is one. Writes are then acknowledged only
+         * after all backup copies have been updated, so that a read never returns a stale session.
+         */
+        private boolean readFromBackup = false;
+
+        /**
+         * When enabled, new session ids are chosen so that the node creating the session is the primary owner of it.
+         * Together with sticky sessions on the load balancer, reads of a session are then served locally.
+         */
+        private boolean affinityAwareIds = false;
+    }
+
+    @Data
+    public static class NearCache {
+
+        /**
+         * When enabled, sessions read from the session cache are also kept on the local node and fetched again only
+         * when the version of the stored session has changed.
+         */
+        private boolean enabled = false;
+
+        @Min(1L)
+        private long maximumSize = 10000;
+
+        /**
+         * Must be shorter than the session timeout.
+         */
+        @NotNull
+        private Duration timeToLive = Duration.ofSeconds(60);
+    }
+
+    @Data
+    public static class OptimisticLocking {
+
+        /**
+         * When enabled, a stored session is replaced only if it has not been changed since it was loaded. On conflict,
+         * the save is re-applied on top of the latest stored session and retried, unless an attribute modified by the
+         * save has also been modified concurrently, in which case the save fails.
+         */
+        private boolean enabled = false;
+
+        @Min(1L)
+        private int maxAttempts = 10;
+    }
+
+    @Data
+    public static class WriteCoalescing {
+
+        /**
+         * When enabled, saves that do not require the saved session to be immediately readable on other nodes are
+         * written asynchronously, and saves of the same session within {@link #window} are collapsed into one write.
+         */
+        private boolean enabled = false;
+
+        @NotNull
+        private Duration window = Duration.ofMillis(50);
+    }
+}
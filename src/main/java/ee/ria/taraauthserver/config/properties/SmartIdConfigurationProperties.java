@@ -1,5 +1,6 @@
 package ee.ria.taraauthserver.config.properties;
 
+import ee.ria.taraauthserver.error.ErrorCode;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
@@ -8,6 +9,8 @@ import org.springframework.util.Assert;
 import org.springframework.validation.annotation.Validated;
 
 import javax.annotation.PostConstruct;
+import javax.validation.Valid;
+import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Pattern;
 
@@ -52,8 +55,27 @@ public class SmartIdConfigurationProperties extends AuthConfigurationProperties.
 
     private int delayStatusPollingStartInMilliseconds = 500;
 
+    private boolean nonBlockingPollingEnabled = false;
+
+    @Min(1)
+    private int nonBlockingPollingThreadCount = 2;
+
+    @Min(1)
+    private int nonBlockingPollingMaxConcurrentRequests = 200;
+
+    @Min(0)
+    private int nonBlockingPollingInitialBackoffInMilliseconds = 500;
+
+    @Min(0)
+    private int nonBlockingPollingMaxBackoffInMilliseconds = 5000;
+
+    @Valid
+    @NotNull
+    private AuthMethodExecutorProperties executor = new AuthMethodExecutorProperties(ErrorCode.SID_INTERNAL_ERROR);
+
     @PostConstruct
     public void validateConfiguration() {
         Assert.isTrue(readTimeoutMilliseconds >= longPollingTimeoutMilliseconds + 5000, "Smart-ID read timeout must be at least 5 seconds longer than its long polling timeout.");
+        Assert.isTrue(nonBlockingPollingInitialBackoffInMilliseconds <= nonBlockingPollingMaxBackoffInMilliseconds, "Smart-ID non-blocking polling initial backoff must not be greater than its max backoff.");
     }
 }
@@ -1,34 +1,52 @@
 package ee.ria.taraauthserver.session;
 
+import ee.ria.taraauthserver.config.properties.SessionConfigurationProperties;
 import ee.ria.taraauthserver.logging.StatisticsLogger;
 import lombok.Data;
 import lombok.experimental.Delegate;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.ignite.Ignite;
 import org.apache.ignite.binary.BinaryObject;
+import org.apache.ignite.cache.affinity.Affinity;
+import org.apache.ignite.cluster.ClusterNode;
 import org.apache.ignite.internal.GridDirectTransient;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.session.MapSession;
 import org.springframework.session.Session;
 import org.springframework.session.SessionRepository;
 import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestContextHolder;
 
 import javax.cache.Cache;
 import java.io.Serializable;
 import java.time.Duration;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
 
+import static ee.ria.taraauthserver.config.IgniteCacheConfiguration.SESSION_CACHE_NAME;
+import static ee.ria.taraauthserver.session.SessionWriteResult.APPLIED;
+import static ee.ria.taraauthserver.session.SessionWriteResult.VERSION_CONFLICT;
 import static ee.ria.taraauthserver.session.TaraSession.TARA_SESSION;
 import static net.logstash.logback.marker.Markers.append;
 import static org.apache.commons.lang3.ObjectUtils.defaultIfNull;
 
 /**
  * @see ee.ria.taraauthserver.config.SessionConfiguration
+ * @see LocalSessionRepository
  */
 @Slf4j
 @Component
+@ConditionalOnProperty(value = "tara.session.backend", havingValue = "ignite", matchIfMissing = true)
 public class IgniteSessionRepository implements SessionRepository<Session> {
+    static final String VERSION_FIELD = "version";
+    static final String EXPIRATION_TIME_FIELD = "expirationTime";
+    private static final int AFFINITY_AWARE_ID_MAX_ATTEMPTS = 128;
 
     @Autowired
     @Qualifier("sessionCache")
@@ -43,24 +61,249 @@ public class IgniteSessionRepository implements SessionRepository<Session> {
     @Autowired
     private StatisticsLogger statisticsLogger;
 
+    @Autowired
+    private SessionConfigurationProperties sessionConfigurationProperties;
+
+    @Autowired(required = false)
+    private SessionNearCache sessionNearCache;
+
+    @Autowired(required = false)
+    private OidcClientCache oidcClientCache;
+
+    @Autowired(required = false)
+    private SessionWriteCoalescer sessionWriteCoalescer;
+
     @Override
     public IgniteSession createSession() {
-        IgniteSession igniteSession = new IgniteSession();
+        IgniteSession igniteSession = sessionConfigurationProperties.getCache().isAffinityAwareIds()
+                ? new IgniteSession(new MapSession(generateAffinityAwareId()))
+                : new IgniteSession();
         igniteSession.setMaxInactiveInterval(sessionTimeout);
         return igniteSession;
     }
 
+    /**
+     * Generates a random session id that maps to a partition the local node is the primary owner of. On average takes as
+     * many attempts as there are server nodes in the cluster. Falls back to any random id if the local node owns no
+     * partitions, e.g. while it is joining the cluster.
+     */
+    private String generateAffinityAwareId() {
+        Affinity<String> affinity = ignite.affinity(SESSION_CACHE_NAME);
+        ClusterNode localNode = ignite.cluster().localNode();
+        for (int attempt = 0; attempt < AFFINITY_AWARE_ID_MAX_ATTEMPTS; attempt++) {
+            String id = UUID.randomUUID().toString();
+            if (affinity.isPrimary(localNode, id)) {
+                return id;
+            }
+        }
+        log.debug("Local node is not primary owner for any of {} generated session ids", AFFINITY_AWARE_ID_MAX_ATTEMPTS);
+        return UUID.randomUUID().toString();
+    }
+
     @Override
     public void save(Session session) {
         IgniteSession igniteSession = (IgniteSession) session;
         if (igniteSession.isChanged()) {
             igniteSession.setChanged(false);
+            boolean stateChanged = isStateChanged(igniteSession);
             logStateChange(session, igniteSession);
-            BinaryObject binaryObject = ignite.binary().toBinary(session);
-            sessionCache.put(session.getId(), binaryObject);
+            registerOidcClients(igniteSession);
+            if (isOptimisticLockingApplicable(igniteSession)) {
+                saveWithOptimisticLocking(igniteSession);
+            } else if (isCoalescedWriteApplicable(igniteSession, stateChanged)) {
+                writeCoalesced(igniteSession);
+            } else {
+                write(igniteSession, null);
+            }
+            igniteSession.setStoredVersion(igniteSession.getVersion());
+            igniteSession.clearChangedAttributes();
+        }
+    }
+
+    private boolean isOptimisticLockingApplicable(IgniteSession igniteSession) {
+        return sessionConfigurationProperties.getOptimisticLocking().isEnabled()
+                && igniteSession.isPersisted()
+                && igniteSession.getId().equals(igniteSession.getOriginalId());
+    }
+
+    private boolean isStateChanged(IgniteSession igniteSession) {
+        TaraSession taraSession = igniteSession.getAttribute(TARA_SESSION);
+        return taraSession != null && igniteSession.getSavedState() != taraSession.getState();
+    }
+
+    /**
+     * A save can be written asynchronously, if the next request of the user may be served by a node that does not yet
+     * see the saved session:
+     * <ul>
+     *     <li>saves made outside of an HTTP request, by Mobile-ID and Smart-ID status polling threads, as the browser keeps
+     *     polling until it sees the result;</li>
+     *     <li>saves made by an HTTP request that did not change the authentication state and did not change any session
+     *     attribute besides {@link TaraSession#TARA_SESSION}, e.g. status polling requests.</li>
+     * </ul>
+     * New sessions, sessions with a changed id, authentication state changes made by HTTP requests and changes of
+     * other attributes (e.g. the CSRF token) are always written synchronously before the response is committed, as the
+     * next request depends on them and may be served by any node.
+     */
+    private boolean isCoalescedWriteApplicable(IgniteSession igniteSession, boolean stateChanged) {
+        if (sessionWriteCoalescer == null || !igniteSession.isPersisted() || !igniteSession.getId().equals(igniteSession.getOriginalId())) {
+            return false;
+        }
+        if (RequestContextHolder.getRequestAttributes() == null) {
+            return true;
+        }
+        return !stateChanged && Set.of(TARA_SESSION).containsAll(igniteSession.getChangedAttributeNames());
+    }
+
+    private void writeCoalesced(IgniteSession igniteSession) {
+        igniteSession.setVersion(ThreadLocalRandom.current().nextLong());
+        igniteSession.setExpirationTime(IgniteSession.calculateExpirationTime(igniteSession.getLastAccessedTime(), igniteSession.getMaxInactiveInterval()));
+        sessionWriteCoalescer.submit(igniteSession.getId(), ignite.binary().toBinary(igniteSession));
+    }
+
+    /**
+     * Saves session only if the stored session has not been changed since it was loaded. Otherwise, the stored session is
+     * loaded again, the save is re-applied on top of it and retried. A save is re-applied only if none of the attributes
+     * it modified has been modified concurrently as well, otherwise the save fails instead of overwriting the concurrent
+     * change. This way a request thread that only re-sets an unmodified attribute does not overwrite changes made
+     * concurrently by another request or by a background thread, and concurrent changes of {@link TaraSession} are never
+     * silently lost. The only exception is a save that changed nothing but the authentication state, see
+     * {@link #isStateChangeOnly}.
+     *
+     * @throws IllegalStateException if an attribute modified by this save has been modified concurrently, or the session
+     *                               is modified concurrently on every attempt
+     */
+    private void saveWithOptimisticLocking(IgniteSession igniteSession) {
+        int maxAttempts = sessionConfigurationProperties.getOptimisticLocking().getMaxAttempts();
+        IgniteSession session = igniteSession;
+        Long expectedVersion = igniteSession.getStoredVersion();
+        for (int attempt = 1; attempt <= maxAttempts; attempt++) {
+            if (write(session, expectedVersion) == APPLIED) {
+                updateFromReappliedSession(igniteSession, session);
+                return;
+            }
+            BinaryObject latestBinaryObject = sessionCache.get(igniteSession.getId());
+            if (latestBinaryObject == null) {
+                expectedVersion = null;
+                continue;
+            }
+            session = reapplyChanges(igniteSession, latestBinaryObject);
+            if (session.getChangedAttributeNames().isEmpty()) {
+                log.debug("Session was modified concurrently, no modified attributes left to save: {}", igniteSession.getId());
+                updateFromReappliedSession(igniteSession, session);
+                return;
+            }
+            expectedVersion = session.getStoredVersion();
+            log.info("Session was modified concurrently, retrying save: {}", igniteSession.getId());
+        }
+        throw new IllegalStateException("Session was modified concurrently " + maxAttempts + " times: " + igniteSession.getId());
+    }
+
+    private void updateFromReappliedSession(IgniteSession igniteSession, IgniteSession reappliedSession) {
+        if (reappliedSession != igniteSession) {
+            igniteSession.copyAttributesFrom(reappliedSession);
+            igniteSession.setVersion(reappliedSession.getVersion());
+        }
+        igniteSession.setLoadedBinaryObject(reappliedSession.getLoadedBinaryObject());
+    }
+
+    private IgniteSession reapplyChanges(IgniteSession igniteSession, BinaryObject latestBinaryObject) {
+        BinaryObject loadedBinaryObject = igniteSession.getLoadedBinaryObject();
+        IgniteSession loadedSession = loadedBinaryObject == null ? null : loadedBinaryObject.deserialize();
+        IgniteSession reappliedSession = latestBinaryObject.deserialize();
+        reappliedSession.setStoredVersion(reappliedSession.getVersion());
+        for (String attributeName : igniteSession.getChangedAttributeNames()) {
+            Object attributeValue = igniteSession.getAttribute(attributeName);
+            Object loadedAttributeValue = loadedSession == null ? null : loadedSession.getAttribute(attributeName);
+            if (loadedSession != null && !isModified(attributeValue, loadedAttributeValue)) {
+                continue;
+            }
+            Object latestAttributeValue = reappliedSession.getAttribute(attributeName);
+            if ((loadedSession == null || isModified(latestAttributeValue, loadedAttributeValue))
+                    && isModified(attributeValue, latestAttributeValue)) {
+                if (!isStateChangeOnly(attributeName, attributeValue, loadedAttributeValue)) {
+                    throw new IllegalStateException("Session attribute '" + attributeName + "' was modified concurrently: " + igniteSession.getId());
+                }
+                TaraSession latestTaraSession = (TaraSession) latestAttributeValue;
+                latestTaraSession.restoreState(((TaraSession) attributeValue).getState());
+                attributeValue = latestTaraSession;
+                log.info("Session attribute '{}' was modified concurrently, re-applying state change: {}", attributeName, igniteSession.getId());
+            }
+            if (attributeValue == null) {
+                reappliedSession.removeAttribute(attributeName);
+            } else {
+                reappliedSession.setAttribute(attributeName, attributeValue);
+            }
+        }
+        if (igniteSession.getLastAccessedTime().isAfter(reappliedSession.getLastAccessedTime())) {
+            reappliedSession.setLastAccessedTime(igniteSession.getLastAccessedTime());
+        }
+        reappliedSession.setMaxInactiveInterval(igniteSession.getMaxInactiveInterval());
+        reappliedSession.setSavedState(igniteSession.getSavedState());
+        reappliedSession.setChanged(false);
+        reappliedSession.setLoadedBinaryObject(latestBinaryObject);
+        if (!resolveOidcClients(reappliedSession)) {
+            throw new IllegalStateException("Unable to resolve OIDC client metadata of session: " + igniteSession.getId());
+        }
+        return reappliedSession;
+    }
+
+    /**
+     * A {@link TaraSession} change that only moves the authentication state, e.g. canceling Mobile-ID or Smart-ID
+     * authentication, is re-applied on top of a concurrent change, e.g. the authentication result stored by a status
+     * polling thread. The state change of this save wins, the rest of the concurrent change is kept.
+     */
+    private boolean isStateChangeOnly(String attributeName, Object attributeValue, Object loadedAttributeValue) {
+        if (!TARA_SESSION.equals(attributeName) || !(attributeValue instanceof TaraSession) || !(loadedAttributeValue instanceof TaraSession)) {
+            return false;
+        }
+        TaraSession taraSession = ignite.binary().<BinaryObject>toBinary(attributeValue).deserialize();
+        taraSession.restoreState(((TaraSession) loadedAttributeValue).getState());
+        return !isModified(taraSession, loadedAttributeValue);
+    }
+
+    private boolean isModified(Object attributeValue, Object loadedAttributeValue) {
+        if (attributeValue == null || loadedAttributeValue == null) {
+            return attributeValue != loadedAttributeValue;
+        }
+        return !ignite.binary().toBinary(attributeValue).equals(ignite.binary().toBinary(loadedAttributeValue));
+    }
+
+    /**
+     * @param expectedVersion version the stored session must have for the write to be applied, {@code null} to write unconditionally
+     */
+    private SessionWriteResult write(IgniteSession igniteSession, Long expectedVersion) {
+        if (sessionWriteCoalescer != null) {
+            sessionWriteCoalescer.discard(igniteSession.getId());
+        }
+        igniteSession.setVersion(ThreadLocalRandom.current().nextLong());
+        igniteSession.setExpirationTime(IgniteSession.calculateExpirationTime(igniteSession.getLastAccessedTime(), igniteSession.getMaxInactiveInterval()));
+        BinaryObject binaryObject = ignite.binary().toBinary(igniteSession);
+        if (expectedVersion == null) {
+            sessionCache.put(igniteSession.getId(), binaryObject);
+        } else if (sessionCache.invoke(igniteSession.getId(), new SessionCompareAndSetEntryProcessor(expectedVersion, binaryObject)) == VERSION_CONFLICT) {
+            return VERSION_CONFLICT;
+        }
+        if (sessionNearCache != null) {
+            sessionNearCache.put(igniteSession.getId(), binaryObject, igniteSession.getMaxInactiveInterval());
+        }
+        if (sessionConfigurationProperties.getOptimisticLocking().isEnabled()) {
+            igniteSession.setLoadedBinaryObject(binaryObject);
+        }
+        return APPLIED;
+    }
+
+    private void registerOidcClients(IgniteSession igniteSession) {
+        TaraSession taraSession = igniteSession.getAttribute(TARA_SESSION);
+        if (oidcClientCache != null && taraSession != null) {
+            oidcClientCache.register(taraSession);
         }
     }
 
+    private boolean resolveOidcClients(IgniteSession igniteSession) {
+        TaraSession taraSession = igniteSession.getAttribute(TARA_SESSION);
+        return oidcClientCache == null || taraSession == null || oidcClientCache.resolve(taraSession);
+    }
+
     private void logStateChange(Session session, IgniteSession igniteSession) {
         TaraSession taraSession = session.getAttribute(TARA_SESSION);
         if (taraSession != null) {
@@ -78,25 +321,85 @@ public class IgniteSessionRepository implements SessionRepository<Session> {
         }
     }
 
+    /**
+     * With {@link SessionConfigurationProperties.ExpiryPolicy#TOUCHED} a session found in the near cache is touched by the
+     * same call that checks its version, otherwise the session is touched after it has been fetched.
+     */
     @Override
     public Session findById(String id) {
-        BinaryObject binaryObject = sessionCache.get(id);
+        boolean touchOnRead = sessionConfigurationProperties.getExpiryPolicy() == SessionConfigurationProperties.ExpiryPolicy.TOUCHED;
+        boolean touched = false;
+        boolean fetched = false;
+        BinaryObject binaryObject = sessionWriteCoalescer != null ? sessionWriteCoalescer.getPendingWrite(id) : null;
+        if (binaryObject == null && sessionNearCache != null) {
+            binaryObject = sessionNearCache.get(id, sessionCache, touchOnRead);
+            touched = touchOnRead && binaryObject != null;
+        }
+        if (binaryObject == null) {
+            binaryObject = sessionCache.get(id);
+            fetched = true;
+        }
         if (binaryObject != null) {
-            Session session = binaryObject.deserialize();
-            if (session.isExpired()) {
+            if (isExpired(binaryObject)) {
                 deleteById(id);
                 return null;
-            } else {
-                return session;
             }
+            IgniteSession session = binaryObject.deserialize();
+            session.setStoredVersion(session.getVersion());
+            if (!resolveOidcClients(session)) {
+                deleteById(id);
+                return null;
+            }
+            if (touchOnRead && !touched) {
+                binaryObject = touch(session, binaryObject);
+            } else if (fetched && sessionNearCache != null) {
+                sessionNearCache.put(id, binaryObject, session.getMaxInactiveInterval());
+            }
+            if (sessionConfigurationProperties.getOptimisticLocking().isEnabled()) {
+                session.setLoadedBinaryObject(binaryObject);
+            }
+            return session;
         } else {
             return null;
         }
     }
 
+    /**
+     * Moves the expiration time of the session forward, as the session is accessed without necessarily being saved. Only
+     * the expiration time field is updated in cache, the near cache gets an updated copy.
+     */
+    private BinaryObject touch(IgniteSession session, BinaryObject binaryObject) {
+        long expirationTime = IgniteSession.calculateExpirationTime(Instant.now(), session.getMaxInactiveInterval());
+        session.setExpirationTime(expirationTime);
+        sessionCache.invoke(session.getId(), new SessionTouchEntryProcessor(expirationTime));
+        BinaryObject touchedBinaryObject = binaryObject.toBuilder().setField(EXPIRATION_TIME_FIELD, expirationTime, long.class).build();
+        if (sessionNearCache != null) {
+            sessionNearCache.put(session.getId(), touchedBinaryObject, session.getMaxInactiveInterval());
+        }
+        return touchedBinaryObject;
+    }
+
+    /**
+     * Checks expiration using the expiration time field, without deserializing the session. Sessions stored before the
+     * field was introduced are deserialized.
+     */
+    private boolean isExpired(BinaryObject binaryObject) {
+        Long expirationTime = binaryObject.field(EXPIRATION_TIME_FIELD);
+        if (expirationTime == null) {
+            return binaryObject.<IgniteSession>deserialize().isExpired();
+        }
+        return expirationTime < System.currentTimeMillis();
+    }
+
     @Override
     public void deleteById(String id) {
+        if (sessionWriteCoalescer != null) {
+            sessionWriteCoalescer.discard(id);
+        }
         sessionCache.remove(id);
+        if (sessionNearCache != null) {
+            sessionNearCache.invalidate(id);
+        }
         log.info("Session is removed from cache: {}", id);
     }
 
@@ -109,16 +412,98 @@ public class IgniteSessionRepository implements SessionRepository<Session> {
 
         private TaraAuthenticationState savedState;
 
-        @Delegate(excludes = SetAttribute.class)
-        private final MapSession mapSession = new MapSession();
+        /**
+         * Changes on every save. A random value instead of a counter, so that concurrent saves of the same session never
+         * result in the same version.
+         */
+        private long version;
+
+        /**
+         * Epoch milliseconds after which the session is expired, updated on every save. Stored as a separate primitive
+         * field, so that expiration can be checked without deserializing the session.
+         */
+        private long expirationTime;
+
+        @Delegate(excludes = {SetAttribute.class, RemoveAttribute.class})
+        private final MapSession mapSession;
+
+        /**
+         * Version of the session in cache when the session was loaded or last saved, {@code null} if session has not been
+         * stored yet. Not serialized.
+         */
+        private transient Long storedVersion;
+
+        /**
+         * Session in the form it was loaded from or last saved to cache, used to detect which attributes were actually
+         * modified by this thread and which concurrently, when the session has been changed concurrently. Set only if optimistic locking is enabled. Not serialized.
+         */
+        private transient BinaryObject loadedBinaryObject;
+
+        /**
+         * Names of the attributes set or removed since the session was loaded or last saved. Not serialized.
+         */
+        private transient Set<String> changedAttributeNames;
+
+        IgniteSession() {
+            this(new MapSession());
+        }
+
+        IgniteSession(MapSession mapSession) {
+            this.mapSession = mapSession;
+        }
 
         public void setAttribute(String attributeName, Object attributeValue) {
             setChanged(true);
+            getChangedAttributeNames().add(attributeName);
             mapSession.setAttribute(attributeName, attributeValue);
         }
 
+        public void removeAttribute(String attributeName) {
+            setChanged(true);
+            getChangedAttributeNames().add(attributeName);
+            mapSession.removeAttribute(attributeName);
+        }
+
+        static long calculateExpirationTime(Instant lastAccessedTime, Duration maxInactiveInterval) {
+            if (maxInactiveInterval.isNegative()) {
+                return Long.MAX_VALUE;
+            }
+            return lastAccessedTime.plus(maxInactiveInterval).toEpochMilli();
+        }
+
+        boolean isPersisted() {
+            return storedVersion != null;
+        }
+
+        void copyAttributesFrom(IgniteSession session) {
+            for (String attributeName : getAttributeNames()) {
+                if (session.getAttribute(attributeName) == null) {
+                    mapSession.removeAttribute(attributeName);
+                }
+            }
+            for (String attributeName : session.getAttributeNames()) {
+                mapSession.setAttribute(attributeName, session.getAttribute(attributeName));
+            }
+            loadedBinaryObject = null;
+        }
+
+        Set<String> getChangedAttributeNames() {
+            if (changedAttributeNames == null) {
+                changedAttributeNames = new HashSet<>();
+            }
+            return changedAttributeNames;
+        }
+
+        void clearChangedAttributes() {
+            changedAttributeNames = null;
+        }
+
         interface SetAttribute {
             void setAttribute(String attributeName, Object attributeValue);
         }
+
+        interface RemoveAttribute {
+            void removeAttribute(String attributeName);
+        }
     }
 }
@@ -0,0 +1,220 @@
+package ee.ria.taraauthserver.session;
+
+import ee.ria.taraauthserver.logging.StatisticsLogger;
+import lombok.Data;
+import lombok.experimental.Delegate;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.session.MapSession;
+import org.springframework.session.Session;
+import org.springframework.session.SessionRepository;
+import org.springframework.stereotype.Component;
+import org.springframework.util.SerializationUtils;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.Serializable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static ee.ria.taraauthserver.session.TaraSession.TARA_SESSION;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static net.logstash.logback.marker.Markers.append;
+import static org.apache.commons.lang3.ObjectUtils.defaultIfNull;
+
+/**
+ * Session repository that keeps sessions in the memory of the local node, for single node deployments and tests.
+ * Selected with {@code tara.session.backend=local}, {@link IgniteSessionRepository} is used otherwise.
+ * <p>
+ * Sessions are stored serialized, so that like with {@link IgniteSessionRepository} every {@link #findById(String)}
+ * returns an independent copy and changes become visible to other threads only when saved. Expired sessions are
+ * removed by a timing wheel: every session is placed into the slot of its expiration second and on every tick only the
+ * sessions in the current slot are checked, regardless of the total number of sessions.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(value = "tara.session.backend", havingValue = "local")
+public class LocalSessionRepository implements SessionRepository<Session> {
+    private static final long TICK_IN_MILLISECONDS = 1000;
+    private static final int WHEEL_SIZE = 512;
+
+    private final Map<String, StoredSession> sessions = new ConcurrentHashMap<>();
+    private final List<Set<String>> wheel = new ArrayList<>(WHEEL_SIZE);
+    private long lastTick;
+    private ScheduledExecutorService scheduler;
+
+    @Value("${spring.session.timeout}")
+    private Duration sessionTimeout;
+
+    @Autowired
+    private StatisticsLogger statisticsLogger;
+
+    @Autowired(required = false)
+    private OidcClientCache oidcClientCache;
+
+    @PostConstruct
+    void startExpiration() {
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            wheel.add(ConcurrentHashMap.newKeySet());
+        }
+        lastTick = System.currentTimeMillis() / TICK_IN_MILLISECONDS;
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "tara-local-session-expiration");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::removeExpiredSessions, TICK_IN_MILLISECONDS, TICK_IN_MILLISECONDS, MILLISECONDS);
+        log.info("Using local session repository");
+    }
+
+    @PreDestroy
+    void stopExpiration() {
+        scheduler.shutdownNow();
+    }
+
+    @Override
+    public LocalSession createSession() {
+        LocalSession localSession = new LocalSession();
+        localSession.setMaxInactiveInterval(sessionTimeout);
+        return localSession;
+    }
+
+    @Override
+    public void save(Session session) {
+        LocalSession localSession = (LocalSession) session;
+        TaraSession taraSession = localSession.getAttribute(TARA_SESSION);
+        if (taraSession != null) {
+            logStateChange(localSession, taraSession);
+            if (oidcClientCache != null) {
+                oidcClientCache.register(taraSession);
+            }
+        }
+        if (!localSession.getId().equals(localSession.getOriginalId())) {
+            sessions.remove(localSession.getOriginalId());
+            localSession.setOriginalId(localSession.getId());
+        }
+        long expirationTime = IgniteSessionRepository.IgniteSession.calculateExpirationTime(localSession.getLastAccessedTime(), localSession.getMaxInactiveInterval());
+        sessions.put(localSession.getId(), new StoredSession(SerializationUtils.serialize(localSession), expirationTime));
+        if (expirationTime != Long.MAX_VALUE) {
+            wheel.get(slot(expirationTime / TICK_IN_MILLISECONDS)).add(localSession.getId());
+        }
+    }
+
+    @Override
+    public LocalSession findById(String id) {
+        StoredSession storedSession = sessions.get(id);
+        if (storedSession == null) {
+            return null;
+        }
+        if (storedSession.getExpirationTime() < System.currentTimeMillis()) {
+            sessions.remove(id, storedSession);
+            return null;
+        }
+        LocalSession session = (LocalSession) SerializationUtils.deserialize(storedSession.getData());
+        TaraSession taraSession = session.getAttribute(TARA_SESSION);
+        if (oidcClientCache != null && taraSession != null && !oidcClientCache.resolve(taraSession)) {
+            deleteById(id);
+            return null;
+        }
+        return session;
+    }
+
+    @Override
+    public void deleteById(String id) {
+        sessions.remove(id);
+        log.info("Session is removed from cache: {}", id);
+    }
+
+    int size() {
+        return sessions.size();
+    }
+
+    void removeExpiredSessions() {
+        try {
+            long now = System.currentTimeMillis();
+            long currentTick = now / TICK_IN_MILLISECONDS;
+            int removedCount = 0;
+            for (long tick = lastTick; tick <= currentTick; tick++) {
+                removedCount += removeExpiredSessions(slot(tick), now);
+            }
+            lastTick = currentTick;
+            if (removedCount > 0) {
+                log.debug("Removed expired sessions: {}", removedCount);
+            }
+        } catch (Exception e) {
+            log.error("Unable to remove expired sessions: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Slot may contain ids of sessions that have been saved again since, with a later expiration time in another slot,
+     * or that expire in a later round of the wheel. Ids of the former are removed from the slot, the latter are kept.
+     */
+    private int removeExpiredSessions(int slot, long now) {
+        int removedCount = 0;
+        Iterator<String> ids = wheel.get(slot).iterator();
+        while (ids.hasNext()) {
+            String id = ids.next();
+            StoredSession storedSession = sessions.get(id);
+            if (storedSession == null) {
+                ids.remove();
+            } else if (storedSession.getExpirationTime() < now) {
+                if (sessions.remove(id, storedSession)) {
+                    removedCount++;
+                }
+                ids.remove();
+            } else if (slot(storedSession.getExpirationTime() / TICK_IN_MILLISECONDS) != slot) {
+                ids.remove();
+            }
+        }
+        return removedCount;
+    }
+
+    private static int slot(long tick) {
+        return (int) (tick % WHEEL_SIZE);
+    }
+
+    private void logStateChange(LocalSession localSession, TaraSession taraSession) {
+        if (localSession.getSavedState() != taraSession.getState()) {
+            statisticsLogger.log(taraSession);
+            localSession.setSavedState(taraSession.getState());
+        }
+        if (log.isDebugEnabled()) {
+            log.debug(append(TARA_SESSION, taraSession), "Saving session with state: {}", defaultIfNull(taraSession.getState(), "NOT_SET"));
+        }
+    }
+
+    @Data
+    private static final class StoredSession {
+        private final byte[] data;
+        private final long expirationTime;
+    }
+
+    @Data
+    static final class LocalSession implements Session, Serializable {
+        private static final long serialVersionUID = -2420457806946113542L;
+
+        @Delegate(excludes = OriginalId.class)
+        private final MapSession mapSession = new MapSession();
+
+        /**
+         * Id the session is stored with, {@link MapSession} does not allow updating its own after the id is changed.
+         */
+        private String originalId = mapSession.getId();
+
+        private TaraAuthenticationState savedState;
+    }
+
+    private interface OriginalId {
+        String getOriginalId();
+    }
+}
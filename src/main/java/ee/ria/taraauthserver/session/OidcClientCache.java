@@ -0,0 +1,102 @@
+package ee.ria.taraauthserver.session;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.cache.Cache;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Shared store of OIDC client metadata referenced by sessions. Metadata is the same for every session of a client, so it
+ * is stored once per client and metadata version in {@link ee.ria.taraauthserver.config.IgniteCacheConfiguration#OIDC_CLIENT_CACHE_NAME}
+ * instead of being copied into every session. Sessions only store {@link TaraSession.MetaData#getOidcClientReference()}.
+ * Enabled with {@code tara.session.oidc-client-references-enabled}, metadata is stored with every session otherwise.
+ * <p>
+ * Reference consists of client id and a hash of the metadata, so a client metadata change in Hydra results in a new
+ * reference and sessions created before the change keep resolving the metadata they were created with. Stored metadata
+ * expires twice the session timeout after it was last read, it is read whenever a session referencing it is loaded or
+ * saved and stored again on save if it is missing. If metadata can not be stored, the session is stored with metadata
+ * inline.
+ * <p>
+ * Every resolved session gets its own copy of the metadata.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(value = "tara.session.oidc-client-references-enabled", havingValue = "true")
+class OidcClientCache {
+    private final Cache<String, TaraSession.OidcClient> oidcClientMetadataCache;
+
+    OidcClientCache(@Qualifier("oidcClientMetadataCache") Cache<String, TaraSession.OidcClient> oidcClientMetadataCache) {
+        this.oidcClientMetadataCache = oidcClientMetadataCache;
+    }
+
+    void register(TaraSession taraSession) {
+        register(taraSession.getLoginRequestInfo());
+        register(taraSession.getGovssoLoginRequestInfo());
+    }
+
+    /**
+     * @return {@code false} if client metadata referenced by the session is not found, in which case the session can not
+     * be used
+     */
+    boolean resolve(TaraSession taraSession) {
+        return resolve(taraSession.getLoginRequestInfo()) & resolve(taraSession.getGovssoLoginRequestInfo());
+    }
+
+    private void register(TaraSession.LoginRequestInfo loginRequestInfo) {
+        TaraSession.MetaData metaData = getMetaData(loginRequestInfo);
+        if (metaData == null || metaData.getOidcClient() == null) {
+            return;
+        }
+        TaraSession.OidcClient oidcClient = metaData.getOidcClient();
+        String reference = metaData.getOidcClientReference();
+        if (reference == null) {
+            reference = createReference(loginRequestInfo.getClientId(), oidcClient);
+        }
+        try {
+            // Read instead of containsKey, as only reading moves the expiration time of the stored metadata forward
+            if (oidcClientMetadataCache.get(reference) == null) {
+                oidcClientMetadataCache.put(reference, oidcClient);
+                log.debug("Registered OIDC client metadata: {}", reference);
+            }
+            metaData.setOidcClientReference(reference);
+        } catch (RuntimeException e) {
+            log.warn("Unable to register OIDC client metadata, storing it with session: {}", e.getMessage(), e);
+            metaData.setOidcClientReference(null);
+        }
+    }
+
+    private boolean resolve(TaraSession.LoginRequestInfo loginRequestInfo) {
+        TaraSession.MetaData metaData = getMetaData(loginRequestInfo);
+        if (metaData == null || metaData.getOidcClientReference() == null || metaData.getOidcClient() != null) {
+            return true;
+        }
+        String reference = metaData.getOidcClientReference();
+        TaraSession.OidcClient oidcClient = oidcClientMetadataCache.get(reference);
+        if (oidcClient == null) {
+            log.error("OIDC client metadata not found: {}", reference);
+            return false;
+        }
+        metaData.setOidcClient(oidcClient);
+        return true;
+    }
+
+    private TaraSession.MetaData getMetaData(TaraSession.LoginRequestInfo loginRequestInfo) {
+        if (loginRequestInfo == null || loginRequestInfo.getClient() == null) {
+            return null;
+        }
+        return loginRequestInfo.getClient().getMetaData();
+    }
+
+    private String createReference(String clientId, TaraSession.OidcClient oidcClient) {
+        try {
+            return clientId + ":" + DigestUtils.sha256Hex(TaraSessionCodec.encode(oidcClient));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package ee.ria.taraauthserver.session;
+
+import lombok.RequiredArgsConstructor;
+import org.apache.ignite.binary.BinaryObject;
+import org.apache.ignite.cache.CacheEntryProcessor;
+
+import javax.cache.processor.MutableEntry;
+
+import static ee.ria.taraauthserver.session.IgniteSessionRepository.VERSION_FIELD;
+import static ee.ria.taraauthserver.session.SessionWriteResult.APPLIED;
+import static ee.ria.taraauthserver.session.SessionWriteResult.VERSION_CONFLICT;
+
+/**
+ * Replaces the stored session only if it still has the version the session was loaded with. Compared to
+ * {@code replace(key, oldValue, newValue)}, only the version is sent along with the new value instead of the whole old session.
+ * A session that is no longer present in cache is stored as is.
+ */
+@RequiredArgsConstructor
+class SessionCompareAndSetEntryProcessor implements CacheEntryProcessor<String, BinaryObject, SessionWriteResult> {
+    private static final long serialVersionUID = -5153858622454381737L;
+
+    private final long expectedVersion;
+    private final BinaryObject session;
+
+    @Override
+    public SessionWriteResult process(MutableEntry<String, BinaryObject> entry, Object... arguments) {
+        if (entry.exists() && !Long.valueOf(expectedVersion).equals(entry.getValue().field(VERSION_FIELD))) {
+            return VERSION_CONFLICT;
+        }
+        entry.setValue(session);
+        return APPLIED;
+    }
+}
@@ -0,0 +1,34 @@
+package ee.ria.taraauthserver.session;
+
+import lombok.RequiredArgsConstructor;
+import org.apache.ignite.binary.BinaryObject;
+import org.apache.ignite.cache.CacheEntryProcessor;
+
+import javax.cache.processor.MutableEntry;
+
+import static ee.ria.taraauthserver.session.IgniteSessionRepository.EXPIRATION_TIME_FIELD;
+
+/**
+ * Removes the session only if it is still expired at the given time, so that a session saved after it was found to be
+ * expired is not removed.
+ */
+@RequiredArgsConstructor
+class SessionExpiryEntryProcessor implements CacheEntryProcessor<String, BinaryObject, Boolean> {
+    private static final long serialVersionUID = -3905823457103842313L;
+
+    private final long now;
+
+    @Override
+    public Boolean process(MutableEntry<String, BinaryObject> entry, Object... arguments) {
+        if (entry.exists() && isExpired(entry.getValue(), now)) {
+            entry.remove();
+            return true;
+        }
+        return false;
+    }
+
+    static boolean isExpired(BinaryObject session, long now) {
+        Long expirationTime = session.field(EXPIRATION_TIME_FIELD);
+        return expirationTime != null && expirationTime < now;
+    }
+}
@@ -0,0 +1,93 @@
+package ee.ria.taraauthserver.session;
+
+import ee.ria.taraauthserver.config.properties.SessionConfigurationProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ignite.IgniteCache;
+import org.apache.ignite.binary.BinaryObject;
+import org.apache.ignite.cache.query.QueryCursor;
+import org.apache.ignite.cache.query.ScanQuery;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.cache.Cache;
+import javax.cache.processor.EntryProcessorResult;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Periodically removes expired sessions from the session cache partitions stored on the local node. Expiration is
+ * checked from the expiration time field of the stored binary object, sessions are not deserialized. Removal is done in
+ * batches, each batch with a single cache operation.
+ * <p>
+ * Ignite removes sessions expired by the cache expiry policy itself. Sweeper removes sessions that are inactive for
+ * longer than their max inactive interval, but not yet expired by the expiry policy.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(value = "tara.session.expiry-sweeper.enabled")
+class SessionExpirySweeper {
+    private final IgniteCache<String, BinaryObject> sessionCache;
+    private final SessionConfigurationProperties sessionConfigurationProperties;
+    private final Counter removedSessionsCounter;
+
+    SessionExpirySweeper(@Qualifier("sessionCache") Cache<String, BinaryObject> sessionCache,
+                         SessionConfigurationProperties sessionConfigurationProperties,
+                         MeterRegistry meterRegistry) {
+        // Cast instead of unwrap, as unwrap returns the underlying cache without the keep binary flag.
+        this.sessionCache = (IgniteCache<String, BinaryObject>) sessionCache;
+        this.sessionConfigurationProperties = sessionConfigurationProperties;
+        this.removedSessionsCounter = Counter.builder("tara.session.expiry.sweeper.removed")
+                .description("Number of expired sessions removed by the session expiry sweeper")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${tara.session.expiry-sweeper.interval-in-milliseconds:60000}")
+    public void removeExpiredSessions() {
+        try {
+            int removedCount = sweep(System.currentTimeMillis());
+            if (removedCount > 0) {
+                log.info("Removed expired sessions: {}", removedCount);
+            }
+        } catch (Exception e) {
+            log.error("Unable to remove expired sessions: {}", e.getMessage(), e);
+        }
+    }
+
+    int sweep(long now) {
+        int batchSize = sessionConfigurationProperties.getExpirySweeper().getBatchSize();
+        ScanQuery<String, BinaryObject> query = new ScanQuery<>((id, session) -> SessionExpiryEntryProcessor.isExpired(session, now));
+        query.setLocal(true);
+        int removedCount = 0;
+        Set<String> batch = new HashSet<>();
+        try (QueryCursor<String> cursor = sessionCache.query(query, Cache.Entry::getKey)) {
+            for (String id : cursor) {
+                batch.add(id);
+                if (batch.size() >= batchSize) {
+                    removedCount += remove(batch, now);
+                    batch.clear();
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            removedCount += remove(batch, now);
+        }
+        removedSessionsCounter.increment(removedCount);
+        return removedCount;
+    }
+
+    private int remove(Set<String> ids, long now) {
+        Map<String, EntryProcessorResult<Boolean>> results = sessionCache.invokeAll(ids, new SessionExpiryEntryProcessor(now));
+        int removedCount = 0;
+        for (EntryProcessorResult<Boolean> result : results.values()) {
+            if (Boolean.TRUE.equals(result.get())) {
+                removedCount++;
+            }
+        }
+        return removedCount;
+    }
+}
@@ -0,0 +1,125 @@
+package ee.ria.taraauthserver.session;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import ee.ria.taraauthserver.config.properties.SessionConfigurationProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ignite.binary.BinaryObject;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static ee.ria.taraauthserver.session.IgniteSessionRepository.EXPIRATION_TIME_FIELD;
+import static ee.ria.taraauthserver.session.IgniteSessionRepository.VERSION_FIELD;
+
+/**
+ * Per node cache of sessions read from the session cache. A locally cached session is used only when its version matches
+ * the version of the session stored in the session cache, otherwise the session is fetched again. Only the version and the
+ * expiration time are read from the node owning the session, so poll requests avoid transferring the whole session over
+ * the network on every request. The expiration time is always taken from the stored session, as it can be moved forward
+ * by another node without changing the version. With {@link SessionConfigurationProperties.ExpiryPolicy#TOUCHED} the
+ * stored session is touched by the same call.
+ * <p>
+ * Sessions are kept in binary form and deserialized on every read, as concurrent requests of the same session must not
+ * share the same mutable session instance.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(value = "tara.session.near-cache.enabled")
+class SessionNearCache {
+    private static final String METRIC_NAME_PREFIX = "tara.session.near.cache";
+
+    private final Cache<String, CachedSession> cache;
+    private final Counter hitCounter;
+    private final Counter staleCounter;
+    private final Counter missCounter;
+
+    SessionNearCache(SessionConfigurationProperties sessionConfigurationProperties, MeterRegistry meterRegistry,
+                     @Value("${spring.session.timeout}") Duration sessionTimeout) {
+        SessionConfigurationProperties.NearCache properties = sessionConfigurationProperties.getNearCache();
+        Assert.isTrue(properties.getTimeToLive().compareTo(sessionTimeout) < 0, "Session near cache time to live must be shorter than session timeout.");
+        cache = Caffeine.newBuilder()
+                .maximumSize(properties.getMaximumSize())
+                .expireAfterWrite(properties.getTimeToLive())
+                .recordStats()
+                .build();
+        hitCounter = requestCounter("hit", meterRegistry);
+        staleCounter = requestCounter("stale", meterRegistry);
+        missCounter = requestCounter("miss", meterRegistry);
+        Gauge.builder(METRIC_NAME_PREFIX + ".size", cache, Cache::estimatedSize)
+                .description("Number of sessions in the session near cache")
+                .register(meterRegistry);
+        FunctionCounter.builder(METRIC_NAME_PREFIX + ".evictions", cache, c -> c.stats().evictionCount())
+                .description("Number of sessions evicted from the session near cache by size or time to live")
+                .register(meterRegistry);
+        log.info("Session near cache enabled with maximum size {} and time to live {}", properties.getMaximumSize(), properties.getTimeToLive());
+    }
+
+    private static Counter requestCounter(String result, MeterRegistry meterRegistry) {
+        return Counter.builder(METRIC_NAME_PREFIX + ".requests")
+                .description("Session near cache lookups. Hit rate is the share of lookups with result 'hit'")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Returns the locally cached session if its version matches the stored session, {@code null} otherwise. The returned
+     * session carries the expiration time of the stored session.
+     *
+     * @param touch whether to move the expiration time of the stored session forward, using the maximum inactive interval
+     *              of the cached session, which can change only together with the version
+     */
+    BinaryObject get(String id, javax.cache.Cache<String, BinaryObject> sessionCache, boolean touch) {
+        CachedSession cachedSession = cache.getIfPresent(id);
+        if (cachedSession == null) {
+            missCounter.increment();
+            return null;
+        }
+        StoredSessionVersion storedVersion = sessionCache.invoke(id, touch
+                ? new SessionTouchEntryProcessor(IgniteSessionRepository.IgniteSession.calculateExpirationTime(Instant.now(), cachedSession.getMaxInactiveInterval()))
+                : new SessionVersionEntryProcessor());
+        if (storedVersion == null || !cachedSession.getVersion().equals(storedVersion.getVersion())) {
+            staleCounter.increment();
+            cache.invalidate(id);
+            return null;
+        }
+        hitCounter.increment();
+        BinaryObject binaryObject = cachedSession.getBinaryObject();
+        Long expirationTime = storedVersion.getExpirationTime();
+        if (expirationTime != null && !expirationTime.equals(binaryObject.field(EXPIRATION_TIME_FIELD))) {
+            binaryObject = binaryObject.toBuilder().setField(EXPIRATION_TIME_FIELD, expirationTime, long.class).build();
+        }
+        return binaryObject;
+    }
+
+    void put(String id, BinaryObject binaryObject, Duration maxInactiveInterval) {
+        Long version = binaryObject.field(VERSION_FIELD);
+        if (version == null) {
+            cache.invalidate(id);
+        } else {
+            cache.put(id, new CachedSession(version, binaryObject, maxInactiveInterval));
+        }
+    }
+
+    void invalidate(String id) {
+        cache.invalidate(id);
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    private static final class CachedSession {
+        private final Long version;
+        private final BinaryObject binaryObject;
+        private final Duration maxInactiveInterval;
+    }
+}
@@ -0,0 +1,36 @@
+package ee.ria.taraauthserver.session;
+
+import lombok.RequiredArgsConstructor;
+import org.apache.ignite.binary.BinaryObject;
+import org.apache.ignite.cache.CacheEntryProcessor;
+
+import javax.cache.processor.MutableEntry;
+
+import static ee.ria.taraauthserver.session.IgniteSessionRepository.EXPIRATION_TIME_FIELD;
+
+/**
+ * Moves the expiration time of the stored session forward on read, without sending the session over the network. The
+ * expiration time is never moved backwards, an already expired session is not revived and the version is not changed,
+ * so a read never conflicts with a concurrent save. Returns the version and the resulting expiration time of the stored
+ * session, so that the session near cache can check its copy in the same round trip.
+ */
+@RequiredArgsConstructor
+class SessionTouchEntryProcessor implements CacheEntryProcessor<String, BinaryObject, StoredSessionVersion> {
+    private static final long serialVersionUID = 2214513402318930562L;
+
+    private final long expirationTime;
+
+    @Override
+    public StoredSessionVersion process(MutableEntry<String, BinaryObject> entry, Object... arguments) {
+        if (!entry.exists()) {
+            return null;
+        }
+        BinaryObject session = entry.getValue();
+        Long storedExpirationTime = session.field(EXPIRATION_TIME_FIELD);
+        if (storedExpirationTime != null && storedExpirationTime >= System.currentTimeMillis() && storedExpirationTime < expirationTime) {
+            session = session.toBuilder().setField(EXPIRATION_TIME_FIELD, expirationTime, long.class).build();
+            entry.setValue(session);
+        }
+        return StoredSessionVersion.of(session);
+    }
+}
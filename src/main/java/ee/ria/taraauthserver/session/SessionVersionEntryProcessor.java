@@ -0,0 +1,19 @@
+package ee.ria.taraauthserver.session;
+
+import org.apache.ignite.binary.BinaryObject;
+import org.apache.ignite.cache.CacheEntryProcessor;
+
+import javax.cache.processor.MutableEntry;
+
+/**
+ * Reads the version and expiration time of the stored session on the node that owns the cache entry, without
+ * transferring or deserializing the session itself.
+ */
+class SessionVersionEntryProcessor implements CacheEntryProcessor<String, BinaryObject, StoredSessionVersion> {
+    private static final long serialVersionUID = -3466186618151416264L;
+
+    @Override
+    public StoredSessionVersion process(MutableEntry<String, BinaryObject> entry, Object... arguments) {
+        return entry.exists() ? StoredSessionVersion.of(entry.getValue()) : null;
+    }
+}
@@ -0,0 +1,176 @@
+package ee.ria.taraauthserver.session;
+
+import ee.ria.taraauthserver.config.properties.SessionConfigurationProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ignite.IgniteCache;
+import org.apache.ignite.binary.BinaryObject;
+import org.apache.ignite.lang.IgniteFuture;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import javax.cache.Cache;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Collapses saves of the same session made within {@code tara.session.write-coalescing.window} into a single
+ * asynchronous cache put, so that the saving thread does not wait for the cache node owning the session.
+ * <p>
+ * Sessions waiting to be written or being written are returned by {@link #getPendingWrite(String)}, so reads on the same
+ * node always see the latest saved session. Reads on other nodes see it only after it has been written.
+ * <p>
+ * At most one asynchronous put per session is in progress at a time. A synchronous write of a session first discards the
+ * pending write and waits for the put in progress, so that an older session can never overwrite a newer one.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(value = "tara.session.write-coalescing.enabled")
+class SessionWriteCoalescer {
+    private final IgniteCache<String, BinaryObject> sessionCache;
+    private final long windowInMilliseconds;
+    private final Map<String, PendingWrite> pendingWrites = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "tara-session-write-coalescer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @SuppressWarnings("unchecked")
+    SessionWriteCoalescer(@Qualifier("sessionCache") Cache<String, BinaryObject> sessionCache,
+                          SessionConfigurationProperties sessionConfigurationProperties) {
+        this.sessionCache = sessionCache.unwrap(IgniteCache.class);
+        this.windowInMilliseconds = sessionConfigurationProperties.getWriteCoalescing().getWindow().toMillis();
+    }
+
+    void submit(String id, BinaryObject session) {
+        while (true) {
+            PendingWrite pendingWrite = pendingWrites.computeIfAbsent(id, k -> new PendingWrite());
+            synchronized (pendingWrite) {
+                if (pendingWrite.removed) {
+                    continue;
+                }
+                pendingWrite.session = session;
+                scheduleFlush(id, pendingWrite);
+                return;
+            }
+        }
+    }
+
+    BinaryObject getPendingWrite(String id) {
+        PendingWrite pendingWrite = pendingWrites.get(id);
+        if (pendingWrite == null) {
+            return null;
+        }
+        synchronized (pendingWrite) {
+            return pendingWrite.session != null ? pendingWrite.session : pendingWrite.inFlightSession;
+        }
+    }
+
+    /**
+     * Discards the pending write of the session and waits until the put in progress, if any, has completed.
+     */
+    void discard(String id) {
+        PendingWrite pendingWrite = pendingWrites.get(id);
+        if (pendingWrite == null) {
+            return;
+        }
+        IgniteFuture<Void> inFlight;
+        synchronized (pendingWrite) {
+            pendingWrite.session = null;
+            inFlight = pendingWrite.inFlight;
+        }
+        if (inFlight != null) {
+            try {
+                inFlight.get();
+            } catch (Exception e) {
+                log.warn("Asynchronous session write failed: {}", id);
+            }
+        }
+        synchronized (pendingWrite) {
+            if (pendingWrite.inFlight == inFlight) {
+                pendingWrite.inFlight = null;
+                pendingWrite.inFlightSession = null;
+            }
+            removeIfIdle(id, pendingWrite);
+        }
+    }
+
+    private void scheduleFlush(String id, PendingWrite pendingWrite) {
+        if (!pendingWrite.flushScheduled) {
+            pendingWrite.flushScheduled = true;
+            scheduler.schedule(() -> flush(id, pendingWrite), windowInMilliseconds, MILLISECONDS);
+        }
+    }
+
+    private void flush(String id, PendingWrite pendingWrite) {
+        synchronized (pendingWrite) {
+            pendingWrite.flushScheduled = false;
+            if (pendingWrite.session == null) {
+                removeIfIdle(id, pendingWrite);
+                return;
+            }
+            if (pendingWrite.inFlight != null) {
+                scheduleFlush(id, pendingWrite);
+                return;
+            }
+            BinaryObject session = pendingWrite.session;
+            pendingWrite.session = null;
+            pendingWrite.inFlightSession = session;
+            IgniteFuture<Void> inFlight = sessionCache.putAsync(id, session);
+            pendingWrite.inFlight = inFlight;
+            inFlight.listen(future -> complete(id, pendingWrite, future));
+        }
+    }
+
+    private void complete(String id, PendingWrite pendingWrite, IgniteFuture<Void> future) {
+        try {
+            future.get();
+        } catch (Exception e) {
+            log.error("Asynchronous session write failed: {}", id, e);
+        }
+        synchronized (pendingWrite) {
+            if (pendingWrite.inFlight == future) {
+                pendingWrite.inFlight = null;
+                pendingWrite.inFlightSession = null;
+            }
+            removeIfIdle(id, pendingWrite);
+        }
+    }
+
+    private void removeIfIdle(String id, PendingWrite pendingWrite) {
+        if (pendingWrite.session == null && pendingWrite.inFlight == null && !pendingWrite.flushScheduled) {
+            pendingWrite.removed = true;
+            pendingWrites.remove(id, pendingWrite);
+        }
+    }
+
+    @PreDestroy
+    void flushAll() {
+        scheduler.shutdownNow();
+        for (Map.Entry<String, PendingWrite> entry : pendingWrites.entrySet()) {
+            BinaryObject session;
+            synchronized (entry.getValue()) {
+                session = entry.getValue().session;
+                entry.getValue().session = null;
+            }
+            if (session != null) {
+                discard(entry.getKey());
+                sessionCache.put(entry.getKey(), session);
+            }
+        }
+    }
+
+    private static final class PendingWrite {
+        private BinaryObject session;
+        private BinaryObject inFlightSession;
+        private IgniteFuture<Void> inFlight;
+        private boolean flushScheduled;
+        private boolean removed;
+    }
+}
@@ -0,0 +1,9 @@
+package ee.ria.taraauthserver.session;
+
+/**
+ * Result of a conditional session write executed on the node that owns the session.
+ */
+enum SessionWriteResult {
+    APPLIED,
+    VERSION_CONFLICT
+}
@@ -0,0 +1,30 @@
+package ee.ria.taraauthserver.session;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.apache.ignite.binary.BinaryObject;
+
+import java.io.Serializable;
+
+import static ee.ria.taraauthserver.session.IgniteSessionRepository.EXPIRATION_TIME_FIELD;
+import static ee.ria.taraauthserver.session.IgniteSessionRepository.VERSION_FIELD;
+
+/**
+ * Version and expiration time of a stored session, as read by an entry processor on the node that owns the session.
+ */
+@Getter
+@RequiredArgsConstructor
+class StoredSessionVersion implements Serializable {
+    private static final long serialVersionUID = 4650939153311702291L;
+
+    private final Long version;
+
+    /**
+     * {@code null} for sessions stored before the expiration time field was introduced.
+     */
+    private final Long expirationTime;
+
+    static StoredSessionVersion of(BinaryObject session) {
+        return new StoredSessionVersion(session.field(VERSION_FIELD), session.field(EXPIRATION_TIME_FIELD));
+    }
+}
@@ -9,10 +9,13 @@ import ee.ria.taraauthserver.config.properties.LevelOfAssurance;
 import ee.ria.taraauthserver.config.properties.SPType;
 import ee.ria.taraauthserver.config.properties.TaraScope;
 import ee.ria.taraauthserver.error.ErrorCode;
+import lombok.AccessLevel;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
+import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
+import lombok.Setter;
 import lombok.ToString;
 import lombok.extern.slf4j.Slf4j;
 import net.logstash.logback.util.StringUtils;
@@ -52,7 +55,13 @@ import static org.springframework.util.CollectionUtils.isEmpty;
 @RequiredArgsConstructor
 public class TaraSession implements Serializable {
     public static final String TARA_SESSION = "tara.session";
-    private final String sessionId;
+
+    /**
+     * Not final, as {@link TaraSessionBinarySerializer} restores it into an instance created by Ignite.
+     */
+    @NonNull
+    @Setter(AccessLevel.PACKAGE)
+    private String sessionId;
 
     private TaraAuthenticationState state;
     private LoginRequestInfo loginRequestInfo;
@@ -72,6 +81,14 @@ public class TaraSession implements Serializable {
         this.state = newState;
     }
 
+    /**
+     * Sets state without logging it as a state change, used when restoring a stored session or re-applying a state change
+     * that has already been logged.
+     */
+    public void restoreState(TaraAuthenticationState state) {
+        this.state = state;
+    }
+
     public boolean isEmailScopeRequested() {
         return isScopeRequested(EMAIL);
     }
@@ -340,9 +357,29 @@ public class TaraSession implements Serializable {
         @Valid
         @JsonProperty("oidc_client")
         private OidcClient oidcClient = new OidcClient();
+        /**
+         * Set when client metadata is stored once per client in {@link OidcClientCache}. The session is then stored without
+         * {@link #oidcClient}, which is restored using the reference when the session is loaded.
+         */
+        @JsonIgnore
+        private String oidcClientReference;
         @NotNull
         @JsonProperty("display_user_consent")
         private boolean displayUserConsent;
+
+        /**
+         * Used by both Java serialization and Ignite binary marshalling.
+         */
+        private Object writeReplace() {
+            if (oidcClientReference == null) {
+                return this;
+            }
+            MetaData metaData = new MetaData();
+            metaData.setOidcClient(null);
+            metaData.setOidcClientReference(oidcClientReference);
+            metaData.setDisplayUserConsent(displayUserConsent);
+            return metaData;
+        }
     }
 
     @Data
@@ -0,0 +1,35 @@
+package ee.ria.taraauthserver.session;
+
+import org.apache.ignite.binary.BinaryObjectException;
+import org.apache.ignite.binary.BinaryReader;
+import org.apache.ignite.binary.BinarySerializer;
+import org.apache.ignite.binary.BinaryWriter;
+
+import java.io.IOException;
+
+/**
+ * Stores {@link TaraSession} in Ignite using {@link TaraSessionCodec} instead of reflective binary marshalling. All nodes of
+ * the cluster must use the same serializer for {@link TaraSession}.
+ *
+ * @see ee.ria.taraauthserver.config.IgniteCacheConfiguration
+ */
+public class TaraSessionBinarySerializer implements BinarySerializer {
+
+    @Override
+    public void writeBinary(Object obj, BinaryWriter writer) throws BinaryObjectException {
+        try {
+            writer.rawWriter().writeByteArray(TaraSessionCodec.encode((TaraSession) obj));
+        } catch (IOException e) {
+            throw new BinaryObjectException("Unable to serialize session", e);
+        }
+    }
+
+    @Override
+    public void readBinary(Object obj, BinaryReader reader) throws BinaryObjectException {
+        try {
+            TaraSessionCodec.decode(reader.rawReader().readByteArray(), (TaraSession) obj);
+        } catch (IOException e) {
+            throw new BinaryObjectException("Unable to deserialize session", e);
+        }
+    }
+}
@@ -0,0 +1,521 @@
+package ee.ria.taraauthserver.session;
+
+import ee.ria.taraauthserver.config.properties.AuthenticationType;
+import ee.ria.taraauthserver.config.properties.LevelOfAssurance;
+import ee.ria.taraauthserver.config.properties.SPType;
+import ee.ria.taraauthserver.error.ErrorCode;
+import lombok.experimental.UtilityClass;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.net.URI;
+import java.net.URL;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Compact binary encoding of the {@link TaraSession} object graph.
+ * <ul>
+ *     <li>Fields are written in a fixed order without field names or type headers.</li>
+ *     <li>Lengths, sizes and enum ordinals are written as variable length integers.</li>
+ *     <li>Enums are written by ordinal, as is done by Ignite's default binary marshalling.</li>
+ *     <li>Frequently repeated strings (locales, scopes, acr values) are replaced by an index into {@link #STRING_DICTIONARY}.</li>
+ * </ul>
+ * Client metadata is written only if the session does not reference metadata stored in {@link OidcClientCache}.
+ * <p>
+ * Fields must only be appended to the end of the format and {@link #STRING_DICTIONARY} must only be extended, otherwise
+ * {@link #FORMAT_VERSION} has to be changed.
+ *
+ * @see TaraSessionBinarySerializer
+ */
+@UtilityClass
+class TaraSessionCodec {
+    static final byte FORMAT_VERSION = 2;
+    static final List<String> STRING_DICTIONARY = List.of(
+            "et", "en", "ru", "EE",
+            "openid", "idcard", "mid", "smartid", "eidas", "eidasonly", "phone", "email", "legalperson",
+            "low", "substantial", "high");
+
+    private static final Map<String, Integer> STRING_DICTIONARY_INDEX = new HashMap<>();
+    private static final TaraAuthenticationState[] STATES = TaraAuthenticationState.values();
+    private static final AuthenticationType[] AUTHENTICATION_TYPES = AuthenticationType.values();
+    private static final LevelOfAssurance[] LEVELS_OF_ASSURANCE = LevelOfAssurance.values();
+    private static final ErrorCode[] ERROR_CODES = ErrorCode.values();
+    private static final SPType[] SP_TYPES = SPType.values();
+
+    private static final int AUTHENTICATION_RESULT = 1;
+    private static final int ID_CARD_AUTHENTICATION_RESULT = 2;
+    private static final int MID_AUTHENTICATION_RESULT = 3;
+    private static final int SID_AUTHENTICATION_RESULT = 4;
+    private static final int EIDAS_AUTHENTICATION_RESULT = 5;
+
+    static {
+        for (int i = 0; i < STRING_DICTIONARY.size(); i++) {
+            STRING_DICTIONARY_INDEX.put(STRING_DICTIONARY.get(i), i);
+        }
+    }
+
+    byte[] encode(TaraSession session) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(FORMAT_VERSION);
+        writeString(out, session.getSessionId());
+        writeEnum(out, session.getState());
+        writeLoginRequestInfo(out, session.getLoginRequestInfo());
+        writeLoginRequestInfo(out, session.getGovssoLoginRequestInfo());
+        writeAuthenticationTypes(out, session.getAllowedAuthMethods());
+        writeAuthenticationResult(out, session.getAuthenticationResult());
+        writeLegalPersons(out, session.getLegalPersonList());
+        writeLegalPerson(out, session.getSelectedLegalPerson());
+        writeString(out, session.getConsentChallenge());
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Encodes client metadata the same way as it is encoded within a session. Translations are written in key order, so
+     * equal metadata always results in equal bytes.
+     */
+    byte[] encode(TaraSession.OidcClient oidcClient) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(bytes);
+        writeOidcClient(out, oidcClient);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    TaraSession decode(byte[] data) throws IOException {
+        DataInputStream in = openStream(data);
+        TaraSession session = new TaraSession(readString(in));
+        readFields(in, session);
+        return session;
+    }
+
+    void decode(byte[] data, TaraSession target) throws IOException {
+        DataInputStream in = openStream(data);
+        target.setSessionId(readString(in));
+        readFields(in, target);
+    }
+
+    private DataInputStream openStream(byte[] data) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        byte formatVersion = in.readByte();
+        if (formatVersion != FORMAT_VERSION) {
+            throw new StreamCorruptedException("Unsupported session format version: " + formatVersion);
+        }
+        return in;
+    }
+
+    private void readFields(DataInputStream in, TaraSession session) throws IOException {
+        session.restoreState(readEnum(in, STATES));
+        session.setLoginRequestInfo(readLoginRequestInfo(in));
+        session.setGovssoLoginRequestInfo(readLoginRequestInfo(in));
+        session.setAllowedAuthMethods(readAuthenticationTypes(in));
+        session.setAuthenticationResult(readAuthenticationResult(in));
+        session.setLegalPersonList(readLegalPersons(in));
+        session.setSelectedLegalPerson(readLegalPerson(in));
+        session.setConsentChallenge(readString(in));
+    }
+
+    private void writeLoginRequestInfo(DataOutputStream out, TaraSession.LoginRequestInfo loginRequestInfo) throws IOException {
+        out.writeBoolean(loginRequestInfo != null);
+        if (loginRequestInfo == null) {
+            return;
+        }
+        writeString(out, loginRequestInfo.getChallenge());
+        out.writeBoolean(loginRequestInfo.isLoginChallengeExpired());
+        writeClient(out, loginRequestInfo.getClient());
+        writeStrings(out, loginRequestInfo.getRequestedScopes());
+        TaraSession.OidcContext oidcContext = loginRequestInfo.getOidcContext();
+        out.writeBoolean(oidcContext != null);
+        if (oidcContext != null) {
+            writeStrings(out, oidcContext.getAcrValues());
+            writeStrings(out, oidcContext.getUiLocales());
+        }
+        writeString(out, loginRequestInfo.getUrl() == null ? null : loginRequestInfo.getUrl().toString());
+        writeString(out, loginRequestInfo.getLoginVerifierRedirectUrl());
+    }
+
+    private TaraSession.LoginRequestInfo readLoginRequestInfo(DataInputStream in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        TaraSession.LoginRequestInfo loginRequestInfo = new TaraSession.LoginRequestInfo();
+        loginRequestInfo.setChallenge(readString(in));
+        loginRequestInfo.setLoginChallengeExpired(in.readBoolean());
+        loginRequestInfo.setClient(readClient(in));
+        loginRequestInfo.setRequestedScopes(readStrings(in));
+        TaraSession.OidcContext oidcContext = null;
+        if (in.readBoolean()) {
+            oidcContext = new TaraSession.OidcContext();
+            oidcContext.setAcrValues(readStrings(in));
+            oidcContext.setUiLocales(readStrings(in));
+        }
+        loginRequestInfo.setOidcContext(oidcContext);
+        String url = readString(in);
+        loginRequestInfo.setUrl(url == null ? null : new URL(url));
+        loginRequestInfo.setLoginVerifierRedirectUrl(readString(in));
+        return loginRequestInfo;
+    }
+
+    private void writeClient(DataOutputStream out, TaraSession.Client client) throws IOException {
+        out.writeBoolean(client != null);
+        if (client == null) {
+            return;
+        }
+        writeString(out, client.getClientId());
+        writeString(out, client.getScope());
+        TaraSession.MetaData metaData = client.getMetaData();
+        out.writeBoolean(metaData != null);
+        if (metaData != null) {
+            out.writeBoolean(metaData.isDisplayUserConsent());
+            writeString(out, metaData.getOidcClientReference());
+            writeOidcClient(out, metaData.getOidcClientReference() == null ? metaData.getOidcClient() : null);
+        }
+    }
+
+    private TaraSession.Client readClient(DataInputStream in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        TaraSession.Client client = new TaraSession.Client();
+        client.setClientId(readString(in));
+        client.setScope(readString(in));
+        TaraSession.MetaData metaData = null;
+        if (in.readBoolean()) {
+            metaData = new TaraSession.MetaData();
+            metaData.setDisplayUserConsent(in.readBoolean());
+            metaData.setOidcClientReference(readString(in));
+            metaData.setOidcClient(readOidcClient(in));
+        }
+        client.setMetaData(metaData);
+        return client;
+    }
+
+    private void writeOidcClient(DataOutputStream out, TaraSession.OidcClient oidcClient) throws IOException {
+        out.writeBoolean(oidcClient != null);
+        if (oidcClient == null) {
+            return;
+        }
+        writeStringMap(out, oidcClient.getNameTranslations());
+        writeStringMap(out, oidcClient.getShortNameTranslations());
+        writeString(out, oidcClient.getLegacyReturnUrl());
+        writeString(out, oidcClient.getEidasRequesterId() == null ? null : oidcClient.getEidasRequesterId().toString());
+        TaraSession.Institution institution = oidcClient.getInstitution();
+        out.writeBoolean(institution != null);
+        if (institution != null) {
+            writeString(out, institution.getRegistryCode());
+            writeEnum(out, institution.getSector());
+        }
+        TaraSession.SmartIdSettings smartIdSettings = oidcClient.getSmartIdSettings();
+        out.writeBoolean(smartIdSettings != null);
+        if (smartIdSettings != null) {
+            writeString(out, smartIdSettings.getRelyingPartyUuid());
+            writeString(out, smartIdSettings.getRelyingPartyName());
+            Boolean additionalCheck = smartIdSettings.getShouldUseAdditionalVerificationCodeCheck();
+            out.writeByte(additionalCheck == null ? 0 : additionalCheck ? 1 : 2);
+        }
+        TaraSession.MidSettings midSettings = oidcClient.getMidSettings();
+        out.writeBoolean(midSettings != null);
+        if (midSettings != null) {
+            writeString(out, midSettings.getRelyingPartyUuid());
+            writeString(out, midSettings.getRelyingPartyName());
+        }
+        writeString(out, oidcClient.getLogo());
+    }
+
+    private TaraSession.OidcClient readOidcClient(DataInputStream in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        TaraSession.OidcClient oidcClient = new TaraSession.OidcClient();
+        oidcClient.setNameTranslations(readStringMap(in));
+        oidcClient.setShortNameTranslations(readStringMap(in));
+        oidcClient.setLegacyReturnUrl(readString(in));
+        String eidasRequesterId = readString(in);
+        oidcClient.setEidasRequesterId(eidasRequesterId == null ? null : URI.create(eidasRequesterId));
+        TaraSession.Institution institution = null;
+        if (in.readBoolean()) {
+            institution = new TaraSession.Institution();
+            institution.setRegistryCode(readString(in));
+            institution.setSector(readEnum(in, SP_TYPES));
+        }
+        oidcClient.setInstitution(institution);
+        TaraSession.SmartIdSettings smartIdSettings = null;
+        if (in.readBoolean()) {
+            smartIdSettings = new TaraSession.SmartIdSettings();
+            smartIdSettings.setRelyingPartyUuid(readString(in));
+            smartIdSettings.setRelyingPartyName(readString(in));
+            byte additionalCheck = in.readByte();
+            smartIdSettings.setShouldUseAdditionalVerificationCodeCheck(additionalCheck == 0 ? null : additionalCheck == 1);
+        }
+        oidcClient.setSmartIdSettings(smartIdSettings);
+        TaraSession.MidSettings midSettings = null;
+        if (in.readBoolean()) {
+            midSettings = new TaraSession.MidSettings();
+            midSettings.setRelyingPartyUuid(readString(in));
+            midSettings.setRelyingPartyName(readString(in));
+        }
+        oidcClient.setMidSettings(midSettings);
+        oidcClient.setLogo(readString(in));
+        return oidcClient;
+    }
+
+    private void writeAuthenticationResult(DataOutputStream out, TaraSession.AuthenticationResult result) throws IOException {
+        if (result == null) {
+            writeVarInt(out, 0);
+            return;
+        }
+        if (result instanceof TaraSession.IdCardAuthenticationResult) {
+            writeVarInt(out, ID_CARD_AUTHENTICATION_RESULT);
+            writeString(out, ((TaraSession.IdCardAuthenticationResult) result).getOcspUrl());
+        } else if (result instanceof TaraSession.MidAuthenticationResult) {
+            writeVarInt(out, MID_AUTHENTICATION_RESULT);
+            writeString(out, ((TaraSession.MidAuthenticationResult) result).getMidSessionId());
+        } else if (result instanceof TaraSession.SidAuthenticationResult) {
+            writeVarInt(out, SID_AUTHENTICATION_RESULT);
+            writeString(out, ((TaraSession.SidAuthenticationResult) result).getSidSessionId());
+        } else if (result instanceof TaraSession.EidasAuthenticationResult) {
+            writeVarInt(out, EIDAS_AUTHENTICATION_RESULT);
+            writeString(out, ((TaraSession.EidasAuthenticationResult) result).getRelayState());
+        } else if (result.getClass() == TaraSession.AuthenticationResult.class) {
+            writeVarInt(out, AUTHENTICATION_RESULT);
+        } else {
+            throw new IllegalArgumentException("Unsupported authentication result type: " + result.getClass().getName());
+        }
+        writeString(out, result.getEmail());
+        writeString(out, result.getIdCode());
+        writeString(out, result.getCountry());
+        writeString(out, result.getFirstName());
+        writeString(out, result.getLastName());
+        writeString(out, result.getPhoneNumber());
+        writeString(out, result.getSubject());
+        out.writeBoolean(result.getDateOfBirth() != null);
+        if (result.getDateOfBirth() != null) {
+            out.writeLong(result.getDateOfBirth().toEpochDay());
+        }
+        writeEnum(out, result.getAmr());
+        writeEnum(out, result.getAcr());
+        writeEnum(out, result.getErrorCode());
+    }
+
+    private TaraSession.AuthenticationResult readAuthenticationResult(DataInputStream in) throws IOException {
+        int type = readVarInt(in);
+        TaraSession.AuthenticationResult result;
+        switch (type) {
+            case 0:
+                return null;
+            case AUTHENTICATION_RESULT:
+                result = new TaraSession.AuthenticationResult();
+                break;
+            case ID_CARD_AUTHENTICATION_RESULT:
+                TaraSession.IdCardAuthenticationResult idCardResult = new TaraSession.IdCardAuthenticationResult();
+                idCardResult.setOcspUrl(readString(in));
+                result = idCardResult;
+                break;
+            case MID_AUTHENTICATION_RESULT:
+                result = new TaraSession.MidAuthenticationResult(readString(in));
+                break;
+            case SID_AUTHENTICATION_RESULT:
+                result = new TaraSession.SidAuthenticationResult(readString(in));
+                break;
+            case EIDAS_AUTHENTICATION_RESULT:
+                TaraSession.EidasAuthenticationResult eidasResult = new TaraSession.EidasAuthenticationResult();
+                eidasResult.setRelayState(readString(in));
+                result = eidasResult;
+                break;
+            default:
+                throw new StreamCorruptedException("Unsupported authentication result type: " + type);
+        }
+        result.setEmail(readString(in));
+        result.setIdCode(readString(in));
+        result.setCountry(readString(in));
+        result.setFirstName(readString(in));
+        result.setLastName(readString(in));
+        result.setPhoneNumber(readString(in));
+        result.setSubject(readString(in));
+        result.setDateOfBirth(in.readBoolean() ? LocalDate.ofEpochDay(in.readLong()) : null);
+        result.setAmr(readEnum(in, AUTHENTICATION_TYPES));
+        result.setAcr(readEnum(in, LEVELS_OF_ASSURANCE));
+        result.setErrorCode(readEnum(in, ERROR_CODES));
+        return result;
+    }
+
+    private void writeLegalPersons(DataOutputStream out, List<TaraSession.LegalPerson> legalPersons) throws IOException {
+        writeSize(out, legalPersons == null ? -1 : legalPersons.size());
+        if (legalPersons != null) {
+            for (TaraSession.LegalPerson legalPerson : legalPersons) {
+                writeLegalPerson(out, legalPerson);
+            }
+        }
+    }
+
+    private List<TaraSession.LegalPerson> readLegalPersons(DataInputStream in) throws IOException {
+        int size = readSize(in);
+        if (size < 0) {
+            return null;
+        }
+        List<TaraSession.LegalPerson> legalPersons = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            legalPersons.add(readLegalPerson(in));
+        }
+        return legalPersons;
+    }
+
+    private void writeLegalPerson(DataOutputStream out, TaraSession.LegalPerson legalPerson) throws IOException {
+        out.writeBoolean(legalPerson != null);
+        if (legalPerson != null) {
+            writeString(out, legalPerson.getLegalName());
+            writeString(out, legalPerson.getLegalPersonIdentifier());
+        }
+    }
+
+    private TaraSession.LegalPerson readLegalPerson(DataInputStream in) throws IOException {
+        return in.readBoolean() ? new TaraSession.LegalPerson(readString(in), readString(in)) : null;
+    }
+
+    private void writeAuthenticationTypes(DataOutputStream out, List<AuthenticationType> authenticationTypes) throws IOException {
+        writeSize(out, authenticationTypes == null ? -1 : authenticationTypes.size());
+        if (authenticationTypes != null) {
+            for (AuthenticationType authenticationType : authenticationTypes) {
+                writeEnum(out, authenticationType);
+            }
+        }
+    }
+
+    private List<AuthenticationType> readAuthenticationTypes(DataInputStream in) throws IOException {
+        int size = readSize(in);
+        if (size < 0) {
+            return null;
+        }
+        List<AuthenticationType> authenticationTypes = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            authenticationTypes.add(readEnum(in, AUTHENTICATION_TYPES));
+        }
+        return authenticationTypes;
+    }
+
+    private void writeStrings(DataOutputStream out, List<String> values) throws IOException {
+        writeSize(out, values == null ? -1 : values.size());
+        if (values != null) {
+            for (String value : values) {
+                writeString(out, value);
+            }
+        }
+    }
+
+    private List<String> readStrings(DataInputStream in) throws IOException {
+        int size = readSize(in);
+        if (size < 0) {
+            return null;
+        }
+        List<String> values = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            values.add(readString(in));
+        }
+        return values;
+    }
+
+    private void writeStringMap(DataOutputStream out, Map<String, String> values) throws IOException {
+        writeSize(out, values == null ? -1 : values.size());
+        if (values != null) {
+            for (Map.Entry<String, String> entry : new TreeMap<>(values).entrySet()) {
+                writeString(out, entry.getKey());
+                writeString(out, entry.getValue());
+            }
+        }
+    }
+
+    private Map<String, String> readStringMap(DataInputStream in) throws IOException {
+        int size = readSize(in);
+        if (size < 0) {
+            return null;
+        }
+        Map<String, String> values = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            values.put(readString(in), readString(in));
+        }
+        return values;
+    }
+
+    /**
+     * Writes {@code 0} for {@code null}, dictionary index + 1 for dictionary strings and length + dictionary size + 1
+     * followed by UTF-8 bytes for other strings.
+     */
+    private void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            writeVarInt(out, 0);
+            return;
+        }
+        Integer dictionaryIndex = STRING_DICTIONARY_INDEX.get(value);
+        if (dictionaryIndex != null) {
+            writeVarInt(out, dictionaryIndex + 1);
+        } else {
+            byte[] bytes = value.getBytes(UTF_8);
+            writeVarInt(out, bytes.length + STRING_DICTIONARY.size() + 1);
+            out.write(bytes);
+        }
+    }
+
+    private String readString(DataInputStream in) throws IOException {
+        int header = readVarInt(in);
+        if (header == 0) {
+            return null;
+        } else if (header <= STRING_DICTIONARY.size()) {
+            return STRING_DICTIONARY.get(header - 1);
+        }
+        byte[] bytes = new byte[header - STRING_DICTIONARY.size() - 1];
+        in.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    private void writeEnum(DataOutputStream out, Enum<?> value) throws IOException {
+        writeVarInt(out, value == null ? 0 : value.ordinal() + 1);
+    }
+
+    private <E extends Enum<E>> E readEnum(DataInputStream in, E[] values) throws IOException {
+        int value = readVarInt(in);
+        if (value > values.length) {
+            throw new StreamCorruptedException("Unsupported " + values.getClass().getComponentType().getSimpleName() + " ordinal: " + (value - 1));
+        }
+        return value == 0 ? null : values[value - 1];
+    }
+
+    private void writeSize(DataOutputStream out, int size) throws IOException {
+        writeVarInt(out, size + 1);
+    }
+
+    private int readSize(DataInputStream in) throws IOException {
+        return readVarInt(in) - 1;
+    }
+
+    private void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = in.readByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new StreamCorruptedException("Malformed variable length integer");
+    }
+}
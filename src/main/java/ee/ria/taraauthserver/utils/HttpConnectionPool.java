@@ -0,0 +1,109 @@
+package ee.ria.taraauthserver.utils;
+
+import ee.ria.taraauthserver.config.properties.HttpConnectionPoolProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.httpcomponents.PoolingHttpClientConnectionManagerMetricsBinder;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.glassfish.jersey.apache.connector.ApacheClientProperties;
+import org.glassfish.jersey.apache.connector.ApacheConnectorProvider;
+import org.glassfish.jersey.client.ClientConfig;
+import org.glassfish.jersey.client.ClientProperties;
+import org.glassfish.jersey.client.RequestEntityProcessing;
+import org.springframework.beans.factory.DisposableBean;
+
+import javax.net.ssl.SSLContext;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Pool of persistent HTTP connections shared by the clients of an external service. Connections are kept open between
+ * requests, so that a TLS handshake is needed only for a new connection. New connections resume TLS sessions from the
+ * session cache of the shared {@link SSLContext}.
+ * <p>
+ * Connections that have been idle for longer than the idle connection timeout are closed periodically. Pool publishes
+ * Micrometer {@code httpcomponents.httpclient.pool.*} metrics tagged with the pool name.
+ */
+@Slf4j
+public class HttpConnectionPool implements DisposableBean {
+    @Getter
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final ScheduledExecutorService idleConnectionEvictor;
+    private final RequestConfig requestConfig;
+
+    private HttpConnectionPool(String name, HttpConnectionPoolProperties properties, PoolingHttpClientConnectionManager connectionManager) {
+        this.connectionManager = connectionManager;
+        this.requestConfig = RequestConfig.custom()
+                .setConnectionRequestTimeout((int) properties.getConnectionRequestTimeout().toMillis())
+                .build();
+        this.idleConnectionEvictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, name + "-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long evictionInterval = properties.getIdleConnectionEvictionInterval().toMillis();
+        long idleConnectionTimeout = properties.getIdleConnectionTimeout().toMillis();
+        idleConnectionEvictor.scheduleWithFixedDelay(() -> {
+            connectionManager.closeExpiredConnections();
+            connectionManager.closeIdleConnections(idleConnectionTimeout, MILLISECONDS);
+        }, evictionInterval, evictionInterval, MILLISECONDS);
+    }
+
+    public static HttpConnectionPool create(String name, HttpConnectionPoolProperties properties, SSLContext sslContext, MeterRegistry meterRegistry) {
+        Registry<ConnectionSocketFactory> socketFactoryRegistry = RegistryBuilder.<ConnectionSocketFactory>create()
+                .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                .register("https", new SSLConnectionSocketFactory(sslContext))
+                .build();
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(socketFactoryRegistry);
+        connectionManager.setMaxTotal(properties.getMaxConnectionsTotal());
+        connectionManager.setDefaultMaxPerRoute(properties.getMaxConnectionsPerRoute());
+        connectionManager.setValidateAfterInactivity((int) properties.getValidateAfterInactivity().toMillis());
+        new PoolingHttpClientConnectionManagerMetricsBinder(connectionManager, name).bindTo(meterRegistry);
+        log.info("Using HTTP connection pool {}: max connections total {}, max connections per route {}",
+                name, properties.getMaxConnectionsTotal(), properties.getMaxConnectionsPerRoute());
+        return new HttpConnectionPool(name, properties, connectionManager);
+    }
+
+    /**
+     * @return HTTP client sending requests over pooled connections. Closing the client does not shut down the pool.
+     */
+    public CloseableHttpClient createHttpClient() {
+        return HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setConnectionManagerShared(true)
+                .disableCookieManagement()
+                .build();
+    }
+
+    /**
+     * Configures Jersey client to send requests over pooled connections. Request entities are buffered, so that requests
+     * are sent with {@code Content-Length} header like with the default Jersey connector. When no pooled connection
+     * becomes available within the connection request timeout, request fails with {@link javax.ws.rs.ProcessingException}
+     * caused by {@link org.apache.http.conn.ConnectionPoolTimeoutException}.
+     */
+    public ClientConfig applyTo(ClientConfig clientConfig) {
+        clientConfig.connectorProvider(new ApacheConnectorProvider());
+        clientConfig.property(ApacheClientProperties.CONNECTION_MANAGER, connectionManager);
+        clientConfig.property(ApacheClientProperties.CONNECTION_MANAGER_SHARED, true);
+        clientConfig.property(ApacheClientProperties.REQUEST_CONFIG, requestConfig);
+        clientConfig.property(ClientProperties.REQUEST_ENTITY_PROCESSING, RequestEntityProcessing.BUFFERED);
+        return clientConfig;
+    }
+
+    @Override
+    public void destroy() {
+        idleConnectionEvictor.shutdownNow();
+        connectionManager.shutdown();
+    }
+}
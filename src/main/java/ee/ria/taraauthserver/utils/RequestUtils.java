@@ -15,6 +15,7 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.util.Locale;
 import java.util.Map;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 
@@ -53,6 +54,22 @@ public class RequestUtils {
         };
     }
 
+    public static <T, U> BiConsumer<T, U> withMdc(BiConsumer<T, U> consumer) {
+        Map<String, String> mdc = MDC.getCopyOfContextMap();
+        return (t, u) -> {
+            try {
+                if (mdc != null) {
+                    MDC.setContextMap(mdc);
+                } else {
+                    MDC.clear();
+                }
+                consumer.accept(t, u);
+            } finally {
+                MDC.clear();
+            }
+        };
+    }
+
     public static <T> Supplier<T> withMdc(Supplier<T> supplier) {
         Map<String, String> mdc = MDC.getCopyOfContextMap();
         return () -> {
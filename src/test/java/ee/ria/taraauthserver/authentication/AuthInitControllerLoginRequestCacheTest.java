@@ -0,0 +1,140 @@
+package ee.ria.taraauthserver.authentication;
+
+import ee.ria.taraauthserver.BaseTest;
+import ee.ria.taraauthserver.session.TaraSession;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.session.Session;
+import org.springframework.session.SessionRepository;
+import org.springframework.test.context.TestPropertySource;
+
+import java.util.concurrent.CompletableFuture;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.put;
+import static com.github.tomakehurst.wiremock.client.WireMock.putRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static ee.ria.taraauthserver.logging.ClientRequestLogger.Service.TARA_HYDRA;
+import static ee.ria.taraauthserver.session.TaraSession.TARA_SESSION;
+import static io.restassured.RestAssured.given;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.awaitility.Durations.FIVE_SECONDS;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+@TestPropertySource(
+        locations = "classpath:application.yml",
+        properties = {"tara.hydra-service.login-request-cache.enabled=true"})
+class AuthInitControllerLoginRequestCacheTest extends BaseTest {
+    private static final String TEST_LOGIN_CHALLENGE = "abcdefg098AAdsCC";
+    private static final String HYDRA_LOGIN_REQUEST_URL = "/oauth2/auth/requests/login?login_challenge=" + TEST_LOGIN_CHALLENGE;
+
+    @Autowired
+    private HydraLoginRequestCache hydraLoginRequestCache;
+
+    @Autowired
+    private SessionRepository<Session> sessionRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @BeforeEach
+    void beforeEach() {
+        hydraLoginRequestCache.invalidate(TARA_HYDRA, TEST_LOGIN_CHALLENGE);
+        wireMockServer.stubFor(get(urlEqualTo(HYDRA_LOGIN_REQUEST_URL))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "application/json; charset=UTF-8")
+                        .withBodyFile("mock_responses/oidc/mock_response-ok_ui_locales-not-set.json")));
+    }
+
+    @Test
+    @Tag(value = "AUTH_INIT_ENDPOINT")
+    void authInit_repeatedRequests_hydraRequestedOnce() {
+        double hits = cacheHits();
+
+        String firstSessionId = authInit();
+        String secondSessionId = authInit();
+
+        wireMockServer.verify(1, getRequestedFor(urlEqualTo(HYDRA_LOGIN_REQUEST_URL)));
+        assertThat(cacheHits() - hits).isEqualTo(1);
+        assertNotEquals(firstSessionId, secondSessionId);
+        TaraSession taraSession = sessionRepository.findById(secondSessionId).getAttribute(TARA_SESSION);
+        assertEquals(TEST_LOGIN_CHALLENGE, taraSession.getLoginRequestInfo().getChallenge());
+        assertEquals("openIdDemo", taraSession.getLoginRequestInfo().getClient().getClientId());
+        assertEquals("test client et", taraSession.getLoginRequestInfo().getClient().getMetaData().getOidcClient().getNameTranslations().get("et"));
+        assertInfoIsLogged("TARA_HYDRA request", "TARA_HYDRA response: 200", "Using cached login request");
+    }
+
+    @Test
+    @Tag(value = "AUTH_INIT_ENDPOINT")
+    void authInit_loginRequestRejected_hydraRequestedAgain() {
+        wireMockServer.stubFor(put(urlEqualTo("/oauth2/auth/requests/login/reject?login_challenge=" + TEST_LOGIN_CHALLENGE))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "application/json; charset=UTF-8")
+                        .withBodyFile("mock_responses/mockLoginAcceptResponse.json")));
+        String sessionId = authInit();
+
+        given()
+                .when()
+                .sessionId("SESSION", sessionId)
+                .param("error_code", "user_cancel")
+                .get("/auth/reject")
+                .then()
+                .assertThat()
+                .statusCode(302);
+        authInit();
+
+        wireMockServer.verify(2, getRequestedFor(urlEqualTo(HYDRA_LOGIN_REQUEST_URL)));
+    }
+
+    @Test
+    @Tag(value = "AUTH_INIT_ENDPOINT")
+    void authInit_requestedWhileLoginRequestRejected_hydraRequestedAgain() {
+        wireMockServer.stubFor(put(urlEqualTo("/oauth2/auth/requests/login/reject?login_challenge=" + TEST_LOGIN_CHALLENGE))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withFixedDelay(500)
+                        .withHeader("Content-Type", "application/json; charset=UTF-8")
+                        .withBodyFile("mock_responses/mockLoginAcceptResponse.json")));
+        String sessionId = authInit();
+
+        CompletableFuture<Void> reject = CompletableFuture.runAsync(() -> given()
+                .when()
+                .sessionId("SESSION", sessionId)
+                .param("error_code", "user_cancel")
+                .get("/auth/reject")
+                .then()
+                .assertThat()
+                .statusCode(302));
+        await().atMost(FIVE_SECONDS)
+                .until(() -> wireMockServer.findAll(putRequestedFor(urlEqualTo("/oauth2/auth/requests/login/reject?login_challenge=" + TEST_LOGIN_CHALLENGE))).size() == 1);
+        authInit();
+        reject.join();
+        authInit();
+
+        wireMockServer.verify(3, getRequestedFor(urlEqualTo(HYDRA_LOGIN_REQUEST_URL)));
+    }
+
+    private double cacheHits() {
+        return meterRegistry.get("tara.hydra.login-request.cache.requests").tag("result", "hit").counter().count();
+    }
+
+    private String authInit() {
+        return given()
+                .param("login_challenge", TEST_LOGIN_CHALLENGE)
+                .when()
+                .get("/auth/init")
+                .then()
+                .assertThat()
+                .statusCode(200)
+                .extract().cookie("SESSION");
+    }
+}
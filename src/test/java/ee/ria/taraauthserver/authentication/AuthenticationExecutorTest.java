@@ -0,0 +1,119 @@
+package ee.ria.taraauthserver.authentication;
+
+import ee.ria.taraauthserver.config.properties.AuthMethodExecutorProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import static ee.ria.taraauthserver.error.ErrorCode.MID_INTERNAL_ERROR;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AuthenticationExecutorTest {
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private AuthenticationExecutor authenticationExecutor;
+
+    @AfterEach
+    void afterEach() {
+        authenticationExecutor.destroy();
+    }
+
+    @Test
+    @Tag(value = "AUTHENTICATION_EXECUTOR")
+    void supplyAsync_WhenDisabled_RunsTaskOnSharedExecutorAfterDelay() throws Exception {
+        Executor taskExecutor = Runnable::run;
+        authenticationExecutor = AuthenticationExecutor.create("test-executor", new AuthMethodExecutorProperties(MID_INTERNAL_ERROR), taskExecutor, meterRegistry);
+        long start = System.currentTimeMillis();
+
+        String result = authenticationExecutor.supplyAsync(() -> "result", 200).get(5, SECONDS);
+
+        assertEquals("result", result);
+        assertTrue(System.currentTimeMillis() - start >= 200);
+    }
+
+    @Test
+    @Tag(value = "AUTHENTICATION_EXECUTOR")
+    void supplyAsync_WhenEnabled_RunsTaskOnDedicatedExecutorAndPublishesMetrics() throws Exception {
+        authenticationExecutor = AuthenticationExecutor.create("test-executor", enabledProperties(1, 1, 1), null, meterRegistry);
+
+        String threadName = authenticationExecutor.supplyAsync(() -> Thread.currentThread().getName(), 0).get(5, SECONDS);
+
+        assertEquals("test-executor-1", threadName);
+        assertNotNull(meterRegistry.get("executor.queued").tag("name", "test-executor").gauge());
+        assertNotNull(meterRegistry.get("executor.active").tag("name", "test-executor").gauge());
+        assertEquals(1, meterRegistry.get("executor.idle").tag("name", "test-executor").timer().count());
+    }
+
+    @Test
+    @Tag(value = "AUTHENTICATION_EXECUTOR")
+    void supplyAsync_WhenPoolAndQueueFull_CompletesExceptionallyWithRejection() throws Exception {
+        authenticationExecutor = AuthenticationExecutor.create("test-executor", enabledProperties(1, 1, 1), null, meterRegistry);
+        CountDownLatch blocker = new CountDownLatch(1);
+        CompletableFuture<Object> running = authenticationExecutor.supplyAsync(() -> await(blocker), 0);
+        CompletableFuture<Object> queued = authenticationExecutor.supplyAsync(() -> await(blocker), 0);
+
+        CompletableFuture<Object> rejected = authenticationExecutor.supplyAsync(() -> "rejected", 0);
+
+        ExecutionException exception = assertThrows(ExecutionException.class, () -> rejected.get(5, SECONDS));
+        assertInstanceOf(RejectedExecutionException.class, exception.getCause());
+        assertEquals(1, meterRegistry.get("tara.auth.executor.rejected").tag("name", "test-executor").counter().count());
+        blocker.countDown();
+        running.get(5, SECONDS);
+        queued.get(5, SECONDS);
+    }
+
+    @Test
+    @Tag(value = "AUTHENTICATION_EXECUTOR")
+    void supplyAsync_WhenSupplierThrowsError_CompletesExceptionally() {
+        authenticationExecutor = AuthenticationExecutor.create("test-executor", enabledProperties(1, 1, 1), null, meterRegistry);
+
+        CompletableFuture<Object> result = authenticationExecutor.supplyAsync(() -> {
+            throw new AssertionError("error");
+        }, 0);
+
+        ExecutionException exception = assertThrows(ExecutionException.class, () -> result.get(5, SECONDS));
+        assertInstanceOf(AssertionError.class, exception.getCause());
+    }
+
+    @Test
+    @Tag(value = "AUTHENTICATION_EXECUTOR")
+    void supplyAsync_WhenDestroyed_CompletesExceptionallyWithRejection() {
+        authenticationExecutor = AuthenticationExecutor.create("test-executor", enabledProperties(1, 1, 1), null, meterRegistry);
+        authenticationExecutor.destroy();
+
+        CompletableFuture<Object> rejected = authenticationExecutor.supplyAsync(() -> "rejected", 0);
+
+        ExecutionException exception = assertThrows(ExecutionException.class, () -> rejected.get(5, SECONDS));
+        assertInstanceOf(RejectedExecutionException.class, exception.getCause());
+    }
+
+    private static AuthMethodExecutorProperties enabledProperties(int corePoolSize, int maxPoolSize, int queueCapacity) {
+        AuthMethodExecutorProperties properties = new AuthMethodExecutorProperties(MID_INTERNAL_ERROR);
+        properties.setEnabled(true);
+        properties.setCorePoolSize(corePoolSize);
+        properties.setMaxPoolSize(maxPoolSize);
+        properties.setQueueCapacity(queueCapacity);
+        return properties;
+    }
+
+    private static Object await(CountDownLatch latch) {
+        try {
+            latch.await(5, SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return null;
+    }
+}
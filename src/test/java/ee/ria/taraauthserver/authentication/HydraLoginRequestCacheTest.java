@@ -0,0 +1,108 @@
+package ee.ria.taraauthserver.authentication;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ee.ria.taraauthserver.config.properties.AuthConfigurationProperties;
+import ee.ria.taraauthserver.session.TaraSession;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static ee.ria.taraauthserver.logging.ClientRequestLogger.Service.GOVSSO_HYDRA;
+import static ee.ria.taraauthserver.logging.ClientRequestLogger.Service.TARA_HYDRA;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HydraLoginRequestCacheTest {
+    private static final String LOGIN_CHALLENGE = "abcdefg098AAdsCC";
+    private static final byte[] LOGIN_REQUEST = ("{\"challenge\":\"" + LOGIN_CHALLENGE + "\",\"client\":{\"client_id\":\"openIdDemo\"," +
+            "\"scope\":\"idcard mid\"},\"requested_scope\":[\"idcard\",\"mid\"]}").getBytes(UTF_8);
+
+    private final HydraLoginRequestCache cache = new HydraLoginRequestCache(new AuthConfigurationProperties(), new ObjectMapper(),
+            new SimpleMeterRegistry());
+
+    @Test
+    @Tag(value = "AUTH_INIT_ENDPOINT")
+    void get_CachedLoginRequest_NewInstanceReturned() {
+        AtomicInteger requests = new AtomicInteger();
+
+        TaraSession.LoginRequestInfo first = cache.get(TARA_HYDRA, LOGIN_CHALLENGE, () -> loginRequest(requests));
+        TaraSession.LoginRequestInfo second = cache.get(TARA_HYDRA, LOGIN_CHALLENGE, () -> loginRequest(requests));
+
+        assertEquals(1, requests.get());
+        assertNotSame(first, second);
+        assertEquals(first, second);
+        assertEquals("openIdDemo", second.getClientId());
+    }
+
+    @Test
+    @Tag(value = "AUTH_INIT_ENDPOINT")
+    void get_ConcurrentRequests_SentOnce() throws Exception {
+        AtomicInteger requests = new AtomicInteger();
+        CountDownLatch requestStarted = new CountDownLatch(1);
+        CountDownLatch responseReceived = new CountDownLatch(1);
+
+        CompletableFuture<TaraSession.LoginRequestInfo> first = CompletableFuture.supplyAsync(() ->
+                cache.get(TARA_HYDRA, LOGIN_CHALLENGE, () -> {
+                    requestStarted.countDown();
+                    await(responseReceived);
+                    return loginRequest(requests);
+                }));
+        assertTrue(requestStarted.await(5, TimeUnit.SECONDS));
+        CompletableFuture<TaraSession.LoginRequestInfo> second = CompletableFuture.supplyAsync(() ->
+                cache.get(TARA_HYDRA, LOGIN_CHALLENGE, () -> loginRequest(requests)));
+        responseReceived.countDown();
+
+        assertEquals(first.get(5, TimeUnit.SECONDS), second.get(5, TimeUnit.SECONDS));
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    @Tag(value = "AUTH_INIT_ENDPOINT")
+    void get_FailedRequest_NotCached() {
+        AtomicInteger requests = new AtomicInteger();
+        IllegalStateException exception = new IllegalStateException("Hydra not available");
+
+        assertSame(exception, assertThrows(IllegalStateException.class, () -> cache.get(TARA_HYDRA, LOGIN_CHALLENGE, () -> {
+            throw exception;
+        })));
+        cache.get(TARA_HYDRA, LOGIN_CHALLENGE, () -> loginRequest(requests));
+
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    @Tag(value = "AUTH_INIT_ENDPOINT")
+    void invalidate_LoginRequestRequestedAgain() {
+        AtomicInteger requests = new AtomicInteger();
+
+        cache.get(TARA_HYDRA, LOGIN_CHALLENGE, () -> loginRequest(requests));
+        cache.get(GOVSSO_HYDRA, LOGIN_CHALLENGE, () -> loginRequest(requests));
+        cache.invalidate(TARA_HYDRA, LOGIN_CHALLENGE);
+        cache.get(TARA_HYDRA, LOGIN_CHALLENGE, () -> loginRequest(requests));
+        cache.get(GOVSSO_HYDRA, LOGIN_CHALLENGE, () -> loginRequest(requests));
+
+        assertEquals(3, requests.get());
+    }
+
+    private static byte[] loginRequest(AtomicInteger requests) {
+        requests.incrementAndGet();
+        return LOGIN_REQUEST;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
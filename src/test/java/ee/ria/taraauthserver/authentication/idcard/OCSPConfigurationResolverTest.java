@@ -26,6 +26,7 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -303,6 +304,49 @@ public class OCSPConfigurationResolverTest {
         assertEquals("TEST_RESPONDER2.pem", conf.get(2).getResponderCertificateCn());
     }
 
+    @Test
+    @Tag(value = "OCSP_URL_CONF")
+    public void resolveShouldReuseAiaConfigurationOfSameIssuer() {
+        Mockito.when(idCardConfigurationProperties.getOcsp()).thenReturn(of());
+        Mockito.when(idCardConfigurationProperties.getFallbackOcsp()).thenReturn(of());
+        OCSPConfigurationResolver resolver = new OCSPConfigurationResolver(idCardConfigurationProperties);
+
+        List<Ocsp> conf = resolver.resolve(mockUserCertificate2018);
+
+        assertSame(conf.get(0), resolver.resolve(mockUserCertificate2018).get(0));
+        assertEquals("http://aia.demo.sk.ee/esteid2015", resolver.resolve(mockUserCertificate2015).get(0).getUrl());
+    }
+
+    @Test
+    @Tag(value = "OCSP_URL_CONF")
+    @Tag(value = "OCSP_FAILOVER_CONF")
+    public void resolveShouldUseChangedConfiguration() {
+        Mockito.when(idCardConfigurationProperties.getOcsp()).thenReturn(of());
+        OCSPConfigurationResolver resolver = new OCSPConfigurationResolver(idCardConfigurationProperties);
+        assertEquals("http://aia.demo.sk.ee/esteid2018", resolver.resolve(mockUserCertificate2018).get(0).getUrl());
+
+        Mockito.when(idCardConfigurationProperties.getOcsp()).thenReturn(of(
+                getMockOcspConfiguration(
+                        of("TEST of ESTEID2018"),
+                        "http://localhost:1234/ocsp",
+                        true, 3, 901, 1111, 2222,
+                        "Responder.pem")
+        ));
+        Mockito.when(idCardConfigurationProperties.getFallbackOcsp()).thenReturn(of(
+                getMockOcspConfiguration(
+                        of("TEST of ESTEID2018"),
+                        "http://localhost:1234/ocsp2",
+                        false, 3, 901, 1111, 2222,
+                        "TEST_RESPONDER2.pem")
+        ));
+
+        List<Ocsp> conf = resolver.resolve(mockUserCertificate2018);
+
+        assertEquals(2, conf.size());
+        assertEquals("http://localhost:1234/ocsp", conf.get(0).getUrl());
+        assertEquals("http://localhost:1234/ocsp2", conf.get(1).getUrl());
+    }
+
 
     private Ocsp getMockOcspConfiguration(List<String> issuerCn, String url, boolean nonceDisabled, int acceptedClockSkewInSeconds, int responseLifetimeInSeconds, int connectTimeoutInMilliseconds, int readTimeoutInMilliseconds, String responderCertificate) {
         Ocsp ocspConfiguration = new Ocsp();
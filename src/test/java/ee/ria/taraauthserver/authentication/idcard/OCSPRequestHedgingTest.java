@@ -0,0 +1,150 @@
+package ee.ria.taraauthserver.authentication.idcard;
+
+import ee.ria.taraauthserver.authentication.idcard.OCSPValidator.ValidationResult;
+import ee.ria.taraauthserver.config.properties.AuthConfigurationProperties.IdCardAuthConfigurationProperties;
+import ee.ria.taraauthserver.config.properties.AuthConfigurationProperties.Ocsp;
+import ee.ria.taraauthserver.error.exceptions.OCSPServiceNotAvailableException;
+import ee.ria.taraauthserver.error.exceptions.OCSPValidationException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+
+import static java.util.List.of;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OCSPRequestHedgingTest {
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final X509Certificate userCert = Mockito.mock(X509Certificate.class);
+    private final Ocsp primary = ocsp("http://localhost/primary");
+    private final Ocsp fallback = ocsp("http://localhost/fallback");
+    private final Map<String, AtomicInteger> requests = new ConcurrentHashMap<>();
+    private OCSPRequestHedging ocspRequestHedging;
+
+    @BeforeEach
+    void beforeEach() {
+        IdCardAuthConfigurationProperties properties = new IdCardAuthConfigurationProperties();
+        properties.getOcspHedging().setEnabled(true);
+        properties.getOcspHedging().setDelay(Duration.ofMillis(100));
+        ocspRequestHedging = new OCSPRequestHedging(properties, meterRegistry);
+    }
+
+    @AfterEach
+    void afterEach() {
+        ocspRequestHedging.destroy();
+    }
+
+    @Test
+    @Tag(value = "OCSP_HEDGING")
+    void checkCert_WhenPrimaryRespondsWithinDelay_DoesNotSendHedgedRequest() {
+        ValidationResult result = ocspRequestHedging.checkCert(userCert, of(primary, fallback), ocspCheck(0, 0));
+
+        assertSame(primary, result.getOcsp());
+        assertEquals(1, requests(primary));
+        assertEquals(0, requests(fallback));
+        assertEquals(0, meterRegistry.get("tara.ocsp.hedged.requests").counter().count());
+    }
+
+    @Test
+    @Tag(value = "OCSP_HEDGING")
+    void checkCert_WhenPrimarySlow_ReturnsFallbackResponse() {
+        long start = System.currentTimeMillis();
+
+        ValidationResult result = ocspRequestHedging.checkCert(userCert, of(primary, fallback), ocspCheck(3000, 0));
+
+        assertSame(fallback, result.getOcsp());
+        assertTrue(System.currentTimeMillis() - start < 3000);
+        assertEquals(1, requests(primary));
+        assertEquals(1, requests(fallback));
+        assertEquals(1, meterRegistry.get("tara.ocsp.hedged.requests").counter().count());
+    }
+
+    @Test
+    @Tag(value = "OCSP_HEDGING")
+    void checkCert_WhenPrimaryNotAvailable_SendsFallbackRequestImmediately() {
+        BiFunction<X509Certificate, Ocsp, ValidationResult> ocspCheck = (cert, ocspConf) -> {
+            requests.computeIfAbsent(ocspConf.getUrl(), url -> new AtomicInteger()).incrementAndGet();
+            if (ocspConf == primary) {
+                throw new OCSPServiceNotAvailableException("OCSP not available: " + ocspConf.getUrl());
+            }
+            return new ValidationResult(ocspConf, Instant.now());
+        };
+
+        ValidationResult result = ocspRequestHedging.checkCert(userCert, of(primary, fallback), ocspCheck);
+
+        assertSame(fallback, result.getOcsp());
+        assertEquals(0, meterRegistry.get("tara.ocsp.hedged.requests").counter().count());
+    }
+
+    @Test
+    @Tag(value = "OCSP_HEDGING")
+    void checkCert_WhenAllNotAvailable_ThrowsLastNotAvailableException() {
+        BiFunction<X509Certificate, Ocsp, ValidationResult> ocspCheck = (cert, ocspConf) -> {
+            throw new OCSPServiceNotAvailableException("OCSP not available: " + ocspConf.getUrl());
+        };
+
+        OCSPServiceNotAvailableException exception = assertThrows(OCSPServiceNotAvailableException.class,
+                () -> ocspRequestHedging.checkCert(userCert, of(primary, fallback), ocspCheck));
+
+        assertEquals("OCSP not available: http://localhost/fallback", exception.getMessage());
+    }
+
+    @Test
+    @Tag(value = "OCSP_HEDGING")
+    void checkCert_WhenHedgedResponseRevoked_ThrowsValidationException() {
+        BiFunction<X509Certificate, Ocsp, ValidationResult> ocspCheck = (cert, ocspConf) -> {
+            if (ocspConf == primary) {
+                sleep(3000);
+                return new ValidationResult(ocspConf, Instant.now());
+            }
+            throw OCSPValidationException.of(CertificateStatus.REVOKED);
+        };
+
+        OCSPValidationException exception = assertThrows(OCSPValidationException.class,
+                () -> ocspRequestHedging.checkCert(userCert, of(primary, fallback), ocspCheck));
+
+        assertEquals(CertificateStatus.REVOKED, exception.getStatus());
+    }
+
+    private BiFunction<X509Certificate, Ocsp, ValidationResult> ocspCheck(long primaryLatency, long fallbackLatency) {
+        return (cert, ocspConf) -> {
+            requests.computeIfAbsent(ocspConf.getUrl(), url -> new AtomicInteger()).incrementAndGet();
+            sleep(ocspConf == primary ? primaryLatency : fallbackLatency);
+            return new ValidationResult(ocspConf, Instant.now());
+        };
+    }
+
+    private int requests(Ocsp ocsp) {
+        return requests.getOrDefault(ocsp.getUrl(), new AtomicInteger()).get();
+    }
+
+    private static Ocsp ocsp(String url) {
+        Ocsp ocsp = new Ocsp();
+        ocsp.setIssuerCn(List.of("TEST of ESTEID-SK 2015"));
+        ocsp.setUrl(url);
+        return ocsp;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
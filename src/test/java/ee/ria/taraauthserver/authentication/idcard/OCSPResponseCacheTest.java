@@ -0,0 +1,184 @@
+package ee.ria.taraauthserver.authentication.idcard;
+
+import ee.ria.taraauthserver.authentication.idcard.OCSPValidator.ValidationResult;
+import ee.ria.taraauthserver.config.properties.AuthConfigurationProperties.IdCardAuthConfigurationProperties;
+import ee.ria.taraauthserver.config.properties.AuthConfigurationProperties.Ocsp;
+import ee.ria.taraauthserver.error.exceptions.OCSPServiceNotAvailableException;
+import ee.ria.taraauthserver.error.exceptions.OCSPValidationException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import javax.security.auth.x500.X500Principal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class OCSPResponseCacheTest {
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AtomicInteger ocspChecks = new AtomicInteger();
+    private IdCardAuthConfigurationProperties properties;
+    private OCSPResponseCache ocspResponseCache;
+
+    @BeforeEach
+    void beforeEach() {
+        properties = new IdCardAuthConfigurationProperties();
+        properties.getOcspCache().setEnabled(true);
+        ocspResponseCache = new OCSPResponseCache(properties, meterRegistry);
+    }
+
+    @Test
+    @Tag(value = "OCSP_CACHE")
+    void get_WhenGoodStatusWithoutNonce_ReturnsCachedOutcome() {
+        Ocsp ocsp = ocsp(true);
+        X509Certificate userCert = userCert("1");
+
+        Ocsp result = ocspResponseCache.get(userCert, goodStatus(ocsp, Instant.now().plusSeconds(60)));
+        Ocsp cachedResult = ocspResponseCache.get(userCert, goodStatus(ocsp, Instant.now().plusSeconds(60)));
+
+        assertSame(ocsp, result);
+        assertSame(ocsp, cachedResult);
+        assertEquals(1, ocspChecks.get());
+        assertEquals(1, requests("hit"));
+        assertEquals(1, requests("miss"));
+        assertEquals(1, meterRegistry.get("tara.ocsp.cache.saved.latency").tag("outcome", "good").timer().count());
+    }
+
+    @Test
+    @Tag(value = "OCSP_CACHE")
+    void get_WhenDifferentSerialNumber_ChecksCertificateStatus() {
+        Ocsp ocsp = ocsp(true);
+
+        ocspResponseCache.get(userCert("1"), goodStatus(ocsp, Instant.now().plusSeconds(60)));
+        ocspResponseCache.get(userCert("2"), goodStatus(ocsp, Instant.now().plusSeconds(60)));
+
+        assertEquals(2, ocspChecks.get());
+    }
+
+    @Test
+    @Tag(value = "OCSP_CACHE")
+    void get_WhenSameIssuerAndSerialNumberButDifferentCertificate_ChecksCertificateStatus() {
+        Ocsp ocsp = ocsp(true);
+
+        ocspResponseCache.get(userCert("1", "valid signature"), goodStatus(ocsp, Instant.now().plusSeconds(60)));
+        ocspResponseCache.get(userCert("1", "forged signature"), goodStatus(ocsp, Instant.now().plusSeconds(60)));
+
+        assertEquals(2, ocspChecks.get());
+        assertEquals(0, requests("hit"));
+    }
+
+    @Test
+    @Tag(value = "OCSP_CACHE")
+    void get_WhenNonceEnabled_DoesNotCacheOutcome() {
+        Ocsp ocsp = ocsp(false);
+        X509Certificate userCert = userCert("1");
+
+        ocspResponseCache.get(userCert, goodStatus(ocsp, Instant.now().plusSeconds(60)));
+        ocspResponseCache.get(userCert, goodStatus(ocsp, Instant.now().plusSeconds(60)));
+
+        assertEquals(2, ocspChecks.get());
+    }
+
+    @Test
+    @Tag(value = "OCSP_CACHE")
+    void get_WhenNonceEnabledAndResponsesWithNonceCached_ReturnsCachedOutcome() {
+        properties.getOcspCache().setCacheResponsesWithNonce(true);
+        ocspResponseCache = new OCSPResponseCache(properties, new SimpleMeterRegistry());
+        Ocsp ocsp = ocsp(false);
+        X509Certificate userCert = userCert("1");
+
+        ocspResponseCache.get(userCert, goodStatus(ocsp, Instant.now().plusSeconds(60)));
+        ocspResponseCache.get(userCert, goodStatus(ocsp, Instant.now().plusSeconds(60)));
+
+        assertEquals(1, ocspChecks.get());
+    }
+
+    @Test
+    @Tag(value = "OCSP_CACHE")
+    void get_WhenResponseExpired_ChecksCertificateStatus() {
+        Ocsp ocsp = ocsp(true);
+        X509Certificate userCert = userCert("1");
+
+        ocspResponseCache.get(userCert, goodStatus(ocsp, Instant.now().minusSeconds(1)));
+        ocspResponseCache.get(userCert, goodStatus(ocsp, Instant.now().minusSeconds(1)));
+
+        assertEquals(2, ocspChecks.get());
+    }
+
+    @Test
+    @Tag(value = "OCSP_CACHE")
+    void get_WhenOcspServiceNotAvailable_ThrowsCachedUnavailability() {
+        X509Certificate userCert = userCert("1");
+        Supplier<ValidationResult> notAvailable = () -> {
+            ocspChecks.incrementAndGet();
+            throw new OCSPServiceNotAvailableException("Service returned HTTP status code 500");
+        };
+
+        assertThrows(OCSPServiceNotAvailableException.class, () -> ocspResponseCache.get(userCert, notAvailable));
+        OCSPServiceNotAvailableException exception = assertThrows(OCSPServiceNotAvailableException.class, () -> ocspResponseCache.get(userCert, notAvailable));
+
+        assertEquals("Service returned HTTP status code 500", exception.getMessage());
+        assertEquals(1, ocspChecks.get());
+        assertEquals(1, meterRegistry.get("tara.ocsp.cache.saved.latency").tag("outcome", "not_available").timer().count());
+    }
+
+    @Test
+    @Tag(value = "OCSP_CACHE")
+    void get_WhenCertificateRevoked_DoesNotCacheOutcome() {
+        X509Certificate userCert = userCert("1");
+        Supplier<ValidationResult> revoked = () -> {
+            ocspChecks.incrementAndGet();
+            throw OCSPValidationException.of(CertificateStatus.REVOKED);
+        };
+
+        assertThrows(OCSPValidationException.class, () -> ocspResponseCache.get(userCert, revoked));
+        assertThrows(OCSPValidationException.class, () -> ocspResponseCache.get(userCert, revoked));
+
+        assertEquals(2, ocspChecks.get());
+    }
+
+    private Supplier<ValidationResult> goodStatus(Ocsp ocsp, Instant responseExpiry) {
+        return () -> {
+            ocspChecks.incrementAndGet();
+            return new ValidationResult(ocsp, responseExpiry);
+        };
+    }
+
+    private double requests(String result) {
+        return meterRegistry.get("tara.ocsp.cache.requests").tag("result", result).functionCounter().count();
+    }
+
+    private static Ocsp ocsp(boolean nonceDisabled) {
+        Ocsp ocsp = new Ocsp();
+        ocsp.setUrl("http://localhost/ocsp");
+        ocsp.setNonceDisabled(nonceDisabled);
+        return ocsp;
+    }
+
+    private static X509Certificate userCert(String serialNumber) {
+        return userCert(serialNumber, "signature of " + serialNumber);
+    }
+
+    private static X509Certificate userCert(String serialNumber, String signature) {
+        X509Certificate userCert = Mockito.mock(X509Certificate.class);
+        Mockito.when(userCert.getIssuerX500Principal()).thenReturn(new X500Principal("CN=TEST of ESTEID-SK 2015"));
+        Mockito.when(userCert.getSerialNumber()).thenReturn(new BigInteger(serialNumber));
+        try {
+            Mockito.when(userCert.getEncoded()).thenReturn((serialNumber + ":" + signature).getBytes(StandardCharsets.UTF_8));
+        } catch (CertificateEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+        return userCert;
+    }
+}
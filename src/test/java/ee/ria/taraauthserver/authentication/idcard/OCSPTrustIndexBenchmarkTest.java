@@ -0,0 +1,91 @@
+package ee.ria.taraauthserver.authentication.idcard;
+
+import ee.ria.taraauthserver.utils.X509Utils;
+import lombok.extern.slf4j.Slf4j;
+import org.bouncycastle.cert.ocsp.CertificateID;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.jcajce.JcaContentVerifierProviderBuilder;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.security.Security;
+import java.security.cert.X509Certificate;
+import java.util.List;
+
+import static ee.ria.taraauthserver.authentication.idcard.OCSPTrustIndexTest.ISSUER_CERT_2015_PATH;
+import static ee.ria.taraauthserver.authentication.idcard.OCSPTrustIndexTest.USER_CERT_2015_PATH;
+import static ee.ria.taraauthserver.authentication.idcard.OCSPTrustIndexTest.createCertificateId;
+import static ee.ria.taraauthserver.authentication.idcard.OCSPTrustIndexTest.loadCertificate;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Compares CPU time per OCSP validation spent on resolving the issuer CN, building the OCSP request certificate ID and
+ * creating the response signature verifier, without and with {@link OCSPTrustIndex}. Sending the OCSP request and
+ * verifying the response signature are the same in both cases and are not included.
+ * <p>
+ * Run with {@code -Dtara.benchmark=true}.
+ */
+@Slf4j
+@EnabledIfSystemProperty(named = "tara.benchmark", matches = "true")
+class OCSPTrustIndexBenchmarkTest {
+    private static final int WARMUP_ITERATIONS = 20000;
+    private static final int ITERATIONS = 100000;
+
+    @BeforeAll
+    static void beforeAll() {
+        Security.addProvider(new BouncyCastleProvider());
+    }
+
+    @Test
+    @Tag(value = "OCSP_TRUST_INDEX")
+    void benchmark_WithoutAndWithTrustIndex() throws Exception {
+        X509Certificate issuerCert = loadCertificate(ISSUER_CERT_2015_PATH);
+        X509Certificate userCert = loadCertificate(USER_CERT_2015_PATH);
+        OCSPTrustIndex trustIndex = new OCSPTrustIndex();
+        trustIndex.addTrustedCertificates(List.of(issuerCert));
+
+        Validation withoutTrustIndex = () -> {
+            X509Utils.getIssuerCNFromCertificate(userCert);
+            CertificateID certificateId = createCertificateId(issuerCert, userCert.getSerialNumber());
+            new JcaContentVerifierProviderBuilder()
+                    .setProvider(BouncyCastleProvider.PROVIDER_NAME)
+                    .build(issuerCert.getPublicKey());
+            return certificateId;
+        };
+        Validation withTrustIndex = () -> {
+            trustIndex.getIssuerCN(userCert);
+            CertificateID certificateId = trustIndex.getCertificateId(issuerCert, userCert.getSerialNumber());
+            trustIndex.getVerifierProvider(issuerCert);
+            return certificateId;
+        };
+        assertEquals(withoutTrustIndex.run(), withTrustIndex.run());
+
+        for (int round = 0; round < 2; round++) {
+            long withoutNanos = benchmark(withoutTrustIndex);
+            long withNanos = benchmark(withTrustIndex);
+            log.info("OCSP validation CPU time without trust index: {} ns, with trust index: {} ns, saved: {} ns",
+                    withoutNanos, withNanos, withoutNanos - withNanos);
+        }
+    }
+
+    private long benchmark(Validation validation) throws Exception {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            validation.run();
+        }
+        long start = threadMXBean.getCurrentThreadCpuTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            validation.run();
+        }
+        return (threadMXBean.getCurrentThreadCpuTime() - start) / ITERATIONS;
+    }
+
+    @FunctionalInterface
+    private interface Validation {
+        CertificateID run() throws Exception;
+    }
+}
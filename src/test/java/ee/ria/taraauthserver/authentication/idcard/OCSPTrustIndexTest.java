@@ -0,0 +1,89 @@
+package ee.ria.taraauthserver.authentication.idcard;
+
+import ee.ria.taraauthserver.utils.X509Utils;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateHolder;
+import org.bouncycastle.cert.ocsp.CertificateID;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.security.Security;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class OCSPTrustIndexTest {
+    static final String ISSUER_CERT_2015_PATH = "src/test/resources/ocsp/TEST_of_ESTEID-SK_2015.crt";
+    static final String ISSUER_CERT_2018_PATH = "src/test/resources/ocsp/TEST_of_ESTEID2018.crt";
+    static final String USER_CERT_2015_PATH = "src/test/resources/id-card/47101010033(TEST_of_ESTEID-SK_2015).pem";
+
+    private final OCSPTrustIndex trustIndex = new OCSPTrustIndex();
+
+    @BeforeAll
+    static void beforeAll() {
+        Security.addProvider(new BouncyCastleProvider());
+    }
+
+    @Test
+    @Tag(value = "OCSP_TRUST_INDEX")
+    void getIssuerCN_ReturnsIssuerCN() throws Exception {
+        X509Certificate userCert = loadCertificate(USER_CERT_2015_PATH);
+
+        assertEquals(X509Utils.getIssuerCNFromCertificate(userCert), trustIndex.getIssuerCN(userCert));
+        assertEquals("TEST of ESTEID-SK 2015", trustIndex.getIssuerCN(userCert));
+    }
+
+    @Test
+    @Tag(value = "OCSP_TRUST_INDEX")
+    void getCertificateId_ReturnsCertificateIdOfSerialNumber() throws Exception {
+        X509Certificate issuerCert = loadCertificate(ISSUER_CERT_2015_PATH);
+        X509Certificate userCert = loadCertificate(USER_CERT_2015_PATH);
+        trustIndex.addTrustedCertificates(List.of(issuerCert));
+
+        CertificateID certificateId = trustIndex.getCertificateId(issuerCert, userCert.getSerialNumber());
+
+        assertEquals(createCertificateId(issuerCert, userCert.getSerialNumber()), certificateId);
+        assertEquals(userCert.getSerialNumber(), certificateId.getSerialNumber());
+    }
+
+    @Test
+    @Tag(value = "OCSP_TRUST_INDEX")
+    void getCertificateId_WhenDifferentIssuer_ReturnsDifferentIssuerHashes() throws Exception {
+        X509Certificate issuerCert2015 = loadCertificate(ISSUER_CERT_2015_PATH);
+        X509Certificate issuerCert2018 = loadCertificate(ISSUER_CERT_2018_PATH);
+
+        CertificateID certificateId2015 = trustIndex.getCertificateId(issuerCert2015, BigInteger.TEN);
+        CertificateID certificateId2018 = trustIndex.getCertificateId(issuerCert2018, BigInteger.TEN);
+
+        assertEquals(createCertificateId(issuerCert2018, BigInteger.TEN), certificateId2018);
+        assertNotEquals(certificateId2015, certificateId2018);
+    }
+
+    @Test
+    @Tag(value = "OCSP_TRUST_INDEX")
+    void getVerifierProvider_ReturnsCachedVerifierProvider() throws Exception {
+        X509Certificate issuerCert = loadCertificate(ISSUER_CERT_2015_PATH);
+
+        assertSame(trustIndex.getVerifierProvider(issuerCert), trustIndex.getVerifierProvider(loadCertificate(ISSUER_CERT_2015_PATH)));
+    }
+
+    static CertificateID createCertificateId(X509Certificate issuerCert, BigInteger serialNumber) throws Exception {
+        return new CertificateID(new JcaDigestCalculatorProviderBuilder().build().get(CertificateID.HASH_SHA1),
+                new JcaX509CertificateHolder(issuerCert), serialNumber);
+    }
+
+    static X509Certificate loadCertificate(String path) throws Exception {
+        try (InputStream inputStream = new FileInputStream(path)) {
+            return (X509Certificate) CertificateFactory.getInstance("X.509").generateCertificate(inputStream);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package ee.ria.taraauthserver.authentication.legalperson;
+
+import com.github.tomakehurst.wiremock.client.WireMock;
+import ee.ria.taraauthserver.BaseTest;
+import ee.ria.taraauthserver.authentication.legalperson.xroad.BusinessRegistryCache;
+import ee.ria.taraauthserver.session.MockSessionFilter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.restassured.RestAssured;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.TestPropertySource;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.postRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static ee.ria.taraauthserver.session.MockTaraSessionBuilder.buildMockCredential;
+import static ee.ria.taraauthserver.session.TaraAuthenticationState.LEGAL_PERSON_AUTHENTICATION_INIT;
+import static io.restassured.RestAssured.given;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+@TestPropertySource(
+        locations = "classpath:application.yml",
+        properties = {"tara.legal-person-authentication.business-registry-cache.enabled=true"})
+public class LegalpersonControllerBusinessRegistryCacheTest extends BaseTest {
+
+    @Autowired
+    private BusinessRegistryCache businessRegistryCache;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @BeforeEach
+    void beforeEach() {
+        RestAssured.responseSpecification = null;
+        businessRegistryCache.invalidateAll();
+    }
+
+    @Test
+    @Tag(value = "LEGAL_PERSON_BUSINESSREGISTER_RESPONSE")
+    void getAuthLegalPerson_repeatedRequests_businessRegistryRequestedOnce() {
+        wireMockServer.stubFor(WireMock.post(urlEqualTo("/cgi-bin/consumer_proxy"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "application/xml; charset=UTF-8")
+                        .withBodyFile("mock_responses/xroad/ok-single-match.xml")));
+
+        double hits = cacheHits();
+        long upstreamRequests = upstreamRequests();
+
+        requestLegalPersons();
+        requestLegalPersons();
+
+        wireMockServer.verify(1, postRequestedFor(urlEqualTo("/cgi-bin/consumer_proxy")));
+        assertThat(cacheHits() - hits).isEqualTo(1);
+        assertThat(upstreamRequests() - upstreamRequests).isEqualTo(1);
+    }
+
+    @Test
+    @Tag(value = "LEGAL_PERSON_BUSINESSREGISTER_RESPONSE")
+    void getAuthLegalPerson_cacheInvalidated_businessRegistryRequestedAgain() {
+        wireMockServer.stubFor(WireMock.post(urlEqualTo("/cgi-bin/consumer_proxy"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "application/xml; charset=UTF-8")
+                        .withBodyFile("mock_responses/xroad/ok-single-match.xml")));
+
+        requestLegalPersons();
+        businessRegistryCache.invalidateAll();
+        requestLegalPersons();
+
+        wireMockServer.verify(2, postRequestedFor(urlEqualTo("/cgi-bin/consumer_proxy")));
+    }
+
+    private double cacheHits() {
+        return meterRegistry.get("tara.business-registry.cache.requests").tag("result", "hit").functionCounter().count();
+    }
+
+    private long upstreamRequests() {
+        return meterRegistry.find("tara.business-registry.latency").tag("outcome", "success").timers().stream()
+                .mapToLong(Timer::count).sum();
+    }
+
+    private void requestLegalPersons() {
+        given()
+                .filter(MockSessionFilter.withTaraSession()
+                        .sessionRepository(sessionRepository)
+                        .authenticationState(LEGAL_PERSON_AUTHENTICATION_INIT)
+                        .authenticationResult(buildMockCredential())
+                        .build())
+                .when()
+                .get("/auth/legalperson")
+                .then()
+                .assertThat()
+                .statusCode(200)
+                .headers(EXPECTED_RESPONSE_HEADERS)
+                .body("legalPersons[0].legalName", equalTo("Acme INC OÜ"))
+                .body("legalPersons[0].legalPersonIdentifier", equalTo("12341234"));
+    }
+}
@@ -0,0 +1,119 @@
+package ee.ria.taraauthserver.authentication.legalperson;
+
+import com.github.tomakehurst.wiremock.client.WireMock;
+import ee.ria.taraauthserver.BaseTest;
+import ee.ria.taraauthserver.session.MockSessionFilter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.restassured.RestAssured;
+import io.restassured.path.json.JsonPath;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.TestPropertySource;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static ee.ria.taraauthserver.session.MockTaraSessionBuilder.buildMockCredential;
+import static ee.ria.taraauthserver.session.TaraAuthenticationState.LEGAL_PERSON_AUTHENTICATION_INIT;
+import static io.restassured.RestAssured.given;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+@TestPropertySource(
+        locations = "classpath:application.yml",
+        properties = {"tara.legal-person-authentication.x-road-connection-pool.enabled=true"})
+public class LegalpersonControllerConnectionPoolTest extends BaseTest {
+    private static final String POOL_NAME = "tara-x-road-connection-pool";
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @BeforeEach
+    void beforeEach() {
+        RestAssured.responseSpecification = null;
+    }
+
+    @Test
+    @Tag(value = "LEGAL_PERSON_BUSINESSREGISTER_RESPONSE")
+    void getAuthLegalPerson_validLegalPersons_requestSentOverPooledConnection() {
+        wireMockServer.stubFor(WireMock.post(urlEqualTo("/cgi-bin/consumer_proxy"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "application/xml; charset=UTF-8")
+                        .withBodyFile("mock_responses/xroad/ok-single-match.xml")));
+
+        JsonPath response = given()
+                .filter(MockSessionFilter.withTaraSession()
+                        .sessionRepository(sessionRepository)
+                        .authenticationState(LEGAL_PERSON_AUTHENTICATION_INIT)
+                        .authenticationResult(buildMockCredential())
+                        .build())
+                .when()
+                .get("/auth/legalperson")
+                .then()
+                .assertThat()
+                .statusCode(200)
+                .headers(EXPECTED_RESPONSE_HEADERS)
+                .extract().jsonPath();
+
+        assertThat(response.getString("legalPersons[0].legalName")).isEqualTo("Acme INC OÜ");
+        assertThat(response.getString("legalPersons[0].legalPersonIdentifier")).isEqualTo("12341234");
+        assertThat(poolConnections("leased")).isZero();
+        assertThat(poolConnections("available")).isEqualTo(1);
+    }
+
+    @Test
+    @Tag(value = "LEGAL_PERSON_BUSINESSREGISTER_RESPONSE")
+    void getAuthLegalPerson_xroadError_RequestTimesOut() {
+        wireMockServer.stubFor(WireMock.post(urlEqualTo("/cgi-bin/consumer_proxy"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "application/xml; charset=UTF-8")
+                        .withFixedDelay(5000)
+                        .withBodyFile("mock_responses/xroad/ok-single-match.xml")));
+
+        given()
+                .filter(MockSessionFilter.withTaraSession()
+                        .sessionRepository(sessionRepository)
+                        .authenticationState(LEGAL_PERSON_AUTHENTICATION_INIT)
+                        .authenticationResult(buildMockCredential())
+                        .build())
+                .when()
+                .get("/auth/legalperson")
+                .then()
+                .assertThat()
+                .statusCode(502)
+                .body("message", equalTo("Äriregistriga ei saadud ühendust. Palun proovige hiljem uuesti."));
+
+        assertErrorIsLogged("Service not available: Could not connect to business registry. Connection failed: Read timed out");
+    }
+
+    @Test
+    @Tag(value = "LEGAL_PERSON_BUSINESSREGISTER_RESPONSE")
+    void getAuthLegalPerson_xroadError_NotFound() {
+        wireMockServer.stubFor(WireMock.post(urlEqualTo("/cgi-bin/consumer_proxy"))
+                .willReturn(aResponse()
+                        .withStatus(404)
+                        .withHeader("Content-Type", "text/html; charset=UTF-8")
+                        .withBody("Not found")));
+
+        given()
+                .filter(MockSessionFilter.withTaraSession()
+                        .sessionRepository(sessionRepository)
+                        .authenticationState(LEGAL_PERSON_AUTHENTICATION_INIT)
+                        .authenticationResult(buildMockCredential())
+                        .build())
+                .when()
+                .get("/auth/legalperson")
+                .then()
+                .assertThat()
+                .statusCode(500);
+
+        assertErrorIsLogged("Server encountered an unexpected error: Failed to extract data from response: X-Road service returned HTTP status code 404");
+    }
+
+    private double poolConnections(String state) {
+        return meterRegistry.get("httpcomponents.httpclient.pool.total.connections").tag("httpclient", POOL_NAME).tag("state", state).gauge().value();
+    }
+}
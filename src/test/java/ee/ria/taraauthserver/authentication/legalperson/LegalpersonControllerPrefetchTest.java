@@ -0,0 +1,151 @@
+package ee.ria.taraauthserver.authentication.legalperson;
+
+import com.github.tomakehurst.wiremock.client.WireMock;
+import ee.ria.taraauthserver.BaseTest;
+import ee.ria.taraauthserver.session.MockSessionFilter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.restassured.RestAssured;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.TestPropertySource;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.postRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static ee.ria.taraauthserver.session.MockTaraSessionBuilder.buildMockCredential;
+import static ee.ria.taraauthserver.session.TaraAuthenticationState.LEGAL_PERSON_AUTHENTICATION_INIT;
+import static ee.ria.taraauthserver.session.TaraAuthenticationState.NATURAL_PERSON_AUTHENTICATION_COMPLETED;
+import static io.restassured.RestAssured.given;
+import static java.util.List.of;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.awaitility.Durations.FIVE_SECONDS;
+import static org.hamcrest.Matchers.equalTo;
+
+@TestPropertySource(
+        locations = "classpath:application.yml",
+        properties = {"tara.legal-person-authentication.prefetch.enabled=true"})
+public class LegalpersonControllerPrefetchTest extends BaseTest {
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @BeforeEach
+    void beforeEach() {
+        RestAssured.responseSpecification = null;
+    }
+
+    @Test
+    @Tag(value = "LEGAL_PERSON_BUSINESSREGISTER_RESPONSE")
+    void getAuthLegalPerson_prefetchedAtInit_prefetchedRequestAwaited() {
+        wireMockServer.stubFor(WireMock.post(urlEqualTo("/cgi-bin/consumer_proxy"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "application/xml; charset=UTF-8")
+                        .withBodyFile("mock_responses/xroad/ok-single-match.xml")));
+        MockSessionFilter sessionFilter = MockSessionFilter.withTaraSession()
+                .sessionRepository(sessionRepository)
+                .authenticationState(NATURAL_PERSON_AUTHENTICATION_COMPLETED)
+                .authenticationResult(buildMockCredential())
+                .clientAllowedScopes(of("mid", "legalperson"))
+                .requestedScopes(of("mid", "legalperson"))
+                .build();
+        double hits = prefetchRequests("hit");
+
+        given()
+                .filter(sessionFilter)
+                .when()
+                .get("/auth/legalperson/init")
+                .then()
+                .assertThat()
+                .statusCode(200);
+
+        await().atMost(FIVE_SECONDS)
+                .untilAsserted(() -> wireMockServer.verify(1, postRequestedFor(urlEqualTo("/cgi-bin/consumer_proxy"))));
+
+        given()
+                .filter(sessionFilter)
+                .when()
+                .get("/auth/legalperson")
+                .then()
+                .assertThat()
+                .statusCode(200)
+                .headers(EXPECTED_RESPONSE_HEADERS)
+                .body("legalPersons[0].legalName", equalTo("Acme INC OÜ"))
+                .body("legalPersons[0].legalPersonIdentifier", equalTo("12341234"));
+
+        wireMockServer.verify(1, postRequestedFor(urlEqualTo("/cgi-bin/consumer_proxy")));
+        assertThat(prefetchRequests("hit") - hits).isEqualTo(1);
+        assertInfoIsLogged("Prefetching business registry request", "Awaiting prefetched business registry request");
+    }
+
+    @Test
+    @Tag(value = "LEGAL_PERSON_BUSINESSREGISTER_RESPONSE")
+    void getAuthLegalPerson_prefetchedRequestFailed_errorReturned() {
+        wireMockServer.stubFor(WireMock.post(urlEqualTo("/cgi-bin/consumer_proxy"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "application/xml; charset=UTF-8")
+                        .withBodyFile("mock_responses/xroad/nok-soapfault.xml")));
+        MockSessionFilter sessionFilter = MockSessionFilter.withTaraSession()
+                .sessionRepository(sessionRepository)
+                .authenticationState(NATURAL_PERSON_AUTHENTICATION_COMPLETED)
+                .authenticationResult(buildMockCredential())
+                .clientAllowedScopes(of("mid", "legalperson"))
+                .requestedScopes(of("mid", "legalperson"))
+                .build();
+
+        given()
+                .filter(sessionFilter)
+                .when()
+                .get("/auth/legalperson/init")
+                .then()
+                .assertThat()
+                .statusCode(200);
+
+        given()
+                .filter(sessionFilter)
+                .when()
+                .get("/auth/legalperson")
+                .then()
+                .assertThat()
+                .statusCode(500)
+                .body("message", equalTo("Autentimine ebaõnnestus teenuse tehnilise vea tõttu. Palun proovige mõne aja pärast uuesti."));
+
+        wireMockServer.verify(1, postRequestedFor(urlEqualTo("/cgi-bin/consumer_proxy")));
+        assertErrorIsLogged("Server encountered an unexpected error: X-Road service returned a soap fault: faultcode = 'SOAP-ENV:Server', faultstring = 'Sisendparameetrid vigased: palun sisestage kas äriregistri kood, isikukood või isiku ees- ja perekonnanimi.'");
+    }
+
+    @Test
+    @Tag(value = "LEGAL_PERSON_BUSINESSREGISTER_RESPONSE")
+    void getAuthLegalPerson_notPrefetched_businessRegistryRequested() {
+        wireMockServer.stubFor(WireMock.post(urlEqualTo("/cgi-bin/consumer_proxy"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "application/xml; charset=UTF-8")
+                        .withBodyFile("mock_responses/xroad/ok-single-match.xml")));
+        double misses = prefetchRequests("miss");
+
+        given()
+                .filter(MockSessionFilter.withTaraSession()
+                        .sessionRepository(sessionRepository)
+                        .authenticationState(LEGAL_PERSON_AUTHENTICATION_INIT)
+                        .authenticationResult(buildMockCredential())
+                        .build())
+                .when()
+                .get("/auth/legalperson")
+                .then()
+                .assertThat()
+                .statusCode(200)
+                .body("legalPersons[0].legalPersonIdentifier", equalTo("12341234"));
+
+        wireMockServer.verify(1, postRequestedFor(urlEqualTo("/cgi-bin/consumer_proxy")));
+        assertThat(prefetchRequests("miss") - misses).isEqualTo(1);
+    }
+
+    private double prefetchRequests(String result) {
+        return meterRegistry.get("tara.legal-person.prefetch.requests").tag("result", result).counter().count();
+    }
+}
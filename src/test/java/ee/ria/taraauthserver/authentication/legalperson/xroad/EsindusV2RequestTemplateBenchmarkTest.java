@@ -0,0 +1,73 @@
+package ee.ria.taraauthserver.authentication.legalperson.xroad;
+
+import ee.ria.taraauthserver.config.properties.LegalPersonProperties;
+import freemarker.template.Configuration;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.lang.management.ManagementFactory;
+import java.util.UUID;
+
+import static ee.ria.taraauthserver.authentication.legalperson.xroad.EsindusV2RequestTemplateTest.TEMPLATE_NAME;
+import static ee.ria.taraauthserver.authentication.legalperson.xroad.EsindusV2RequestTemplateTest.legalPersonProperties;
+import static ee.ria.taraauthserver.authentication.legalperson.xroad.EsindusV2RequestTemplateTest.renderTemplate;
+import static ee.ria.taraauthserver.authentication.legalperson.xroad.EsindusV2RequestTemplateTest.templateConfiguration;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Compares CPU time and allocated bytes per arireg.esindus_v2 request created by processing the FreeMarker template
+ * (the previous implementation) and by {@link EsindusV2RequestTemplate}.
+ * <p>
+ * Run with {@code -Dtara.benchmark=true}.
+ */
+@Slf4j
+@EnabledIfSystemProperty(named = "tara.benchmark", matches = "true")
+class EsindusV2RequestTemplateBenchmarkTest {
+    private static final String ID_CODE = "47101010033";
+    private static final int WARMUP_ITERATIONS = 20000;
+    private static final int ITERATIONS = 100000;
+
+    private final com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    @Test
+    @Tag(value = "LEGAL_PERSON_BUSINESSREGISTER_REQUEST")
+    void benchmark_TemplateAndPreRenderedRequest() throws Exception {
+        Configuration templateConfiguration = templateConfiguration();
+        LegalPersonProperties properties = legalPersonProperties();
+        EsindusV2RequestTemplate requestTemplate = new EsindusV2RequestTemplate(templateConfiguration, TEMPLATE_NAME, properties);
+        String nonce = UUID.randomUUID().toString();
+
+        RequestFactory template = () -> renderTemplate(templateConfiguration, properties, ID_CODE, nonce);
+        RequestFactory preRendered = () -> requestTemplate.render(ID_CODE, nonce);
+        assertEquals(template.create(), preRendered.create());
+
+        for (int round = 0; round < 2; round++) {
+            long[] templateResult = benchmark(template);
+            long[] preRenderedResult = benchmark(preRendered);
+            log.info("esindus_v2 request from template: {} ns, {} bytes allocated, pre-rendered: {} ns, {} bytes allocated",
+                    templateResult[0], templateResult[1], preRenderedResult[0], preRenderedResult[1]);
+        }
+    }
+
+    private long[] benchmark(RequestFactory requestFactory) throws Exception {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            requestFactory.create();
+        }
+        long threadId = Thread.currentThread().getId();
+        long startBytes = threadMXBean.getThreadAllocatedBytes(threadId);
+        long start = threadMXBean.getCurrentThreadCpuTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            requestFactory.create();
+        }
+        long nanos = (threadMXBean.getCurrentThreadCpuTime() - start) / ITERATIONS;
+        long bytes = (threadMXBean.getThreadAllocatedBytes(threadId) - startBytes) / ITERATIONS;
+        return new long[]{nanos, bytes};
+    }
+
+    @FunctionalInterface
+    private interface RequestFactory {
+        String create() throws Exception;
+    }
+}
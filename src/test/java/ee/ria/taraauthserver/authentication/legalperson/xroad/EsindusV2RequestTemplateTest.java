@@ -0,0 +1,98 @@
+package ee.ria.taraauthserver.authentication.legalperson.xroad;
+
+import ee.ria.taraauthserver.config.properties.LegalPersonProperties;
+import freemarker.template.Configuration;
+import freemarker.template.TemplateExceptionHandler;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Map;
+
+import static freemarker.template.Configuration.VERSION_2_3_28;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.unbescape.xml.XmlEscape.escapeXml11;
+
+class EsindusV2RequestTemplateTest {
+    static final String TEMPLATE_NAME = "xtee-arireg.esindus_v2.v1.ftl";
+    private static final String ID_CODE = "47101010033";
+    private static final String NONCE = "1d9a9a3c-5d2c-4f1a-9f4e-2b8e0e6f3c11";
+
+    @Test
+    @Tag(value = "LEGAL_PERSON_BUSINESSREGISTER_REQUEST")
+    void render_SameAsTemplateRenderedPerRequest() throws Exception {
+        Configuration templateConfiguration = templateConfiguration();
+        LegalPersonProperties properties = legalPersonProperties();
+        EsindusV2RequestTemplate requestTemplate = new EsindusV2RequestTemplate(templateConfiguration, TEMPLATE_NAME, properties);
+
+        assertEquals(renderTemplate(templateConfiguration, properties, ID_CODE, NONCE), requestTemplate.render(ID_CODE, NONCE));
+        assertEquals(renderTemplate(templateConfiguration, properties, "38001085718", "nonce"), requestTemplate.render("38001085718", "nonce"));
+    }
+
+    @Test
+    @Tag(value = "LEGAL_PERSON_BUSINESSREGISTER_REQUEST")
+    void render_ParametersEscaped() throws Exception {
+        LegalPersonProperties properties = legalPersonProperties();
+        properties.setXRoadServiceMemberCode("<70000310&>");
+        EsindusV2RequestTemplate requestTemplate = new EsindusV2RequestTemplate(templateConfiguration(), TEMPLATE_NAME, properties);
+
+        String request = requestTemplate.render(ID_CODE, "<nonce>");
+
+        assertTrue(request.contains("<iden:memberCode>&lt;70000310&amp;&gt;</iden:memberCode>"));
+        assertTrue(request.contains("<xro:id>&lt;nonce&gt;</xro:id>"));
+        assertTrue(request.contains("<xro:userId>EE" + ID_CODE + "</xro:userId>"));
+        assertTrue(request.contains("<prod:fyysilise_isiku_kood>" + ID_CODE + "</prod:fyysilise_isiku_kood>"));
+    }
+
+    @Test
+    @Tag(value = "LEGAL_PERSON_BUSINESSREGISTER_REQUEST")
+    void create_TemplateMissing() {
+        IllegalStateException exception = assertThrows(IllegalStateException.class,
+                () -> new EsindusV2RequestTemplate(templateConfiguration(), "missing.ftl", legalPersonProperties()));
+
+        assertTrue(exception.getMessage().startsWith("Could not create SOAP request from template: "));
+    }
+
+    static Configuration templateConfiguration() throws IOException {
+        Configuration templateConfiguration = new Configuration(VERSION_2_3_28);
+        templateConfiguration.setDirectoryForTemplateLoading(new File("src/main/resources/xroad-request-templates"));
+        templateConfiguration.setTemplateExceptionHandler(TemplateExceptionHandler.RETHROW_HANDLER);
+        templateConfiguration.setDefaultEncoding("UTF-8");
+        return templateConfiguration;
+    }
+
+    static LegalPersonProperties legalPersonProperties() {
+        LegalPersonProperties properties = new LegalPersonProperties();
+        properties.setXRoadServiceInstance("ee-dev");
+        properties.setXRoadServiceMemberClass("GOV");
+        properties.setXRoadServiceMemberCode("70000310");
+        properties.setXRoadServiceSubsystemCode("arireg");
+        properties.setXRoadClientSubsystemInstance("ee-dev");
+        properties.setXRoadClientSubsystemMemberClass("GOV");
+        properties.setXRoadClientSubsystemMemberCode("70006317");
+        properties.setXRoadClientSubsystemCode("idp");
+        return properties;
+    }
+
+    static String renderTemplate(Configuration templateConfiguration, LegalPersonProperties properties, String idCode, String nonce) throws Exception {
+        Map<String, String> params = new HashMap<>();
+        params.put("nonce", escapeXml11(nonce));
+        params.put("serviceRoadInstance", escapeXml11(properties.getXRoadServiceInstance()));
+        params.put("serviceMemberClass", escapeXml11(properties.getXRoadServiceMemberClass()));
+        params.put("serviceMemberCode", escapeXml11(properties.getXRoadServiceMemberCode()));
+        params.put("serviceSubsystemCode", escapeXml11(properties.getXRoadServiceSubsystemCode()));
+        params.put("subsystemRoadInstance", escapeXml11(properties.getXRoadClientSubsystemInstance()));
+        params.put("subsystemMemberClass", escapeXml11(properties.getXRoadClientSubsystemMemberClass()));
+        params.put("subsystemMemberCode", escapeXml11(properties.getXRoadClientSubsystemMemberCode()));
+        params.put("subsystemSubsystemCode", escapeXml11(properties.getXRoadClientSubsystemCode()));
+        params.put("personIdCode", escapeXml11(idCode));
+        StringWriter writer = new StringWriter();
+        templateConfiguration.getTemplate(TEMPLATE_NAME).process(params, writer);
+        return writer.toString();
+    }
+}
@@ -0,0 +1,52 @@
+package ee.ria.taraauthserver.authentication.legalperson.xroad;
+
+import java.util.List;
+
+/**
+ * Builds arireg.esindus_v2 service responses with a given list of legal persons.
+ */
+final class EsindusV2ResponseGenerator {
+
+    private EsindusV2ResponseGenerator() {
+    }
+
+    static String response(List<String> legalPersons) {
+        StringBuilder response = new StringBuilder()
+                .append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>")
+                .append("<SOAP-ENV:Envelope xmlns:SOAP-ENV=\"http://schemas.xmlsoap.org/soap/envelope/\">")
+                .append("<SOAP-ENV:Header/>")
+                .append("<SOAP-ENV:Body xmlns:ns1=\"http://arireg.x-road.eu/producer/\">")
+                .append("<ns1:esindus_v2Response><ns1:keha><ns1:ettevotjad>");
+        legalPersons.forEach(response::append);
+        return response
+                .append("</ns1:ettevotjad></ns1:keha></ns1:esindus_v2Response>")
+                .append("</SOAP-ENV:Body>")
+                .append("</SOAP-ENV:Envelope>")
+                .toString();
+    }
+
+    static String legalPerson(String registryCode, String type, String status, String idCode, String soleRepresentation) {
+        return "<ns1:item>" +
+                "<ns1:ariregistri_kood>" + registryCode + "</ns1:ariregistri_kood>" +
+                "<ns1:arinimi>Acme INC " + type + " " + registryCode + "</ns1:arinimi>" +
+                "<ns1:staatus>" + status + "</ns1:staatus>" +
+                "<ns1:staatus_tekstina>Registrisse kantud</ns1:staatus_tekstina>" +
+                "<ns1:isikud>" +
+                "<ns1:item>" +
+                "<ns1:fyysilise_isiku_eesnimi>Mari-Liis</ns1:fyysilise_isiku_eesnimi>" +
+                "<ns1:fyysilise_isiku_perenimi>Männik</ns1:fyysilise_isiku_perenimi>" +
+                "<ns1:fyysilise_isiku_kood>" + idCode + "</ns1:fyysilise_isiku_kood>" +
+                "<ns1:isikukood_riik>EST</ns1:isikukood_riik>" +
+                "<ns1:isikukoodi_riik_tekstina>Eesti</ns1:isikukoodi_riik_tekstina>" +
+                "<ns1:fyysilise_isiku_roll>JUHL</ns1:fyysilise_isiku_roll>" +
+                "<ns1:fyysilise_isiku_roll_tekstina>Juhatuse liige</ns1:fyysilise_isiku_roll_tekstina>" +
+                "<ns1:ainuesindusoigus_olemas>" + soleRepresentation + "</ns1:ainuesindusoigus_olemas>" +
+                "</ns1:item>" +
+                "</ns1:isikud>" +
+                "<ns1:esindusoiguse_eritingimused/>" +
+                "<ns1:esindusoiguse_grupid/>" +
+                "<ns1:oiguslik_vorm>" + type + "</ns1:oiguslik_vorm>" +
+                "<ns1:oiguslik_vorm_tekstina>Osaühing</ns1:oiguslik_vorm_tekstina>" +
+                "</ns1:item>";
+    }
+}
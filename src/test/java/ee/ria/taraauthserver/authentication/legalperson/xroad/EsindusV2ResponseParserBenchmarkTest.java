@@ -0,0 +1,112 @@
+package ee.ria.taraauthserver.authentication.legalperson.xroad;
+
+import ee.ria.taraauthserver.session.TaraSession;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.w3c.dom.Document;
+import org.w3c.dom.NodeList;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathFactory;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static ee.ria.taraauthserver.authentication.legalperson.xroad.EsindusV2ResponseParserTest.DEFAULT_ALLOWED_TYPES;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Compares CPU time and allocated bytes per arireg.esindus_v2 response parsed with DOM and XPath filter (the previous
+ * implementation) and with {@link EsindusV2ResponseParser}, for responses with different numbers of legal persons.
+ * <p>
+ * Run with {@code -Dtara.benchmark=true}.
+ */
+@Slf4j
+@EnabledIfSystemProperty(named = "tara.benchmark", matches = "true")
+class EsindusV2ResponseParserBenchmarkTest {
+    private static final String ID_CODE = "47101010033";
+    private static final int ITERATIONS = 2000;
+    private static final String XPATH_FILTER = "//ettevotjad/item[staatus = 'R' " +
+            "and (oiguslik_vorm = 'TÜ' or oiguslik_vorm = 'UÜ' or oiguslik_vorm = 'OÜ' or oiguslik_vorm = 'AS' " +
+            "or oiguslik_vorm = 'TÜH' or oiguslik_vorm = 'SA' or oiguslik_vorm = 'MTÜ') " +
+            "and isikud/item[isikukood_riik = 'EST' and fyysilise_isiku_kood = '" + ID_CODE + "' and ainuesindusoigus_olemas = 'JAH']]";
+
+    private final com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    @Test
+    @Tag(value = "LEGAL_PERSON_BUSINESSREGISTER_RESPONSE")
+    void benchmark_DomAndStreamingParser() throws Exception {
+        EsindusV2ResponseParser parser = new EsindusV2ResponseParser(DEFAULT_ALLOWED_TYPES);
+        for (int legalPersonCount : new int[]{1, 10, 100, 1000}) {
+            String response = generateResponse(legalPersonCount);
+            Parser domParser = () -> parseWithDom(response);
+            Parser streamingParser = () -> parser.parse(new StringReader(response), ID_CODE);
+            assertEquals(domParser.parse(), streamingParser.parse());
+
+            int iterations = Math.max(10, ITERATIONS / legalPersonCount);
+            long[] dom = benchmark(domParser, iterations);
+            long[] streaming = benchmark(streamingParser, iterations);
+            log.info("esindus_v2 response with {} legal persons ({} bytes), DOM: {} ns, {} bytes allocated, streaming: {} ns, {} bytes allocated",
+                    legalPersonCount, response.length(), dom[0], dom[1], streaming[0], streaming[1]);
+        }
+    }
+
+    private static String generateResponse(int legalPersonCount) {
+        List<String> legalPersons = new ArrayList<>();
+        for (int i = 0; i < legalPersonCount; i++) {
+            // Every third legal person is not registered or the person has no sole representation rights
+            String status = i % 3 == 1 ? "L" : "R";
+            String soleRepresentation = i % 3 == 2 ? "EI" : "JAH";
+            legalPersons.add(EsindusV2ResponseGenerator.legalPerson(String.valueOf(10000000 + i), DEFAULT_ALLOWED_TYPES[i % DEFAULT_ALLOWED_TYPES.length],
+                    status, ID_CODE, soleRepresentation));
+        }
+        return EsindusV2ResponseGenerator.response(legalPersons);
+    }
+
+    private static List<TaraSession.LegalPerson> parseWithDom(String response) throws Exception {
+        DocumentBuilderFactory builderFactory = DocumentBuilderFactory.newInstance();
+        builderFactory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+        builderFactory.setAttribute(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+        builderFactory.setAttribute(XMLConstants.ACCESS_EXTERNAL_SCHEMA, "");
+        Document xmlDocument = builderFactory.newDocumentBuilder().parse(IOUtils.toInputStream(response, StandardCharsets.UTF_8));
+        XPath xPath = XPathFactory.newInstance().newXPath();
+        xPath.compile("/Envelope/Body/Fault/faultcode/text()").evaluate(xmlDocument, XPathConstants.STRING);
+        NodeList nodes = (NodeList) xPath.compile(XPATH_FILTER).evaluate(xmlDocument, XPathConstants.NODESET);
+        List<TaraSession.LegalPerson> legalPersons = new ArrayList<>();
+        for (int i = 0; i < nodes.getLength(); i++) {
+            XPath itemXPath = XPathFactory.newInstance().newXPath();
+            String idCode = (String) itemXPath.compile("ariregistri_kood/text()").evaluate(nodes.item(i), XPathConstants.STRING);
+            String name = (String) itemXPath.compile("arinimi/text()").evaluate(nodes.item(i), XPathConstants.STRING);
+            legalPersons.add(new TaraSession.LegalPerson(name, idCode));
+        }
+        return legalPersons;
+    }
+
+    private long[] benchmark(Parser parser, int iterations) throws Exception {
+        for (int i = 0; i < iterations; i++) {
+            parser.parse();
+        }
+        long threadId = Thread.currentThread().getId();
+        long startBytes = threadMXBean.getThreadAllocatedBytes(threadId);
+        long start = threadMXBean.getCurrentThreadCpuTime();
+        for (int i = 0; i < iterations; i++) {
+            parser.parse();
+        }
+        long nanos = (threadMXBean.getCurrentThreadCpuTime() - start) / iterations;
+        long bytes = (threadMXBean.getThreadAllocatedBytes(threadId) - startBytes) / iterations;
+        return new long[]{nanos, bytes};
+    }
+
+    @FunctionalInterface
+    private interface Parser {
+        List<TaraSession.LegalPerson> parse() throws Exception;
+    }
+}
@@ -0,0 +1,94 @@
+package ee.ria.taraauthserver.authentication.legalperson.xroad;
+
+import ee.ria.taraauthserver.session.TaraSession;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.FileReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EsindusV2ResponseParserTest {
+    static final String[] DEFAULT_ALLOWED_TYPES = {"TÜ", "UÜ", "OÜ", "AS", "TÜH", "SA", "MTÜ"};
+    private static final String ID_CODE = "47101010033";
+    private static final String MOCK_RESPONSES_PATH = "src/test/resources/__files/mock_responses/xroad/";
+
+    private final EsindusV2ResponseParser parser = new EsindusV2ResponseParser(DEFAULT_ALLOWED_TYPES);
+
+    @Test
+    @Tag(value = "LEGAL_PERSON_BUSINESSREGISTER_RESPONSE")
+    void parse_SingleMatch() throws Exception {
+        List<TaraSession.LegalPerson> legalPersons = parse(parser, "ok-single-match.xml");
+
+        assertEquals(List.of(new TaraSession.LegalPerson("Acme INC OÜ", "12341234")), legalPersons);
+    }
+
+    @Test
+    @Tag(value = "LEGAL_PERSON_BUSINESSREGISTER_RESPONSE")
+    void parse_MultipleMatches_OnlyRegisteredWithSoleRepresentationIncluded() throws Exception {
+        List<TaraSession.LegalPerson> legalPersons = parse(parser, "ok-multiple-matches.xml");
+
+        assertEquals(List.of(
+                new TaraSession.LegalPerson("Acme INC OÜ 1", "11111111"),
+                new TaraSession.LegalPerson("Acme INC UÜ 2", "22222222"),
+                new TaraSession.LegalPerson("Acme INC TÜ 3", "33333333"),
+                new TaraSession.LegalPerson("Acme INC AS 4", "44444444"),
+                new TaraSession.LegalPerson("Acme INC TÜH 5", "55555555"),
+                new TaraSession.LegalPerson("Acme INC SA 6", "66666666"),
+                new TaraSession.LegalPerson("Acme INC MTÜ 7", "77777777")), legalPersons);
+    }
+
+    @Test
+    @Tag(value = "LEGAL_PERSON_BUSINESSREGISTER_RESPONSE")
+    void parse_MultipleMatches_OnlyAllowedTypesIncluded() throws Exception {
+        List<TaraSession.LegalPerson> legalPersons = parse(new EsindusV2ResponseParser(new String[]{"OÜ", "AS"}), "ok-multiple-matches.xml");
+
+        assertEquals(List.of(
+                new TaraSession.LegalPerson("Acme INC OÜ 1", "11111111"),
+                new TaraSession.LegalPerson("Acme INC AS 4", "44444444")), legalPersons);
+    }
+
+    @Test
+    @Tag(value = "LEGAL_PERSON_BUSINESSREGISTER_RESPONSE")
+    void parse_NoMatch() throws Exception {
+        assertTrue(parse(parser, "ok-no-match.xml").isEmpty());
+    }
+
+    @Test
+    @Tag(value = "LEGAL_PERSON_BUSINESSREGISTER_RESPONSE")
+    void parse_SoleRepresentationOfOtherPerson_NotIncluded() throws Exception {
+        String response = EsindusV2ResponseGenerator.response(List.of(
+                EsindusV2ResponseGenerator.legalPerson("1", "OÜ", "R", "38001085718", "JAH"),
+                EsindusV2ResponseGenerator.legalPerson("2", "OÜ", "R", ID_CODE, "EI")));
+
+        assertTrue(parser.parse(new StringReader(response), ID_CODE).isEmpty());
+    }
+
+    @Test
+    @Tag(value = "LEGAL_PERSON_BUSINESSREGISTER_RESPONSE")
+    void parse_SoapFault() {
+        IllegalStateException exception = assertThrows(IllegalStateException.class, () -> parse(parser, "nok-soapfault.xml"));
+
+        assertEquals("X-Road service returned a soap fault: faultcode = 'SOAP-ENV:Server', faultstring = 'Sisendparameetrid " +
+                "vigased: palun sisestage kas äriregistri kood, isikukood või isiku ees- ja perekonnanimi.'", exception.getMessage());
+    }
+
+    @Test
+    @Tag(value = "LEGAL_PERSON_BUSINESSREGISTER_RESPONSE")
+    void parse_InvalidResponse() {
+        assertThrows(XMLStreamException.class, () -> parser.parse(new StringReader("Not found"), ID_CODE));
+    }
+
+    private static List<TaraSession.LegalPerson> parse(EsindusV2ResponseParser parser, String file) throws Exception {
+        try (Reader reader = new FileReader(MOCK_RESPONSES_PATH + file, StandardCharsets.UTF_8)) {
+            return parser.parse(reader, ID_CODE);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package ee.ria.taraauthserver.authentication.mobileid;
+
+import ee.ria.taraauthserver.BaseTest;
+import ee.ria.taraauthserver.session.MockTaraSessionBuilder;
+import ee.ria.taraauthserver.session.TaraSession;
+import ee.sk.mid.MidAuthenticationHashToSign;
+import ee.sk.mid.MidHashType;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.session.Session;
+import org.springframework.session.SessionRepository;
+import org.springframework.test.context.TestPropertySource;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.postRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathMatching;
+import static ee.ria.taraauthserver.config.properties.AuthenticationType.MOBILE_ID;
+import static ee.ria.taraauthserver.session.TaraAuthenticationState.INIT_AUTH_PROCESS;
+import static ee.ria.taraauthserver.session.TaraAuthenticationState.NATURAL_PERSON_AUTHENTICATION_COMPLETED;
+import static ee.ria.taraauthserver.session.TaraSession.TARA_SESSION;
+import static java.util.List.of;
+import static java.util.Locale.forLanguageTag;
+import static org.awaitility.Awaitility.await;
+import static org.awaitility.Durations.FIVE_SECONDS;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasProperty;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+@TestPropertySource(
+        locations = "classpath:application.yml",
+        properties = {
+                "tara.sk-connection-pool.enabled=true",
+                "tara.sk-connection-pool.max-connections-total=20",
+                "tara.sk-connection-pool.max-connections-per-route=10"})
+public class AuthMidServiceConnectionPoolTest extends BaseTest {
+    private static final String POOL_NAME = "tara-sk-connection-pool";
+    private final MidAuthenticationHashToSign MOCK_HASH_TO_SIGN = new MidAuthenticationHashToSign.MobileIdAuthenticationHashToSignBuilder()
+            .withHashType(MidHashType.SHA512)
+            .withHashInBase64("bT+0Fuuf0QChq/sYb+Nz8vhLE8n3gLeL/wOXKxxE4ao=").build();
+
+    @SpyBean
+    private AuthMidService authMidService;
+
+    @Autowired
+    private SessionRepository<Session> sessionRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @BeforeEach
+    void beforeEach() {
+        LocaleContextHolder.setLocale(forLanguageTag("et"));
+        Mockito.doReturn(MOCK_HASH_TO_SIGN).when(authMidService).getAuthenticationHash();
+    }
+
+    @AfterEach
+    void afterEach() {
+        Mockito.reset(authMidService);
+    }
+
+    @Test
+    @Tag(value = "MID_AUTH_POLL_RESPONSE_COMPLETE")
+    void correctAuthenticationSessionStateWhen_requestsSentOverPooledConnections() {
+        createMidApiAuthenticationStub("mock_responses/mid/mid_authenticate_response.json", 200, 0, "EST", "short name et");
+        createMidApiPollStub("mock_responses/mid/mid_poll_response.json", 200);
+        String sessionId = startMidAuthSession();
+
+        await().atMost(FIVE_SECONDS)
+                .until(() -> sessionRepository.findById(sessionId).getAttribute(TARA_SESSION), hasProperty("state", equalTo(NATURAL_PERSON_AUTHENTICATION_COMPLETED)));
+        wireMockServer.verify(1, postRequestedFor(urlEqualTo("/mid-api/authentication")));
+        wireMockServer.verify(1, getRequestedFor(urlPathMatching("/mid-api/authentication/session/.*")));
+        await().atMost(FIVE_SECONDS)
+                .until(() -> poolMetric("httpcomponents.httpclient.pool.total.connections", "leased"), equalTo(0.0));
+        assertEquals(20, meterRegistry.get("httpcomponents.httpclient.pool.total.max").tag("httpclient", POOL_NAME).gauge().value());
+        assertEquals(10, meterRegistry.get("httpcomponents.httpclient.pool.route.max.default").tag("httpclient", POOL_NAME).gauge().value());
+    }
+
+    private double poolMetric(String name, String state) {
+        return meterRegistry.get(name).tag("httpclient", POOL_NAME).tag("state", state).gauge().value();
+    }
+
+    private String startMidAuthSession() {
+        Session session = sessionRepository.createSession();
+        TaraSession testSession = MockTaraSessionBuilder.builder()
+                .sessionId(session.getId())
+                .authenticationState(INIT_AUTH_PROCESS)
+                .authenticationTypes(of(MOBILE_ID))
+                .build();
+        testSession.getLoginRequestInfo().getOidcClient().get().setShortNameTranslations(SHORT_NAME_TRANSLATIONS);
+        session.setAttribute(TARA_SESSION, testSession);
+        sessionRepository.save(session);
+        assertNotNull(authMidService.startMidAuthSession(testSession, "60001019906", "+37200000766"));
+        session.setAttribute(TARA_SESSION, testSession);
+        sessionRepository.save(session);
+        return session.getId();
+    }
+}
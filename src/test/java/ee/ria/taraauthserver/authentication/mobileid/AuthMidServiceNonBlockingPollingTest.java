@@ -0,0 +1,212 @@
+package ee.ria.taraauthserver.authentication.mobileid;
+
+import ee.ria.taraauthserver.BaseTest;
+import ee.ria.taraauthserver.session.MockTaraSessionBuilder;
+import ee.ria.taraauthserver.session.TaraSession;
+import ee.sk.mid.MidAuthenticationHashToSign;
+import ee.sk.mid.MidAuthenticationResponseValidator;
+import ee.sk.mid.MidHashType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.session.Session;
+import org.springframework.session.SessionRepository;
+import org.springframework.test.context.TestPropertySource;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.any;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathMatching;
+import static com.github.tomakehurst.wiremock.stubbing.Scenario.STARTED;
+import static ee.ria.taraauthserver.config.properties.AuthenticationType.MOBILE_ID;
+import static ee.ria.taraauthserver.error.ErrorCode.MID_INTEGRATION_ERROR;
+import static ee.ria.taraauthserver.error.ErrorCode.MID_INTERNAL_ERROR;
+import static ee.ria.taraauthserver.error.ErrorCode.MID_USER_CANCEL;
+import static ee.ria.taraauthserver.session.TaraAuthenticationState.AUTHENTICATION_FAILED;
+import static ee.ria.taraauthserver.session.TaraAuthenticationState.INIT_AUTH_PROCESS;
+import static ee.ria.taraauthserver.session.TaraAuthenticationState.NATURAL_PERSON_AUTHENTICATION_COMPLETED;
+import static ee.ria.taraauthserver.session.TaraAuthenticationState.POLL_MID_STATUS;
+import static ee.ria.taraauthserver.session.TaraAuthenticationState.POLL_MID_STATUS_CANCELED;
+import static ee.ria.taraauthserver.session.TaraSession.TARA_SESSION;
+import static java.util.List.of;
+import static java.util.Locale.forLanguageTag;
+import static org.awaitility.Awaitility.await;
+import static org.awaitility.Durations.FIVE_SECONDS;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasProperty;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+@TestPropertySource(
+        locations = "classpath:application.yml",
+        properties = {"tara.auth-methods.mobile-id.non-blocking-polling-enabled=true"})
+public class AuthMidServiceNonBlockingPollingTest extends BaseTest {
+    private final MidAuthenticationHashToSign MOCK_HASH_TO_SIGN = new MidAuthenticationHashToSign.MobileIdAuthenticationHashToSignBuilder()
+            .withHashType(MidHashType.SHA512)
+            .withHashInBase64("bT+0Fuuf0QChq/sYb+Nz8vhLE8n3gLeL/wOXKxxE4ao=").build();
+
+    @SpyBean
+    private AuthMidService authMidService;
+
+    @SpyBean
+    private MidAuthenticationResponseValidator midAuthenticationResponseValidator;
+
+    @Autowired
+    private SessionRepository<Session> sessionRepository;
+
+    @BeforeEach
+    void beforeEach() {
+        LocaleContextHolder.setLocale(forLanguageTag("et"));
+        Mockito.doReturn(MOCK_HASH_TO_SIGN).when(authMidService).getAuthenticationHash();
+    }
+
+    @AfterEach
+    void afterEach() {
+        Mockito.reset(authMidService, midAuthenticationResponseValidator);
+    }
+
+    @Test
+    @Tag(value = "MID_AUTH_POLL_RESPONSE_COMPLETE")
+    void correctAuthenticationSessionStateWhen_successfulAuthentication() {
+        createMidApiAuthenticationStub("mock_responses/mid/mid_authenticate_response.json", 200, 0, "EST", "short name et");
+        createMidApiPollStub("mock_responses/mid/mid_poll_response.json", 200);
+        String sessionId = startMidAuthSession();
+
+        TaraSession taraSession = await().atMost(FIVE_SECONDS)
+                .until(() -> sessionRepository.findById(sessionId).getAttribute(TARA_SESSION), hasProperty("state", equalTo(NATURAL_PERSON_AUTHENTICATION_COMPLETED)));
+        TaraSession.MidAuthenticationResult result = (TaraSession.MidAuthenticationResult) taraSession.getAuthenticationResult();
+        assertNull(result.getErrorCode());
+        assertEquals("60001019906", result.getIdCode());
+        assertEquals("EE60001019906", result.getSubject());
+        assertEquals("+37200000766", result.getPhoneNumber());
+        assertInfoIsLogged("Starting Mobile-ID session status polling with id: de305d54-75b4-431b-adb2-eb6b9e546015",
+                "MID session id de305d54-75b4-431b-adb2-eb6b9e546015 authentication result: OK, status: COMPLETE",
+                "State: POLL_MID_STATUS -> NATURAL_PERSON_AUTHENTICATION_COMPLETED");
+        wireMockServer.verify(1, getRequestedFor(urlPathMatching("/mid-api/authentication/session/.*")));
+    }
+
+    @Test
+    @Tag(value = "MID_AUTH_POLL_RESPONSE_COMPLETE")
+    void correctAuthenticationSessionStateWhen_sessionRunningBeforeComplete() {
+        createMidApiAuthenticationStub("mock_responses/mid/mid_authenticate_response.json", 200, 0, "EST", "short name et");
+        wireMockServer.stubFor(any(urlPathMatching("/mid-api/authentication/session/.*"))
+                .inScenario("MID_POLL").whenScenarioStateIs(STARTED)
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json; charset=UTF-8")
+                        .withStatus(200)
+                        .withBody("{\"state\":\"RUNNING\"}"))
+                .willSetStateTo("COMPLETE"));
+        wireMockServer.stubFor(any(urlPathMatching("/mid-api/authentication/session/.*"))
+                .inScenario("MID_POLL").whenScenarioStateIs("COMPLETE")
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json; charset=UTF-8")
+                        .withStatus(200)
+                        .withBodyFile("mock_responses/mid/mid_poll_response.json")));
+        String sessionId = startMidAuthSession();
+
+        await().atMost(FIVE_SECONDS)
+                .until(() -> sessionRepository.findById(sessionId).getAttribute(TARA_SESSION), hasProperty("state", equalTo(NATURAL_PERSON_AUTHENTICATION_COMPLETED)));
+        wireMockServer.verify(2, getRequestedFor(urlPathMatching("/mid-api/authentication/session/.*")));
+    }
+
+    @Test
+    @Tag(value = "MID_AUTH_POLL_RESPONSE_COMPLETE")
+    void finalSessionStatusIsHandledOutsideOfPollerThreads() {
+        AtomicReference<String> validationThreadName = new AtomicReference<>();
+        Mockito.doAnswer(invocation -> {
+            validationThreadName.set(Thread.currentThread().getName());
+            return invocation.callRealMethod();
+        }).when(midAuthenticationResponseValidator).validate(Mockito.any());
+        createMidApiAuthenticationStub("mock_responses/mid/mid_authenticate_response.json", 200, 0, "EST", "short name et");
+        createMidApiPollStub("mock_responses/mid/mid_poll_response.json", 200);
+        startMidAuthSession();
+
+        String threadName = await().atMost(FIVE_SECONDS).until(validationThreadName::get, notNullValue());
+        assertFalse(threadName.startsWith("tara-mid-poller-"), threadName);
+    }
+
+    @Test
+    @Tag(value = "MID_AUTH_POLL_RESPONSE_COMPLETE")
+    void authenticationResultIsDiscardedWhen_authenticationCanceledDuringPolling() {
+        createMidApiAuthenticationStub("mock_responses/mid/mid_authenticate_response.json", 200, 0, "EST", "short name et");
+        createMidApiPollStub("mock_responses/mid/mid_poll_response_user_cancelled.json", 200, 1000);
+        String sessionId = startMidAuthSession();
+        await().atMost(FIVE_SECONDS)
+                .until(() -> sessionRepository.findById(sessionId).getAttribute(TARA_SESSION), hasProperty("state", equalTo(POLL_MID_STATUS)));
+
+        Session session = sessionRepository.findById(sessionId);
+        TaraSession canceledTaraSession = session.getAttribute(TARA_SESSION);
+        canceledTaraSession.setState(POLL_MID_STATUS_CANCELED);
+        session.setAttribute(TARA_SESSION, canceledTaraSession);
+        sessionRepository.save(session);
+
+        await().atMost(FIVE_SECONDS)
+                .untilAsserted(() -> assertInfoIsLogged("Session is no longer in Mobile-ID authentication, authentication state is not saved: POLL_MID_STATUS_CANCELED"));
+        TaraSession taraSession = sessionRepository.findById(sessionId).getAttribute(TARA_SESSION);
+        assertEquals(POLL_MID_STATUS_CANCELED, taraSession.getState());
+        assertNull(taraSession.getAuthenticationResult().getErrorCode());
+    }
+
+    @Test
+    @Tag(value = "MID_AUTH_POLL_RESPONSE_COMPLETE")
+    void authenticationFailsWhen_MidApi_response_user_cancelled() {
+        createMidApiAuthenticationStub("mock_responses/mid/mid_authenticate_response.json", 200, 0, "EST", "short name et");
+        createMidApiPollStub("mock_responses/mid/mid_poll_response_user_cancelled.json", 200);
+        String sessionId = startMidAuthSession();
+
+        TaraSession taraSession = await().atMost(FIVE_SECONDS)
+                .until(() -> sessionRepository.findById(sessionId).getAttribute(TARA_SESSION), hasProperty("state", equalTo(AUTHENTICATION_FAILED)));
+        assertEquals(MID_USER_CANCEL, taraSession.getAuthenticationResult().getErrorCode());
+    }
+
+    @Test
+    @Tag(value = "MID_AUTH_POLL_RESPONSE_COMPLETE")
+    void authenticationFailsWhen_MidApi_poll_response_500() {
+        createMidApiAuthenticationStub("mock_responses/mid/mid_authenticate_response.json", 200, 0, "EST", "short name et");
+        createMidApiPollStub("mock_responses/mid/mid_poll_response.json", 500);
+        String sessionId = startMidAuthSession();
+
+        TaraSession taraSession = await().atMost(FIVE_SECONDS)
+                .until(() -> sessionRepository.findById(sessionId).getAttribute(TARA_SESSION), hasProperty("state", equalTo(AUTHENTICATION_FAILED)));
+        assertEquals(MID_INTERNAL_ERROR, taraSession.getAuthenticationResult().getErrorCode());
+        assertErrorIsLogged("Mobile-ID response: 500");
+    }
+
+    @Test
+    @Tag(value = "MID_AUTH_POLL_RESPONSE_COMPLETE")
+    void authenticationFailsWhen_MidApi_poll_response_404() {
+        createMidApiAuthenticationStub("mock_responses/mid/mid_authenticate_response.json", 200, 0, "EST", "short name et");
+        createMidApiPollStub("mock_responses/mid/mid_poll_response.json", 404);
+        String sessionId = startMidAuthSession();
+
+        TaraSession taraSession = await().atMost(FIVE_SECONDS)
+                .until(() -> sessionRepository.findById(sessionId).getAttribute(TARA_SESSION), hasProperty("state", equalTo(AUTHENTICATION_FAILED)));
+        assertEquals(MID_INTEGRATION_ERROR, taraSession.getAuthenticationResult().getErrorCode());
+    }
+
+    private String startMidAuthSession() {
+        Session session = sessionRepository.createSession();
+        TaraSession testSession = MockTaraSessionBuilder.builder()
+                .sessionId(session.getId())
+                .authenticationState(INIT_AUTH_PROCESS)
+                .authenticationTypes(of(MOBILE_ID))
+                .build();
+        testSession.getLoginRequestInfo().getOidcClient().get().setShortNameTranslations(SHORT_NAME_TRANSLATIONS);
+        session.setAttribute(TARA_SESSION, testSession);
+        sessionRepository.save(session);
+        assertNotNull(authMidService.startMidAuthSession(testSession, "60001019906", "+37200000766"));
+        session.setAttribute(TARA_SESSION, testSession);
+        sessionRepository.save(session);
+        return session.getId();
+    }
+}
@@ -243,7 +243,7 @@ public class AuthMidServiceTest extends BaseTest {
         Mockito.doReturn(midConnectorMock).when(midClient).getMobileIdConnector();
         Mockito.doThrow(new MidInternalErrorException("MidInternalErrorException")).when(midConnectorMock).authenticate(Mockito.any());
 
-        authMidService.startMidAuthSession(session.getAttribute(TARA_SESSION), "60001019906", "+37200000766");
+        startMidAuthSession(session);
 
         await().atMost(FIVE_SECONDS)
                 .until(() -> sessionRepository.findById(session.getId()).getAttribute(TARA_SESSION), hasProperty("state", equalTo(AUTHENTICATION_FAILED)));
@@ -260,7 +260,7 @@ public class AuthMidServiceTest extends BaseTest {
         Mockito.doReturn(midConnectorMock).when(midClient).getMobileIdConnector();
         Mockito.doThrow(new ProcessingException("ProcessingException")).when(midConnectorMock).authenticate(Mockito.any());
 
-        authMidService.startMidAuthSession(session.getAttribute(TARA_SESSION), "60001019906", "+37200000766");
+        startMidAuthSession(session);
 
         await().atMost(FIVE_SECONDS)
                 .until(() -> sessionRepository.findById(session.getId()).getAttribute(TARA_SESSION), hasProperty("state", equalTo(AUTHENTICATION_FAILED)));
@@ -277,7 +277,7 @@ public class AuthMidServiceTest extends BaseTest {
         Mockito.doReturn(midConnectorMock).when(midClient).getMobileIdConnector();
         Mockito.doThrow(new RuntimeException("RuntimeException")).when(midConnectorMock).authenticate(Mockito.any());
 
-        authMidService.startMidAuthSession(session.getAttribute(TARA_SESSION), "60001019906", "+37200000766");
+        startMidAuthSession(session);
 
         await().atMost(FIVE_SECONDS)
                 .until(() -> sessionRepository.findById(session.getId()).getAttribute(TARA_SESSION), hasProperty("state", equalTo(AUTHENTICATION_FAILED)));
@@ -480,11 +480,21 @@ public class AuthMidServiceTest extends BaseTest {
 
     private String createNewAuthenticationSessionAndReturnId() {
         Session session = createNewAuthenticationSession();
-        MidAuthenticationHashToSign midAuthenticationHashToSign = authMidService.startMidAuthSession(session.getAttribute(TARA_SESSION), "60001019906", "+37200000766");
-        assertNotNull(midAuthenticationHashToSign);
+        assertNotNull(startMidAuthSession(session));
         return session.getId();
     }
 
+    /**
+     * Starts authentication and saves the session afterwards, as the init request does.
+     */
+    private MidAuthenticationHashToSign startMidAuthSession(Session session) {
+        TaraSession taraSession = session.getAttribute(TARA_SESSION);
+        MidAuthenticationHashToSign midAuthenticationHashToSign = authMidService.startMidAuthSession(taraSession, "60001019906", "+37200000766");
+        session.setAttribute(TARA_SESSION, taraSession);
+        sessionRepository.save(session);
+        return midAuthenticationHashToSign;
+    }
+
     protected Session createNewAuthenticationSession() {
         Session session = sessionRepository.createSession();
         TaraSession testSession = MockTaraSessionBuilder.builder()
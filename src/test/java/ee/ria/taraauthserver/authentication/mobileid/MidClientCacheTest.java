@@ -0,0 +1,51 @@
+package ee.ria.taraauthserver.authentication.mobileid;
+
+import ee.ria.taraauthserver.BaseTest;
+import ee.sk.mid.MidClient;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class MidClientCacheTest extends BaseTest {
+
+    @Autowired
+    private MidClientCache midClientCache;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    @Tag(value = "MID_CLIENT_CACHE")
+    void get_WhenSameRelyingParty_ReturnsCachedClient() {
+        double hits = requests("hit");
+        double misses = requests("miss");
+
+        MidClient midClient = midClientCache.get("00000000-0000-0000-0000-000000000001", "CACHED RP");
+        MidClient cachedMidClient = midClientCache.get("00000000-0000-0000-0000-000000000001", "CACHED RP");
+
+        assertSame(midClient, cachedMidClient);
+        assertEquals("00000000-0000-0000-0000-000000000001", midClient.getRelyingPartyUUID());
+        assertEquals("CACHED RP", midClient.getRelyingPartyName());
+        assertEquals(hits + 1, requests("hit"));
+        assertEquals(misses + 1, requests("miss"));
+    }
+
+    @Test
+    @Tag(value = "MID_CLIENT_CACHE")
+    void get_WhenDifferentRelyingPartyName_ReturnsDifferentClient() {
+        MidClient midClient = midClientCache.get("00000000-0000-0000-0000-000000000002", "RP 1");
+        MidClient otherMidClient = midClientCache.get("00000000-0000-0000-0000-000000000002", "RP 2");
+
+        assertNotSame(midClient, otherMidClient);
+        assertEquals("RP 2", otherMidClient.getRelyingPartyName());
+    }
+
+    private double requests(String result) {
+        return meterRegistry.get("tara.mid.client.cache.requests").tag("result", result).functionCounter().count();
+    }
+}
@@ -0,0 +1,79 @@
+package ee.ria.taraauthserver.authentication.smartid;
+
+import ee.ria.taraauthserver.BaseTest;
+import ee.ria.taraauthserver.error.ErrorCode;
+import ee.ria.taraauthserver.session.MockTaraSessionBuilder;
+import ee.ria.taraauthserver.session.TaraSession;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.session.Session;
+import org.springframework.session.SessionRepository;
+import org.springframework.test.context.TestPropertySource;
+
+import java.util.stream.Stream;
+
+import static ee.ria.taraauthserver.config.properties.AuthenticationType.SMART_ID;
+import static ee.ria.taraauthserver.error.ErrorCode.SID_INTERNAL_ERROR;
+import static ee.ria.taraauthserver.session.TaraAuthenticationState.AUTHENTICATION_FAILED;
+import static ee.ria.taraauthserver.session.TaraAuthenticationState.INIT_AUTH_PROCESS;
+import static ee.ria.taraauthserver.session.TaraSession.TARA_SESSION;
+import static java.util.List.of;
+import static org.awaitility.Awaitility.await;
+import static org.awaitility.Durations.FIVE_SECONDS;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@TestPropertySource(
+        locations = "classpath:application.yml",
+        properties = {
+                "tara.sk-connection-pool.enabled=true",
+                "tara.sk-connection-pool.max-connections-total=1",
+                "tara.sk-connection-pool.max-connections-per-route=1",
+                "tara.sk-connection-pool.connection-request-timeout=200ms"})
+public class AuthSidServiceConnectionPoolTest extends BaseTest {
+
+    @Autowired
+    private AuthSidService authSidService;
+
+    @Autowired
+    private SessionRepository<Session> sessionRepository;
+
+    @Test
+    @Tag(value = "SID_AUTH_INIT_REQUEST")
+    void authenticationFailsWhen_noPooledConnectionAvailable() {
+        createSidApiAuthenticationStub("mock_responses/sid/sid_authentication_init_response.json", 200, 2000);
+        createSidApiPollStub("mock_responses/sid/sid_poll_response_ok.json", 200);
+
+        String firstSessionId = startSidAuthSession();
+        String secondSessionId = startSidAuthSession();
+
+        await().atMost(FIVE_SECONDS)
+                .until(() -> Stream.of(firstSessionId, secondSessionId).map(this::getTaraSession)
+                        .anyMatch(taraSession -> taraSession.getState() == AUTHENTICATION_FAILED));
+        assertTrue(Stream.of(firstSessionId, secondSessionId).map(this::getTaraSession)
+                .filter(taraSession -> taraSession.getState() == AUTHENTICATION_FAILED)
+                .map(taraSession -> taraSession.getAuthenticationResult().getErrorCode())
+                .allMatch(SID_INTERNAL_ERROR::equals));
+        assertErrorIsLogged("Smart-ID authentication exception: org.apache.http.conn.ConnectionPoolTimeoutException: Timeout waiting for connection from pool");
+    }
+
+    private TaraSession getTaraSession(String sessionId) {
+        return sessionRepository.findById(sessionId).getAttribute(TARA_SESSION);
+    }
+
+    private String startSidAuthSession() {
+        Session session = sessionRepository.createSession();
+        TaraSession testSession = MockTaraSessionBuilder.builder()
+                .sessionId(session.getId())
+                .authenticationState(INIT_AUTH_PROCESS)
+                .authenticationTypes(of(SMART_ID))
+                .build();
+        session.setAttribute(TARA_SESSION, testSession);
+        sessionRepository.save(session);
+        assertNotNull(authSidService.startSidAuthSession(testSession, "60001019906"));
+        session.setAttribute(TARA_SESSION, testSession);
+        sessionRepository.save(session);
+        return session.getId();
+    }
+}
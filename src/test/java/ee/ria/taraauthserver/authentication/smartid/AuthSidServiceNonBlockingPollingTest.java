@@ -0,0 +1,106 @@
+package ee.ria.taraauthserver.authentication.smartid;
+
+import ee.ria.taraauthserver.BaseTest;
+import ee.ria.taraauthserver.session.MockTaraSessionBuilder;
+import ee.ria.taraauthserver.session.TaraSession;
+import ee.sk.smartid.AuthenticationResponseValidator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.session.Session;
+import org.springframework.session.SessionRepository;
+import org.springframework.test.context.TestPropertySource;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static ee.ria.taraauthserver.config.properties.AuthenticationType.SMART_ID;
+import static ee.ria.taraauthserver.session.TaraAuthenticationState.INIT_AUTH_PROCESS;
+import static ee.ria.taraauthserver.session.TaraAuthenticationState.POLL_SID_STATUS;
+import static ee.ria.taraauthserver.session.TaraAuthenticationState.POLL_SID_STATUS_CANCELED;
+import static ee.ria.taraauthserver.session.TaraSession.TARA_SESSION;
+import static java.util.List.of;
+import static org.awaitility.Awaitility.await;
+import static org.awaitility.Durations.TEN_SECONDS;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasProperty;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+@TestPropertySource(
+        locations = "classpath:application.yml",
+        properties = {"tara.auth-methods.smart-id.non-blocking-polling-enabled=true"})
+public class AuthSidServiceNonBlockingPollingTest extends BaseTest {
+
+    @Autowired
+    private AuthSidService authSidService;
+
+    @SpyBean
+    private AuthenticationResponseValidator authenticationResponseValidator;
+
+    @Autowired
+    private SessionRepository<Session> sessionRepository;
+
+    @AfterEach
+    void afterEach() {
+        Mockito.reset(authenticationResponseValidator);
+    }
+
+    @Test
+    @Tag(value = "SID_AUTH_POLL_RESPONSE_COMPLETE")
+    void finalSessionStatusIsHandledOutsideOfPollerThreads() {
+        AtomicReference<String> validationThreadName = new AtomicReference<>();
+        Mockito.doAnswer(invocation -> {
+            validationThreadName.set(Thread.currentThread().getName());
+            return invocation.callRealMethod();
+        }).when(authenticationResponseValidator).validate(Mockito.any());
+        createSidApiAuthenticationStub("mock_responses/sid/sid_authentication_init_response.json", 200);
+        createSidApiPollStub("mock_responses/sid/sid_poll_response_ok.json", 200);
+        startSidAuthSession();
+
+        String threadName = await().atMost(TEN_SECONDS).until(validationThreadName::get, notNullValue());
+        assertFalse(threadName.startsWith("tara-sid-poller-"), threadName);
+    }
+
+    @Test
+    @Tag(value = "SID_AUTH_POLL_RESPONSE_COMPLETE")
+    void authenticationResultIsDiscardedWhen_authenticationCanceledDuringPolling() {
+        createSidApiAuthenticationStub("mock_responses/sid/sid_authentication_init_response.json", 200);
+        createSidApiPollStub("mock_responses/sid/sid_poll_response_user_refused.json", 200, 1000);
+        String sessionId = startSidAuthSession();
+        await().atMost(TEN_SECONDS)
+                .until(() -> sessionRepository.findById(sessionId).getAttribute(TARA_SESSION), hasProperty("state", equalTo(POLL_SID_STATUS)));
+
+        Session session = sessionRepository.findById(sessionId);
+        TaraSession canceledTaraSession = session.getAttribute(TARA_SESSION);
+        canceledTaraSession.setState(POLL_SID_STATUS_CANCELED);
+        session.setAttribute(TARA_SESSION, canceledTaraSession);
+        sessionRepository.save(session);
+
+        await().atMost(TEN_SECONDS)
+                .untilAsserted(() -> assertInfoIsLogged("Session is no longer in Smart-ID authentication, authentication state is not saved: POLL_SID_STATUS_CANCELED"));
+        TaraSession taraSession = sessionRepository.findById(sessionId).getAttribute(TARA_SESSION);
+        assertEquals(POLL_SID_STATUS_CANCELED, taraSession.getState());
+        assertNull(taraSession.getAuthenticationResult().getErrorCode());
+    }
+
+    private String startSidAuthSession() {
+        Session session = sessionRepository.createSession();
+        TaraSession testSession = MockTaraSessionBuilder.builder()
+                .sessionId(session.getId())
+                .authenticationState(INIT_AUTH_PROCESS)
+                .authenticationTypes(of(SMART_ID))
+                .build();
+        session.setAttribute(TARA_SESSION, testSession);
+        sessionRepository.save(session);
+        assertNotNull(authSidService.startSidAuthSession(testSession, "60001019906"));
+        session.setAttribute(TARA_SESSION, testSession);
+        sessionRepository.save(session);
+        return session.getId();
+    }
+}
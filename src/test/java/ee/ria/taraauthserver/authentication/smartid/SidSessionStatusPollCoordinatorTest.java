@@ -0,0 +1,138 @@
+package ee.ria.taraauthserver.authentication.smartid;
+
+import ee.ria.taraauthserver.BaseTest;
+import ee.sk.smartid.exception.SessionNotFoundException;
+import ee.sk.smartid.exception.UnprocessableSmartIdResponseException;
+import ee.sk.smartid.exception.permanent.RelyingPartyAccountConfigurationException;
+import ee.sk.smartid.exception.permanent.ServerMaintenanceException;
+import ee.sk.smartid.exception.useraction.UserRefusedException;
+import ee.sk.smartid.rest.dao.SessionStatus;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.TestPropertySource;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.any;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathMatching;
+import static com.github.tomakehurst.wiremock.stubbing.Scenario.STARTED;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.awaitility.Awaitility.await;
+import static org.awaitility.Durations.FIVE_SECONDS;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@TestPropertySource(
+        locations = "classpath:application.yml",
+        properties = {
+                "tara.auth-methods.smart-id.non-blocking-polling-enabled=true",
+                "tara.auth-methods.smart-id.non-blocking-polling-initial-backoff-in-milliseconds=100"})
+public class SidSessionStatusPollCoordinatorTest extends BaseTest {
+    private static final String SID_SESSION_ID = "de305d54-75b4-431b-adb2-eb6b9e546014";
+
+    @Autowired
+    private SidSessionStatusPollCoordinator sidSessionStatusPollCoordinator;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    @Tag(value = "SID_AUTH_POLL_RESPONSE_COMPLETE")
+    void fetchFinalSessionStatus_WhenSessionComplete_ReturnsSessionStatus() throws Exception {
+        createSidApiPollStub("mock_responses/sid/sid_poll_response_ok.json", 200);
+
+        SessionStatus sessionStatus = sidSessionStatusPollCoordinator.fetchFinalSessionStatus(SID_SESSION_ID).get(5, SECONDS);
+
+        assertEquals("COMPLETE", sessionStatus.getState());
+        assertEquals("OK", sessionStatus.getResult().getEndResult());
+        assertInfoIsLogged("Smart-ID response: 200");
+        await().atMost(FIVE_SECONDS).until(() -> meterRegistry.get("tara.sid.poll.sessions").gauge().value() == 0);
+    }
+
+    @Test
+    @Tag(value = "SID_AUTH_POLL_RESPONSE_COMPLETE")
+    void fetchFinalSessionStatus_WhenSessionRunning_PollsUntilComplete() throws Exception {
+        wireMockServer.stubFor(any(urlPathMatching("/smart-id-rp/v2/session/" + SID_SESSION_ID))
+                .inScenario("SID_POLL").whenScenarioStateIs(STARTED)
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json; charset=UTF-8")
+                        .withStatus(200)
+                        .withBody("{\"state\":\"RUNNING\"}"))
+                .willSetStateTo("COMPLETE"));
+        wireMockServer.stubFor(any(urlPathMatching("/smart-id-rp/v2/session/" + SID_SESSION_ID))
+                .inScenario("SID_POLL").whenScenarioStateIs("COMPLETE")
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json; charset=UTF-8")
+                        .withStatus(200)
+                        .withBodyFile("mock_responses/sid/sid_poll_response_ok.json")));
+
+        SessionStatus sessionStatus = sidSessionStatusPollCoordinator.fetchFinalSessionStatus(SID_SESSION_ID).get(5, SECONDS);
+
+        assertEquals("COMPLETE", sessionStatus.getState());
+        wireMockServer.verify(2, getRequestedFor(urlPathMatching("/smart-id-rp/v2/session/.*")));
+        assertEquals(1, meterRegistry.get("tara.sid.poll.latency").tag("state", "running").timer().count());
+    }
+
+    @Test
+    @Tag(value = "SID_AUTH_POLL_RESPONSE_COMPLETE")
+    void fetchFinalSessionStatus_WhenUserRefused_CompletesWithException() {
+        createSidApiPollStub("mock_responses/sid/sid_poll_response_user_refused.json", 200);
+
+        CompletableFuture<SessionStatus> result = sidSessionStatusPollCoordinator.fetchFinalSessionStatus(SID_SESSION_ID);
+
+        ExecutionException exception = assertThrows(ExecutionException.class, () -> result.get(5, SECONDS));
+        assertInstanceOf(UserRefusedException.class, exception.getCause());
+    }
+
+    @Test
+    @Tag(value = "SID_AUTH_POLL_RESPONSE_COMPLETE")
+    void fetchFinalSessionStatus_WhenUnknownEndResult_CompletesWithException() {
+        createSidApiPollStub("mock_responses/sid/sid_poll_response_unknown_status.json", 200);
+
+        CompletableFuture<SessionStatus> result = sidSessionStatusPollCoordinator.fetchFinalSessionStatus(SID_SESSION_ID);
+
+        ExecutionException exception = assertThrows(ExecutionException.class, () -> result.get(5, SECONDS));
+        assertInstanceOf(UnprocessableSmartIdResponseException.class, exception.getCause());
+        assertEquals("Session status end result is 'UNKNOWN_STATUS'", exception.getCause().getMessage());
+    }
+
+    @Test
+    @Tag(value = "SID_AUTH_POLL_RESPONSE_COMPLETE")
+    void fetchFinalSessionStatus_WhenSessionNotFound_CompletesWithSessionNotFoundException() {
+        createSidApiPollStub("mock_responses/sid/sid_poll_response_ok.json", 404);
+
+        CompletableFuture<SessionStatus> result = sidSessionStatusPollCoordinator.fetchFinalSessionStatus(SID_SESSION_ID);
+
+        ExecutionException exception = assertThrows(ExecutionException.class, () -> result.get(5, SECONDS));
+        assertInstanceOf(SessionNotFoundException.class, exception.getCause());
+        await().atMost(FIVE_SECONDS).until(() -> meterRegistry.get("tara.sid.poll.latency").tag("state", "error").timer().count() > 0);
+    }
+
+    @Test
+    @Tag(value = "SID_AUTH_POLL_RESPONSE_COMPLETE")
+    void fetchFinalSessionStatus_WhenUnauthorized_CompletesWithRelyingPartyAccountConfigurationException() {
+        createSidApiPollStub("mock_responses/sid/sid_poll_response_ok.json", 401);
+
+        CompletableFuture<SessionStatus> result = sidSessionStatusPollCoordinator.fetchFinalSessionStatus(SID_SESSION_ID);
+
+        ExecutionException exception = assertThrows(ExecutionException.class, () -> result.get(5, SECONDS));
+        assertInstanceOf(RelyingPartyAccountConfigurationException.class, exception.getCause());
+    }
+
+    @Test
+    @Tag(value = "SID_AUTH_POLL_RESPONSE_COMPLETE")
+    void fetchFinalSessionStatus_WhenServerMaintenance_CompletesWithServerMaintenanceException() {
+        createSidApiPollStub("mock_responses/sid/sid_poll_response_ok.json", 580);
+
+        CompletableFuture<SessionStatus> result = sidSessionStatusPollCoordinator.fetchFinalSessionStatus(SID_SESSION_ID);
+
+        ExecutionException exception = assertThrows(ExecutionException.class, () -> result.get(5, SECONDS));
+        assertInstanceOf(ServerMaintenanceException.class, exception.getCause());
+    }
+}
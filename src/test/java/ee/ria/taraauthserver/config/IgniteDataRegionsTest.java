@@ -0,0 +1,83 @@
+package ee.ria.taraauthserver.config;
+
+import ee.ria.taraauthserver.BaseTest;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.ignite.Ignite;
+import org.apache.ignite.configuration.CacheConfiguration;
+import org.apache.ignite.configuration.DataRegionConfiguration;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.TestPropertySource;
+
+import static ee.ria.taraauthserver.config.IgniteCacheConfiguration.ALERTS_CACHE_NAME;
+import static ee.ria.taraauthserver.config.IgniteCacheConfiguration.ALERTS_DATA_REGION_NAME;
+import static ee.ria.taraauthserver.config.IgniteCacheConfiguration.EIDAS_RELAY_STATE_CACHE_NAME;
+import static ee.ria.taraauthserver.config.IgniteCacheConfiguration.EIDAS_RELAY_STATE_DATA_REGION_NAME;
+import static ee.ria.taraauthserver.config.IgniteCacheConfiguration.SESSION_CACHE_NAME;
+import static ee.ria.taraauthserver.config.IgniteCacheConfiguration.SESSION_DATA_REGION_NAME;
+import static org.apache.ignite.configuration.DataPageEvictionMode.DISABLED;
+import static org.apache.ignite.configuration.DataPageEvictionMode.RANDOM_2_LRU;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Uses a separate Ignite node and cluster, as data region of a cache can not be changed once the cache exists.
+ */
+@TestPropertySource(
+        locations = "classpath:application.yml",
+        properties = {
+                "tara.ignite.data-regions.enabled=true",
+                "tara.ignite.data-regions.sessions.max-size=128MB",
+                "tara.ignite.data-regions.alerts.onheap-cache-enabled=false",
+                "tara.ignite.data-regions.eidas-relay-state.page-eviction-mode=RANDOM_2_LRU",
+                "ignite.ignite-instance-name=tara-ignite-data-regions",
+                "ignite.discovery-spi.local-port=47600",
+                "ignite.discovery-spi.ip-finder.addresses=127.0.0.1:47600..47609"})
+public class IgniteDataRegionsTest extends BaseTest {
+
+    @Autowired
+    private Ignite ignite;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    @Tag(value = "IGNITE_DATA_REGIONS")
+    void igniteConfiguration_WhenDataRegionsEnabled_CachesUseDedicatedDataRegions() {
+        assertEquals(SESSION_DATA_REGION_NAME, cacheConfiguration(SESSION_CACHE_NAME).getDataRegionName());
+        assertEquals(ALERTS_DATA_REGION_NAME, cacheConfiguration(ALERTS_CACHE_NAME).getDataRegionName());
+        assertEquals(EIDAS_RELAY_STATE_DATA_REGION_NAME, cacheConfiguration(EIDAS_RELAY_STATE_CACHE_NAME).getDataRegionName());
+        assertFalse(cacheConfiguration(ALERTS_CACHE_NAME).isOnheapCacheEnabled());
+
+        DataRegionConfiguration sessionDataRegion = dataRegionConfiguration(SESSION_DATA_REGION_NAME);
+        assertEquals(128L * 1024 * 1024, sessionDataRegion.getMaxSize());
+        assertEquals(DISABLED, sessionDataRegion.getPageEvictionMode());
+        assertEquals(RANDOM_2_LRU, dataRegionConfiguration(EIDAS_RELAY_STATE_DATA_REGION_NAME).getPageEvictionMode());
+    }
+
+    @Test
+    @Tag(value = "IGNITE_DATA_REGIONS")
+    void igniteDataRegionMetrics_WhenDataRegionsEnabled_MetricsPublished() {
+        sessionRepository.save(sessionRepository.createSession());
+
+        assertEquals(128.0 * 1024 * 1024, meterRegistry.get("tara.ignite.data.region.max.size").tag("region", SESSION_DATA_REGION_NAME).gauge().value());
+        assertTrue(meterRegistry.get("tara.ignite.data.region.allocated.size").tag("region", SESSION_DATA_REGION_NAME).gauge().value() > 0);
+        assertTrue(meterRegistry.get("tara.ignite.data.region.pages.fill.factor").tag("region", SESSION_DATA_REGION_NAME).gauge().value() > 0);
+        assertEquals(0.0, meterRegistry.get("tara.ignite.data.region.eviction.rate").tag("region", ALERTS_DATA_REGION_NAME).gauge().value());
+    }
+
+    private CacheConfiguration<?, ?> cacheConfiguration(String cacheName) {
+        return ignite.cache(cacheName).getConfiguration(CacheConfiguration.class);
+    }
+
+    private DataRegionConfiguration dataRegionConfiguration(String name) {
+        for (DataRegionConfiguration dataRegionConfiguration : ignite.configuration().getDataStorageConfiguration().getDataRegionConfigurations()) {
+            if (name.equals(dataRegionConfiguration.getName())) {
+                return dataRegionConfiguration;
+            }
+        }
+        throw new AssertionError("Data region not found: " + name);
+    }
+}
@@ -0,0 +1,193 @@
+package ee.ria.taraauthserver.session;
+
+import ee.ria.taraauthserver.BaseTest;
+import ee.ria.taraauthserver.config.properties.SessionConfigurationProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.session.Session;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static ee.ria.taraauthserver.session.TaraAuthenticationState.AUTHENTICATION_CANCELED;
+import static ee.ria.taraauthserver.session.TaraAuthenticationState.NATURAL_PERSON_AUTHENTICATION_COMPLETED;
+import static ee.ria.taraauthserver.session.TaraAuthenticationState.POLL_MID_STATUS;
+import static ee.ria.taraauthserver.session.TaraAuthenticationState.POLL_MID_STATUS_CANCELED;
+import static ee.ria.taraauthserver.session.TaraSession.TARA_SESSION;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Simulates Mobile-ID/Smart-ID status polling, where request threads repeatedly load and re-save the session, while
+ * background threads update the same session.
+ */
+public class IgniteSessionRepositoryConcurrencyTest extends BaseTest {
+    private static final int POLLER_COUNT = 16;
+    private static final int UPDATER_COUNT = 4;
+    private static final int UPDATES_PER_UPDATER = 50;
+
+    @Autowired
+    private SessionConfigurationProperties sessionConfigurationProperties;
+
+    private ExecutorService executorService;
+
+    @BeforeEach
+    void enableOptimisticLocking() {
+        sessionConfigurationProperties.getOptimisticLocking().setEnabled(true);
+        sessionConfigurationProperties.getOptimisticLocking().setMaxAttempts(1000);
+        executorService = Executors.newFixedThreadPool(POLLER_COUNT + UPDATER_COUNT);
+    }
+
+    @AfterEach
+    void resetSessionProperties() {
+        executorService.shutdownNow();
+        try {
+            executorService.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        sessionConfigurationProperties.getOptimisticLocking().setEnabled(false);
+        sessionConfigurationProperties.getOptimisticLocking().setMaxAttempts(10);
+    }
+
+    @Test
+    @Tag(value = "SESSION_OPTIMISTIC_LOCKING")
+    void save_WhenParallelPollersResaveUnmodifiedSession_BackgroundUpdateIsNotLost() throws Exception {
+        assertBackgroundUpdateIsNotLost();
+    }
+
+    @Test
+    @Tag(value = "SESSION_OPTIMISTIC_LOCKING")
+    void save_WhenParallelThreadsModifyDifferentAttributes_NoUpdatesAreLost() throws Exception {
+        Session session = createSession();
+        AtomicBoolean polling = new AtomicBoolean(true);
+        List<Future<?>> pollers = startPollers(session.getId(), polling);
+        List<Future<?>> updaters = new ArrayList<>();
+        for (int i = 0; i < UPDATER_COUNT; i++) {
+            String attributeName = "counter-" + i;
+            updaters.add(executorService.submit(() -> {
+                for (int j = 0; j < UPDATES_PER_UPDATER; j++) {
+                    Session loadedSession = sessionRepository.findById(session.getId());
+                    Integer counter = loadedSession.getAttribute(attributeName);
+                    loadedSession.setAttribute(attributeName, counter == null ? 1 : counter + 1);
+                    sessionRepository.save(loadedSession);
+                }
+            }));
+        }
+        awaitAll(updaters);
+        polling.set(false);
+        awaitAll(pollers);
+
+        Session storedSession = sessionRepository.findById(session.getId());
+        for (int i = 0; i < UPDATER_COUNT; i++) {
+            assertEquals(UPDATES_PER_UPDATER, storedSession.<Integer>getAttribute("counter-" + i));
+        }
+        assertEquals(POLL_MID_STATUS, storedSession.<TaraSession>getAttribute(TARA_SESSION).getState());
+    }
+
+    @Test
+    @Tag(value = "SESSION_OPTIMISTIC_LOCKING")
+    void save_WhenTaraSessionModifiedConcurrently_SaveFails() {
+        Session session = createSession();
+        Session requestSession = sessionRepository.findById(session.getId());
+        Session backgroundSession = sessionRepository.findById(session.getId());
+
+        storeAuthenticationResult(backgroundSession);
+        TaraSession requestTaraSession = requestSession.getAttribute(TARA_SESSION);
+        requestTaraSession.setState(AUTHENTICATION_CANCELED);
+        requestTaraSession.setAuthenticationResult(new TaraSession.AuthenticationResult());
+        requestSession.setAttribute(TARA_SESSION, requestTaraSession);
+
+        IllegalStateException exception = assertThrows(IllegalStateException.class, () -> sessionRepository.save(requestSession));
+
+        assertEquals("Session attribute '" + TARA_SESSION + "' was modified concurrently: " + session.getId(), exception.getMessage());
+        Session storedSession = sessionRepository.findById(session.getId());
+        assertEquals(NATURAL_PERSON_AUTHENTICATION_COMPLETED, storedSession.<TaraSession>getAttribute(TARA_SESSION).getState());
+    }
+
+    @Test
+    @Tag(value = "SESSION_OPTIMISTIC_LOCKING")
+    void save_WhenAuthenticationCanceledWhileResultIsStored_StateChangeIsReapplied() {
+        Session session = createSession();
+        Session requestSession = sessionRepository.findById(session.getId());
+        Session backgroundSession = sessionRepository.findById(session.getId());
+
+        storeAuthenticationResult(backgroundSession);
+        TaraSession requestTaraSession = requestSession.getAttribute(TARA_SESSION);
+        requestTaraSession.setState(POLL_MID_STATUS_CANCELED);
+        requestSession.setAttribute(TARA_SESSION, requestTaraSession);
+        sessionRepository.save(requestSession);
+
+        TaraSession storedTaraSession = sessionRepository.findById(session.getId()).getAttribute(TARA_SESSION);
+        assertEquals(POLL_MID_STATUS_CANCELED, storedTaraSession.getState());
+        assertEquals("60001019906", storedTaraSession.getAuthenticationResult().getIdCode());
+        assertInfoIsLogged("Session attribute '" + TARA_SESSION + "' was modified concurrently, re-applying state change: " + session.getId());
+    }
+
+    private void storeAuthenticationResult(Session backgroundSession) {
+        TaraSession backgroundTaraSession = backgroundSession.getAttribute(TARA_SESSION);
+        TaraSession.AuthenticationResult authenticationResult = new TaraSession.AuthenticationResult();
+        authenticationResult.setIdCode("60001019906");
+        backgroundTaraSession.setAuthenticationResult(authenticationResult);
+        backgroundTaraSession.setState(NATURAL_PERSON_AUTHENTICATION_COMPLETED);
+        backgroundSession.setAttribute(TARA_SESSION, backgroundTaraSession);
+        sessionRepository.save(backgroundSession);
+    }
+
+    private void assertBackgroundUpdateIsNotLost() throws Exception {
+        Session session = createSession();
+        AtomicBoolean polling = new AtomicBoolean(true);
+        List<Future<?>> pollers = startPollers(session.getId(), polling);
+
+        Future<?> updater = executorService.submit(() -> {
+            Session loadedSession = sessionRepository.findById(session.getId());
+            TaraSession taraSession = loadedSession.getAttribute(TARA_SESSION);
+            taraSession.setState(NATURAL_PERSON_AUTHENTICATION_COMPLETED);
+            loadedSession.setAttribute(TARA_SESSION, taraSession);
+            sessionRepository.save(loadedSession);
+        });
+        updater.get(30, TimeUnit.SECONDS);
+        polling.set(false);
+        awaitAll(pollers);
+
+        Session storedSession = sessionRepository.findById(session.getId());
+        assertEquals(NATURAL_PERSON_AUTHENTICATION_COMPLETED, storedSession.<TaraSession>getAttribute(TARA_SESSION).getState());
+    }
+
+    private List<Future<?>> startPollers(String sessionId, AtomicBoolean polling) {
+        List<Future<?>> pollers = new ArrayList<>();
+        for (int i = 0; i < POLLER_COUNT; i++) {
+            pollers.add(executorService.submit(() -> {
+                while (polling.get()) {
+                    Session loadedSession = sessionRepository.findById(sessionId);
+                    loadedSession.setAttribute(TARA_SESSION, loadedSession.getAttribute(TARA_SESSION));
+                    sessionRepository.save(loadedSession);
+                }
+            }));
+        }
+        return pollers;
+    }
+
+    private void awaitAll(List<Future<?>> futures) throws Exception {
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+    }
+
+    private Session createSession() {
+        Session session = sessionRepository.createSession();
+        TaraSession taraSession = new TaraSession(session.getId());
+        taraSession.setState(POLL_MID_STATUS);
+        session.setAttribute(TARA_SESSION, taraSession);
+        sessionRepository.save(session);
+        return session;
+    }
+}
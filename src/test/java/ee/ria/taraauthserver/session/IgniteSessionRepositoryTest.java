@@ -0,0 +1,98 @@
+package ee.ria.taraauthserver.session;
+
+import ee.ria.taraauthserver.BaseTest;
+import ee.ria.taraauthserver.config.properties.SessionConfigurationProperties;
+import org.apache.ignite.Ignite;
+import org.apache.ignite.binary.BinaryObject;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.session.Session;
+
+import javax.cache.Cache;
+import java.time.Duration;
+import java.time.Instant;
+
+import static ee.ria.taraauthserver.config.IgniteCacheConfiguration.SESSION_CACHE_NAME;
+import static ee.ria.taraauthserver.session.MockTaraSessionBuilder.MOCK_INSTITUTION_REGISTRY_CODE;
+import static ee.ria.taraauthserver.session.TaraSession.TARA_SESSION;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class IgniteSessionRepositoryTest extends BaseTest {
+
+    @Autowired
+    private SessionConfigurationProperties sessionConfigurationProperties;
+
+    @Autowired
+    private Ignite ignite;
+
+    @Autowired
+    @Qualifier("sessionCache")
+    private Cache<String, BinaryObject> sessionCache;
+
+    @Test
+    @Tag(value = "SESSION_OIDC_CLIENT_REFERENCE")
+    void save_WhenOidcClientReferencesDisabled_OidcClientIsStoredWithSession() {
+        Session session = sessionRepository.createSession();
+        session.setAttribute(TARA_SESSION, MockTaraSessionBuilder.builder().sessionId(session.getId()).build());
+        sessionRepository.save(session);
+
+        IgniteSessionRepository.IgniteSession storedSession = sessionCache.get(session.getId()).deserialize();
+        TaraSession.MetaData storedMetaData = storedSession.<TaraSession>getAttribute(TARA_SESSION).getLoginRequestInfo().getClient().getMetaData();
+        assertNull(storedMetaData.getOidcClientReference());
+        assertEquals(MOCK_INSTITUTION_REGISTRY_CODE, storedMetaData.getOidcClient().getInstitution().getRegistryCode());
+    }
+
+    @Test
+    @Tag(value = "SESSION_CACHE_TOPOLOGY")
+    void createSession_WhenAffinityAwareIdsEnabled_LocalNodeIsPrimaryOwner() {
+        sessionConfigurationProperties.getCache().setAffinityAwareIds(true);
+        try {
+            Session session = sessionRepository.createSession();
+
+            assertTrue(ignite.affinity(SESSION_CACHE_NAME).isPrimary(ignite.cluster().localNode(), session.getId()));
+        } finally {
+            sessionConfigurationProperties.getCache().setAffinityAwareIds(false);
+        }
+    }
+
+    @Test
+    @Tag(value = "SESSION_EXPIRY")
+    void findById_WhenSessionInactiveLongerThanMaxInactiveInterval_SessionIsRemoved() {
+        Session session = sessionRepository.createSession();
+        session.setAttribute(TARA_SESSION, new TaraSession(session.getId()));
+        session.setMaxInactiveInterval(Duration.ofSeconds(1));
+        session.setLastAccessedTime(Instant.now().minusSeconds(10));
+        sessionRepository.save(session);
+        assertNotNull(sessionCache.get(session.getId()));
+
+        assertNull(sessionRepository.findById(session.getId()));
+        assertNull(sessionCache.get(session.getId()));
+    }
+
+    @Test
+    @Tag(value = "SESSION_EXPIRY")
+    void findById_WhenExpiryPolicyTouched_ExpirationTimeIsMovedForward() {
+        Session session = sessionRepository.createSession();
+        session.setAttribute(TARA_SESSION, new TaraSession(session.getId()));
+        session.setLastAccessedTime(Instant.now().minusSeconds(30));
+        sessionRepository.save(session);
+        long savedExpirationTime = sessionCache.get(session.getId()).field(IgniteSessionRepository.EXPIRATION_TIME_FIELD);
+        long savedVersion = sessionCache.get(session.getId()).field(IgniteSessionRepository.VERSION_FIELD);
+
+        sessionConfigurationProperties.setExpiryPolicy(SessionConfigurationProperties.ExpiryPolicy.TOUCHED);
+        try {
+            assertNotNull(sessionRepository.findById(session.getId()));
+        } finally {
+            sessionConfigurationProperties.setExpiryPolicy(SessionConfigurationProperties.ExpiryPolicy.CREATED);
+        }
+
+        BinaryObject storedSession = sessionCache.get(session.getId());
+        assertTrue(storedSession.<Long>field(IgniteSessionRepository.EXPIRATION_TIME_FIELD) >= savedExpirationTime + 30_000);
+        assertEquals(savedVersion, storedSession.<Long>field(IgniteSessionRepository.VERSION_FIELD));
+    }
+}
@@ -0,0 +1,76 @@
+package ee.ria.taraauthserver.session;
+
+import ee.ria.taraauthserver.BaseTest;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.session.Session;
+import org.springframework.test.context.TestPropertySource;
+
+import java.time.Duration;
+
+import static ee.ria.taraauthserver.session.MockTaraSessionBuilder.MOCK_INSTITUTION_REGISTRY_CODE;
+import static ee.ria.taraauthserver.session.TaraAuthenticationState.INIT_AUTH_PROCESS;
+import static ee.ria.taraauthserver.session.TaraAuthenticationState.INIT_MID;
+import static ee.ria.taraauthserver.session.TaraSession.TARA_SESSION;
+import static org.awaitility.Awaitility.await;
+import static org.awaitility.Durations.FIVE_SECONDS;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+@TestPropertySource(
+        locations = "classpath:application.yml",
+        properties = {"tara.session.backend=local"})
+public class LocalSessionRepositoryTest extends BaseTest {
+
+    @Test
+    @Tag(value = "SESSION_LOCAL_BACKEND")
+    void findById_WhenSessionSaved_IndependentCopyReturned() {
+        Session session = createSession();
+
+        Session loadedSession = sessionRepository.findById(session.getId());
+        loadedSession.<TaraSession>getAttribute(TARA_SESSION).setState(INIT_MID);
+
+        assertInstanceOf(LocalSessionRepository.LocalSession.class, loadedSession);
+        assertEquals(INIT_AUTH_PROCESS, sessionRepository.findById(session.getId()).<TaraSession>getAttribute(TARA_SESSION).getState());
+        assertEquals(MOCK_INSTITUTION_REGISTRY_CODE, loadedSession.<TaraSession>getAttribute(TARA_SESSION).getLoginRequestInfo()
+                .getOidcClient().orElseThrow().getInstitution().getRegistryCode());
+
+        sessionRepository.save(loadedSession);
+        assertEquals(INIT_MID, sessionRepository.findById(session.getId()).<TaraSession>getAttribute(TARA_SESSION).getState());
+    }
+
+    @Test
+    @Tag(value = "SESSION_LOCAL_BACKEND")
+    void deleteById_WhenSessionDeleted_SessionNotFound() {
+        Session session = createSession();
+
+        sessionRepository.deleteById(session.getId());
+
+        assertNull(sessionRepository.findById(session.getId()));
+    }
+
+    @Test
+    @Tag(value = "SESSION_LOCAL_BACKEND")
+    void removeExpiredSessions_WhenSessionExpired_SessionIsRemoved() {
+        LocalSessionRepository localSessionRepository = (LocalSessionRepository) sessionRepository;
+        Session session = sessionRepository.createSession();
+        session.setAttribute(TARA_SESSION, new TaraSession(session.getId()));
+        session.setMaxInactiveInterval(Duration.ofSeconds(1));
+        sessionRepository.save(session);
+        int size = localSessionRepository.size();
+
+        await().atMost(FIVE_SECONDS).until(() -> localSessionRepository.size() < size);
+        assertNull(sessionRepository.findById(session.getId()));
+    }
+
+    private Session createSession() {
+        Session session = sessionRepository.createSession();
+        session.setAttribute(TARA_SESSION, MockTaraSessionBuilder.builder()
+                .sessionId(session.getId())
+                .authenticationState(INIT_AUTH_PROCESS)
+                .build());
+        sessionRepository.save(session);
+        return session;
+    }
+}
@@ -0,0 +1,127 @@
+package ee.ria.taraauthserver.session;
+
+import ee.ria.taraauthserver.BaseTest;
+import ee.ria.taraauthserver.config.properties.SPType;
+import org.apache.ignite.binary.BinaryObject;
+import org.apache.ignite.configuration.CacheConfiguration;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.session.Session;
+import org.springframework.test.context.TestPropertySource;
+
+import javax.cache.Cache;
+import javax.cache.expiry.Duration;
+import javax.cache.expiry.ExpiryPolicy;
+import javax.cache.expiry.TouchedExpiryPolicy;
+
+import static ee.ria.taraauthserver.session.MockTaraSessionBuilder.MOCK_CLIENT_ID;
+import static ee.ria.taraauthserver.session.MockTaraSessionBuilder.MOCK_INSTITUTION_REGISTRY_CODE;
+import static ee.ria.taraauthserver.session.TaraSession.TARA_SESSION;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@TestPropertySource(
+        locations = "classpath:application.yml",
+        properties = {"tara.session.oidc-client-references-enabled=true"})
+public class OidcClientCacheTest extends BaseTest {
+
+    @Autowired
+    @Qualifier("sessionCache")
+    private Cache<String, BinaryObject> sessionCache;
+
+    @Autowired
+    @Qualifier("oidcClientMetadataCache")
+    private Cache<String, TaraSession.OidcClient> oidcClientMetadataCache;
+
+    @Test
+    @Tag(value = "SESSION_OIDC_CLIENT_REFERENCE")
+    void save_WhenSessionHasOidcClient_OidcClientIsStoredByReference() {
+        Session session = createSession(SPType.PUBLIC);
+
+        IgniteSessionRepository.IgniteSession storedSession = sessionCache.get(session.getId()).deserialize();
+        TaraSession.MetaData storedMetaData = storedSession.<TaraSession>getAttribute(TARA_SESSION).getLoginRequestInfo().getClient().getMetaData();
+        assertNull(storedMetaData.getOidcClient());
+        assertTrue(storedMetaData.getOidcClientReference().startsWith(MOCK_CLIENT_ID + ":"));
+
+        TaraSession.OidcClient oidcClient = getOidcClient(sessionRepository.findById(session.getId()));
+        assertEquals(MOCK_INSTITUTION_REGISTRY_CODE, oidcClient.getInstitution().getRegistryCode());
+    }
+
+    @Test
+    @Tag(value = "SESSION_OIDC_CLIENT_REFERENCE")
+    void save_WhenSessionsHaveSameOidcClient_SameReferenceIsUsed() {
+        Session session1 = createSession(SPType.PUBLIC);
+        Session session2 = createSession(SPType.PUBLIC);
+        Session session3 = createSession(SPType.PRIVATE);
+
+        assertEquals(getOidcClientReference(session1), getOidcClientReference(session2));
+        assertNotEquals(getOidcClientReference(session1), getOidcClientReference(session3));
+    }
+
+    @Test
+    @Tag(value = "SESSION_OIDC_CLIENT_REFERENCE")
+    void findById_WhenSessionsHaveSameOidcClient_EverySessionHasOwnCopy() {
+        Session session1 = createSession(SPType.PUBLIC);
+        Session session2 = createSession(SPType.PUBLIC);
+
+        TaraSession.OidcClient oidcClient1 = getOidcClient(sessionRepository.findById(session1.getId()));
+        TaraSession.OidcClient oidcClient2 = getOidcClient(sessionRepository.findById(session2.getId()));
+
+        assertNotSame(oidcClient1, oidcClient2);
+        assertEquals(oidcClient1, oidcClient2);
+    }
+
+    @Test
+    @Tag(value = "SESSION_OIDC_CLIENT_REFERENCE")
+    void findById_WhenReferencedOidcClientIsMissing_SessionIsNotFound() {
+        Session session = createSession(SPType.PUBLIC);
+        oidcClientMetadataCache.remove(getOidcClientReference(session));
+
+        assertNull(sessionRepository.findById(session.getId()));
+        assertErrorIsLogged("OIDC client metadata not found: " + getOidcClientReference(session));
+    }
+
+    @Test
+    @Tag(value = "SESSION_OIDC_CLIENT_REFERENCE")
+    void save_WhenReferencedOidcClientIsMissing_OidcClientIsStoredAgain() {
+        Session session = createSession(SPType.PUBLIC);
+        oidcClientMetadataCache.remove(getOidcClientReference(session));
+
+        Session otherSession = createSession(SPType.PUBLIC);
+
+        assertNotNull(oidcClientMetadataCache.get(getOidcClientReference(otherSession)));
+        assertNotNull(sessionRepository.findById(session.getId()));
+    }
+
+    @Test
+    @Tag(value = "SESSION_OIDC_CLIENT_REFERENCE")
+    void oidcClientMetadataCache_EntriesExpireTwiceSessionTimeoutAfterLastAccess() {
+        CacheConfiguration<?, ?> configuration = oidcClientMetadataCache.getConfiguration(CacheConfiguration.class);
+        ExpiryPolicy expiryPolicy = configuration.getExpiryPolicyFactory().create();
+
+        assertTrue(expiryPolicy instanceof TouchedExpiryPolicy);
+        assertEquals(new Duration(SECONDS, 120), expiryPolicy.getExpiryForAccess());
+    }
+
+    private Session createSession(SPType spType) {
+        Session session = sessionRepository.createSession();
+        session.setAttribute(TARA_SESSION, MockTaraSessionBuilder.builder().sessionId(session.getId()).spType(spType).build());
+        sessionRepository.save(session);
+        return session;
+    }
+
+    private static String getOidcClientReference(Session session) {
+        return session.<TaraSession>getAttribute(TARA_SESSION).getLoginRequestInfo().getClient().getMetaData().getOidcClientReference();
+    }
+
+    private static TaraSession.OidcClient getOidcClient(Session session) {
+        return session.<TaraSession>getAttribute(TARA_SESSION).getLoginRequestInfo().getClient().getMetaData().getOidcClient();
+    }
+}
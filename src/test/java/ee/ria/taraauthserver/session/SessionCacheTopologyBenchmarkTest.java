@@ -0,0 +1,162 @@
+package ee.ria.taraauthserver.session;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ignite.Ignite;
+import org.apache.ignite.IgniteCache;
+import org.apache.ignite.Ignition;
+import org.apache.ignite.binary.BinaryObject;
+import org.apache.ignite.cache.CacheMode;
+import org.apache.ignite.cache.affinity.Affinity;
+import org.apache.ignite.cluster.ClusterNode;
+import org.apache.ignite.configuration.CacheConfiguration;
+import org.apache.ignite.configuration.IgniteConfiguration;
+import org.apache.ignite.logger.slf4j.Slf4jLogger;
+import org.apache.ignite.spi.communication.tcp.TcpCommunicationSpi;
+import org.apache.ignite.spi.discovery.tcp.TcpDiscoverySpi;
+import org.apache.ignite.spi.discovery.tcp.ipfinder.vm.TcpDiscoveryVmIpFinder;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.session.MapSession;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static ee.ria.taraauthserver.session.TaraSession.TARA_SESSION;
+import static org.apache.ignite.cache.CacheAtomicityMode.ATOMIC;
+import static org.apache.ignite.cache.CacheMode.PARTITIONED;
+import static org.apache.ignite.cache.CacheMode.REPLICATED;
+import static org.apache.ignite.cache.CacheWriteSynchronizationMode.FULL_SYNC;
+import static org.apache.ignite.cache.CacheWriteSynchronizationMode.PRIMARY_SYNC;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compares session read latency of the session cache topologies configurable with {@code tara.session.cache.*}
+ * properties, using two Ignite nodes in the same JVM. Remote reads go through the loopback interface, so absolute
+ * numbers are lower than in a real cluster, but the difference between local and remote reads is visible.
+ * <p>
+ * Run with {@code -Dtara.benchmark=true}.
+ */
+@Slf4j
+@EnabledIfSystemProperty(named = "tara.benchmark", matches = "true")
+public class SessionCacheTopologyBenchmarkTest {
+    private static final int SESSION_COUNT = 2000;
+    private static final int ROUNDS = 5;
+
+    private static Ignite readerNode;
+    private static Ignite otherNode;
+
+    @BeforeAll
+    static void startNodes() {
+        readerNode = Ignition.start(nodeConfiguration("tara-benchmark-1"));
+        otherNode = Ignition.start(nodeConfiguration("tara-benchmark-2"));
+        assertEquals(2, readerNode.cluster().forServers().nodes().size());
+    }
+
+    @AfterAll
+    static void stopNodes() {
+        Ignition.stop(otherNode.name(), true);
+        Ignition.stop(readerNode.name(), true);
+    }
+
+    @Test
+    @Tag(value = "SESSION_CACHE_TOPOLOGY")
+    void benchmark_PartitionedWithoutBackups() {
+        benchmark("partitioned", PARTITIONED, 0, false, false);
+    }
+
+    @Test
+    @Tag(value = "SESSION_CACHE_TOPOLOGY")
+    void benchmark_PartitionedWithBackupsAndReadFromBackup() {
+        IgniteCache<String, BinaryObject> cache = benchmark("partitioned-backups", PARTITIONED, 1, true, false);
+        assertAllKeysOwnedLocally(cache);
+    }
+
+    @Test
+    @Tag(value = "SESSION_CACHE_TOPOLOGY")
+    void benchmark_Replicated() {
+        IgniteCache<String, BinaryObject> cache = benchmark("replicated", REPLICATED, 0, false, false);
+        assertAllKeysOwnedLocally(cache);
+    }
+
+    @Test
+    @Tag(value = "SESSION_CACHE_TOPOLOGY")
+    void benchmark_PartitionedWithAffinityAwareIds() {
+        IgniteCache<String, BinaryObject> cache = benchmark("partitioned-affinity-aware-ids", PARTITIONED, 0, false, true);
+        assertAllKeysOwnedLocally(cache);
+    }
+
+    private IgniteCache<String, BinaryObject> benchmark(String name, CacheMode mode, int backups, boolean readFromBackup, boolean affinityAwareIds) {
+        IgniteCache<String, BinaryObject> cache = readerNode.getOrCreateCache(new CacheConfiguration<String, Object>()
+                        .setName(name)
+                        .setCacheMode(mode)
+                        .setAtomicityMode(ATOMIC)
+                        .setBackups(backups)
+                        .setReadFromBackup(readFromBackup)
+                        .setWriteSynchronizationMode(readFromBackup ? FULL_SYNC : PRIMARY_SYNC))
+                .withKeepBinary();
+        List<String> ids = sessionIds(name, affinityAwareIds);
+        for (String id : ids) {
+            cache.put(id, readerNode.binary().toBinary(createSession(id)));
+        }
+
+        long bestNanosPerRead = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (String id : ids) {
+                assertNotNull(cache.get(id));
+            }
+            bestNanosPerRead = Math.min(bestNanosPerRead, (System.nanoTime() - start) / SESSION_COUNT);
+        }
+        log.info("Session cache topology: {}, average read latency: {} µs", name, bestNanosPerRead / 1000.0);
+        return cache;
+    }
+
+    private List<String> sessionIds(String cacheName, boolean affinityAwareIds) {
+        Affinity<String> affinity = readerNode.affinity(cacheName);
+        ClusterNode localNode = readerNode.cluster().localNode();
+        List<String> ids = new ArrayList<>(SESSION_COUNT);
+        while (ids.size() < SESSION_COUNT) {
+            String id = UUID.randomUUID().toString();
+            if (!affinityAwareIds || affinity.isPrimary(localNode, id)) {
+                ids.add(id);
+            }
+        }
+        return ids;
+    }
+
+    private void assertAllKeysOwnedLocally(IgniteCache<String, BinaryObject> cache) {
+        Affinity<String> affinity = readerNode.affinity(cache.getName());
+        ClusterNode localNode = readerNode.cluster().localNode();
+        for (javax.cache.Cache.Entry<String, BinaryObject> entry : cache) {
+            assertTrue(affinity.isPrimaryOrBackup(localNode, entry.getKey()));
+        }
+        assertEquals(SESSION_COUNT, cache.size());
+    }
+
+    private IgniteSessionRepository.IgniteSession createSession(String id) {
+        IgniteSessionRepository.IgniteSession session = new IgniteSessionRepository.IgniteSession(new MapSession(id));
+        session.setAttribute(TARA_SESSION, MockTaraSessionBuilder.builder().sessionId(id).build());
+        return session;
+    }
+
+    private static IgniteConfiguration nodeConfiguration(String instanceName) {
+        TcpDiscoveryVmIpFinder ipFinder = new TcpDiscoveryVmIpFinder();
+        ipFinder.setAddresses(List.of("127.0.0.1:47700..47709"));
+        TcpDiscoverySpi discoverySpi = new TcpDiscoverySpi();
+        discoverySpi.setLocalPort(47700);
+        discoverySpi.setIpFinder(ipFinder);
+        TcpCommunicationSpi communicationSpi = new TcpCommunicationSpi();
+        communicationSpi.setLocalPort(47800);
+        return new IgniteConfiguration()
+                .setIgniteInstanceName(instanceName)
+                .setDiscoverySpi(discoverySpi)
+                .setCommunicationSpi(communicationSpi)
+                .setGridLogger(new Slf4jLogger());
+    }
+}
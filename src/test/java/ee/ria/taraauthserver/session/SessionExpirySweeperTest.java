@@ -0,0 +1,72 @@
+package ee.ria.taraauthserver.session;
+
+import ee.ria.taraauthserver.BaseTest;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.ignite.binary.BinaryObject;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.session.Session;
+import org.springframework.test.context.TestPropertySource;
+
+import javax.cache.Cache;
+
+import static ee.ria.taraauthserver.session.TaraSession.TARA_SESSION;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@TestPropertySource(
+        locations = "classpath:application.yml",
+        properties = {
+                "tara.session.expiry-sweeper.enabled=true",
+                "tara.session.expiry-sweeper.interval-in-milliseconds=3600000",
+                "tara.session.expiry-sweeper.batch-size=2"})
+public class SessionExpirySweeperTest extends BaseTest {
+
+    @Autowired
+    private SessionExpirySweeper sessionExpirySweeper;
+
+    @Autowired
+    @Qualifier("sessionCache")
+    private Cache<String, BinaryObject> sessionCache;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    @Tag(value = "SESSION_EXPIRY")
+    void sweep_WhenSessionsNotExpired_SessionsAreNotRemoved() {
+        Session session = createSession();
+
+        sessionExpirySweeper.sweep(System.currentTimeMillis());
+
+        assertNotNull(sessionCache.get(session.getId()));
+    }
+
+    @Test
+    @Tag(value = "SESSION_EXPIRY")
+    void sweep_WhenSessionsExpired_SessionsAreRemovedInBatches() {
+        Session session1 = createSession();
+        Session session2 = createSession();
+        Session session3 = createSession();
+        double removedCount = meterRegistry.get("tara.session.expiry.sweeper.removed").counter().count();
+
+        int sweptCount = sessionExpirySweeper.sweep(System.currentTimeMillis() + session1.getMaxInactiveInterval().toMillis() + 1000);
+
+        assertTrue(sweptCount >= 3);
+        assertNull(sessionCache.get(session1.getId()));
+        assertNull(sessionCache.get(session2.getId()));
+        assertNull(sessionCache.get(session3.getId()));
+        assertEquals(removedCount + sweptCount, meterRegistry.get("tara.session.expiry.sweeper.removed").counter().count());
+    }
+
+    private Session createSession() {
+        Session session = sessionRepository.createSession();
+        session.setAttribute(TARA_SESSION, new TaraSession(session.getId()));
+        sessionRepository.save(session);
+        return session;
+    }
+}
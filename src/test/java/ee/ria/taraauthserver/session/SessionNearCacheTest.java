@@ -0,0 +1,151 @@
+package ee.ria.taraauthserver.session;
+
+import ee.ria.taraauthserver.BaseTest;
+import ee.ria.taraauthserver.config.properties.SessionConfigurationProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.ignite.Ignite;
+import org.apache.ignite.binary.BinaryObject;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.session.Session;
+import org.springframework.test.context.TestPropertySource;
+
+import javax.cache.Cache;
+import java.time.Duration;
+import java.time.Instant;
+
+import static ee.ria.taraauthserver.session.IgniteSessionRepository.EXPIRATION_TIME_FIELD;
+import static ee.ria.taraauthserver.session.TaraAuthenticationState.INIT_AUTH_PROCESS;
+import static ee.ria.taraauthserver.session.TaraAuthenticationState.INIT_MID;
+import static ee.ria.taraauthserver.session.TaraSession.TARA_SESSION;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@TestPropertySource(
+        locations = "classpath:application.yml",
+        properties = {"tara.session.near-cache.enabled=true", "tara.session.near-cache.time-to-live=30s"})
+public class SessionNearCacheTest extends BaseTest {
+
+    @Autowired
+    @Qualifier("sessionCache")
+    private Cache<String, BinaryObject> sessionCache;
+
+    @Autowired
+    private Ignite ignite;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private SessionConfigurationProperties sessionConfigurationProperties;
+
+    @Test
+    @Tag(value = "SESSION_NEAR_CACHE")
+    void findById_WhenStoredSessionNotChanged_SessionReturnedFromNearCache() {
+        Session session = createSession();
+        double hitCount = requestCount("hit");
+
+        Session loadedSession = sessionRepository.findById(session.getId());
+
+        assertEquals(INIT_AUTH_PROCESS, loadedSession.<TaraSession>getAttribute(TARA_SESSION).getState());
+        assertEquals(hitCount + 1, requestCount("hit"));
+    }
+
+    @Test
+    @Tag(value = "SESSION_NEAR_CACHE")
+    void findById_WhenStoredSessionChangedByAnotherNode_SessionFetchedAgain() {
+        Session session = createSession();
+        IgniteSessionRepository.IgniteSession storedSession = sessionCache.get(session.getId()).deserialize();
+        storedSession.<TaraSession>getAttribute(TARA_SESSION).setState(INIT_MID);
+        storedSession.setVersion(storedSession.getVersion() + 1);
+        sessionCache.put(session.getId(), ignite.binary().toBinary(storedSession));
+        double staleCount = requestCount("stale");
+
+        Session loadedSession = sessionRepository.findById(session.getId());
+
+        assertEquals(INIT_MID, loadedSession.<TaraSession>getAttribute(TARA_SESSION).getState());
+        assertEquals(staleCount + 1, requestCount("stale"));
+    }
+
+    @Test
+    @Tag(value = "SESSION_NEAR_CACHE")
+    void findById_WhenSessionRemovedByAnotherNode_NullReturned() {
+        Session session = createSession();
+        sessionCache.remove(session.getId());
+
+        assertNull(sessionRepository.findById(session.getId()));
+    }
+
+    @Test
+    @Tag(value = "SESSION_NEAR_CACHE")
+    void findById_WhenStoredSessionTouchedByAnotherNode_ExpirationTimeTakenFromStoredSession() {
+        Session session = createSession(Instant.now().minusSeconds(120));
+        long touchedExpirationTime = System.currentTimeMillis() + 60_000;
+        sessionCache.put(session.getId(), sessionCache.get(session.getId()).toBuilder()
+                .setField(EXPIRATION_TIME_FIELD, touchedExpirationTime, long.class)
+                .build());
+        double hitCount = requestCount("hit");
+
+        IgniteSessionRepository.IgniteSession loadedSession = (IgniteSessionRepository.IgniteSession) sessionRepository.findById(session.getId());
+
+        assertNotNull(loadedSession);
+        assertEquals(touchedExpirationTime, loadedSession.getExpirationTime());
+        assertEquals(hitCount + 1, requestCount("hit"));
+    }
+
+    @Test
+    @Tag(value = "SESSION_NEAR_CACHE")
+    void findById_WhenExpiryPolicyTouched_StoredSessionTouchedWithVersionCheck() {
+        Session session = createSession(Instant.now().minusSeconds(30));
+        long savedExpirationTime = sessionCache.get(session.getId()).field(EXPIRATION_TIME_FIELD);
+        double hitCount = requestCount("hit");
+
+        sessionConfigurationProperties.setExpiryPolicy(SessionConfigurationProperties.ExpiryPolicy.TOUCHED);
+        IgniteSessionRepository.IgniteSession loadedSession;
+        try {
+            loadedSession = (IgniteSessionRepository.IgniteSession) sessionRepository.findById(session.getId());
+        } finally {
+            sessionConfigurationProperties.setExpiryPolicy(SessionConfigurationProperties.ExpiryPolicy.CREATED);
+        }
+
+        long storedExpirationTime = sessionCache.get(session.getId()).field(EXPIRATION_TIME_FIELD);
+        assertTrue(storedExpirationTime >= savedExpirationTime + 30_000);
+        assertEquals(storedExpirationTime, loadedSession.getExpirationTime());
+        assertEquals(hitCount + 1, requestCount("hit"));
+    }
+
+    @Test
+    @Tag(value = "SESSION_NEAR_CACHE")
+    void sessionNearCache_WhenTimeToLiveNotShorterThanSessionTimeout_ConfigurationRejected() {
+        SessionConfigurationProperties properties = new SessionConfigurationProperties();
+        properties.getNearCache().setTimeToLive(Duration.ofSeconds(60));
+
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class,
+                () -> new SessionNearCache(properties, meterRegistry, Duration.ofSeconds(60)));
+
+        assertEquals("Session near cache time to live must be shorter than session timeout.", exception.getMessage());
+    }
+
+    private Session createSession() {
+        return createSession(Instant.now());
+    }
+
+    private Session createSession(Instant lastAccessedTime) {
+        Session session = sessionRepository.createSession();
+        session.setLastAccessedTime(lastAccessedTime);
+        TaraSession taraSession = new TaraSession(session.getId());
+        taraSession.setState(INIT_AUTH_PROCESS);
+        session.setAttribute(TARA_SESSION, taraSession);
+        sessionRepository.save(session);
+        return session;
+    }
+
+    private double requestCount(String result) {
+        return meterRegistry.get("tara.session.near.cache.requests").tag("result", result).counter().count();
+    }
+}
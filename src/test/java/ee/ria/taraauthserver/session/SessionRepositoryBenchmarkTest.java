@@ -0,0 +1,89 @@
+package ee.ria.taraauthserver.session;
+
+import ee.ria.taraauthserver.BaseTest;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.AutowireCapableBeanFactory;
+import org.springframework.session.Session;
+import org.springframework.session.SessionRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static ee.ria.taraauthserver.session.TaraAuthenticationState.INIT_AUTH_PROCESS;
+import static ee.ria.taraauthserver.session.TaraSession.TARA_SESSION;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+/**
+ * Compares throughput of the session repository backends for a typical request: load the session, modify it and
+ * save it. Ignite runs as a single node in the same JVM, so remote cache access is not included.
+ * <p>
+ * Run with {@code -Dtara.benchmark=true}.
+ */
+@Slf4j
+@EnabledIfSystemProperty(named = "tara.benchmark", matches = "true")
+public class SessionRepositoryBenchmarkTest extends BaseTest {
+    private static final int SESSION_COUNT = 1000;
+    private static final int REQUESTS_PER_THREAD = 20000;
+    private static final int THREADS = 8;
+
+    @Autowired
+    private AutowireCapableBeanFactory beanFactory;
+
+    @Test
+    @Tag(value = "SESSION_LOCAL_BACKEND")
+    void benchmark_IgniteAndLocalBackends() throws Exception {
+        LocalSessionRepository localSessionRepository = beanFactory.createBean(LocalSessionRepository.class);
+        try {
+            benchmark("ignite", sessionRepository);
+            benchmark("local", localSessionRepository);
+            benchmark("ignite", sessionRepository);
+            benchmark("local", localSessionRepository);
+        } finally {
+            beanFactory.destroyBean(localSessionRepository);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void benchmark(String name, SessionRepository<? extends Session> repository) throws Exception {
+        SessionRepository<Session> sessionRepository = (SessionRepository<Session>) repository;
+        List<String> ids = new ArrayList<>(SESSION_COUNT);
+        for (int i = 0; i < SESSION_COUNT; i++) {
+            Session session = sessionRepository.createSession();
+            session.setAttribute(TARA_SESSION, MockTaraSessionBuilder.builder().sessionId(session.getId()).authenticationState(INIT_AUTH_PROCESS).build());
+            sessionRepository.save(session);
+            ids.add(session.getId());
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> futures = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int thread = 0; thread < THREADS; thread++) {
+            int offset = thread;
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < REQUESTS_PER_THREAD; i++) {
+                    Session session = sessionRepository.findById(ids.get((offset + i * THREADS) % SESSION_COUNT));
+                    TaraSession taraSession = session.getAttribute(TARA_SESSION);
+                    taraSession.setConsentChallenge("challenge-" + i);
+                    session.setAttribute(TARA_SESSION, taraSession);
+                    sessionRepository.save(session);
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        long elapsedNanos = System.nanoTime() - start;
+        executor.shutdown();
+
+        long requests = (long) THREADS * REQUESTS_PER_THREAD;
+        log.info("Session repository: {}, throughput: {} requests/s", name, requests * 1_000_000_000L / elapsedNanos);
+        assertNotNull(sessionRepository.findById(ids.get(0)).<TaraSession>getAttribute(TARA_SESSION).getConsentChallenge());
+    }
+}
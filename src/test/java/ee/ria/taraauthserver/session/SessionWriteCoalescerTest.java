@@ -0,0 +1,127 @@
+package ee.ria.taraauthserver.session;
+
+import ee.ria.taraauthserver.BaseTest;
+import org.apache.ignite.binary.BinaryObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.web.csrf.DefaultCsrfToken;
+import org.springframework.session.Session;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import javax.cache.Cache;
+
+import static ee.ria.taraauthserver.config.SecurityConfiguration.TARA_SESSION_CSRF_TOKEN;
+import static ee.ria.taraauthserver.session.TaraAuthenticationState.INIT_AUTH_PROCESS;
+import static ee.ria.taraauthserver.session.TaraAuthenticationState.INIT_MID;
+import static ee.ria.taraauthserver.session.TaraAuthenticationState.NATURAL_PERSON_AUTHENTICATION_COMPLETED;
+import static ee.ria.taraauthserver.session.TaraAuthenticationState.POLL_MID_STATUS;
+import static ee.ria.taraauthserver.session.TaraSession.TARA_SESSION;
+import static org.awaitility.Awaitility.await;
+import static org.awaitility.Durations.FIVE_SECONDS;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+@TestPropertySource(
+        locations = "classpath:application.yml",
+        properties = {
+                "tara.session.write-coalescing.enabled=true",
+                "tara.session.write-coalescing.window=500ms"})
+public class SessionWriteCoalescerTest extends BaseTest {
+
+    @Autowired
+    @Qualifier("sessionCache")
+    private Cache<String, BinaryObject> sessionCache;
+
+    @AfterEach
+    void resetRequestAttributes() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Test
+    @Tag(value = "SESSION_WRITE_COALESCING")
+    void save_WhenNewSession_SessionIsWrittenSynchronously() {
+        Session session = createSession();
+
+        assertNotNull(sessionCache.get(session.getId()));
+    }
+
+    @Test
+    @Tag(value = "SESSION_WRITE_COALESCING")
+    void save_WhenSavedOutsideOfRequest_SavesAreCoalescedAndWrittenAsynchronously() {
+        Session session = createSession();
+
+        saveState(session.getId(), POLL_MID_STATUS);
+        saveState(session.getId(), NATURAL_PERSON_AUTHENTICATION_COMPLETED);
+
+        assertEquals(INIT_AUTH_PROCESS, getStoredState(session.getId()));
+        assertEquals(NATURAL_PERSON_AUTHENTICATION_COMPLETED, sessionRepository.findById(session.getId()).<TaraSession>getAttribute(TARA_SESSION).getState());
+        await().atMost(FIVE_SECONDS).until(() -> getStoredState(session.getId()) == NATURAL_PERSON_AUTHENTICATION_COMPLETED);
+    }
+
+    @Test
+    @Tag(value = "SESSION_WRITE_COALESCING")
+    void save_WhenRequestChangesState_SessionIsWrittenSynchronously() {
+        Session session = createSession();
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+
+        saveState(session.getId(), INIT_MID);
+
+        assertEquals(INIT_MID, getStoredState(session.getId()));
+    }
+
+    @Test
+    @Tag(value = "SESSION_WRITE_COALESCING")
+    void save_WhenRequestChangesOtherAttribute_SessionIsWrittenSynchronously() {
+        Session session = createSession();
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+
+        Session loadedSession = sessionRepository.findById(session.getId());
+        loadedSession.setAttribute(TARA_SESSION_CSRF_TOKEN, new DefaultCsrfToken("X-CSRF-TOKEN", "_csrf", "token"));
+        sessionRepository.save(loadedSession);
+
+        IgniteSessionRepository.IgniteSession storedSession = sessionCache.get(session.getId()).deserialize();
+        assertNotNull(storedSession.getAttribute(TARA_SESSION_CSRF_TOKEN));
+    }
+
+    @Test
+    @Tag(value = "SESSION_WRITE_COALESCING")
+    void save_WhenSynchronousWriteFollowsCoalescedWrite_SynchronousWriteIsNotOverwritten() {
+        Session session = createSession();
+        saveState(session.getId(), POLL_MID_STATUS);
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+
+        saveState(session.getId(), NATURAL_PERSON_AUTHENTICATION_COMPLETED);
+
+        assertEquals(NATURAL_PERSON_AUTHENTICATION_COMPLETED, getStoredState(session.getId()));
+        await().pollDelay(FIVE_SECONDS.dividedBy(5)).atMost(FIVE_SECONDS)
+                .until(() -> getStoredState(session.getId()) == NATURAL_PERSON_AUTHENTICATION_COMPLETED);
+    }
+
+    private void saveState(String sessionId, TaraAuthenticationState state) {
+        Session session = sessionRepository.findById(sessionId);
+        TaraSession taraSession = session.getAttribute(TARA_SESSION);
+        taraSession.setState(state);
+        session.setAttribute(TARA_SESSION, taraSession);
+        sessionRepository.save(session);
+    }
+
+    private TaraAuthenticationState getStoredState(String sessionId) {
+        IgniteSessionRepository.IgniteSession storedSession = sessionCache.get(sessionId).deserialize();
+        return storedSession.<TaraSession>getAttribute(TARA_SESSION).getState();
+    }
+
+    private Session createSession() {
+        Session session = sessionRepository.createSession();
+        TaraSession taraSession = new TaraSession(session.getId());
+        taraSession.setState(INIT_AUTH_PROCESS);
+        session.setAttribute(TARA_SESSION, taraSession);
+        sessionRepository.save(session);
+        return session;
+    }
+}
@@ -0,0 +1,122 @@
+package ee.ria.taraauthserver.session;
+
+import ee.ria.taraauthserver.BaseTest;
+import ee.ria.taraauthserver.config.properties.AuthenticationType;
+import ee.ria.taraauthserver.config.properties.SPType;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ignite.Ignite;
+import org.apache.ignite.binary.BinaryObject;
+import org.apache.ignite.internal.binary.BinaryObjectImpl;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.List;
+import java.util.Map;
+
+import static ee.ria.taraauthserver.session.MockTaraSessionBuilder.buildMockCredential;
+import static ee.ria.taraauthserver.session.MockTaraSessionBuilder.buildMockLoginRequestInfo;
+import static ee.ria.taraauthserver.session.TaraAuthenticationState.LEGAL_PERSON_AUTHENTICATION_INIT;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Slf4j
+public class TaraSessionCodecTest extends BaseTest {
+    private static final int BENCHMARK_ITERATIONS = 10000;
+
+    @Autowired
+    private Ignite ignite;
+
+    @Test
+    @Tag(value = "SESSION_COMPACT_SERIALIZATION")
+    void decode_WhenFullSessionEncoded_EqualSessionReturned() throws Exception {
+        TaraSession taraSession = buildFullSession();
+
+        TaraSession decodedSession = TaraSessionCodec.decode(TaraSessionCodec.encode(taraSession));
+
+        assertEquals(taraSession, decodedSession);
+        assertEquals(taraSession.getAuthenticationResult().getClass(), decodedSession.getAuthenticationResult().getClass());
+    }
+
+    @Test
+    @Tag(value = "SESSION_COMPACT_SERIALIZATION")
+    void decode_WhenEmptySessionEncoded_EqualSessionReturned() throws Exception {
+        TaraSession taraSession = new TaraSession("sessionId");
+
+        TaraSession decodedSession = TaraSessionCodec.decode(TaraSessionCodec.encode(taraSession));
+
+        assertEquals(taraSession, decodedSession);
+    }
+
+    @Test
+    @Tag(value = "SESSION_COMPACT_SERIALIZATION")
+    void decode_WhenDecodedIntoExistingInstance_AllFieldsRestored() throws Exception {
+        TaraSession taraSession = buildFullSession();
+        TaraSession target = new TaraSession("otherSessionId");
+
+        TaraSessionCodec.decode(TaraSessionCodec.encode(taraSession), target);
+
+        assertEquals(taraSession, target);
+    }
+
+    /**
+     * Compares the encoded size and encoding/decoding time of the compact encoding with Ignite reflective binary marshalling.
+     */
+    @Test
+    @Tag(value = "SESSION_COMPACT_SERIALIZATION")
+    void encode_WhenComparedToReflectiveBinaryMarshalling_EncodedSizeIsSmaller() throws Exception {
+        TaraSession taraSession = buildFullSession();
+        BinaryObject binaryObject = ignite.binary().toBinary(taraSession);
+        int reflectiveSize = ((BinaryObjectImpl) binaryObject).array().length;
+        int compactSize = TaraSessionCodec.encode(taraSession).length;
+
+        long reflectiveEncodeNanos = 0;
+        long reflectiveDecodeNanos = 0;
+        long compactEncodeNanos = 0;
+        long compactDecodeNanos = 0;
+        for (int i = 0; i < BENCHMARK_ITERATIONS; i++) {
+            long start = System.nanoTime();
+            BinaryObject encoded = ignite.binary().toBinary(taraSession);
+            reflectiveEncodeNanos += System.nanoTime() - start;
+            start = System.nanoTime();
+            encoded.deserialize();
+            reflectiveDecodeNanos += System.nanoTime() - start;
+            start = System.nanoTime();
+            byte[] compactEncoded = TaraSessionCodec.encode(taraSession);
+            compactEncodeNanos += System.nanoTime() - start;
+            start = System.nanoTime();
+            TaraSessionCodec.decode(compactEncoded);
+            compactDecodeNanos += System.nanoTime() - start;
+        }
+        log.info("Reflective binary marshalling: {} bytes, encode {} ns, decode {} ns", reflectiveSize,
+                reflectiveEncodeNanos / BENCHMARK_ITERATIONS, reflectiveDecodeNanos / BENCHMARK_ITERATIONS);
+        log.info("Compact encoding: {} bytes, encode {} ns, decode {} ns", compactSize,
+                compactEncodeNanos / BENCHMARK_ITERATIONS, compactDecodeNanos / BENCHMARK_ITERATIONS);
+
+        assertTrue(compactSize < reflectiveSize, "Compact size " + compactSize + " bytes, reflective size " + reflectiveSize + " bytes");
+    }
+
+    private TaraSession buildFullSession() {
+        TaraSession taraSession = MockTaraSessionBuilder.builder()
+                .sessionId("sessionId")
+                .authenticationState(LEGAL_PERSON_AUTHENTICATION_INIT)
+                .authenticationTypes(List.of(AuthenticationType.ID_CARD, AuthenticationType.MOBILE_ID, AuthenticationType.SMART_ID))
+                .clientAllowedScopes(List.of("openid", "idcard", "mid", "smartid", "legalperson"))
+                .requestedScopes(List.of("openid", "legalperson"))
+                .legalPersonList(List.of(new TaraSession.LegalPerson("Acme INC OÜ", "12345678"), new TaraSession.LegalPerson("Acme INC OÜ 2", "87654321")))
+                .spType(SPType.PRIVATE)
+                .shortNameTranslations(Map.of("et", "short name et", "en", "short name en", "ru", "short name with õ"))
+                .authenticationResult(buildMockCredential())
+                .build();
+        TaraSession.LoginRequestInfo govssoLoginRequestInfo = buildMockLoginRequestInfo();
+        govssoLoginRequestInfo.setLoginVerifierRedirectUrl("https://govsso/login-verifier");
+        taraSession.setGovssoLoginRequestInfo(govssoLoginRequestInfo);
+        taraSession.setSelectedLegalPerson(taraSession.getLegalPersonList().get(0));
+        taraSession.getAuthenticationResult().setEmail("test@example.com");
+        taraSession.getAuthenticationResult().setPhoneNumber("+37200000766");
+        taraSession.setConsentChallenge("consentChallenge");
+        taraSession.getLoginRequestInfo().getOidcContext().setAcrValues(List.of("high"));
+        taraSession.getLoginRequestInfo().getOidcContext().setUiLocales(List.of("et", "en"));
+        return taraSession;
+    }
+}